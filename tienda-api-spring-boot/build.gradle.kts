@@ -3,6 +3,7 @@ plugins {
     id("org.springframework.boot") version "3.1.4" // Versión de Spring Boot
     id("io.spring.dependency-management") version "1.1.3" // Gestión de dependencias
     id("jacoco") // Plugin de Jacoco para test de cobertura
+    id("me.champeau.jmh") version "0.7.3" // Benchmarks con JMH en src/jmh/java
 }
 
 group = "dev.joseluisgs"
@@ -35,6 +36,8 @@ dependencies {
 
     // Cache
     implementation("org.springframework.boot:spring-boot-starter-cache")
+    // Caffeine para caches acotadas y con estadísticas
+    implementation("com.github.ben-manes.caffeine:caffeine")
 
     // Validación
     implementation("org.springframework.boot:spring-boot-starter-validation")
@@ -77,6 +80,10 @@ dependencies {
     // Test Spring Security
     testImplementation("org.springframework.security:spring-security-test")
 
+    // Dependencias para los benchmarks (JMH): colaboradores simulados y peticiones de prueba
+    jmh("org.mockito:mockito-core")
+    jmh("org.springframework:spring-test")
+
     // MongoDB para test, pero no es necesario, usamos sus repositorios
     // testImplementation("de.flapdoodle.embed:de.flapdoodle.embed.mongo.spring31x:4.9.3")
 
@@ -108,3 +115,15 @@ tasks.jacocoTestReport {
         html.outputLocation = layout.buildDirectory.dir("jacocoHtml")
     }
 }
+
+// Benchmarks con JMH: ./gradlew jmh
+// Medimos rendimiento (ops/tiempo) y tiempo medio, y con el perfilador de GC las asignaciones por operación
+// Se puede filtrar por benchmark con -Pjmh.includes=JwtService
+jmh {
+    benchmarkMode = listOf("thrpt", "avgt")
+    profilers = listOf("gc")
+    fork = 1
+    resultFormat = "JSON"
+    includeTests = false
+    includes = listOf(project.findProperty("jmh.includes")?.toString() ?: ".*")
+}
@@ -0,0 +1,71 @@
+package dev.joseluisgs.tiendaapispringboot.auth;
+
+import dev.joseluisgs.tiendaapispringboot.config.auth.JwtAuthenticationFilter;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtRevocations;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtServiceImpl;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.users.AuthUsersCache;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.users.AuthUsersService;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.Role;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Coste del filtro JWT por petición autenticada, con el usuario simulado
+ * Con stateless=false el usuario sale de la cache de usuarios autenticados, con stateless=true de los datos del token
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JwtAuthenticationFilterBenchmark {
+    @Param({"false", "true"})
+    public boolean stateless;
+
+    private JwtAuthenticationFilter filter;
+    private String authorization;
+    // La cadena no hace nada, solo medimos el filtro
+    private final FilterChain chain = (request, response) -> {
+    };
+
+    @Setup
+    public void setup() {
+        var jwtService = new JwtServiceImpl(JwtServiceBenchmark.SECRET, JwtServiceBenchmark.EXPIRATION, 10000);
+        var user = User.builder().id(1L).username("admin").roles(Set.of(Role.USER, Role.ADMIN)).build();
+        var authUsersService = mock(AuthUsersService.class);
+        when(authUsersService.loadUserByUsername("admin")).thenReturn(user);
+        filter = new JwtAuthenticationFilter(
+                jwtService,
+                authUsersService,
+                new AuthUsersCache(10000, Duration.ofSeconds(60)),
+                // Arrancado antes de emitir el token, si no en modo sin estado iría por la base de datos
+                new JwtRevocations(JwtServiceBenchmark.EXPIRATION, Instant.now().minusSeconds(60)),
+                stateless
+        );
+        authorization = "Bearer " + jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse doFilter() throws Exception {
+        var request = new MockHttpServletRequest("GET", "/v1/users/me/profile");
+        request.addHeader("Authorization", authorization);
+        var response = new MockHttpServletResponse();
+        try {
+            filter.doFilter(request, response, chain);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+        return response;
+    }
+}
@@ -0,0 +1,59 @@
+package dev.joseluisgs.tiendaapispringboot.auth;
+
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtClaims;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtServiceImpl;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.Role;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de generar y validar tokens
+ * La validación se mide con la cache de tokens verificados (caso normal: el mismo cliente repite el token)
+ * y sin ella (primera vez que llega un token: firma HMAC-SHA512 y parseo)
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JwtServiceBenchmark {
+    static final String SECRET = "MeGustanLosPeinosdeLeganesPorqueSonGrandesYHermosos!";
+    static final long EXPIRATION = 86400L;
+
+    private JwtServiceImpl jwtService;
+    private JwtServiceImpl jwtServiceSinCache;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwtService = new JwtServiceImpl(SECRET, EXPIRATION, 10000);
+        // Con tamaño 0 la cache está desactivada, cada validación verifica la firma
+        jwtServiceSinCache = new JwtServiceImpl(SECRET, EXPIRATION, 0);
+        user = User.builder().id(1L).username("admin").roles(Set.of(Role.USER, Role.ADMIN)).build();
+        token = jwtService.generateToken(user);
+        jwtService.verify(token);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public JwtClaims verifyCached() {
+        return jwtService.verify(token);
+    }
+
+    @Benchmark
+    public JwtClaims verifyUncached() {
+        return jwtServiceSinCache.verify(token);
+    }
+
+    @Benchmark
+    public boolean isTokenValid() {
+        return jwtService.isTokenValid(token, user);
+    }
+}
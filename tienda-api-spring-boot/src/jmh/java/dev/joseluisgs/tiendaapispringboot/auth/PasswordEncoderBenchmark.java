@@ -0,0 +1,35 @@
+package dev.joseluisgs.tiendaapispringboot.auth;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de BCrypt con la misma configuración que SecurityConfig (fuerza por defecto, 10)
+ * Es lo que paga cada inicio de sesión (matches) y cada alta (encode)
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PasswordEncoderBenchmark {
+    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final String password = "admin1";
+    private String hash;
+
+    @Setup
+    public void setup() {
+        hash = passwordEncoder.encode(password);
+    }
+
+    @Benchmark
+    public String encode() {
+        return passwordEncoder.encode(password);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return passwordEncoder.matches(password, hash);
+    }
+}
@@ -1,13 +1,19 @@
 package dev.joseluisgs.tiendaapispringboot.config.auth;
 
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtClaims;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtRevocations;
 import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtService;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.users.AuthUsersCache;
 import dev.joseluisgs.tiendaapispringboot.rest.auth.services.users.AuthUsersService;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.Role;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContext;
@@ -19,17 +25,26 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final AuthUsersService authUsersService;
+    private final AuthUsersCache authUsersCache;
+    private final JwtRevocations jwtRevocations;
+    // Si es true, el usuario se construye con los datos del token y no se consulta la base de datos
+    private final boolean stateless;
 
     @Autowired
-    public JwtAuthenticationFilter(JwtService jwtService, AuthUsersService authUsersService) {
+    public JwtAuthenticationFilter(JwtService jwtService, AuthUsersService authUsersService, AuthUsersCache authUsersCache,
+                                   JwtRevocations jwtRevocations, @Value("${jwt.stateless:false}") boolean stateless) {
         this.jwtService = jwtService;
         this.authUsersService = authUsersService;
+        this.authUsersCache = authUsersCache;
+        this.jwtRevocations = jwtRevocations;
+        this.stateless = stateless;
     }
 
     @Override
@@ -52,9 +67,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         log.info("Se ha encontrado cabecera de autenticación, se procesa");
         // Si tenemos cabecera, la extraemos y comprobamos que sea válida
         jwt = authHeader.substring(7);
-        // Lo primero que debemos ver es que el token es válido
+        // Lo primero que debemos ver es que el token es válido: firma y caducidad en una sola pasada
+        final JwtClaims claims;
         try {
-            userName = jwtService.extractUserName(jwt);
+            claims = jwtService.verify(jwt);
+            userName = claims.username();
         } catch (Exception e) {
             log.info("Token no válido");
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token no autorizado o no válido");
@@ -65,30 +82,72 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 && SecurityContextHolder.getContext().getAuthentication() == null) {
             // Comprobamos que el usuario existe y que el token es válido
             log.info("Comprobando usuario y token");
+            // En modo sin estado el token lleva el id y los roles, solo comprobamos que no se haya revocado
+            // Los emitidos antes de arrancar van por la base de datos: sus revocaciones se han perdido al reiniciar
+            if (stateless && claims.isStateless() && !jwtRevocations.issuedBeforeStart(claims.issuedAt())) {
+                if (jwtRevocations.isRevoked(claims.userId(), claims.issuedAt())) {
+                    log.info("Token revocado para el usuario: {}", userName);
+                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token revocado");
+                    return;
+                }
+                try {
+                    authenticate(request, fromClaims(claims));
+                } catch (Exception e) {
+                    log.info("Roles no válidos en el token de: {}", userName);
+                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token no autorizado o no válido");
+                    return;
+                }
+                filterChain.doFilter(request, response);
+                return;
+            }
+            // Se busca primero en la cache, así el tráfico autenticado no consulta la base de datos en cada petición
             try {
-                userDetails = authUsersService.loadUserByUsername(userName);
+                userDetails = authUsersCache.get(userName, authUsersService::loadUserByUsername);
             } catch (Exception e) {
                 log.info("Usuario no encontrado: {}", userName);
                 response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Usuario no autorizado");
                 return;
             }
-            authUsersService.loadUserByUsername(userName);
             log.info("Usuario encontrado: {}", userDetails);
-            if (jwtService.isTokenValid(jwt, userDetails)) {
+            // El token ya está verificado, solo falta que sea de este usuario
+            if (userName.equals(userDetails.getUsername())) {
                 log.info("JWT válido");
-                // Si es válido, lo autenticamos en el contexto de seguridad
-                SecurityContext context = SecurityContextHolder.createEmptyContext();
-                // Añadimos los detalles de la petición
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                // Lo añadimos al contexto de seguridad
-                context.setAuthentication(authToken);
-                // Y lo añadimos al contexto de seguridad
-                SecurityContextHolder.setContext(context);
+                authenticate(request, userDetails);
             }
         }
         // Y seguimos con la petición
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Autentica al usuario en el contexto de seguridad
+     *
+     * @param request     petición
+     * @param userDetails usuario autenticado
+     */
+    private void authenticate(HttpServletRequest request, UserDetails userDetails) {
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        // Añadimos los detalles de la petición
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                userDetails, null, userDetails.getAuthorities());
+        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        // Lo añadimos al contexto de seguridad
+        context.setAuthentication(authToken);
+        // Y lo añadimos al contexto de seguridad
+        SecurityContextHolder.setContext(context);
+    }
+
+    /**
+     * Construye el usuario con los datos del token, solo lleva id, username y roles
+     *
+     * @param claims datos del token verificado
+     * @return usuario autenticado
+     */
+    private User fromClaims(JwtClaims claims) {
+        return User.builder()
+                .id(claims.userId())
+                .username(claims.username())
+                .roles(claims.roles().stream().map(Role::valueOf).collect(Collectors.toSet()))
+                .build();
+    }
 }
\ No newline at end of file
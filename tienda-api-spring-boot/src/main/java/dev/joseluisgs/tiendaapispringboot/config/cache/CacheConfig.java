@@ -0,0 +1,53 @@
+package dev.joseluisgs.tiendaapispringboot.config.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuración de las caches de la aplicación
+ * Usamos Caffeine (desalojo W-TinyLFU) con tamaño máximo y caducidad por cada cache,
+ * así no crecen sin límite como las ConcurrentMapCache por defecto.
+ * Se configuran con cache.{nombre}.max-size y cache.{nombre}.expire-after-write, o con cache.default.*
+ */
+@Configuration
+@Slf4j
+public class CacheConfig {
+    // Caches que usan los servicios con @CacheConfig
+    // La de productos va aparte (ProductosCache) porque se indexa por id y por uuid, pero lee las mismas propiedades
+    public static final List<String> CACHE_NAMES = List.of("categorias", "users", "pedidos");
+
+    private static final long DEFAULT_MAX_SIZE = 1000;
+    private static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofMinutes(10);
+
+    @Bean
+    public CacheManager cacheManager(Environment env) {
+        var defaultMaxSize = env.getProperty("cache.default.max-size", Long.class, DEFAULT_MAX_SIZE);
+        var defaultExpire = env.getProperty("cache.default.expire-after-write", Duration.class, DEFAULT_EXPIRE_AFTER_WRITE);
+
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        // Cualquier cache no declarada también queda acotada con los valores por defecto
+        cacheManager.setCaffeine(caffeine(defaultMaxSize, defaultExpire));
+        CACHE_NAMES.forEach(name -> {
+            var maxSize = env.getProperty("cache." + name + ".max-size", Long.class, defaultMaxSize);
+            var expire = env.getProperty("cache." + name + ".expire-after-write", Duration.class, defaultExpire);
+            log.info("Cache " + name + ": máximo " + maxSize + " elementos, caduca a los " + expire);
+            cacheManager.registerCustomCache(name, caffeine(maxSize, expire).build());
+        });
+        return cacheManager;
+    }
+
+    private Caffeine<Object, Object> caffeine(long maxSize, Duration expireAfterWrite) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats();
+    }
+}
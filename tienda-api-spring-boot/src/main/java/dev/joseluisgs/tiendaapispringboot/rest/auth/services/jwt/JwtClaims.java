@@ -0,0 +1,26 @@
+package dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Datos de un token ya verificado (firma y caducidad)
+ *
+ * @param username  Nombre de usuario (subject)
+ * @param userId    Id del usuario, null en tokens antiguos
+ * @param roles     Roles del usuario, null en tokens antiguos
+ * @param issuedAt  Fecha de emisión
+ * @param expiresAt Fecha de caducidad
+ */
+public record JwtClaims(String username, Long userId, Set<String> roles, Instant issuedAt, Instant expiresAt) {
+    public boolean isExpired(Instant now) {
+        return expiresAt == null || !expiresAt.isAfter(now);
+    }
+
+    /**
+     * Indica si el token lleva todo lo necesario para construir el usuario sin ir a la base de datos
+     */
+    public boolean isStateless() {
+        return userId != null && roles != null && issuedAt != null;
+    }
+}
@@ -0,0 +1,76 @@
+package dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Revocaciones de tokens por usuario, para el modo sin estado (jwt.stateless)
+ * En ese modo el usuario se construye con los datos del token, así que cuando se borra un usuario
+ * o cambian sus roles o credenciales hay que rechazar los tokens que se emitieron antes.
+ * Guardamos por id de usuario el instante de la revocación, y solo hace falta recordarlo lo que dura un token:
+ * pasado ese tiempo, todos los tokens emitidos antes ya han caducado.
+ * Está en memoria, así que solo vale para una instancia de la aplicación, y al reiniciar se pierde:
+ * por eso los tokens emitidos antes de arrancar no se aceptan sin más, van por la base de datos (issuedBeforeStart).
+ */
+@Component
+@Slf4j
+public class JwtRevocations {
+    private final Cache<Long, Instant> revocations;
+    // Las revocaciones anteriores a este instante no las conocemos
+    private final Instant startedAt;
+
+    @Autowired
+    public JwtRevocations(@Value("${jwt.expiration}") Long jwtExpiration) {
+        this(jwtExpiration, Instant.now());
+    }
+
+    public JwtRevocations(Long jwtExpiration, Instant startedAt) {
+        this.startedAt = startedAt;
+        // Sin límite de tamaño: si se desalojara una revocación volverían a valer sus tokens
+        this.revocations = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, jwtExpiration)))
+                .build();
+    }
+
+    /**
+     * Revoca todos los tokens emitidos hasta ahora para el usuario
+     *
+     * @param userId Id del usuario
+     */
+    public void revoke(Long userId) {
+        log.info("Revocando los tokens del usuario con id: {}", userId);
+        revocations.put(userId, Instant.now());
+    }
+
+    /**
+     * Indica si un token está revocado
+     * La fecha de emisión del token va en segundos, así que un token emitido en el mismo segundo
+     * que la revocación también se rechaza: es mejor volver a iniciar sesión que aceptar uno revocado.
+     *
+     * @param userId   Id del usuario
+     * @param issuedAt Fecha de emisión del token
+     * @return true si el token se emitió antes de la última revocación del usuario
+     */
+    public boolean isRevoked(Long userId, Instant issuedAt) {
+        var revokedAt = revocations.getIfPresent(userId);
+        return revokedAt != null && issuedAt.getEpochSecond() <= revokedAt.getEpochSecond();
+    }
+
+    /**
+     * Indica si un token se emitió antes de arrancar, cuando pudo revocarse sin que lo sepamos
+     * Igual que al revocar, uno emitido en el mismo segundo del arranque también cuenta como anterior.
+     *
+     * @param issuedAt Fecha de emisión del token
+     * @return true si hay que comprobar el usuario en la base de datos
+     */
+    public boolean issuedBeforeStart(Instant issuedAt) {
+        return issuedAt.getEpochSecond() <= startedAt.getEpochSecond();
+    }
+}
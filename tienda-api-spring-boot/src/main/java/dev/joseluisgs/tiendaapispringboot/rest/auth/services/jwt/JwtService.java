@@ -8,4 +8,6 @@ public interface JwtService {
     String generateToken(UserDetails userDetails);
 
     boolean isTokenValid(String token, UserDetails userDetails);
-}
\ No newline at end of file
+
+    JwtClaims verify(String token);
+}
@@ -1,30 +1,85 @@
 package dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
 
 /**
  * Servicio de JWT
+ * El algoritmo y el verificador se crean una sola vez, y los tokens ya verificados se guardan en una cache
+ * por su hash hasta que caducan, así cada token paga la firma HMAC-SHA512 una sola vez.
  */
 @Service
 @Slf4j
 public class JwtServiceImpl implements JwtService {
-    @Value("${jwt.secret}")
-    private String jwtSigningKey;
+    // Claims con el id y los roles del usuario, para poder autenticar sin ir a la base de datos
+    public static final String ID_CLAIM = "id";
+    public static final String ROLES_CLAIM = "roles";
 
-    @Value("${jwt.expiration}")
-    private Long jwtExpiration;
+    private final Long jwtExpiration;
+    private final Algorithm algorithm;
+    private final JWTVerifier verifier;
+    // Tokens verificados por hash SHA-256, cada uno caduca a la vez que su token (con tamaño 0 no se usa)
+    private final Cache<String, JwtClaims> verified;
+    private final boolean verifiedCacheEnabled;
+
+    @Autowired
+    public JwtServiceImpl(
+            @Value("${jwt.secret}") String jwtSigningKey,
+            @Value("${jwt.expiration}") Long jwtExpiration,
+            @Value("${jwt.verified-cache.max-size:10000}") long verifiedCacheMaxSize
+    ) {
+        this.jwtExpiration = jwtExpiration;
+        this.algorithm = Algorithm.HMAC512(getSigningKey(jwtSigningKey));
+        this.verifier = JWT.require(algorithm).build();
+        this.verifiedCacheEnabled = verifiedCacheMaxSize > 0;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .expireAfter(new UntilTokenExpires())
+                .build();
+    }
+
+    /**
+     * Cada token verificado sale de la cache cuando caduca, y leerlo o actualizarlo no cambia su caducidad
+     */
+    private static class UntilTokenExpires implements Expiry<String, JwtClaims> {
+        @Override
+        public long expireAfterCreate(String hash, JwtClaims claims, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), claims.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String hash, JwtClaims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(hash, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String hash, JwtClaims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 
     /**
      * Extrae el nombre de usuario del token
@@ -34,8 +89,7 @@ public class JwtServiceImpl implements JwtService {
      */
     @Override
     public String extractUserName(String token) {
-        log.info("Extracting username from token " + token);
-        return extractClaim(token, DecodedJWT::getSubject);
+        return verify(token).username();
     }
 
     /**
@@ -51,30 +105,65 @@ public class JwtServiceImpl implements JwtService {
     }
 
     /**
-     * Genera un token con datos extra
+     * Comprueba que el token es válido y pertenece al usuario
      *
      * @param token       token
      * @param userDetails Detalles del usuario
-     * @return token
+     * @return true si es válido
      */
     @Override
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        log.info("Validating token " + token + " for user " + userDetails.getUsername());
-        final String userName = extractUserName(token);
-        return (userName.equals(userDetails.getUsername())) && !isTokenExpired(token);
+        log.info("Validating token for user " + userDetails.getUsername());
+        try {
+            return verify(token).username().equals(userDetails.getUsername());
+        } catch (Exception e) {
+            return false;
+        }
     }
 
     /**
-     * Genera un token con datos extra
+     * Verifica la firma y la caducidad del token en una sola pasada
+     * Si ya se verificó antes y no ha caducado, se devuelve de la cache sin volver a calcular la firma
      *
-     * @param token           token
-     * @param claimsResolvers Detalles del usuario
-     * @return token
+     * @param token token
+     * @return datos del token verificado
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException si la firma no es válida o ha caducado
      */
-    private <T> T extractClaim(String token, Function<DecodedJWT, T> claimsResolvers) {
-        log.info("Extracting claim from token " + token);
-        final DecodedJWT decodedJWT = JWT.decode(token);
-        return claimsResolvers.apply(decodedJWT);
+    @Override
+    public JwtClaims verify(String token) {
+        if (!verifiedCacheEnabled) {
+            return verifySignature(token);
+        }
+        var hash = hash(token);
+        var claims = verified.getIfPresent(hash);
+        if (claims != null && !claims.isExpired(Instant.now())) {
+            return claims;
+        }
+        claims = verifySignature(token);
+        // Sin caducidad no lo guardamos, la cache no sabría cuándo sacarlo
+        if (claims.expiresAt() != null) {
+            verified.put(hash, claims);
+        }
+        return claims;
+    }
+
+    /**
+     * Verifica la firma y la caducidad del token y extrae sus datos
+     *
+     * @param token token
+     * @return datos del token verificado
+     */
+    private JwtClaims verifySignature(String token) {
+        log.debug("Verificando token");
+        DecodedJWT decodedJWT = verifier.verify(token);
+        var roles = decodedJWT.getClaim(ROLES_CLAIM).asList(String.class);
+        return new JwtClaims(
+                decodedJWT.getSubject(),
+                decodedJWT.getClaim(ID_CLAIM).asLong(),
+                roles == null ? null : Set.copyOf(roles),
+                decodedJWT.getIssuedAtAsInstant(),
+                decodedJWT.getExpiresAtAsInstant()
+        );
     }
 
     /**
@@ -86,38 +175,20 @@ public class JwtServiceImpl implements JwtService {
      */
     private String generateToken(Map<String, Object> extraClaims, UserDetails userDetails) {
         // Preparamos el token
-        Algorithm algorithm = Algorithm.HMAC512(getSigningKey());
         Date now = new Date();
         Date expirationDate = new Date(now.getTime() + (1000 * jwtExpiration));
 
-        return JWT.create()
+        var builder = JWT.create()
                 .withHeader(createHeader())
                 .withSubject(userDetails.getUsername())
                 .withIssuedAt(now)
                 .withExpiresAt(expirationDate)
-                .withClaim("extraClaims", extraClaims)
-                .sign(algorithm);
-    }
-
-    /**
-     * Comprueba si el token ha expirado
-     *
-     * @param token token
-     * @return true si ha expirado
-     */
-    private boolean isTokenExpired(String token) {
-        Date expirationDate = extractExpiration(token);
-        return expirationDate.before(new Date());
-    }
-
-    /**
-     * Extrae la fecha de expiración del token
-     *
-     * @param token token
-     * @return fecha de expiración
-     */
-    private Date extractExpiration(String token) {
-        return extractClaim(token, DecodedJWT::getExpiresAt);
+                .withClaim("extraClaims", extraClaims);
+        if (userDetails instanceof User user && user.getId() != null && user.getRoles() != null) {
+            builder.withClaim(ID_CLAIM, user.getId())
+                    .withClaim(ROLES_CLAIM, user.getRoles().stream().map(Enum::name).sorted().toList());
+        }
+        return builder.sign(algorithm);
     }
 
     /**
@@ -134,10 +205,26 @@ public class JwtServiceImpl implements JwtService {
     /**
      * Obtiene la clave de firma
      *
+     * @param jwtSigningKey secreto
      * @return clave de firma
      */
-    private byte[] getSigningKey() {
+    private static byte[] getSigningKey(String jwtSigningKey) {
         return Base64.getEncoder().encode(jwtSigningKey.getBytes());
+    }
 
+    /**
+     * Hash del token para usarlo como clave de la cache, así no guardamos los tokens en memoria
+     *
+     * @param token token
+     * @return hash SHA-256 en hexadecimal
+     */
+    private static String hash(String token) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Todas las JVM tienen SHA-256
+            throw new IllegalStateException(e);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package dev.joseluisgs.tiendaapispringboot.rest.auth.services.users;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.joseluisgs.tiendaapispringboot.utils.cache.CacheStatsResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Cache de los usuarios autenticados por el filtro JWT, por username
+ * Cada petición autenticada necesita el usuario, así no vamos a la base de datos en cada una.
+ * La caducidad es corta y además se invalida cuando se modifica o borra un usuario.
+ * Los usuarios que no existen no se cachean, el loader lanza la excepción y no se guarda nada.
+ */
+@Component
+@Slf4j
+public class AuthUsersCache {
+    public static final String NAME = "auth-users";
+
+    private final Cache<String, UserDetails> cache;
+
+    @Autowired
+    public AuthUsersCache(
+            @Value("${auth.users-cache.max-size:10000}") long maxSize,
+            @Value("${auth.users-cache.expire-after-write:60s}") Duration expireAfterWrite
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Devuelve el usuario cacheado o lo carga y lo guarda
+     *
+     * @param username Nombre de usuario
+     * @param loader   Carga el usuario de la base de datos si no está cacheado
+     * @return Usuario
+     */
+    public UserDetails get(String username, Function<String, UserDetails> loader) {
+        return cache.get(username, loader);
+    }
+
+    /**
+     * Invalida un usuario, se llama cuando se modifica o se borra
+     *
+     * @param username Nombre de usuario
+     */
+    public void evict(String username) {
+        evictNow(username);
+        // Si estamos en una transacción, lo que se cargue antes del commit tampoco vale: invalidamos otra vez al terminar
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(username);
+                }
+            });
+        }
+    }
+
+    private void evictNow(String username) {
+        cache.invalidate(username);
+        log.debug("Invalidado el usuario autenticado: {}", username);
+    }
+
+    public CacheStatsResponse stats() {
+        return CacheStatsResponse.of(NAME, cache.estimatedSize(), cache.stats());
+    }
+}
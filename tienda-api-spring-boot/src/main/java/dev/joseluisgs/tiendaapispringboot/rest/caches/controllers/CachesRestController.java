@@ -0,0 +1,65 @@
+package dev.joseluisgs.tiendaapispringboot.rest.caches.controllers;
+
+import dev.joseluisgs.tiendaapispringboot.rest.caches.services.CachesService;
+import dev.joseluisgs.tiendaapispringboot.utils.cache.CacheStatsResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("${api.version}/admin/caches") // Es la ruta del controlador
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')") // Solo los administradores pueden acceder
+public class CachesRestController {
+    private final CachesService cachesService;
+
+    @Autowired
+    public CachesRestController(CachesService cachesService) {
+        this.cachesService = cachesService;
+    }
+
+    /**
+     * Obtiene las estadísticas de todas las caches
+     *
+     * @return Lista de estadísticas (tamaño, aciertos, fallos y desalojos)
+     */
+    @Operation(summary = "Obtiene las estadísticas de todas las caches", description = "Obtiene tamaño, aciertos, fallos y desalojos de cada cache")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Estadísticas de las caches"),
+    })
+    @GetMapping()
+    public ResponseEntity<List<CacheStatsResponse>> getAllCaches() {
+        log.info("Obteniendo estadísticas de las caches");
+        return ResponseEntity.ok(cachesService.findAll());
+    }
+
+    /**
+     * Obtiene las estadísticas de una cache
+     *
+     * @param name Nombre de la cache
+     * @return Estadísticas de la cache
+     * @throws CacheNotFound si no existe la cache (404)
+     */
+    @Operation(summary = "Obtiene las estadísticas de una cache", description = "Obtiene tamaño, aciertos, fallos y desalojos de una cache")
+    @Parameter(name = "name", description = "Nombre de la cache", example = "productos", required = true)
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Estadísticas de la cache"),
+            @ApiResponse(responseCode = "404", description = "Cache no encontrada"),
+    })
+    @GetMapping("/{name}")
+    public ResponseEntity<CacheStatsResponse> getCacheByName(@PathVariable String name) {
+        log.info("Obteniendo estadísticas de la cache: " + name);
+        return ResponseEntity.ok(cachesService.findByName(name));
+    }
+}
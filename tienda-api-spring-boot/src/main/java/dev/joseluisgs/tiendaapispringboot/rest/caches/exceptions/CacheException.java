@@ -0,0 +1,7 @@
+package dev.joseluisgs.tiendaapispringboot.rest.caches.exceptions;
+
+public abstract class CacheException extends RuntimeException {
+    public CacheException(String message) {
+        super(message);
+    }
+}
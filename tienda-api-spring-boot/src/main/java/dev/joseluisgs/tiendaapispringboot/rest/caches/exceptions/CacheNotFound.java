@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.caches.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de cache no encontrada
+ * Status 404
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class CacheNotFound extends CacheException {
+    public CacheNotFound(String name) {
+        super("Cache " + name + " no encontrada");
+    }
+}
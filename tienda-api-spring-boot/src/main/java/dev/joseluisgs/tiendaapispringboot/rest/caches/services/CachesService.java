@@ -0,0 +1,11 @@
+package dev.joseluisgs.tiendaapispringboot.rest.caches.services;
+
+import dev.joseluisgs.tiendaapispringboot.utils.cache.CacheStatsResponse;
+
+import java.util.List;
+
+public interface CachesService {
+    List<CacheStatsResponse> findAll();
+
+    CacheStatsResponse findByName(String name);
+}
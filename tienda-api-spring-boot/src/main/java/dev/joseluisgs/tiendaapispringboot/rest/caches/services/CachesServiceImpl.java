@@ -0,0 +1,78 @@
+package dev.joseluisgs.tiendaapispringboot.rest.caches.services;
+
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.users.AuthUsersCache;
+import dev.joseluisgs.tiendaapispringboot.rest.caches.exceptions.CacheNotFound;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosQueryCache;
+import dev.joseluisgs.tiendaapispringboot.utils.cache.CacheStatsResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Estadísticas de las caches: las del CacheManager (Caffeine) y las de productos (por id/uuid y listados)
+ */
+@Service
+@Slf4j
+public class CachesServiceImpl implements CachesService {
+    private final CacheManager cacheManager;
+    private final ProductosCache productosCache;
+    private final ProductosQueryCache productosQueryCache;
+    private final AuthUsersCache authUsersCache;
+
+    @Autowired
+    public CachesServiceImpl(CacheManager cacheManager, ProductosCache productosCache, ProductosQueryCache productosQueryCache, AuthUsersCache authUsersCache) {
+        this.cacheManager = cacheManager;
+        this.productosCache = productosCache;
+        this.productosQueryCache = productosQueryCache;
+        this.authUsersCache = authUsersCache;
+    }
+
+    @Override
+    public List<CacheStatsResponse> findAll() {
+        log.info("Obteniendo estadísticas de todas las caches");
+        var stats = new ArrayList<CacheStatsResponse>();
+        cacheManager.getCacheNames().stream()
+                .map(this::stats)
+                .filter(Objects::nonNull)
+                .forEach(stats::add);
+        stats.add(productosCache.stats());
+        stats.add(productosQueryCache.stats());
+        stats.add(authUsersCache.stats());
+        return stats;
+    }
+
+    @Override
+    public CacheStatsResponse findByName(String name) {
+        log.info("Obteniendo estadísticas de la cache: " + name);
+        if (ProductosCache.NAME.equals(name)) {
+            return productosCache.stats();
+        }
+        if (ProductosQueryCache.NAME.equals(name)) {
+            return productosQueryCache.stats();
+        }
+        if (AuthUsersCache.NAME.equals(name)) {
+            return authUsersCache.stats();
+        }
+        var stats = stats(name);
+        if (stats == null) {
+            throw new CacheNotFound(name);
+        }
+        return stats;
+    }
+
+    // Solo las caches de Caffeine llevan estadísticas
+    private CacheStatsResponse stats(String name) {
+        if (cacheManager.getCacheNames().contains(name) && cacheManager.getCache(name) instanceof CaffeineCache caffeineCache) {
+            var nativeCache = caffeineCache.getNativeCache();
+            return CacheStatsResponse.of(name, nativeCache.estimatedSize(), nativeCache.stats());
+        }
+        return null;
+    }
+}
@@ -11,8 +11,8 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -49,6 +49,7 @@ public class CategoriasRestController {
      *
      * @param nombre    Nombre de la categoría
      * @param isDeleted Si está borrado
+     * @param withTotal Si se calculan los totales, con false no se hace la consulta COUNT
      * @return Page de categorías
      */
     @GetMapping()
@@ -59,6 +60,7 @@ public class CategoriasRestController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
             @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(defaultValue = "true") boolean withTotal,
             HttpServletRequest request
     ) {
         log.info("Buscando todos las categorias con nombre: " + nombre + " y borrados: " + isDeleted);
@@ -66,7 +68,10 @@ public class CategoriasRestController {
         Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         // Creamos cómo va a ser la paginación
         UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(request.getRequestURL().toString());
-        Page<Categoria> pageResult = categoriasService.findAll(nombre, isDeleted, PageRequest.of(page, size, sort));
+        // Sin total nos ahorramos la consulta COUNT, devolvemos un Slice
+        Slice<Categoria> pageResult = withTotal
+                ? categoriasService.findAll(nombre, isDeleted, PageRequest.of(page, size, sort))
+                : categoriasService.findAllSlice(nombre, isDeleted, PageRequest.of(page, size, sort));
         return ResponseEntity.ok()
                 .header("link", paginationLinksUtils.createLinkHeader(pageResult, uriBuilder))
                 .body(PageResponse.of(pageResult, sortBy, direction));
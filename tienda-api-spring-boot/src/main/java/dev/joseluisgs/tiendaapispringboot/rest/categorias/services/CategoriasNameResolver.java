@@ -0,0 +1,98 @@
+package dev.joseluisgs.tiendaapispringboot.rest.categorias.services;
+
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.repositories.CategoriasRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Categorías activas por nombre, en memoria y sin distinguir mayúsculas
+ * Son muy pocas y casi nunca cambian, así que los productos resuelven su categoría sin ir a la base de datos.
+ * Se vuelven a cargar enteras cuando CategoriasServiceImpl guarda, actualiza o borra una.
+ */
+@Component
+@Slf4j
+public class CategoriasNameResolver {
+    private final CategoriasRepository categoriasRepository;
+    // Se sustituye entero en cada recarga, así las lecturas no necesitan bloqueos
+    private volatile Map<String, Categoria> categorias;
+
+    @Autowired
+    public CategoriasNameResolver(CategoriasRepository categoriasRepository) {
+        this.categoriasRepository = categoriasRepository;
+    }
+
+    /**
+     * Busca una categoría activa por su nombre, sin distinguir mayúsculas
+     *
+     * @param nombre Nombre de la categoría
+     * @return Categoría si existe y no está borrada
+     */
+    public Optional<Categoria> resolve(String nombre) {
+        if (nombre == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(categorias().get(key(nombre)));
+    }
+
+    /**
+     * Nombres de las categorías activas ordenados, para los formularios
+     *
+     * @return Nombres de las categorías
+     */
+    public List<String> nombres() {
+        return categorias().values().stream().map(Categoria::getNombre).sorted().toList();
+    }
+
+    /**
+     * Vuelve a cargar las categorías
+     * Si estamos en una transacción esperamos al commit, si no leeríamos los datos de antes del cambio
+     */
+    public void refresh() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    load();
+                }
+            });
+        } else {
+            load();
+        }
+    }
+
+    /**
+     * Carga las categorías cuando la aplicación ya está arrancada
+     * Las recargas van de una en una, así la última siempre ha leído después del último cambio
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        categorias = categoriasRepository.findAll().stream()
+                .filter(c -> !Boolean.TRUE.equals(c.getIsDeleted()))
+                .collect(Collectors.toUnmodifiableMap(c -> key(c.getNombre()), Function.identity(), (a, b) -> a));
+        log.info("Cargadas " + categorias.size() + " categorías activas en memoria");
+    }
+
+    private Map<String, Categoria> categorias() {
+        var current = categorias;
+        if (current == null) {
+            // Por si se usa antes de arrancar del todo
+            load();
+            current = categorias;
+        }
+        return current;
+    }
+
+    private static String key(String nombre) {
+        return nombre.toUpperCase(Locale.ROOT);
+    }
+}
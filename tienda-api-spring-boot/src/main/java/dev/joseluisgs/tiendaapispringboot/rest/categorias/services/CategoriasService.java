@@ -4,6 +4,7 @@ import dev.joseluisgs.tiendaapispringboot.rest.categorias.dto.CategoriaRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -11,6 +12,8 @@ import java.util.UUID;
 public interface CategoriasService {
     Page<Categoria> findAll(Optional<String> nombre, Optional<Boolean> isDeleted, Pageable pageable);
 
+    Slice<Categoria> findAllSlice(Optional<String> nombre, Optional<Boolean> isDeleted, Pageable pageable);
+
     Categoria findByNombre(String nombre);
 
     Categoria findById(UUID id);
@@ -6,6 +6,7 @@ import dev.joseluisgs.tiendaapispringboot.rest.categorias.exceptions.CategoriaNo
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.mappers.CategoriasMapper;
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.repositories.CategoriasRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.search.ProductosSearchIndex;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,8 +14,10 @@ import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import dev.joseluisgs.tiendaapispringboot.utils.pagination.SliceUtils;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
@@ -27,16 +30,32 @@ import java.util.UUID;
 public class CategoriasServiceImpl implements CategoriasService {
     private final CategoriasRepository categoriasRepository;
     private final CategoriasMapper categoriasMapper;
+    private final ProductosSearchIndex productosSearchIndex;
+    private final CategoriasNameResolver categoriasNameResolver;
 
     @Autowired
-    public CategoriasServiceImpl(CategoriasRepository categoriasRepository, CategoriasMapper categoriasMapper) {
+    public CategoriasServiceImpl(CategoriasRepository categoriasRepository, CategoriasMapper categoriasMapper, ProductosSearchIndex productosSearchIndex, CategoriasNameResolver categoriasNameResolver) {
         this.categoriasRepository = categoriasRepository;
         this.categoriasMapper = categoriasMapper;
+        this.productosSearchIndex = productosSearchIndex;
+        this.categoriasNameResolver = categoriasNameResolver;
     }
 
     @Override
     public Page<Categoria> findAll(Optional<String> nombre, Optional<Boolean> isDeleted, Pageable pageable) {
         log.info("Buscando todos las categorias con nombre: " + nombre + " y borrados: " + isDeleted);
+        return categoriasRepository.findAll(criterio(nombre, isDeleted), pageable);
+    }
+
+    @Override
+    public Slice<Categoria> findAllSlice(Optional<String> nombre, Optional<Boolean> isDeleted, Pageable pageable) {
+        log.info("Buscando categorias sin total con nombre: " + nombre + " y borrados: " + isDeleted);
+        // Pedimos una de más para saber si hay siguiente página, sin COUNT
+        var window = categoriasRepository.findBy(criterio(nombre, isDeleted), q -> q.sortBy(pageable.getSort()).limit(pageable.getPageSize()).scroll(SliceUtils.offsetOf(pageable)));
+        return SliceUtils.toSlice(window, pageable);
+    }
+
+    private Specification<Categoria> criterio(Optional<String> nombre, Optional<Boolean> isDeleted) {
         // Criterio de búsqueda por nombre
         Specification<Categoria> specNombreCategoria = (root, query, criteriaBuilder) ->
                 nombre.map(m -> criteriaBuilder.like(criteriaBuilder.lower(root.get("nombre")), "%" + m.toLowerCase() + "%"))
@@ -48,10 +67,8 @@ public class CategoriasServiceImpl implements CategoriasService {
                         .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
 
         // Combinamos las especificaciones
-        Specification<Categoria> criterio = Specification.where(specNombreCategoria)
+        return Specification.where(specNombreCategoria)
                 .and(specIsDeleted);
-
-        return categoriasRepository.findAll(criterio, pageable);
     }
 
     @Override
@@ -76,7 +93,10 @@ public class CategoriasServiceImpl implements CategoriasService {
         categoriasRepository.findByNombreEqualsIgnoreCase(categoriaRequest.getNombre()).ifPresent(c -> {
             throw new CategoriaConflict("Ya existe una categoría con el nombre " + categoriaRequest.getNombre());
         });
-        return categoriasRepository.save(categoriasMapper.toCategoria(categoriaRequest));
+        var categoriaSaved = categoriasRepository.save(categoriasMapper.toCategoria(categoriaRequest));
+        // Los productos resuelven las categorías en memoria
+        categoriasNameResolver.refresh();
+        return categoriaSaved;
     }
 
     @Override
@@ -91,7 +111,11 @@ public class CategoriasServiceImpl implements CategoriasService {
             }
         });
         // Actualizamos los datos
-        return categoriasRepository.save(categoriasMapper.toCategoria(categoriaRequest, categoriaActual));
+        var categoriaUpdated = categoriasRepository.save(categoriasMapper.toCategoria(categoriaRequest, categoriaActual));
+        // Si cambia el nombre, el índice de búsqueda de productos debe saberlo
+        productosSearchIndex.putCategoria(categoriaUpdated.getId(), categoriaUpdated.getNombre());
+        categoriasNameResolver.refresh();
+        return categoriaUpdated;
     }
 
     @Override
@@ -112,6 +136,7 @@ public class CategoriasServiceImpl implements CategoriasService {
             // categoriasRepository.updateIsDeletedToTrueById(id);
         } else {
             categoriasRepository.deleteById(id);
+            categoriasNameResolver.refresh();
         }
 
     }
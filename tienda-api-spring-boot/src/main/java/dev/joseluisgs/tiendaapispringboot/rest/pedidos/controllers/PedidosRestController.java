@@ -1,5 +1,6 @@
 package dev.joseluisgs.tiendaapispringboot.rest.pedidos.controllers;
 
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidosBatchResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.*;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.PedidosService;
@@ -10,17 +11,20 @@ import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+
 @RestController
 @RequestMapping("${api.version}/pedidos") // Es la ruta del controlador
 @Slf4j
@@ -42,6 +46,7 @@ public class PedidosRestController {
      * @param size      Tamaño de la página
      * @param sortBy    Campo de ordenación
      * @param direction Dirección de ordenación
+     * @param withTotal Si se calculan los totales, con false no se hace el count
      * @param request   Petición
      * @return Lista de pedidos paginada
      */
@@ -51,12 +56,16 @@ public class PedidosRestController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
             @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(defaultValue = "true") boolean withTotal,
             HttpServletRequest request
     ) {
         log.info("Obteniendo todos los pedidos");
         Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(request.getRequestURL().toString());
-        Page<Pedido> pageResult = pedidosService.findAll(PageRequest.of(page, size, sort));
+        // Sin total nos ahorramos el count en Mongo, devolvemos un Slice
+        Slice<Pedido> pageResult = withTotal
+                ? pedidosService.findAll(PageRequest.of(page, size, sort))
+                : pedidosService.findAllSlice(PageRequest.of(page, size, sort));
         return ResponseEntity.ok()
                 .header("link", paginationLinksUtils.createLinkHeader(pageResult, uriBuilder))
                 .body(PageResponse.of(pageResult, sortBy, direction));
@@ -83,6 +92,7 @@ public class PedidosRestController {
      * @param size      Tamaño de la página
      * @param sortBy    Campo de ordenación
      * @param direction Dirección de ordenación
+     * @param withTotal Si se calculan los totales, con false no se hace el count
      * @return Lista de pedidos paginada
      * @throws PedidoNotFound si no existe el pedido (404)
      */
@@ -92,12 +102,16 @@ public class PedidosRestController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
-            @RequestParam(defaultValue = "asc") String direction
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(defaultValue = "true") boolean withTotal
     ) {
         log.info("Obteniendo pedidos del usuario con id: " + idUsuario);
         Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
-        return ResponseEntity.ok(PageResponse.of(pedidosService.findByIdUsuario(idUsuario, pageable), sortBy, direction));
+        Slice<Pedido> pageResult = withTotal
+                ? pedidosService.findByIdUsuario(idUsuario, pageable)
+                : pedidosService.findByIdUsuarioSlice(idUsuario, pageable);
+        return ResponseEntity.ok(PageResponse.of(pageResult, sortBy, direction));
     }
 
     /**
@@ -117,6 +131,26 @@ public class PedidosRestController {
         return ResponseEntity.status(HttpStatus.CREATED).body(pedidosService.save(pedido));
     }
 
+    /**
+     * Crea un lote de pedidos, por ejemplo los que envía un ERP
+     * El cuerpo es un array JSON o NDJSON (un pedido por línea) y se lee en streaming. Los productos se comprueban
+     * con una consulta por bloque, el stock se reserva en lotes y los pedidos se insertan con insertMany.
+     * Un pedido con error no impide crear los demás.
+     *
+     * @param request Petición con el lote en el cuerpo
+     * @return Resultado de cada pedido, con su estado y su id o su error
+     * @throws PedidoBadBatch si no se puede leer el lote (400)
+     */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<PedidosBatchResponse> createPedidosBatch(HttpServletRequest request) {
+        log.info("Creando lote de pedidos");
+        try {
+            return ResponseEntity.ok(pedidosService.saveBatch(request.getInputStream()));
+        } catch (IOException e) {
+            throw new PedidoBadBatch("No se ha podido leer el lote de pedidos: " + e.getMessage());
+        }
+    }
+
     /**
      * Actualiza un pedido
      *
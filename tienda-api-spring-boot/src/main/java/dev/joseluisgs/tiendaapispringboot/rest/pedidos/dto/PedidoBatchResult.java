@@ -0,0 +1,40 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Resultado de un pedido del lote
+ */
+@Schema(description = "Resultado de un pedido del lote")
+public record PedidoBatchResult(
+        @Schema(description = "Posición del pedido en el lote, desde 0", example = "12")
+        long index,
+        @Schema(description = "Estado HTTP que habría tenido el pedido por separado", example = "201")
+        int status,
+        @Schema(description = "Id del pedido creado", example = "6536518de9b0d305f193b5ef")
+        String id,
+        @Schema(description = "Motivo del error", example = "Lo sentimos, el producto con id: 1 no tiene stock suficiente")
+        String error
+) {
+    public static PedidoBatchResult of(long index, PedidoResult result) {
+        if (result.isOk()) {
+            return new PedidoBatchResult(index, HttpStatus.CREATED.value(), result.pedido().get_id(), null);
+        }
+        // El mismo estado que devolvería el endpoint de un solo pedido
+        var status = AnnotatedElementUtils.findMergedAnnotation(result.error().getClass(), ResponseStatus.class);
+        return new PedidoBatchResult(index, status != null ? status.code().value() : HttpStatus.INTERNAL_SERVER_ERROR.value(), null, result.error().getMessage());
+    }
+
+    public static PedidoBatchResult error(long index, String error) {
+        return new PedidoBatchResult(index, HttpStatus.BAD_REQUEST.value(), null, error);
+    }
+
+    @JsonIgnore
+    public boolean isOk() {
+        return error == null;
+    }
+}
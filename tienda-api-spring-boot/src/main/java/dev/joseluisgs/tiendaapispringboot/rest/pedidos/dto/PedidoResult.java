@@ -0,0 +1,20 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+
+/**
+ * Resultado de guardar un pedido dentro de un lote: o el pedido guardado o el error
+ */
+public record PedidoResult(Pedido pedido, RuntimeException error) {
+    public static PedidoResult ok(Pedido pedido) {
+        return new PedidoResult(pedido, null);
+    }
+
+    public static PedidoResult error(RuntimeException error) {
+        return new PedidoResult(null, error);
+    }
+
+    public boolean isOk() {
+        return error == null;
+    }
+}
@@ -0,0 +1,21 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Resultado de un lote de pedidos
+ */
+@Schema(description = "Resultado del lote de pedidos")
+public record PedidosBatchResponse(
+        @Schema(description = "Pedidos leídos", example = "1000")
+        long total,
+        @Schema(description = "Pedidos creados", example = "998")
+        long created,
+        @Schema(description = "Pedidos con error", example = "2")
+        long failed,
+        @Schema(description = "Resultado de cada pedido, en el orden del lote")
+        List<PedidoBatchResult> results
+) {
+}
@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de lote de pedidos que no se puede leer
+ * Status 400
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class PedidoBadBatch extends PedidoException {
+    public PedidoBadBatch(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de clave de idempotencia no válida
+ * Status 400
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class PedidoBadKey extends PedidoException {
+    public PedidoBadKey(String message) {
+        super(message);
+    }
+}
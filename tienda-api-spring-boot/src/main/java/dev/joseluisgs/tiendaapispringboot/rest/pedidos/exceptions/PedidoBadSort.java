@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de orden no permitido en las consultas de pedidos
+ * Status 400
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class PedidoBadSort extends PedidoException {
+    public PedidoBadSort(String message) {
+        super(message);
+    }
+}
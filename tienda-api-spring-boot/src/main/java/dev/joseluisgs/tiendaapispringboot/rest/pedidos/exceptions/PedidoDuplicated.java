@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de pedido nuevo con un id que ya existe (o repetido en el mismo lote)
+ * Status 409
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class PedidoDuplicated extends PedidoException {
+    public PedidoDuplicated(String id) {
+        super("Ya existe un pedido con id " + id);
+    }
+}
@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de pedido con la misma clave de idempotencia todavía en curso
+ * Status 409
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class PedidoKeyInProgress extends PedidoException {
+    public PedidoKeyInProgress(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de clave de idempotencia ya usada con otro pedido distinto
+ * Status 422
+ */
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class PedidoKeyMismatch extends PedidoException {
+    public PedidoKeyMismatch(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de demasiados pedidos a la vez para procesarlos
+ * Status 503
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class PedidosBusy extends PedidoException {
+    public PedidosBusy(String message) {
+        super(message);
+    }
+}
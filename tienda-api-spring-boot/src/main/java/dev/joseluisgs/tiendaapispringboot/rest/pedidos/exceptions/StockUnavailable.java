@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de stock no disponible: el motor de stock está saturado o no responde a tiempo
+ * Status 503
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class StockUnavailable extends PedidoException {
+    public StockUnavailable(String message) {
+        super(message);
+    }
+}
@@ -13,6 +13,9 @@ import org.hibernate.annotations.UpdateTimestamp;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.TypeAlias;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.IndexDirection;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -26,6 +29,10 @@ import java.util.List;
 @Document("pedidos")
 // Para que sepa con qué clase recuperarlo al traerlo con MongoDB y aplicar polimorfismo
 @TypeAlias("Pedido")
+// Índices de las consultas por usuario: filtran por idUsuario y ordenan por fecha o por id
+// Los crea PedidosIndexes al arrancar y son los únicos órdenes que se aceptan
+@CompoundIndex(name = "idUsuario_createdAt", def = "{'idUsuario': 1, 'createdAt': -1}")
+@CompoundIndex(name = "idUsuario_id", def = "{'idUsuario': 1, '_id': 1}")
 @EntityListeners(AuditingEntityListener.class) // Para que sea auditada y se autorellene
 public class Pedido {
     // Id de mongo
@@ -53,6 +60,7 @@ public class Pedido {
 
     @CreationTimestamp
     @Builder.Default()
+    @Indexed(name = "createdAt", direction = IndexDirection.DESCENDING)
     private LocalDateTime createdAt = LocalDateTime.now();
 
     @UpdateTimestamp
@@ -0,0 +1,370 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.CreateCollectionOptions;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Cliente;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Direccion;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Archivo de los pedidos antiguos, una colección por mes de creación (pedidos_archivo_yyyy_MM)
+ * Los documentos se guardan compactos, con nombres de campo cortos y sin nulos, en colecciones comprimidas.
+ * Así la colección de pedidos y sus índices solo tienen los pedidos recientes y caben en memoria,
+ * y los antiguos se siguen pudiendo consultar por id o por usuario.
+ */
+@Component
+@Slf4j
+public class PedidosArchive {
+    public static final String PREFIX = "pedidos_archivo_";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy_MM");
+    // Código de error de Mongo cuando la colección ya existe
+    private static final int NAMESPACE_EXISTS = 48;
+    // Cada cuánto se vuelven a leer las colecciones y los contadores: otra instancia puede haber archivado
+    private static final Duration REFRESH = Duration.ofMinutes(10);
+    // Nombre corto en el archivo de los campos por los que se puede ordenar
+    static final Map<String, String> FIELDS = Map.of(
+            "id", "_id",
+            "createdAt", "ca",
+            "idUsuario", "u"
+    );
+
+    private final MongoTemplate mongoTemplate;
+    private final String compressor;
+    // Pedidos archivados de cada usuario por colección: el archivo solo cambia cuando pasa el archivador
+    private final Cache<Long, Map<String, Long>> counts = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(REFRESH)
+            .build();
+    // Colecciones del archivo, de la más antigua a la más nueva; null hasta que se leen
+    private volatile NavigableSet<String> collections;
+    private volatile long collectionsReadAt;
+
+    @Autowired
+    public PedidosArchive(MongoTemplate mongoTemplate, @Value("${pedidos.archive.compressor:zstd}") String compressor) {
+        this.mongoTemplate = mongoTemplate;
+        this.compressor = compressor;
+    }
+
+    public static String collectionName(YearMonth mes) {
+        return PREFIX + mes.format(MONTH);
+    }
+
+    /**
+     * Si hay algo archivado, si no las consultas solo tienen que ir a pedidos
+     */
+    public boolean hasArchive() {
+        return !collections().isEmpty();
+    }
+
+    /**
+     * Mueve al archivo un lote de los pedidos creados antes de la fecha, los más antiguos primero
+     * Se copian (upsert por id) y después se borran de pedidos: si algo falla a medias, la siguiente pasada
+     * los vuelve a copiar sin duplicarlos. Solo se borran si no han cambiado desde que se leyeron (mismo updatedAt),
+     * los que han cambiado se quedan en pedidos y la siguiente pasada copia la versión nueva.
+     *
+     * @param antesDe   Fecha de creación límite, no incluida
+     * @param batchSize Pedidos como mucho en el lote
+     * @return Pedidos archivados (borrados de pedidos)
+     */
+    public int archive(LocalDateTime antesDe, int batchSize) {
+        var query = Query.query(Criteria.where("createdAt").lt(antesDe)).with(Sort.by("createdAt")).limit(batchSize);
+        var pedidos = mongoTemplate.find(query, Pedido.class);
+        if (pedidos.isEmpty()) {
+            return 0;
+        }
+        var porMes = pedidos.stream().collect(Collectors.groupingBy(pedido -> YearMonth.from(pedido.getCreatedAt()), TreeMap::new, Collectors.toList()));
+        porMes.forEach((mes, delMes) -> {
+            var name = collectionName(mes);
+            ensureCollection(name);
+            var bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, name);
+            delMes.forEach(pedido -> bulk.replaceOne(Query.query(Criteria.where("_id").is(pedido.getId())), toDocument(pedido), FindAndReplaceOptions.options().upsert()));
+            bulk.execute();
+        });
+        var sinCambios = pedidos.stream()
+                .map(pedido -> Criteria.where("_id").is(pedido.getId()).and("updatedAt").is(pedido.getUpdatedAt()))
+                .toArray(Criteria[]::new);
+        var borrados = mongoTemplate.remove(Query.query(new Criteria().orOperator(sinCambios)), Pedido.class).getDeletedCount();
+        if (borrados < pedidos.size()) {
+            log.info("{} pedidos han cambiado mientras se archivaban, se archivarán en la siguiente pasada", pedidos.size() - borrados);
+        }
+        counts.invalidateAll();
+        return (int) borrados;
+    }
+
+    /**
+     * Busca un pedido archivado, primero en el mes en que se generó su id
+     *
+     * @param id Id del pedido
+     * @return Pedido si está archivado
+     */
+    public Optional<Pedido> findById(ObjectId id) {
+        var all = collections();
+        if (all.isEmpty()) {
+            return Optional.empty();
+        }
+        var mes = collectionName(YearMonth.from(LocalDateTime.ofInstant(id.getDate().toInstant(), ZoneId.systemDefault())));
+        List<String> names = new ArrayList<>();
+        if (all.contains(mes)) {
+            names.add(mes);
+        }
+        all.descendingSet().stream().filter(name -> !name.equals(mes)).forEach(names::add);
+        for (var name : names) {
+            var document = mongoTemplate.findById(id, Document.class, name);
+            if (document != null) {
+                return Optional.of(fromDocument(document));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Si el usuario tiene algún pedido archivado, de los meses más recientes a los más antiguos
+     *
+     * @param idUsuario Id del usuario
+     * @return true si hay alguno en el archivo
+     */
+    public boolean existsByIdUsuario(Long idUsuario) {
+        var query = Query.query(Criteria.where("u").is(idUsuario));
+        return collections().descendingSet().stream().anyMatch(name -> mongoTemplate.exists(query, name));
+    }
+
+    /**
+     * Página de los pedidos de un usuario contando con los archivados
+     * Todo lo archivado es anterior a lo que queda en pedidos, así que las partes van una detrás de otra:
+     * con orden ascendente (o sin orden) primero los meses del archivo y al final pedidos, y al revés si es descendente.
+     * De cada parte solo se leen los documentos que caen en la página.
+     *
+     * @param idUsuario Id del usuario
+     * @param pageable  Página y orden, ya comprobado con PedidosIndexes
+     * @return Página de pedidos con el total de las dos partes
+     */
+    public Page<Pedido> findByIdUsuario(Long idUsuario, Pageable pageable) {
+        return page(idUsuario, pageable, false);
+    }
+
+    /**
+     * Lo mismo que findByIdUsuario pero solo con los ids, de cada parte se lee únicamente el _id
+     *
+     * @param idUsuario Id del usuario
+     * @param pageable  Página y orden, ya comprobado con PedidosIndexes
+     * @return Página de ids con el total de las dos partes
+     */
+    public Page<ObjectId> findIdsByIdUsuario(Long idUsuario, Pageable pageable) {
+        return page(idUsuario, pageable, true).map(Pedido::getId);
+    }
+
+    private Page<Pedido> page(Long idUsuario, Pageable pageable, boolean idsOnly) {
+        var sort = pageable.getSort();
+        var ascending = sort.stream()
+                .filter(order -> !order.getProperty().equals("idUsuario"))
+                .findFirst()
+                .map(Sort.Order::isAscending)
+                .orElse(true);
+
+        var archived = counts.get(idUsuario, this::countArchived);
+        List<Tier> tiers = new ArrayList<>();
+        collections().forEach(name -> tiers.add(new Tier(name, archived.getOrDefault(name, 0L))));
+        tiers.add(new Tier(null, mongoTemplate.count(Query.query(Criteria.where("idUsuario").is(idUsuario)), Pedido.class)));
+        if (!ascending) {
+            Collections.reverse(tiers);
+        }
+
+        long total = 0;
+        long skip = pageable.isPaged() ? pageable.getOffset() : 0;
+        long remaining = pageable.isPaged() ? pageable.getPageSize() : Long.MAX_VALUE;
+        List<Pedido> content = new ArrayList<>();
+        for (var tier : tiers) {
+            total += tier.count();
+            if (skip >= tier.count()) {
+                skip -= tier.count();
+                continue;
+            }
+            if (remaining > 0) {
+                var limit = (int) Math.min(remaining, tier.count() - skip);
+                content.addAll(find(tier, idUsuario, sort, skip, limit, idsOnly));
+                remaining -= limit;
+            }
+            skip = 0;
+        }
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    private List<Pedido> find(Tier tier, Long idUsuario, Sort sort, long skip, int limit, boolean idsOnly) {
+        if (tier.collection() == null) {
+            var query = Query.query(Criteria.where("idUsuario").is(idUsuario)).with(sort).skip(skip).limit(limit);
+            if (idsOnly) {
+                query.fields().include("_id");
+            }
+            return mongoTemplate.find(query, Pedido.class);
+        }
+        var archiveSort = Sort.by(sort.stream().map(order -> new Sort.Order(order.getDirection(), FIELDS.get(order.getProperty()))).toList());
+        var query = Query.query(Criteria.where("u").is(idUsuario)).with(archiveSort).skip(skip).limit(limit);
+        if (idsOnly) {
+            query.fields().include("_id");
+        }
+        return mongoTemplate.find(query, Document.class, tier.collection()).stream().map(this::fromDocument).toList();
+    }
+
+    private Map<String, Long> countArchived(Long idUsuario) {
+        Map<String, Long> archived = new HashMap<>();
+        collections().forEach(name -> archived.put(name, mongoTemplate.count(Query.query(Criteria.where("u").is(idUsuario)), name)));
+        return archived;
+    }
+
+    /**
+     * Colecciones del archivo, se vuelven a leer cada REFRESH por si otra instancia ha creado alguna
+     * Si han cambiado, los contadores por usuario ya no valen.
+     */
+    private NavigableSet<String> collections() {
+        var current = collections;
+        if (current == null || System.nanoTime() - collectionsReadAt > REFRESH.toNanos()) {
+            NavigableSet<String> read = Collections.unmodifiableNavigableSet(mongoTemplate.getCollectionNames().stream()
+                    .filter(name -> name.startsWith(PREFIX))
+                    .collect(Collectors.toCollection(TreeSet::new)));
+            collectionsReadAt = System.nanoTime();
+            if (current != null && !current.equals(read)) {
+                counts.invalidateAll();
+            }
+            collections = read;
+            current = read;
+        }
+        return current;
+    }
+
+    /**
+     * Crea la colección del mes comprimida y con los índices de las consultas por usuario
+     */
+    private void ensureCollection(String name) {
+        if (collections().contains(name)) {
+            return;
+        }
+        try {
+            mongoTemplate.getDb().createCollection(name, new CreateCollectionOptions()
+                    .storageEngineOptions(new Document("wiredTiger", new Document("configString", "block_compressor=" + compressor))));
+            log.info("Creada la colección de archivo de pedidos {}", name);
+        } catch (MongoCommandException e) {
+            // Otra instancia la ha creado a la vez
+            if (e.getErrorCode() != NAMESPACE_EXISTS) {
+                throw e;
+            }
+        }
+        var indexOps = mongoTemplate.indexOps(name);
+        indexOps.ensureIndex(new Index().on("u", Sort.Direction.ASC).on("ca", Sort.Direction.DESC).named("u_ca"));
+        indexOps.ensureIndex(new Index().on("u", Sort.Direction.ASC).on("_id", Sort.Direction.ASC).named("u_id"));
+        var updated = new TreeSet<>(collections());
+        updated.add(name);
+        collections = Collections.unmodifiableNavigableSet(updated);
+    }
+
+    Document toDocument(Pedido pedido) {
+        var document = new Document("_id", pedido.getId());
+        put(document, "u", pedido.getIdUsuario());
+        if (pedido.getCliente() != null) {
+            var cliente = pedido.getCliente();
+            var c = new Document();
+            put(c, "n", cliente.nombreCompleto());
+            put(c, "e", cliente.email());
+            put(c, "t", cliente.telefono());
+            if (cliente.direccion() != null) {
+                var direccion = cliente.direccion();
+                var d = new Document();
+                put(d, "ca", direccion.calle());
+                put(d, "nu", direccion.numero());
+                put(d, "ci", direccion.ciudad());
+                put(d, "pr", direccion.provincia());
+                put(d, "pa", direccion.pais());
+                put(d, "cp", direccion.codigoPostal());
+                c.append("d", d);
+            }
+            document.append("c", c);
+        }
+        if (pedido.getLineasPedido() != null) {
+            document.append("l", pedido.getLineasPedido().stream().map(linea -> {
+                var l = new Document();
+                put(l, "p", linea.getIdProducto());
+                put(l, "q", linea.getCantidad());
+                put(l, "pr", linea.getPrecioProducto());
+                put(l, "t", linea.getTotal());
+                return l;
+            }).toList());
+        }
+        put(document, "ti", pedido.getTotalItems());
+        put(document, "to", pedido.getTotal());
+        put(document, "ca", toDate(pedido.getCreatedAt()));
+        put(document, "ua", toDate(pedido.getUpdatedAt()));
+        put(document, "d", pedido.getIsDeleted());
+        return document;
+    }
+
+    Pedido fromDocument(Document document) {
+        var pedido = new Pedido();
+        pedido.setId(document.getObjectId("_id"));
+        pedido.setIdUsuario(document.getLong("u"));
+        var c = document.get("c", Document.class);
+        if (c != null) {
+            var d = c.get("d", Document.class);
+            var direccion = d == null ? null : new Direccion(d.getString("ca"), d.getString("nu"), d.getString("ci"), d.getString("pr"), d.getString("pa"), d.getString("cp"));
+            pedido.setCliente(new Cliente(c.getString("n"), c.getString("e"), c.getString("t"), direccion));
+        }
+        var l = document.getList("l", Document.class);
+        if (l != null) {
+            pedido.setLineasPedido(l.stream().map(linea -> LineaPedido.builder()
+                    .idProducto(linea.getLong("p"))
+                    .cantidad(linea.getInteger("q"))
+                    .precioProducto(linea.getDouble("pr"))
+                    .total(linea.getDouble("t"))
+                    .build()).collect(Collectors.toCollection(ArrayList::new)));
+        }
+        pedido.setTotalItems(document.getInteger("ti"));
+        pedido.setTotal(document.getDouble("to"));
+        pedido.setCreatedAt(toLocalDateTime(document.getDate("ca")));
+        pedido.setUpdatedAt(toLocalDateTime(document.getDate("ua")));
+        pedido.setIsDeleted(document.getBoolean("d"));
+        return pedido;
+    }
+
+    private static void put(Document document, String key, Object value) {
+        if (value != null) {
+            document.append(key, value);
+        }
+    }
+
+    private static Date toDate(LocalDateTime dateTime) {
+        return dateTime == null ? null : Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static LocalDateTime toLocalDateTime(Date date) {
+        return date == null ? null : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+
+    // Una parte de la consulta: pedidos (sin colección) o un mes del archivo, con los pedidos que tiene del usuario
+    private record Tier(String collection, long count) {
+    }
+}
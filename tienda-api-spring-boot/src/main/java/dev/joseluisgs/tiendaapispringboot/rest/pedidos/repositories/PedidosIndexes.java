@@ -0,0 +1,138 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.PedidoBadSort;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Índices de los pedidos y órdenes que se pueden pedir
+ * Los índices se declaran en Pedido con anotaciones y se crean al arrancar. Solo se puede ordenar por los campos
+ * de la lista y solo si un índice sirve para ese orden, así Mongo nunca tiene que ordenar en memoria: si no,
+ * la consulta se rechaza antes de lanzarla.
+ */
+@Component
+@Slf4j
+public class PedidosIndexes {
+    // Campos por los que se puede ordenar y el campo del índice que les corresponde
+    static final Map<String, String> SORTABLE = Map.of(
+            "id", "_id",
+            "createdAt", "createdAt",
+            "idUsuario", "idUsuario"
+    );
+    // Filtros de las consultas de pedidos: todos o los de un usuario
+    private static final List<Set<String>> FILTERS = List.of(Set.of(), Set.of("idUsuario"));
+
+    private final MongoTemplate mongoTemplate;
+    private final List<IndexDefinition> definitions;
+    // Claves de cada índice, con el de _id que Mongo crea siempre
+    private final List<Document> indexes;
+
+    @Value("${pedidos.indexes.auto-create:true}")
+    private boolean autoCreate;
+
+    @Autowired
+    public PedidosIndexes(MongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        this.mongoTemplate = mongoTemplate;
+        this.definitions = new ArrayList<>();
+        IndexResolver.create(mappingContext).resolveIndexFor(Pedido.class).forEach(definitions::add);
+        this.indexes = new ArrayList<>(List.of(new Document("_id", 1)));
+        definitions.forEach(definition -> indexes.add(definition.getIndexKeys()));
+
+        // Si un campo de la lista no tiene índice para alguna consulta no arrancamos, mejor que descubrirlo con datos
+        SORTABLE.keySet().forEach(field -> FILTERS.forEach(filter -> {
+            if (!isIndexed(Sort.by(field), filter)) {
+                throw new IllegalStateException("El orden por " + field + " de los pedidos no tiene índice");
+            }
+        }));
+    }
+
+    /**
+     * Crea los índices cuando la aplicación ya está arrancada, sin esperar a que acaben
+     * Si ya existen no hace nada. Si Mongo no está disponible se avisa en el log y se crearán al volver a arrancar.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (autoCreate) {
+            CompletableFuture.runAsync(this::createIndexes);
+        }
+    }
+
+    public void createIndexes() {
+        try {
+            var indexOps = mongoTemplate.indexOps(Pedido.class);
+            definitions.forEach(indexOps::ensureIndex);
+            log.info("Índices de pedidos comprobados: {}", definitions.size());
+        } catch (RuntimeException e) {
+            log.warn("No se han podido crear los índices de pedidos: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Comprueba que el orden de la consulta está permitido y tiene índice
+     *
+     * @param pageable Página y orden pedidos
+     * @param filter   Campos por los que filtra la consulta por igualdad
+     * @return La misma página
+     * @throws PedidoBadSort si el campo no se puede ordenar o no hay índice para ese orden (400)
+     */
+    public Pageable checkSort(Pageable pageable, String... filter) {
+        var sort = pageable.getSort();
+        sort.forEach(order -> {
+            if (!SORTABLE.containsKey(order.getProperty())) {
+                throw new PedidoBadSort("No se puede ordenar por " + order.getProperty() + ", solo por " + new TreeSet<>(SORTABLE.keySet()));
+            }
+        });
+        if (!isIndexed(sort, Set.of(filter))) {
+            throw new PedidoBadSort("No hay índice para ordenar por " + sort + " filtrando por " + Arrays.toString(filter));
+        }
+        return pageable;
+    }
+
+    /**
+     * Un índice sirve si empieza por los campos del filtro, en cualquier orden, y sigue con los del orden
+     * todos en la misma dirección o todos al revés (Mongo lo recorre hacia atrás)
+     */
+    boolean isIndexed(Sort sort, Set<String> filter) {
+        // Ordenar por un campo del filtro no cambia nada, todos tienen el mismo valor
+        var orders = sort.stream().filter(order -> !filter.contains(SORTABLE.get(order.getProperty()))).toList();
+        if (orders.isEmpty()) {
+            return true;
+        }
+        return indexes.stream().anyMatch(index -> {
+            var keys = new ArrayList<>(index.keySet());
+            if (keys.size() < filter.size() + orders.size() || !new HashSet<>(keys.subList(0, filter.size())).equals(filter)) {
+                return false;
+            }
+            Boolean reverse = null;
+            for (int i = 0; i < orders.size(); i++) {
+                var order = orders.get(i);
+                var key = keys.get(filter.size() + i);
+                if (!key.equals(SORTABLE.get(order.getProperty()))) {
+                    return false;
+                }
+                var ascending = ((Number) index.get(key)).intValue() > 0;
+                var reversed = ascending != order.isAscending();
+                if (reverse != null && reverse != reversed) {
+                    return false;
+                }
+                reverse = reversed;
+            }
+            return true;
+        });
+    }
+}
@@ -4,17 +4,26 @@ import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
 import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
-
 @Repository
 public interface PedidosRepository extends MongoRepository<Pedido, ObjectId> {
     Page<Pedido> findByIdUsuario(Long idUsuario, Pageable pageable);
 
-    // Solo queremos el id del pedido dado el id del usuario
-    List<Pedido> findPedidosIdsByIdUsuario(Long idUsuario);
+    // Sin total: Mongo pide uno de más para saber si hay siguiente página, sin hacer count
+    Slice<Pedido> findAllBy(Pageable pageable);
+
+    Slice<Pedido> findSliceByIdUsuario(Long idUsuario, Pageable pageable);
+
+    // Solo queremos el id de los pedidos del usuario: proyección de _id, el resto del documento no sale de Mongo
+    // Ordenado por id lo resuelve entero el índice idUsuario_id, sin leer los documentos
+    @Query(value = "{ 'idUsuario': ?0 }", fields = "{ '_id': 1 }")
+    Slice<Pedido> findPedidosIdsByIdUsuario(Long idUsuario, Pageable pageable);
+
+    long countByIdUsuario(Long idUsuario);
 
     // existe un producto con el mismo id de Usuario
     boolean existsByIdUsuario(Long idUsuario);
@@ -1,19 +1,33 @@
 package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services;
 
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidoResult;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidosBatchResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
 import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.io.InputStream;
+import java.util.List;
 
 public interface PedidosService {
     Page<Pedido> findAll(Pageable pageable);
 
+    Slice<Pedido> findAllSlice(Pageable pageable);
+
     Pedido findById(ObjectId idPedido);
 
     Page<Pedido> findByIdUsuario(Long idUsuario, Pageable pageable);
 
+    Slice<Pedido> findByIdUsuarioSlice(Long idUsuario, Pageable pageable);
+
     Pedido save(Pedido pedido);
 
+    List<PedidoResult> saveAll(List<Pedido> pedidos);
+
+    PedidosBatchResponse saveBatch(InputStream input);
+
     void delete(ObjectId idPedido);
 
     Pedido update(ObjectId idPedido, Pedido pedido);
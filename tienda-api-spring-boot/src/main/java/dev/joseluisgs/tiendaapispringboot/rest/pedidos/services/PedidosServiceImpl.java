@@ -1,40 +1,108 @@
 package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services;
 
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidoBatchResult;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidoResult;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidosBatchResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.*;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosArchive;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosIndexes;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.batch.PedidosBatchReader;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock.StockService;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoStockView;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.services.VentasService;
+import dev.joseluisgs.tiendaapispringboot.utils.batch.GroupCommitter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 @CacheConfig(cacheNames = {"pedidos"})
 public class PedidosServiceImpl implements PedidosService {
     private final PedidosRepository pedidosRepository;
+    private final PedidosIndexes pedidosIndexes;
+    private final PedidosArchive pedidosArchive;
     private final ProductosRepository productosRepository;
-
-    public PedidosServiceImpl(PedidosRepository pedidosRepository, ProductosRepository productosRepository) {
+    private final StockService stockService;
+    private final VentasService ventasService;
+    private final PedidosBatchReader pedidosBatchReader;
+
+    // Group commit de los pedidos nuevos: los que llegan a la vez se comprueban, reservan y guardan juntos
+    @Value("${pedidos.pipeline.enabled:false}")
+    private boolean pipelineEnabled;
+    @Value("${pedidos.pipeline.max-batch:100}")
+    private int pipelineMaxBatch;
+    @Value("${pedidos.pipeline.window:5ms}")
+    private Duration pipelineWindow;
+    @Value("${pedidos.pipeline.capacity:10000}")
+    private int pipelineCapacity;
+    @Value("${pedidos.pipeline.timeout:30s}")
+    private Duration pipelineTimeout;
+    private GroupCommitter<Pedido, Pedido> pipeline;
+
+    public PedidosServiceImpl(PedidosRepository pedidosRepository, PedidosIndexes pedidosIndexes, PedidosArchive pedidosArchive, ProductosRepository productosRepository, StockService stockService, VentasService ventasService, PedidosBatchReader pedidosBatchReader) {
         this.pedidosRepository = pedidosRepository;
+        this.pedidosIndexes = pedidosIndexes;
+        this.pedidosArchive = pedidosArchive;
         this.productosRepository = productosRepository;
+        this.stockService = stockService;
+        this.ventasService = ventasService;
+        this.pedidosBatchReader = pedidosBatchReader;
+    }
+
+    @PostConstruct
+    void startPipeline() {
+        if (pipelineEnabled) {
+            pipeline = new GroupCommitter<>("pedidos-pipeline", pipelineMaxBatch, pipelineWindow, pipelineCapacity, pipelineTimeout, this::saveBatch);
+            log.info("Pedidos nuevos en lotes de hasta {} cada {}", pipelineMaxBatch, pipelineWindow);
+        }
+    }
+
+    @PreDestroy
+    void stopPipeline() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
     }
 
     @Override
     public Page<Pedido> findAll(Pageable pageable) {
         // Podemos paginar y hacer otras cosas
         log.info("Obteniendo todos los pedidos paginados y ordenados con {}", pageable);
-        return pedidosRepository.findAll(pageable);
+        return pedidosRepository.findAll(pedidosIndexes.checkSort(pageable));
+    }
+
+    @Override
+    public Slice<Pedido> findAllSlice(Pageable pageable) {
+        log.info("Obteniendo todos los pedidos sin total con {}", pageable);
+        return pedidosRepository.findAllBy(pedidosIndexes.checkSort(pageable));
     }
 
 
@@ -42,21 +110,48 @@ public class PedidosServiceImpl implements PedidosService {
     @Cacheable(key = "#idPedido")
     public Pedido findById(ObjectId idPedido) {
         log.info("Obteniendo pedido con id: " + idPedido);
-        return pedidosRepository.findById(idPedido).orElseThrow(() -> new PedidoNotFound(idPedido.toHexString()));
+        // Si no está entre los recientes lo buscamos en el archivo
+        return pedidosRepository.findById(idPedido)
+                .or(() -> pedidosArchive.findById(idPedido))
+                .orElseThrow(() -> new PedidoNotFound(idPedido.toHexString()));
     }
 
     @Override
     public Page<Pedido> findByIdUsuario(Long idUsuario, Pageable pageable) {
         log.info("Obteniendo pedidos del usuario con id: " + idUsuario);
-        return pedidosRepository.findByIdUsuario(idUsuario, pageable);
+        var checked = pedidosIndexes.checkSort(pageable, "idUsuario");
+        if (pedidosArchive.hasArchive()) {
+            return pedidosArchive.findByIdUsuario(idUsuario, checked);
+        }
+        return pedidosRepository.findByIdUsuario(idUsuario, checked);
     }
 
     @Override
-    @Transactional
+    public Slice<Pedido> findByIdUsuarioSlice(Long idUsuario, Pageable pageable) {
+        log.info("Obteniendo pedidos sin total del usuario con id: " + idUsuario);
+        var checked = pedidosIndexes.checkSort(pageable, "idUsuario");
+        if (pedidosArchive.hasArchive()) {
+            var page = pedidosArchive.findByIdUsuario(idUsuario, checked);
+            return new SliceImpl<>(page.getContent(), checked, page.hasNext());
+        }
+        return pedidosRepository.findSliceByIdUsuario(idUsuario, checked);
+    }
+
+    // Sin @Transactional: la reserva de stock lleva su propia transacción y así no tenemos una conexión cogida
+    // mientras el pedido espera a su lote
+    @Override
     @CachePut(key = "#result.id")
     public Pedido save(Pedido pedido) {
         log.info("Guardando pedido: {}", pedido);
 
+        if (pipeline != null) {
+            try {
+                return pipeline.submit(pedido);
+            } catch (RejectedExecutionException e) {
+                throw new PedidosBusy("Demasiados pedidos a la vez, inténtelo de nuevo: " + e.getMessage());
+            }
+        }
+
         // Comprobamos el pedido y sus datos
         checkPedido(pedido);
 
@@ -69,8 +164,170 @@ public class PedidosServiceImpl implements PedidosService {
 
         // Guardamos el pedido en la base de datos
         // Si existe lo actualizamos, son cosas que veremos!!!
+        var saved = saveOrRelease(pedidoToSave);
+
+        // Sumamos sus ventas
+        ventasService.apply(List.of(saved), List.of());
+        return saved;
+    }
+
+    /**
+     * Guarda el pedido y, si no se puede, devuelve el stock que se le ha reservado
+     * Con el motor de stock en memoria la reserva no va en la transacción, así que hay que deshacerla a mano
+     */
+    private Pedido saveOrRelease(Pedido pedido) {
+        try {
+            return pedidosRepository.save(pedido);
+        } catch (RuntimeException e) {
+            stockService.release(cantidadesPorProducto(pedido));
+            throw e;
+        }
+    }
+
+    /**
+     * Inserta un pedido de un lote que no se ha podido insertar entero y, si no se puede, devuelve su stock
+     * Si el id ya existe puede ser porque el insertMany llegó a guardarlo antes de fallar: entonces es el nuestro
+     * (mismo usuario, fecha de creación y total). Si es otro pedido es un duplicado y no se toca.
+     */
+    private Pedido insertOrRelease(Pedido pedido) {
+        try {
+            return pedidosRepository.insert(pedido);
+        } catch (DuplicateKeyException e) {
+            var stored = pedidosRepository.findById(pedido.getId());
+            if (stored.isPresent() && isSamePedido(stored.get(), pedido)) {
+                return stored.get();
+            }
+            stockService.release(cantidadesPorProducto(pedido));
+            throw new PedidoDuplicated(pedido.getId().toHexString());
+        } catch (RuntimeException e) {
+            stockService.release(cantidadesPorProducto(pedido));
+            throw e;
+        }
+    }
+
+    // Mongo guarda las fechas en milisegundos
+    private boolean isSamePedido(Pedido stored, Pedido pedido) {
+        return Objects.equals(stored.getIdUsuario(), pedido.getIdUsuario())
+                && Objects.equals(stored.getTotal(), pedido.getTotal())
+                && stored.getCreatedAt() != null && pedido.getCreatedAt() != null
+                && stored.getCreatedAt().truncatedTo(ChronoUnit.MILLIS).equals(pedido.getCreatedAt().truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    /**
+     * Guarda varios pedidos juntos: una consulta de productos para comprobarlos todos, un lote para reservar
+     * su stock y un solo insertMany. Un pedido que falla no impide guardar los demás.
+     *
+     * @param pedidos Pedidos a guardar
+     * @return Resultado de cada pedido, en el mismo orden
+     */
+    @Override
+    public List<PedidoResult> saveAll(List<Pedido> pedidos) {
+        log.info("Guardando {} pedidos en lote", pedidos.size());
+        var results = new PedidoResult[pedidos.size()];
+
+        // Comprobamos todos los pedidos con una sola consulta de productos
+        var productos = findStockViews(pedidos);
+        List<Integer> validos = new ArrayList<>();
+        // El id puede venir en la petición: si se repite en el lote solo vale el primero
+        Set<ObjectId> ids = new HashSet<>();
+        for (int i = 0; i < pedidos.size(); i++) {
+            try {
+                var id = pedidos.get(i).getId();
+                if (id != null && !ids.add(id)) {
+                    throw new PedidoDuplicated(id.toHexString());
+                }
+                checkPedido(pedidos.get(i), productos);
+                validos.add(i);
+            } catch (RuntimeException e) {
+                results[i] = PedidoResult.error(e);
+            }
+        }
+
+        // Reservamos el stock de todos en un lote, cada pedido todo o nada
+        var sinStock = stockService.reserveAll(validos.stream().map(i -> cantidadesPorProducto(pedidos.get(i))).toList());
+        List<Integer> reservados = new ArrayList<>();
+        for (int j = 0; j < validos.size(); j++) {
+            int i = validos.get(j);
+            if (sinStock.containsKey(j)) {
+                results[i] = PedidoResult.error(sinStock.get(j));
+            } else {
+                var pedido = pedidos.get(i);
+                calcularTotales(pedido);
+                pedido.setCreatedAt(LocalDateTime.now());
+                pedido.setUpdatedAt(LocalDateTime.now());
+                reservados.add(i);
+            }
+        }
+
+        // Los guardamos todos con un solo insertMany
+        if (!reservados.isEmpty()) {
+            try {
+                var saved = pedidosRepository.insert(reservados.stream().map(pedidos::get).toList());
+                for (int k = 0; k < reservados.size(); k++) {
+                    results[reservados.get(k)] = PedidoResult.ok(saved.get(k));
+                }
+            } catch (RuntimeException e) {
+                // Puede que se haya guardado una parte: los insertamos de uno en uno (nunca save, que sobrescribiría
+                // otro pedido con el mismo id) y a los que fallen les devolvemos el stock
+                log.warn("No se ha podido insertar el lote de {} pedidos, se guardan de uno en uno: {}", reservados.size(), e.getMessage());
+                reservados.forEach(i -> {
+                    try {
+                        results[i] = PedidoResult.ok(insertOrRelease(pedidos.get(i)));
+                    } catch (RuntimeException ex) {
+                        results[i] = PedidoResult.error(ex);
+                    }
+                });
+            }
+        }
 
-        return pedidosRepository.save(pedidoToSave);
+        // Sumamos las ventas de todos los guardados de una vez
+        ventasService.apply(Arrays.stream(results).filter(PedidoResult::isOk).map(PedidoResult::pedido).toList(), List.of());
+        return List.of(results);
+    }
+
+    /**
+     * Guarda un lote de pedidos leído en streaming, por bloques: cada bloque se guarda con saveAll
+     * (una consulta de productos, un lote de reservas de stock y un insertMany). Un pedido que falla no impide
+     * guardar los demás.
+     *
+     * @param input Lote en JSON (array) o NDJSON
+     * @return Resultado de cada pedido, en el orden del lote
+     * @throws PedidoBadBatch si no se puede leer el lote (400)
+     */
+    @Override
+    public PedidosBatchResponse saveBatch(InputStream input) {
+        log.info("Guardando lote de pedidos");
+        List<PedidoBatchResult> results = new ArrayList<>();
+        try {
+            pedidosBatchReader.read(input, rows -> {
+                var validos = rows.stream().filter(PedidosBatchReader.Row::isValid).map(PedidosBatchReader.Row::pedido).toList();
+                var saved = validos.isEmpty() ? List.<PedidoResult>of() : saveAll(validos);
+                int j = 0;
+                for (var row : rows) {
+                    results.add(row.isValid() ? PedidoBatchResult.of(row.index(), saved.get(j++)) : PedidoBatchResult.error(row.index(), row.error()));
+                }
+            });
+        } catch (IOException e) {
+            throw new PedidoBadBatch("No se ha podido leer el lote de pedidos: " + e.getMessage());
+        }
+        var created = results.stream().filter(PedidoBatchResult::isOk).count();
+        log.info("Guardados {} de {} pedidos del lote", created, results.size());
+        return new PedidosBatchResponse(results.size(), created, results.size() - created, results);
+    }
+
+    /**
+     * Procesa un lote del group commit y contesta a cada petición
+     */
+    private void saveBatch(List<GroupCommitter.Entry<Pedido, Pedido>> batch) {
+        var results = saveAll(batch.stream().map(GroupCommitter.Entry::item).toList());
+        for (int i = 0; i < batch.size(); i++) {
+            var result = results.get(i);
+            if (result.isOk()) {
+                batch.get(i).complete(result.pedido());
+            } else {
+                batch.get(i).fail(result.error());
+            }
+        }
     }
 
     Pedido reserveStockPedidos(Pedido pedido) {
@@ -80,15 +337,17 @@ public class PedidosServiceImpl implements PedidosService {
             throw new PedidoNotItems(pedido.getId().toHexString());
         }
 
-        pedido.getLineasPedido().forEach(lineaPedido -> {
-            var producto = productosRepository.findById(lineaPedido.getIdProducto()).get(); // Siempre existe porque ha pasado el check
-            // Si existe, comprobamos si hay stock
-            producto.setStock(producto.getStock() - lineaPedido.getCantidad());
-            // producto.setStock(producto.getStock() - lineaPedido.getCantidad());
-            productosRepository.save(producto);
-            // Actualizamos el total de la linea de pedido
-            lineaPedido.setTotal(lineaPedido.getCantidad() * lineaPedido.getPrecioProducto());
-        });
+        // Restamos el stock de todas las líneas a la vez, o todas o ninguna (si no hay stock lanza ProductoNotStock)
+        stockService.reserve(cantidadesPorProducto(pedido));
+
+        calcularTotales(pedido);
+
+        return pedido;
+    }
+
+    private void calcularTotales(Pedido pedido) {
+        // Actualizamos el total de las lineas de pedido
+        pedido.getLineasPedido().forEach(lineaPedido -> lineaPedido.setTotal(lineaPedido.getCantidad() * lineaPedido.getPrecioProducto()));
 
         // Calculamos el total del pedido
         var total = pedido.getLineasPedido().stream()
@@ -103,8 +362,14 @@ public class PedidosServiceImpl implements PedidosService {
         // Actualizamos el total del pedido y el total de items
         pedido.setTotal(total);
         pedido.setTotalItems(totalItems);
+    }
 
-        return pedido;
+    /**
+     * Cantidad total por producto, por si un producto aparece en varias líneas
+     */
+    private Map<Long, Integer> cantidadesPorProducto(Pedido pedido) {
+        return pedido.getLineasPedido().stream()
+                .collect(Collectors.groupingBy(LineaPedido::getIdProducto, TreeMap::new, Collectors.summingInt(LineaPedido::getCantidad)));
     }
 
     @Override
@@ -122,18 +387,16 @@ public class PedidosServiceImpl implements PedidosService {
 
         // Borramos el pedido
         pedidosRepository.deleteById(idPedido);
+
+        // Y restamos sus ventas
+        ventasService.apply(List.of(), List.of(pedidoToDelete));
     }
 
     Pedido returnStockPedidos(Pedido pedido) {
         log.info("Retornando stock del pedido: {}", pedido);
         if (pedido.getLineasPedido() != null) {
-            pedido.getLineasPedido().forEach(lineaPedido -> {
-                var producto = productosRepository.findById(lineaPedido.getIdProducto()).get(); // Siempre existe porque ha pasado el check
-                // Si existe, comprobamos si hay stock
-                producto.setStock(producto.getStock() + lineaPedido.getCantidad());
-                // producto.setStock(producto.getStock() + lineaPedido.getCantidad());
-                productosRepository.save(producto);
-            });
+            // Sumamos el stock de todas las líneas a la vez
+            stockService.release(cantidadesPorProducto(pedido));
         }
         return pedido;
     }
@@ -148,22 +411,49 @@ public class PedidosServiceImpl implements PedidosService {
         // Primero lo buscamos
         var pedidoToUpdate = pedidosRepository.findById(idPedido).orElseThrow(() -> new PedidoNotFound(idPedido.toHexString()));
 
-        // Devolvemos el stock de los productos
-        returnStockPedidos(pedido);
+        // Comprobamos el pedido y sus datos, contando con el stock que ya tiene reservado
+        var reservado = pedidoToUpdate.getLineasPedido() != null ? cantidadesPorProducto(pedidoToUpdate) : Map.<Long, Integer>of();
+        checkPedido(pedido, findStockViews(List.of(pedido)), reservado);
 
-        // Comprobamos el pedido y sus datos
-        checkPedido(pedido);
-
-        // Actualizamos el stock de los productos
-        var pedidoToSave = reserveStockPedidos(pedido);
+        // Solo cambiamos el stock de lo que ha cambiado, en un solo lote: las líneas iguales no cuestan nada
+        var diferencias = diferenciasStock(reservado, cantidadesPorProducto(pedido));
+        if (!diferencias.isEmpty()) {
+            stockService.adjust(diferencias);
+        }
+        calcularTotales(pedido);
 
         // Fecha actualización
-        pedidoToSave.setUpdatedAt(LocalDateTime.now());
+        pedido.setUpdatedAt(LocalDateTime.now());
 
         // Actualizamos el pedido en la base de datos
         // Si existe lo actualizamos, son cosas que veremos!!!
-        return pedidosRepository.save(pedidoToSave);
+        Pedido updated;
+        try {
+            updated = pedidosRepository.save(pedido);
+        } catch (RuntimeException e) {
+            // Deshacemos el ajuste, con el motor en memoria no va en la transacción
+            if (!diferencias.isEmpty()) {
+                stockService.adjust(diferencias.entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, entry -> -entry.getValue(), (a, b) -> a, TreeMap::new)));
+            }
+            throw e;
+        }
 
+        // Cambiamos las ventas del pedido anterior por las del nuevo
+        ventasService.apply(List.of(updated), List.of(pedidoToUpdate));
+        return updated;
+
+    }
+
+    /**
+     * Diferencia neta por producto entre lo reservado y lo nuevo: positiva si hay que reservar más,
+     * negativa si hay que devolver. Los productos sin cambios no aparecen.
+     */
+    Map<Long, Integer> diferenciasStock(Map<Long, Integer> reservado, Map<Long, Integer> nuevo) {
+        Map<Long, Integer> diferencias = new TreeMap<>(nuevo);
+        reservado.forEach((id, cantidad) -> diferencias.merge(id, -cantidad, Integer::sum));
+        diferencias.values().removeIf(diferencia -> diferencia == 0);
+        return diferencias;
     }
 
     void checkPedido(Pedido pedido) {
@@ -173,18 +463,47 @@ public class PedidosServiceImpl implements PedidosService {
 
         // Siguiente paso, es ver si los productos existen y si hay stock
         // Si no existen, lanzamos una excepción
+        // Traemos todos los productos del pedido en una sola consulta, no una por línea
+        checkPedido(pedido, findStockViews(List.of(pedido)));
+    }
+
+    /**
+     * Stock y precio de todos los productos de los pedidos, en una sola consulta
+     */
+    private Map<Long, ProductoStockView> findStockViews(List<Pedido> pedidos) {
+        var ids = pedidos.stream()
+                .filter(pedido -> pedido.getLineasPedido() != null)
+                .flatMap(pedido -> pedido.getLineasPedido().stream())
+                .map(LineaPedido::getIdProducto)
+                .collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return productosRepository.findStockViewsByIdIn(ids).stream()
+                .collect(Collectors.toMap(ProductoStockView::id, Function.identity()));
+    }
+
+    private void checkPedido(Pedido pedido, Map<Long, ProductoStockView> productos) {
+        checkPedido(pedido, productos, Map.of());
+    }
+
+    /**
+     * Comprueba el pedido con los productos ya leídos
+     * Lo que el pedido ya tiene reservado (al actualizarlo) cuenta como stock disponible
+     */
+    private void checkPedido(Pedido pedido, Map<Long, ProductoStockView> productos, Map<Long, Integer> reservado) {
         if (pedido.getLineasPedido() == null || pedido.getLineasPedido().isEmpty()) {
             throw new PedidoNotItems(pedido.getId().toHexString());
         }
         pedido.getLineasPedido().forEach(lineaPedido -> {
-            var producto = productosRepository.findById(lineaPedido.getIdProducto())
+            var producto = Optional.ofNullable(productos.get(lineaPedido.getIdProducto()))
                     .orElseThrow(() -> new ProductoNotFound(lineaPedido.getIdProducto()));
             // Si existe, comprobamos si hay stock
-            if (producto.getStock() < lineaPedido.getCantidad() && lineaPedido.getCantidad() > 0) {
+            if (producto.stock() + reservado.getOrDefault(lineaPedido.getIdProducto(), 0) < lineaPedido.getCantidad() && lineaPedido.getCantidad() > 0) {
                 throw new ProductoNotStock(lineaPedido.getIdProducto());
             }
             // Podemos comprobar más cosas, como si el precio es el mismo, etc...
-            if (!producto.getPrecio().equals(lineaPedido.getPrecioProducto())) {
+            if (!producto.precio().equals(lineaPedido.getPrecioProducto())) {
                 throw new ProductoBadPrice(lineaPedido.getIdProducto());
             }
         });
@@ -0,0 +1,106 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.archive;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosArchive;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archivador de pedidos antiguos en segundo plano
+ * Cada cierto tiempo mueve al archivo (PedidosArchive) los pedidos de los meses completos más antiguos que la
+ * antigüedad configurada. Se archivan meses enteros para que un mes esté o en pedidos o en el archivo, nunca en los dos.
+ */
+@Component
+@Slf4j
+public class PedidosArchiver {
+    private final PedidosArchive pedidosArchive;
+    private final boolean enabled;
+    private final Duration after;
+    private final Duration interval;
+    private final int batchSize;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public PedidosArchiver(
+            PedidosArchive pedidosArchive,
+            @Value("${pedidos.archive.enabled:false}") boolean enabled,
+            @Value("${pedidos.archive.after:365d}") Duration after,
+            @Value("${pedidos.archive.interval:1h}") Duration interval,
+            @Value("${pedidos.archive.batch-size:1000}") int batchSize
+    ) {
+        this.pedidosArchive = pedidosArchive;
+        this.enabled = enabled;
+        this.after = after;
+        this.interval = interval;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Programa el archivador cuando la aplicación ya está arrancada, la primera pasada tras un intervalo
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "pedidos-archiver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::run, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+            log.info("Archivador de pedidos de más de {} cada {}", after, interval);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void run() {
+        try {
+            archive();
+        } catch (RuntimeException e) {
+            // Si Mongo no está disponible lo intentamos en la siguiente pasada
+            log.warn("No se han podido archivar los pedidos: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Archiva por lotes todos los pedidos de los meses anteriores al límite
+     *
+     * @return Pedidos archivados
+     */
+    public long archive() {
+        var antesDe = limite(LocalDateTime.now());
+        long total = 0;
+        int archivados;
+        do {
+            archivados = pedidosArchive.archive(antesDe, batchSize);
+            total += archivados;
+        } while (archivados == batchSize && !Thread.currentThread().isInterrupted());
+        if (total > 0) {
+            log.info("Archivados {} pedidos creados antes de {}", total, antesDe);
+        }
+        return total;
+    }
+
+    /**
+     * Primer día del mes en que se cumple la antigüedad: se archivan los meses anteriores enteros
+     */
+    LocalDateTime limite(LocalDateTime ahora) {
+        return YearMonth.from(ahora.minus(after)).atDay(1).atStartOfDay();
+    }
+}
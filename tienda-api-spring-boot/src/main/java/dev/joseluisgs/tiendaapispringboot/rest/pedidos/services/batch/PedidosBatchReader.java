@@ -0,0 +1,98 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.batch;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Lee un lote de pedidos en JSON (un array) o NDJSON (un pedido por línea)
+ * Se lee en streaming, pedido a pedido, y se entrega en bloques de pedidos.batch.chunk-size
+ * para no tener nunca el lote entero en memoria. Cada pedido se valida como en el endpoint de uno solo.
+ */
+@Component
+@Slf4j
+public class PedidosBatchReader {
+    private final Validator validator;
+    private final ObjectReader reader;
+    private final int chunkSize;
+
+    @Autowired
+    public PedidosBatchReader(Validator validator, ObjectMapper objectMapper, @Value("${pedidos.batch.chunk-size:1000}") int chunkSize) {
+        this.validator = validator;
+        this.reader = objectMapper.readerFor(Pedido.class);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Lee el lote y entrega los pedidos por bloques
+     * Si un pedido no se puede convertir se marca como error y se sigue con el siguiente; si el JSON está roto
+     * ya no se puede seguir y se marca el error en la posición donde se ha quedado.
+     *
+     * @param input  Contenido del lote
+     * @param chunks Consumidor de cada bloque de pedidos
+     * @throws IOException Si no se puede leer el lote
+     */
+    public void read(InputStream input, Consumer<List<Row>> chunks) throws IOException {
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        long index = 0;
+        try (MappingIterator<Pedido> pedidos = reader.readValues(input)) {
+            while (true) {
+                Row row;
+                try {
+                    if (!pedidos.hasNextValue()) {
+                        break;
+                    }
+                    row = toRow(index, pedidos.nextValue());
+                } catch (JsonParseException e) {
+                    chunk.add(Row.error(index, "JSON no válido: " + e.getOriginalMessage()));
+                    break;
+                } catch (JsonMappingException e) {
+                    row = Row.error(index, "Pedido no válido: " + e.getOriginalMessage());
+                }
+                chunk.add(row);
+                index++;
+                if (chunk.size() >= chunkSize) {
+                    chunks.accept(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.accept(chunk);
+        }
+    }
+
+    private Row toRow(long index, Pedido pedido) {
+        var violations = validator.validate(pedido);
+        if (!violations.isEmpty()) {
+            return Row.error(index, violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", ")));
+        }
+        return new Row(index, pedido, null);
+    }
+
+    public record Row(long index, Pedido pedido, String error) {
+        static Row error(long index, String error) {
+            return new Row(index, null, error);
+        }
+
+        public boolean isValid() {
+            return error == null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.PedidoBadKey;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.PedidoKeyInProgress;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.PedidoKeyMismatch;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Cliente;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Pedidos ya creados por clave de idempotencia (cabecera Idempotency-Key)
+ * Si el cliente repite la petición, por ejemplo tras un timeout, devolvemos el pedido guardado sin volver a
+ * tocar el stock ni Mongo. Las peticiones repetidas que llegan mientras la primera está en curso esperan a su
+ * resultado en vez de crear otro pedido. Los errores no se guardan, así se puede reintentar con la misma clave.
+ * La clave es de cada usuario y caduca pasado el TTL; el número de claves guardadas está limitado.
+ */
+@Component
+@Slf4j
+public class PedidosIdempotencyStore {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    public static final int MAX_KEY_LENGTH = 255;
+
+    // JSON con las propiedades siempre en el mismo orden, para la huella del pedido
+    private final JsonMapper mapper = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .build();
+    private final Cache<Key, Entry> cache;
+    private final Duration waitTimeout;
+
+    @Autowired
+    public PedidosIdempotencyStore(
+            @Value("${pedidos.idempotency.max-size:10000}") long maxSize,
+            @Value("${pedidos.idempotency.ttl:24h}") Duration ttl,
+            @Value("${pedidos.idempotency.wait-timeout:30s}") Duration waitTimeout
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.waitTimeout = waitTimeout;
+    }
+
+    /**
+     * Crea el pedido una sola vez por clave
+     *
+     * @param idUsuario Id del usuario que hace el pedido
+     * @param key       Clave de idempotencia que envía el cliente
+     * @param pedido    Pedido recibido, para comprobar que la clave no se usa con otro distinto
+     * @param action    Creación del pedido, solo se ejecuta la primera vez
+     * @return Pedido creado y si es una repetición
+     * @throws PedidoBadKey        si la clave está vacía o es demasiado larga (400)
+     * @throws PedidoKeyMismatch   si la clave ya se usó con otro pedido (422)
+     * @throws PedidoKeyInProgress si la primera petición no ha terminado a tiempo (409)
+     */
+    public Result execute(Long idUsuario, String key, Pedido pedido, Supplier<Pedido> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new PedidoBadKey("La clave de idempotencia debe tener entre 1 y " + MAX_KEY_LENGTH + " caracteres");
+        }
+        var cacheKey = new Key(idUsuario, key);
+        var entry = new Entry(fingerprint(pedido), new CompletableFuture<>());
+        var existing = cache.asMap().putIfAbsent(cacheKey, entry);
+        if (existing == null) {
+            try {
+                var saved = action.get();
+                entry.result().complete(saved);
+                return new Result(saved, false);
+            } catch (RuntimeException e) {
+                // Primero la quitamos para que un reintento empiece de cero, y luego avisamos a los que esperan
+                cache.asMap().remove(cacheKey, entry);
+                entry.result().completeExceptionally(e);
+                throw e;
+            }
+        }
+        if (!MessageDigest.isEqual(existing.fingerprint(), entry.fingerprint())) {
+            throw new PedidoKeyMismatch("La clave de idempotencia " + key + " ya se ha usado con otro pedido");
+        }
+        log.info("Pedido repetido con la clave de idempotencia: " + key);
+        return new Result(await(key, existing.result()), true);
+    }
+
+    private Pedido await(String key, CompletableFuture<Pedido> result) {
+        try {
+            return result.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // El mismo error que la primera petición
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new PedidoKeyInProgress("El pedido con la clave de idempotencia " + key + " todavía está en curso");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PedidoKeyInProgress("El pedido con la clave de idempotencia " + key + " todavía está en curso");
+        }
+    }
+
+    /**
+     * Huella del contenido del pedido: SHA-256 del JSON del cliente y las líneas, el id y las fechas cambian en cada petición
+     */
+    private byte[] fingerprint(Pedido pedido) {
+        try {
+            var json = mapper.writeValueAsBytes(new Contenido(pedido.getCliente(), pedido.getLineasPedido()));
+            return MessageDigest.getInstance("SHA-256").digest(json);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            // Son objetos simples y todas las JVM tienen SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public record Result(Pedido pedido, boolean replayed) {
+    }
+
+    private record Key(Long idUsuario, String key) {
+    }
+
+    private record Entry(byte[] fingerprint, CompletableFuture<Pedido> result) {
+    }
+
+    private record Contenido(Cliente cliente, List<LineaPedido> lineas) {
+    }
+}
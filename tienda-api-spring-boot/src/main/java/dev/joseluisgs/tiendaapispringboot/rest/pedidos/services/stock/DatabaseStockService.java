@@ -0,0 +1,84 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.PedidoException;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.ProductoNotStock;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosQueryCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Stock directamente en la base de datos, con un lote de UPDATE condicionales (stock >= cantidad)
+ * Es el modo por defecto, se usa siempre que no esté activado el motor en memoria.
+ */
+@Service
+@ConditionalOnProperty(name = "productos.stock.engine.enabled", havingValue = "false", matchIfMissing = true)
+@Slf4j
+public class DatabaseStockService implements StockService {
+    private final ProductosRepository productosRepository;
+    private final ProductosCache productosCache;
+    private final ProductosQueryCache productosQueryCache;
+
+    @Autowired
+    public DatabaseStockService(ProductosRepository productosRepository, ProductosCache productosCache, ProductosQueryCache productosQueryCache) {
+        this.productosRepository = productosRepository;
+        this.productosCache = productosCache;
+        this.productosQueryCache = productosQueryCache;
+    }
+
+    @Override
+    @Transactional
+    public void reserve(Map<Long, Integer> cantidades) {
+        var sinStock = productosRepository.decrementStock(cantidades);
+        if (!sinStock.isEmpty()) {
+            // Al lanzar la excepción se deshace la transacción, también lo que se haya restado
+            throw new ProductoNotStock(sinStock.get(0));
+        }
+        changed(cantidades);
+    }
+
+    @Override
+    @Transactional
+    public Map<Integer, PedidoException> reserveAll(List<Map<Long, Integer>> cantidades) {
+        var sinStock = productosRepository.decrementStockAll(cantidades);
+        for (int i = 0; i < cantidades.size(); i++) {
+            if (!sinStock.containsKey(i)) {
+                cantidades.get(i).keySet().forEach(productosCache::evict);
+            }
+        }
+        productosQueryCache.invalidateAll();
+        return sinStock.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> new ProductoNotStock(e.getValue())));
+    }
+
+    @Override
+    @Transactional
+    public void adjust(Map<Long, Integer> diferencias) {
+        // Un solo lote de UPDATE condicionales: con diferencia negativa la condición siempre se cumple y suma
+        var sinStock = productosRepository.decrementStock(diferencias);
+        if (!sinStock.isEmpty()) {
+            throw new ProductoNotStock(sinStock.get(0));
+        }
+        changed(diferencias);
+    }
+
+    @Override
+    @Transactional
+    public void release(Map<Long, Integer> cantidades) {
+        productosRepository.incrementStock(cantidades);
+        changed(cantidades);
+    }
+
+    private void changed(Map<Long, Integer> cantidades) {
+        // Los productos cacheados tienen el stock anterior y los listados ya no valen
+        cantidades.keySet().forEach(productosCache::evict);
+        productosQueryCache.invalidateAll();
+    }
+}
@@ -0,0 +1,80 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola circular acotada sin bloqueos para muchos productores y un solo consumidor
+ * Los productores se reservan un hueco con un CAS sobre la cola y luego publican el elemento en él.
+ * Solo el hilo escritor del shard puede llamar a poll() e isEmpty().
+ *
+ * @param <E> Tipo de los elementos
+ */
+final class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> buffer;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Solo la escribe el consumidor, los productores la leen para saber si hay hueco
+    private volatile long head;
+
+    MpscRingBuffer(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("La capacidad debe ser al menos 2");
+        }
+        // Potencia de 2 para calcular la posición con una máscara
+        this.capacity = 1 << (32 - Integer.numberOfLeadingZeros(capacity - 1));
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Añade un elemento
+     *
+     * @param element Elemento, no puede ser nulo
+     * @return false si la cola está llena
+     */
+    boolean offer(E element) {
+        Objects.requireNonNull(element);
+        long current;
+        do {
+            current = tail.get();
+            if (current - head >= capacity) {
+                return false;
+            }
+        } while (!tail.compareAndSet(current, current + 1));
+        buffer.lazySet(index(current), element);
+        return true;
+    }
+
+    /**
+     * Saca el siguiente elemento
+     *
+     * @return Elemento o null si no hay ninguno publicado todavía
+     */
+    E poll() {
+        long current = head;
+        int index = index(current);
+        E element = buffer.get(index);
+        if (element == null) {
+            // Vacía, o un productor ha reservado el hueco pero aún no ha publicado
+            return null;
+        }
+        buffer.lazySet(index, null);
+        head = current + 1;
+        return element;
+    }
+
+    boolean isEmpty() {
+        return head == tail.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private int index(long position) {
+        return (int) position & mask;
+    }
+}
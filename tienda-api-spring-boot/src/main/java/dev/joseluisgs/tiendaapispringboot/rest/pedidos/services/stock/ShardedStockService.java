@@ -0,0 +1,482 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.ProductoNotStock;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.StockUnavailable;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosQueryCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Motor de stock en memoria para los productos con muchos pedidos a la vez (promociones)
+ * Los productos se reparten en shards por id. Cada shard tiene un único hilo escritor que es el dueño de sus contadores
+ * y recibe las órdenes por una cola sin bloqueos, así las reservas no compiten por las filas de PRODUCTOS.
+ * Cada lote de órdenes se apunta en el diario del shard (un fsync) antes de confirmarlas, y los cambios se vuelcan
+ * a PRODUCTOS cada productos.stock.engine.flush-interval junto con un checkpoint. Al arrancar se aplica lo que
+ * quede en el diario por encima del checkpoint.
+ * El stock de PRODUCTOS (y el de la API) va por detrás como mucho un intervalo de volcado.
+ * Se activa con productos.stock.engine.enabled=true, si no se usa DatabaseStockService.
+ */
+@Service
+@ConditionalOnProperty(name = "productos.stock.engine.enabled", havingValue = "true")
+@Slf4j
+public class ShardedStockService implements StockService {
+    // Órdenes que procesa el escritor en cada vuelta, y por tanto máximo por cada fsync
+    private static final int MAX_BATCH = 1024;
+
+    private final ProductosRepository productosRepository;
+    private final StockFlusher stockFlusher;
+    private final ProductosCache productosCache;
+    private final ProductosQueryCache productosQueryCache;
+    private final Duration flushInterval;
+    private final int flushSize;
+    private final Duration timeout;
+    private final Shard[] shards;
+    private volatile boolean running;
+
+    @Autowired
+    public ShardedStockService(
+            ProductosRepository productosRepository,
+            StockFlusher stockFlusher,
+            ProductosCache productosCache,
+            ProductosQueryCache productosQueryCache,
+            @Value("${productos.stock.engine.shards:4}") int shards,
+            @Value("${productos.stock.engine.queue-capacity:65536}") int queueCapacity,
+            @Value("${productos.stock.engine.flush-interval:200ms}") Duration flushInterval,
+            @Value("${productos.stock.engine.flush-size:1000}") int flushSize,
+            @Value("${productos.stock.engine.timeout:2s}") Duration timeout,
+            @Value("${productos.stock.engine.journal-dir:stock-journal}") String journalDir
+    ) {
+        this.productosRepository = productosRepository;
+        this.stockFlusher = stockFlusher;
+        this.productosCache = productosCache;
+        this.productosQueryCache = productosQueryCache;
+        this.flushInterval = flushInterval;
+        this.flushSize = flushSize;
+        this.timeout = timeout;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i, new MpscRingBuffer<>(queueCapacity), Path.of(journalDir).resolve("stock-shard-" + i + ".journal"));
+        }
+    }
+
+    /**
+     * Recupera lo que quede en los diarios y arranca los escritores
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        running = true;
+        for (Shard shard : shards) {
+            shard.start();
+        }
+        log.info("Motor de stock en memoria arrancado con {} shards", shards.length);
+    }
+
+    /**
+     * Para los escritores: terminan las órdenes que tienen en cola y hacen el último volcado
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            if (shard.writer != null) {
+                LockSupport.unpark(shard.writer);
+                shard.writer.join(timeout.toMillis() * 5);
+            }
+        }
+        log.info("Motor de stock en memoria parado");
+    }
+
+    @Override
+    public void reserve(Map<Long, Integer> cantidades) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<Map.Entry<Map<Long, Integer>, CompletableFuture<List<Long>>>> futures = new ArrayList<>();
+        StockUnavailable error = null;
+        // Si la cola está llena no esperamos, mejor un 503 rápido que acumular peticiones
+        for (var part : split(cantidades).entrySet()) {
+            try {
+                futures.add(Map.entry(part.getValue(), part.getKey().submit(Type.RESERVE, part.getValue(), null, 0)));
+            } catch (StockUnavailable e) {
+                error = e;
+                break;
+            }
+        }
+
+        List<Long> sinStock = new ArrayList<>();
+        List<Map<Long, Integer>> reservadas = new ArrayList<>();
+        for (var entry : futures) {
+            try {
+                var result = entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (result.isEmpty()) {
+                    reservadas.add(entry.getKey());
+                } else {
+                    sinStock.addAll(result);
+                }
+            } catch (TimeoutException | InterruptedException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                error = new StockUnavailable("El stock no responde a tiempo, inténtelo de nuevo");
+                // Si al final se reserva, la devolvemos
+                entry.getValue().thenAccept(result -> {
+                    if (result.isEmpty()) {
+                        compensate(entry.getKey());
+                    }
+                });
+            } catch (ExecutionException e) {
+                log.error("Error reservando stock: {}", e.getCause().getMessage());
+                error = new StockUnavailable("No se ha podido reservar el stock, inténtelo de nuevo");
+            }
+        }
+
+        // O todos los shards o ninguno
+        if (error != null || !sinStock.isEmpty()) {
+            reservadas.forEach(this::compensate);
+        }
+        if (error != null) {
+            throw error;
+        }
+        if (!sinStock.isEmpty()) {
+            throw new ProductoNotStock(Collections.min(sinStock));
+        }
+    }
+
+    @Override
+    public void release(Map<Long, Integer> cantidades) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<CompletableFuture<List<Long>>> futures = new ArrayList<>();
+        // Una devolución no se puede perder, si la cola está llena esperamos hueco
+        split(cantidades).forEach((shard, part) -> futures.add(shard.submit(Type.RELEASE, part, null, deadline)));
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Ya está en la cola, se aplicará en cuanto llegue su turno
+            log.warn("La devolución de stock {} tarda más de {}", cantidades, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error devolviendo stock {}: {}", cantidades, e.getCause().getMessage());
+            throw new StockUnavailable("No se ha podido devolver el stock, inténtelo de nuevo");
+        }
+    }
+
+    /**
+     * Fija el stock del producto en memoria, y con él en PRODUCTOS en el siguiente volcado
+     * Se aplica antes del commit: si el motor no responde falla la edición entera en vez de perder el cambio.
+     * Si después la transacción se deshace, se deshace también la diferencia aplicada.
+     */
+    @Override
+    public boolean set(Long id, int stock) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        // Si la cola está llena esperamos hueco, es una edición del administrador y no una promoción
+        var future = shardOf(id).submit(Type.SET, Map.of(id, stock), id, deadline);
+        int diferencia;
+        try {
+            diferencia = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS).get(0).intValue();
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // Si al final se aplica, lo deshacemos: la edición va a fallar
+            future.thenAccept(result -> undoSet(id, result.get(0).intValue()));
+            throw new StockUnavailable("El stock no responde a tiempo, inténtelo de nuevo");
+        } catch (ExecutionException e) {
+            log.error("Error fijando el stock del producto {}: {}", id, e.getCause().getMessage());
+            throw new StockUnavailable("No se ha podido cambiar el stock, inténtelo de nuevo");
+        }
+        if (diferencia != 0 && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        undoSet(id, diferencia);
+                    }
+                }
+            });
+        }
+        return true;
+    }
+
+    private void undoSet(Long id, int diferencia) {
+        // La devolución suma sin comprobar, también en negativo
+        if (diferencia != 0) {
+            compensate(Map.of(id, -diferencia));
+        }
+    }
+
+    private void compensate(Map<Long, Integer> cantidades) {
+        try {
+            split(cantidades).forEach((shard, part) -> shard.submit(Type.RELEASE, part, null, System.nanoTime() + timeout.toNanos()));
+        } catch (StockUnavailable e) {
+            log.error("No se ha podido deshacer el cambio de stock {}: {}", cantidades, e.getMessage());
+        }
+    }
+
+    private Map<Shard, Map<Long, Integer>> split(Map<Long, Integer> cantidades) {
+        Map<Shard, Map<Long, Integer>> parts = new LinkedHashMap<>();
+        new TreeMap<>(cantidades).forEach((id, cantidad) -> parts.computeIfAbsent(shardOf(id), s -> new TreeMap<>()).put(id, cantidad));
+        return parts;
+    }
+
+    private Shard shardOf(Long id) {
+        return shards[(int) Math.floorMod(id, (long) shards.length)];
+    }
+
+    private enum Type {RESERVE, RELEASE, SET}
+
+    /**
+     * Orden para un shard: el resultado son los ids sin stock suficiente (vacío si ha ido bien),
+     * salvo en SET, que es la diferencia aplicada al contador
+     */
+    private record Command(Type type, Map<Long, Integer> cantidades, Long id, CompletableFuture<List<Long>> result) {
+    }
+
+    private final class Shard implements Runnable {
+        private final int index;
+        private final MpscRingBuffer<Command> queue;
+        private final Path journalPath;
+        // Solo los toca el hilo escritor
+        private final Map<Long, Integer> stock = new HashMap<>();
+        private final Map<Long, Integer> pending = new HashMap<>();
+        private final List<StockJournal.Entry> entries = new ArrayList<>();
+        private final List<Command> done = new ArrayList<>();
+        private final List<List<Long>> results = new ArrayList<>();
+        private StockJournal journal;
+        private long seq;
+        private long lastFlush;
+        private Thread writer;
+
+        private Shard(int index, MpscRingBuffer<Command> queue, Path journalPath) {
+            this.index = index;
+            this.queue = queue;
+            this.journalPath = journalPath;
+        }
+
+        private void start() throws IOException {
+            recover();
+            lastFlush = System.nanoTime();
+            writer = new Thread(this, "stock-shard-" + index);
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        /**
+         * Aplica en PRODUCTOS lo que haya en el diario después del último checkpoint y lo vacía
+         */
+        private void recover() throws IOException {
+            long checkpoint = stockFlusher.checkpoint(index);
+            long last = checkpoint;
+            Map<Long, Integer> deltas = new HashMap<>();
+            for (var entry : StockJournal.read(journalPath)) {
+                if (entry.seq() > checkpoint) {
+                    deltas.merge(entry.id(), entry.delta(), ShardedStockService::sum);
+                    last = Math.max(last, entry.seq());
+                }
+            }
+            if (last > checkpoint) {
+                log.warn("Recuperando {} productos del diario de stock del shard {} (secuencias {} a {})", deltas.size(), index, checkpoint + 1, last);
+                stockFlusher.flush(index, deltas, last);
+            }
+            seq = last;
+            journal = StockJournal.open(journalPath);
+            journal.truncate();
+        }
+
+        private CompletableFuture<List<Long>> submit(Type type, Map<Long, Integer> cantidades, Long id, long deadline) {
+            if (!running) {
+                throw new StockUnavailable("El motor de stock está parado");
+            }
+            var command = new Command(type, cantidades, id, new CompletableFuture<>());
+            while (!queue.offer(command)) {
+                if (deadline == 0 || System.nanoTime() >= deadline) {
+                    throw new StockUnavailable("Demasiados pedidos a la vez, inténtelo de nuevo");
+                }
+                LockSupport.unpark(writer);
+                Thread.onSpinWait();
+            }
+            LockSupport.unpark(writer);
+            return command.result();
+        }
+
+        @Override
+        public void run() {
+            List<Command> batch = new ArrayList<>(MAX_BATCH);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Command command;
+                    while (batch.size() < MAX_BATCH && (command = queue.poll()) != null) {
+                        batch.add(command);
+                    }
+                    if (!batch.isEmpty()) {
+                        process(batch);
+                        batch.clear();
+                    }
+                    if (!pending.isEmpty() && (pending.size() >= flushSize || System.nanoTime() - lastFlush >= flushInterval.toNanos())) {
+                        flush();
+                    }
+                    if (running && queue.isEmpty()) {
+                        LockSupport.parkNanos(this, flushInterval.toNanos());
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Error en el escritor de stock del shard {}", index, e);
+                    sync();
+                    batch.forEach(c -> c.result().completeExceptionally(e));
+                    batch.clear();
+                }
+            }
+            flush();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("No se ha podido cerrar el diario de stock {}: {}", journalPath, e.getMessage());
+            }
+        }
+
+        private void process(List<Command> batch) {
+            try {
+                load(batch);
+            } catch (RuntimeException e) {
+                log.error("No se ha podido leer el stock del shard {}: {}", index, e.getMessage());
+                batch.forEach(c -> c.result().completeExceptionally(e));
+                return;
+            }
+            for (Command command : batch) {
+                switch (command.type()) {
+                    case RESERVE -> {
+                        List<Long> sinStock = new ArrayList<>();
+                        command.cantidades().forEach((id, cantidad) -> {
+                            var actual = stock.get(id);
+                            if (actual == null || actual < cantidad) {
+                                sinStock.add(id);
+                            }
+                        });
+                        if (sinStock.isEmpty()) {
+                            command.cantidades().forEach((id, cantidad) -> apply(id, -cantidad));
+                        }
+                        done.add(command);
+                        results.add(sinStock);
+                    }
+                    case RELEASE -> {
+                        // Si el producto no existe no hay nada que devolver, igual que en la base de datos
+                        command.cantidades().forEach((id, cantidad) -> {
+                            if (stock.containsKey(id)) {
+                                apply(id, cantidad);
+                            }
+                        });
+                        done.add(command);
+                        results.add(List.of());
+                    }
+                    case SET -> {
+                        // Se guarda como la diferencia con el contador, así va al diario y se vuelca como el resto
+                        var actual = stock.get(command.id());
+                        int diferencia = actual != null ? command.cantidades().get(command.id()) - actual : 0;
+                        if (diferencia != 0) {
+                            apply(command.id(), diferencia);
+                        }
+                        done.add(command);
+                        results.add(List.of((long) diferencia));
+                    }
+                }
+            }
+            sync();
+        }
+
+        /**
+         * Lee de una vez el stock de los productos que aún no están en memoria
+         */
+        private void load(List<Command> batch) {
+            Set<Long> ids = new HashSet<>();
+            batch.forEach(c -> c.cantidades().keySet().stream().filter(id -> !stock.containsKey(id)).forEach(ids::add));
+            if (!ids.isEmpty()) {
+                productosRepository.findStockViewsByIdIn(ids)
+                        .forEach(view -> stock.put(view.id(), view.stock() != null ? view.stock() : 0));
+            }
+        }
+
+        private void apply(Long id, int delta) {
+            stock.merge(id, delta, Integer::sum);
+            pending.merge(id, delta, ShardedStockService::sum);
+            entries.add(new StockJournal.Entry(++seq, id, delta));
+        }
+
+        /**
+         * Escribe en el diario los movimientos del lote y confirma las órdenes
+         * Si no se puede escribir se deshacen en memoria y las órdenes fallan
+         */
+        private void sync() {
+            try {
+                if (!entries.isEmpty()) {
+                    journal.append(entries);
+                }
+                for (int i = 0; i < done.size(); i++) {
+                    done.get(i).result().complete(results.get(i));
+                }
+            } catch (IOException e) {
+                log.error("No se ha podido escribir el diario de stock {}: {}", journalPath, e.getMessage());
+                entries.forEach(entry -> {
+                    stock.merge(entry.id(), -entry.delta(), Integer::sum);
+                    pending.merge(entry.id(), -entry.delta(), ShardedStockService::sum);
+                });
+                done.forEach(c -> c.result().completeExceptionally(e));
+            } finally {
+                entries.clear();
+                done.clear();
+                results.clear();
+            }
+        }
+
+        /**
+         * Vuelca a PRODUCTOS lo pendiente y vacía el diario
+         *
+         * @return false si no se ha podido, se reintenta en el siguiente intervalo
+         */
+        private boolean flush() {
+            lastFlush = System.nanoTime();
+            if (pending.isEmpty()) {
+                return true;
+            }
+            var deltas = Map.copyOf(pending);
+            try {
+                stockFlusher.flush(index, deltas, seq);
+            } catch (RuntimeException e) {
+                log.error("No se ha podido volcar el stock del shard {}: {}", index, e.getMessage());
+                return false;
+            }
+            pending.clear();
+            try {
+                journal.truncate();
+            } catch (IOException e) {
+                // Lo ya volcado está por debajo del checkpoint, al recuperar se salta
+                log.warn("No se ha podido vaciar el diario de stock {}: {}", journalPath, e.getMessage());
+            }
+            // Los productos cacheados tienen el stock anterior y los listados ya no valen
+            deltas.keySet().forEach(productosCache::evict);
+            productosQueryCache.invalidateAll();
+            return true;
+        }
+    }
+
+    // Suma que quita la entrada del mapa si queda a cero
+    private static Integer sum(Integer a, Integer b) {
+        int total = a + b;
+        return total == 0 ? null : total;
+    }
+}
@@ -0,0 +1,54 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import dev.joseluisgs.tiendaapispringboot.rest.productos.models.StockCheckpoint;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.StockCheckpointRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+
+/**
+ * Vuelca a PRODUCTOS los movimientos acumulados de un shard del motor de stock
+ * El lote de UPDATE y el checkpoint van en la misma transacción: o queda todo o no queda nada.
+ */
+@Component
+@ConditionalOnProperty(name = "productos.stock.engine.enabled", havingValue = "true")
+public class StockFlusher {
+    private final ProductosRepository productosRepository;
+    private final StockCheckpointRepository stockCheckpointRepository;
+
+    @Autowired
+    public StockFlusher(ProductosRepository productosRepository, StockCheckpointRepository stockCheckpointRepository) {
+        this.productosRepository = productosRepository;
+        this.stockCheckpointRepository = stockCheckpointRepository;
+    }
+
+    /**
+     * Aplica los movimientos y guarda hasta qué secuencia del diario están aplicados
+     *
+     * @param shard  Número de shard
+     * @param deltas Cambio de stock por id de producto
+     * @param seq    Última secuencia incluida
+     */
+    @Transactional
+    public void flush(int shard, Map<Long, Integer> deltas, long seq) {
+        if (!deltas.isEmpty()) {
+            productosRepository.incrementStock(deltas);
+        }
+        stockCheckpointRepository.save(StockCheckpoint.builder().shard(shard).lastSeq(seq).build());
+    }
+
+    /**
+     * Última secuencia del diario ya aplicada en PRODUCTOS
+     *
+     * @param shard Número de shard
+     * @return Secuencia o 0 si nunca se ha volcado
+     */
+    @Transactional(readOnly = true)
+    public long checkpoint(int shard) {
+        return stockCheckpointRepository.findById(shard).map(StockCheckpoint::getLastSeq).orElse(0L);
+    }
+}
@@ -0,0 +1,94 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Diario de movimientos de stock de un shard que aún no están volcados en PRODUCTOS
+ * Una línea por movimiento: secuencia;id;cantidad. Cada lote se escribe de una vez y con un solo fsync
+ * antes de confirmar las reservas, así una caída no pierde nada que ya se haya confirmado.
+ */
+@Slf4j
+final class StockJournal implements Closeable {
+    private final Path path;
+    private final FileChannel channel;
+
+    private StockJournal(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    static StockJournal open(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        return new StockJournal(path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    /**
+     * Lee los movimientos del diario
+     * Si la última línea está a medias (caída mientras se escribía) se descarta: esas reservas no llegaron a confirmarse.
+     */
+    static List<Entry> read(Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return entries;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            var fields = line.split(";");
+            try {
+                if (fields.length == 3) {
+                    entries.add(new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Integer.parseInt(fields[2])));
+                    continue;
+                }
+            } catch (NumberFormatException ignored) {
+                // Línea incompleta
+            }
+            log.warn("Descartada línea incompleta del diario de stock {}: {}", path, line);
+        }
+        return entries;
+    }
+
+    /**
+     * Añade los movimientos y fuerza su escritura en disco
+     */
+    void append(List<Entry> entries) throws IOException {
+        var text = new StringBuilder(entries.size() * 24);
+        entries.forEach(entry -> text.append(entry.seq()).append(';').append(entry.id()).append(';').append(entry.delta()).append('\n'));
+        var buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Vacía el diario cuando todo lo que tiene ya está volcado en PRODUCTOS
+     */
+    void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(false);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    record Entry(long seq, long id, int delta) {
+    }
+}
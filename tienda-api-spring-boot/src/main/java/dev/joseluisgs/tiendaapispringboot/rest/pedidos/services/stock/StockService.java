@@ -0,0 +1,90 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.PedidoException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reserva y devolución del stock de los productos de los pedidos
+ * Por defecto se hace directamente en la base de datos (DatabaseStockService).
+ * Con productos.stock.engine.enabled=true lo lleva un motor en memoria por shards (ShardedStockService)
+ * que vuelca los cambios a PRODUCTOS por lotes.
+ */
+public interface StockService {
+    /**
+     * Reserva el stock de varios productos: o se reservan todos o ninguno
+     *
+     * @param cantidades Cantidad por id de producto
+     * @throws dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.ProductoNotStock si alguno no tiene stock suficiente o no existe
+     */
+    void reserve(Map<Long, Integer> cantidades);
+
+    /**
+     * Reserva el stock de varios pedidos a la vez, cada uno todo o nada
+     * Por defecto de uno en uno, las implementaciones pueden hacerlo en un solo lote
+     *
+     * @param cantidades Cantidad por id de producto de cada pedido
+     * @return Por posición de cada pedido que no se ha podido reservar, el motivo (sin stock, motor saturado...)
+     */
+    default Map<Integer, PedidoException> reserveAll(List<Map<Long, Integer>> cantidades) {
+        Map<Integer, PedidoException> sinStock = new HashMap<>();
+        for (int i = 0; i < cantidades.size(); i++) {
+            try {
+                reserve(cantidades.get(i));
+            } catch (PedidoException e) {
+                sinStock.put(i, e);
+            }
+        }
+        return sinStock;
+    }
+
+    /**
+     * Devuelve el stock de varios productos
+     *
+     * @param cantidades Cantidad por id de producto
+     */
+    void release(Map<Long, Integer> cantidades);
+
+    /**
+     * Cambia el stock de varios productos por diferencias: las positivas se reservan y las negativas se devuelven
+     * Por defecto reserva primero (todo o nada) y luego devuelve, las implementaciones pueden hacerlo en un solo lote
+     *
+     * @param diferencias Diferencia de cantidad por id de producto, sin ceros
+     * @throws dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.ProductoNotStock si alguno no tiene stock suficiente o no existe
+     */
+    default void adjust(Map<Long, Integer> diferencias) {
+        Map<Long, Integer> reservar = new TreeMap<>();
+        Map<Long, Integer> devolver = new TreeMap<>();
+        diferencias.forEach((id, diferencia) -> {
+            if (diferencia > 0) {
+                reservar.put(id, diferencia);
+            } else if (diferencia < 0) {
+                devolver.put(id, -diferencia);
+            }
+        });
+        if (!reservar.isEmpty()) {
+            reserve(reservar);
+        }
+        if (!devolver.isEmpty()) {
+            release(devolver);
+        }
+    }
+
+    /**
+     * Fija el stock de un producto editado fuera de los pedidos
+     * Por defecto no hace nada y el stock se guarda con el resto del producto.
+     * Si el stock lo lleva el motor en memoria no se puede guardar así, pisaría lo volcado desde que se leyó el producto:
+     * lo fija el motor en orden con las reservas, y si la transacción se deshace lo deshace también.
+     *
+     * @param id    Id del producto
+     * @param stock Nuevo stock
+     * @return true si lo fija el servicio y no hay que guardarlo con el producto
+     * @throws dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.StockUnavailable si no se ha podido fijar
+     */
+    default boolean set(Long id, int stock) {
+        return false;
+    }
+}
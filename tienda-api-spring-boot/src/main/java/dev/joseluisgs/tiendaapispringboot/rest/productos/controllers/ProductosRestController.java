@@ -3,8 +3,12 @@ package dev.joseluisgs.tiendaapispringboot.rest.productos.controllers;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoCreateRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoUpdateRequest;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosImportResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.exceptions.ProductoBadRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.exceptions.ProductoNotFound;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.services.ProductosService;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosFileFormat;
+import dev.joseluisgs.tiendaapispringboot.utils.pagination.PageCursor;
 import dev.joseluisgs.tiendaapispringboot.utils.pagination.PageResponse;
 import dev.joseluisgs.tiendaapispringboot.utils.pagination.PaginationLinksUtils;
 import io.swagger.v3.oas.annotations.Operation;
@@ -17,9 +21,12 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.domain.*;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -29,10 +36,19 @@ import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Controlador de productos del tipo RestController
@@ -51,12 +67,31 @@ public class ProductosRestController {
     // Repositorio de productos
     private final ProductosService productosService;
     private final PaginationLinksUtils paginationLinksUtils;
+    // Campos por los que se puede paginar por cursor y cómo leer su valor del cursor
+    private static final Map<String, Function<String, Object>> CURSOR_SORT_FIELDS = Map.of(
+            "id", Long::valueOf,
+            "marca", v -> v,
+            "modelo", v -> v,
+            "precio", Double::valueOf,
+            "stock", Integer::valueOf,
+            "createdAt", LocalDateTime::parse,
+            "updatedAt", LocalDateTime::parse
+    );
+
+
+    // La exportación se escribe en otro hilo y con su propio tiempo máximo, el resto de peticiones asíncronas no cambia
+    private final AsyncTaskExecutor exportExecutor;
+    private final Duration exportTimeout;
 
 
     @Autowired
-    public ProductosRestController(ProductosService productosService, PaginationLinksUtils paginationLinksUtils) {
+    public ProductosRestController(ProductosService productosService, PaginationLinksUtils paginationLinksUtils,
+                                   @Qualifier("applicationTaskExecutor") AsyncTaskExecutor exportExecutor,
+                                   @Value("${productos.export.timeout:30m}") Duration exportTimeout) {
         this.productosService = productosService;
         this.paginationLinksUtils = paginationLinksUtils;
+        this.exportExecutor = exportExecutor;
+        this.exportTimeout = exportTimeout;
     }
 
     /**
@@ -81,10 +116,13 @@ public class ProductosRestController {
             @Parameter(name = "page", description = "Número de página", example = "0"),
             @Parameter(name = "size", description = "Tamaño de la página", example = "10"),
             @Parameter(name = "sortBy", description = "Campo de ordenación", example = "id"),
-            @Parameter(name = "direction", description = "Dirección de ordenación", example = "asc")
+            @Parameter(name = "direction", description = "Dirección de ordenación", example = "asc"),
+            @Parameter(name = "withTotal", description = "Si se calculan los totales, con false no se hace la consulta COUNT", example = "true"),
+            @Parameter(name = "cursor", description = "Cursor de paginación por clave, vacío para la primera página. Si se indica se ignora page", example = "")
     })
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Página de productos"),
+            @ApiResponse(responseCode = "400", description = "Cursor u ordenación no válidos"),
     })
     @GetMapping()
     public ResponseEntity<PageResponse<ProductoResponse>> getAllProducts(
@@ -98,19 +136,75 @@ public class ProductosRestController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
             @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(required = false) String cursor,
             HttpServletRequest request
     ) {
         log.info("Buscando todos los productos con las siguientes opciones: " + marca + " " + categoria + " " + modelo + " " + isDeleted + " " + precioMax + " " + stockMin);
+        // Si nos pasan cursor, paginamos por clave en vez de por número de página
+        if (cursor != null) {
+            return getAllProductsByCursor(marca, categoria, modelo, isDeleted, precioMax, stockMin, size, sortBy, direction, cursor, request);
+        }
         // Creamos el objeto de ordenación
         Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         // Creamos cómo va a ser la paginación
         UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(request.getRequestURL().toString());
-        Page<ProductoResponse> pageResult = productosService.findAll(marca, categoria, modelo, isDeleted, precioMax, stockMin, PageRequest.of(page, size, sort));
+        // Sin total nos ahorramos la consulta COUNT, devolvemos un Slice
+        Slice<ProductoResponse> pageResult = withTotal
+                ? productosService.findAll(marca, categoria, modelo, isDeleted, precioMax, stockMin, PageRequest.of(page, size, sort))
+                : productosService.findAllSlice(marca, categoria, modelo, isDeleted, precioMax, stockMin, PageRequest.of(page, size, sort));
         return ResponseEntity.ok()
                 .header("link", paginationLinksUtils.createLinkHeader(pageResult, uriBuilder))
                 .body(PageResponse.of(pageResult, sortBy, direction));
     }
 
+    /**
+     * Paginación por cursor (keyset): se sigue desde la última clave de ordenación e id
+     * No hay OFFSET ni COUNT, así que cada página cuesta lo mismo sea cual sea su profundidad
+     */
+    private ResponseEntity<PageResponse<ProductoResponse>> getAllProductsByCursor(
+            Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted,
+            Optional<Double> precioMax, Optional<Double> stockMin, int size, String sortBy, String direction,
+            String cursor, HttpServletRequest request
+    ) {
+        KeysetScrollPosition position = ScrollPosition.keyset();
+        boolean first = cursor.isBlank();
+        if (!first) {
+            // El cursor manda sobre la ordenación, así las páginas siguientes son coherentes
+            try {
+                var pageCursor = PageCursor.decode(cursor);
+                sortBy = pageCursor.sortBy();
+                direction = pageCursor.direction();
+                Map<String, Object> keys = new LinkedHashMap<>();
+                if (!sortBy.equals("id") && CURSOR_SORT_FIELDS.containsKey(sortBy)) {
+                    keys.put(sortBy, CURSOR_SORT_FIELDS.get(sortBy).apply(Objects.requireNonNull(pageCursor.value())));
+                }
+                keys.put("id", Long.valueOf(pageCursor.id()));
+                position = ScrollPosition.forward(keys);
+            } catch (IllegalArgumentException | NullPointerException | DateTimeParseException e) {
+                throw new ProductoBadRequest("Cursor no válido: " + cursor);
+            }
+        }
+        // Solo podemos ordenar por campos que no sean nulos, si no el cursor no funciona
+        if (!CURSOR_SORT_FIELDS.containsKey(sortBy)) {
+            throw new ProductoBadRequest("No se puede paginar por cursor ordenando por " + sortBy + ", campos válidos: " + CURSOR_SORT_FIELDS.keySet());
+        }
+        Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
+        Window<ProductoResponse> window = productosService.findAll(marca, categoria, modelo, isDeleted, precioMax, stockMin, position, sort, size);
+        // El siguiente cursor sale de la clave del último elemento devuelto
+        String nextCursor = null;
+        if (window.hasNext() && !window.isEmpty()) {
+            var keys = ((KeysetScrollPosition) window.positionAt(window.size() - 1)).getKeys();
+            nextCursor = new PageCursor(sortBy, direction,
+                    sortBy.equals("id") ? null : String.valueOf(keys.get(sortBy)),
+                    String.valueOf(keys.get("id"))).encode();
+        }
+        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(request.getRequestURL().toString());
+        return ResponseEntity.ok()
+                .header("link", paginationLinksUtils.createLinkHeader(window, nextCursor, uriBuilder))
+                .body(PageResponse.of(window, size, first, nextCursor, sortBy, direction));
+    }
+
     /**
      * Obtiene un producto por su id
      *
@@ -132,6 +226,79 @@ public class ProductosRestController {
         return ResponseEntity.ok(productosService.findById(id));
     }
 
+    /**
+     * Exporta todos los productos que cumplen los filtros, en streaming
+     * Se escriben según se leen de la base de datos, así no se cargan todos en memoria ni se pagina
+     *
+     * @param marca     Marca del producto
+     * @param categoria Categoria del producto
+     * @param modelo    Modelo del producto
+     * @param isDeleted Si está borrado o no
+     * @param precioMax Precio máximo del producto
+     * @param stockMin  Stock mínimo del producto
+     * @param format    Formato: ndjson o csv
+     * @param gzip      Si se comprime la respuesta con gzip
+     * @return Fichero con los productos
+     * @throws HttpClientErrorException.BadRequest si el formato no es válido (400)
+     */
+    @Operation(summary = "Exporta los productos", description = "Exporta en streaming todos los productos que cumplen los filtros en NDJSON o CSV")
+    @Parameters({
+            @Parameter(name = "marca", description = "Marca del producto", example = ""),
+            @Parameter(name = "categoria", description = "Categoria del producto", example = ""),
+            @Parameter(name = "modelo", description = "Modelo del producto", example = ""),
+            @Parameter(name = "isDeleted", description = "Si está borrado o no", example = "false"),
+            @Parameter(name = "precioMax", description = "Precio máximo del producto", example = "100"),
+            @Parameter(name = "stockMin", description = "Stock mínimo del producto", example = "10"),
+            @Parameter(name = "format", description = "Formato del fichero: ndjson o csv", example = "ndjson"),
+            @Parameter(name = "gzip", description = "Si se comprime con gzip", example = "false")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Fichero de productos"),
+            @ApiResponse(responseCode = "400", description = "Formato no válido"),
+    })
+    @GetMapping("/export")
+    public ResponseEntity<ResponseBodyEmitter> exportProducts(
+            @RequestParam(required = false) Optional<String> marca,
+            @RequestParam(required = false) Optional<String> categoria,
+            @RequestParam(required = false) Optional<String> modelo,
+            @RequestParam(required = false) Optional<Boolean> isDeleted,
+            @RequestParam(required = false) Optional<Double> precioMax,
+            @RequestParam(required = false) Optional<Double> stockMin,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip
+    ) {
+        var fileFormat = ProductosFileFormat.of(format)
+                .orElseThrow(() -> new ProductoBadRequest("Formato de exportación no válido: " + format + ", formatos válidos: ndjson, csv"));
+        log.info("Exportando productos en formato " + fileFormat + " con las siguientes opciones: " + marca + " " + categoria + " " + modelo + " " + isDeleted + " " + precioMax + " " + stockMin);
+        // La consulta se hace al escribir la respuesta, en otro hilo, y no ocupa el de la petición
+        var body = new ResponseBodyEmitter(exportTimeout.toMillis());
+        body.onTimeout(() -> log.warn("La exportación de productos ha superado {}", exportTimeout));
+        exportExecutor.execute(() -> {
+            try (var output = new BufferedOutputStream(new EmitterOutputStream(body), 64 * 1024)) {
+                if (gzip) {
+                    var gzipOutput = new GZIPOutputStream(output);
+                    productosService.export(marca, categoria, modelo, isDeleted, precioMax, stockMin, fileFormat, gzipOutput);
+                    gzipOutput.finish();
+                } else {
+                    productosService.export(marca, categoria, modelo, isDeleted, precioMax, stockMin, fileFormat, output);
+                }
+            } catch (IOException | RuntimeException e) {
+                // El cliente se ha ido o se ha pasado el tiempo: la respuesta ya ha empezado, solo podemos cortarla
+                log.warn("Exportación de productos interrumpida: {}", e.getMessage());
+                body.completeWithError(e);
+                return;
+            }
+            body.complete();
+        });
+        var response = ResponseEntity.ok()
+                .contentType(fileFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("productos." + fileFormat.getExtension()).build().toString());
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
     /**
      * Crear un producto
      *
@@ -152,6 +319,34 @@ public class ProductosRestController {
         return ResponseEntity.status(HttpStatus.CREATED).body(productosService.save(productoCreateRequest));
     }
 
+    /**
+     * Importa un catálogo de productos
+     * El cuerpo es NDJSON (un producto JSON por línea) o CSV con cabecera, con los campos de crear un producto
+     *
+     * @param request Petición con el fichero en el cuerpo
+     * @return Resumen de la importación con los errores por línea
+     * @throws HttpClientErrorException.BadRequest si no se puede leer el fichero (400)
+     */
+    @Operation(summary = "Importa productos", description = "Importa productos desde NDJSON o CSV (marca, modelo, descripcion, precio, imagen, categoria, stock) en lotes")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Fichero NDJSON o CSV", required = true)
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Resultado de la importación"),
+            @ApiResponse(responseCode = "400", description = "Fichero no válido"),
+    })
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    @PreAuthorize("hasRole('ADMIN')") // Solo los administradores pueden acceder
+    public ResponseEntity<ProductosImportResponse> importProducts(HttpServletRequest request) {
+        var format = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                ? ProductosFileFormat.NDJSON
+                : ProductosFileFormat.CSV;
+        log.info("Importando productos en formato: " + format);
+        try {
+            return ResponseEntity.ok(productosService.importProductos(request.getInputStream(), format));
+        } catch (IOException e) {
+            throw new ProductoBadRequest("No se ha podido leer el fichero de importación: " + e.getMessage());
+        }
+    }
+
     /**
      * Actualizar un producto
      *
@@ -295,4 +490,27 @@ public class ProductosRestController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No se puede saber el tipo de la imagen");
         }
     }
+
+    /**
+     * Escribe en la respuesta lo que se escribe en el stream, cada bloque se envía tal cual
+     */
+    private static final class EmitterOutputStream extends OutputStream {
+        private final ResponseBodyEmitter emitter;
+
+        private EmitterOutputStream(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                emitter.send(Arrays.copyOfRange(b, off, off + len));
+            }
+        }
+    }
 }
@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Error de una fila de la importación
+ */
+@Schema(description = "Error de una fila de la importación")
+public record ProductoImportError(
+        @Schema(description = "Número de línea del fichero", example = "12")
+        long line,
+        @Schema(description = "Motivo del error", example = "La categoría OTROS no existe o está borrada")
+        String error
+) {
+}
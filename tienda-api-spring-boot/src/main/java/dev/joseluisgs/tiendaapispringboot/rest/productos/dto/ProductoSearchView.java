@@ -0,0 +1,16 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.dto;
+
+import java.util.UUID;
+
+/**
+ * Proyección mínima de un producto para construir el índice de búsqueda
+ * Solo traemos los campos por los que se busca, no la entidad completa
+ */
+public record ProductoSearchView(
+        Long id,
+        String marca,
+        String modelo,
+        UUID categoriaId,
+        String categoriaNombre
+) {
+}
@@ -0,0 +1,12 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.dto;
+
+/**
+ * Proyección mínima de un producto para validar las líneas de los pedidos
+ * Solo el stock y el precio, sin la entidad ni su categoría
+ */
+public record ProductoStockView(
+        Long id,
+        Integer stock,
+        Double precio
+) {
+}
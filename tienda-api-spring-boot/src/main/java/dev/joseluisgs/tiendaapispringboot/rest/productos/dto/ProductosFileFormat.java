@@ -0,0 +1,42 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.dto;
+
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Formatos de fichero para importar y exportar el catálogo de productos
+ */
+public enum ProductosFileFormat {
+    NDJSON(MediaType.APPLICATION_NDJSON, "ndjson"),
+    CSV(new MediaType("text", "csv"), "csv");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    ProductosFileFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Busca el formato por su nombre o extensión (ndjson, csv), sin distinguir mayúsculas
+     */
+    public static Optional<ProductosFileFormat> of(String name) {
+        for (var format : values()) {
+            if (format.extension.equals(name.toLowerCase(Locale.ROOT))) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+}
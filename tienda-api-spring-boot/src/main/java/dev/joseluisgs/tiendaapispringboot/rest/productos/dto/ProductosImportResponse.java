@@ -0,0 +1,21 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva de productos
+ */
+@Schema(description = "Resultado de la importación de productos")
+public record ProductosImportResponse(
+        @Schema(description = "Filas leídas", example = "1000")
+        long total,
+        @Schema(description = "Productos insertados", example = "998")
+        long imported,
+        @Schema(description = "Filas con error", example = "2")
+        long failed,
+        @Schema(description = "Errores por fila")
+        List<ProductoImportError> errors
+) {
+}
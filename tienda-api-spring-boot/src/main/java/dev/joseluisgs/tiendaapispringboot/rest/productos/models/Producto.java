@@ -10,6 +10,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.hibernate.validator.constraints.Length;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -22,6 +23,7 @@ import java.util.UUID;
 @NoArgsConstructor(force = true) // JPA Necesita un constructor vacío
 @Builder
 @Entity // Para que sea una entidad de JPA
+@DynamicUpdate // Solo las columnas cambiadas: el stock lo cambian también las reservas y no se puede pisar
 @Table(name = "PRODUCTOS") // Para indicar la tabla de la BD, si no coge el nombre de la clase
 @EntityListeners(AuditingEntityListener.class) // Para que sea auditada y se autorellene
 @Schema(name = "Productos") // Para indicar el nombre de la tabla en la
@@ -0,0 +1,33 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Último movimiento de stock del motor en memoria que ya está volcado en PRODUCTOS, por shard
+ * Se guarda en la misma transacción que el volcado, así al arrancar sabemos qué parte del diario hay que volver a aplicar.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(force = true) // JPA Necesita un constructor vacío
+@Builder
+@Entity
+@Table(name = "STOCK_CHECKPOINTS")
+public class StockCheckpoint {
+    @Id
+    private Integer shard;
+
+    @Column(nullable = false)
+    private Long lastSeq;
+
+    @UpdateTimestamp
+    @Column(nullable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
+    @Builder.Default
+    private LocalDateTime updatedAt = LocalDateTime.now();
+}
@@ -1,5 +1,7 @@
 package dev.joseluisgs.tiendaapispringboot.rest.productos.repositories;
 
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoSearchView;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoStockView;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
@@ -7,6 +9,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -15,9 +18,10 @@ import java.util.UUID;
  * Creamos el repositorio extendéndolo de JPA, siguiendo DAO
  * Con ello ya tenemos las operaciones básicas de CRUD y Paginación
  * extiende de JpaSpecificationExecutor para tener las opciones de Specificación y busqueda con Criteria
+ * y de ProductosRepositoryCustom para las lecturas proyectadas directamente al DTO
  */
 @Repository
-public interface ProductosRepository extends JpaRepository<Producto, Long>, JpaSpecificationExecutor<Producto> {
+public interface ProductosRepository extends JpaRepository<Producto, Long>, JpaSpecificationExecutor<Producto>, ProductosRepositoryCustom {
 
     // Por UUID
     Optional<Producto> findByUuid(UUID uuid);
@@ -33,4 +37,20 @@ public interface ProductosRepository extends JpaRepository<Producto, Long>, JpaS
 
     // Buscamos si existe una categoria con el mismo id
     boolean existsByCategoriaId(UUID id);
+
+    // Solo los campos necesarios para construir el índice de búsqueda en memoria
+    @Query("SELECT new dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoSearchView(p.id, p.marca, p.modelo, c.id, c.nombre) FROM Producto p JOIN p.categoria c")
+    List<ProductoSearchView> findAllSearchViews();
+
+    // Lo mismo para los productos recién importados, que se insertan sin pasar por JPA
+    @Query("SELECT new dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoSearchView(p.id, p.marca, p.modelo, c.id, c.nombre) FROM Producto p JOIN p.categoria c WHERE p.uuid IN :uuids")
+    List<ProductoSearchView> findSearchViewsByUuidIn(Collection<UUID> uuids);
+
+    // Categoría de varios productos en una sola consulta, para los agregados de ventas
+    @Query("SELECT new dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoSearchView(p.id, p.marca, p.modelo, c.id, c.nombre) FROM Producto p JOIN p.categoria c WHERE p.id IN :ids")
+    List<ProductoSearchView> findSearchViewsByIdIn(Collection<Long> ids);
+
+    // Stock y precio de varios productos en una sola consulta, para comprobar los pedidos
+    @Query("SELECT new dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoStockView(p.id, p.stock, p.precio) FROM Producto p WHERE p.id IN :ids")
+    List<ProductoStockView> findStockViewsByIdIn(Collection<Long> ids);
 }
@@ -0,0 +1,53 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.repositories;
+
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Consultas de lectura que proyectan directamente a ProductoResponse
+ * Sin entidades gestionadas ni dirty checking, y con el nombre de la categoría en la misma consulta (sin N+1)
+ * y la inserción masiva y los cambios de stock por lotes JDBC
+ */
+public interface ProductosRepositoryCustom {
+    Page<ProductoResponse> findAllResponses(Specification<Producto> spec, Pageable pageable);
+
+    // Sin COUNT, se pide uno de más para saber si hay siguiente página
+    Slice<ProductoResponse> findSliceResponses(Specification<Producto> spec, Pageable pageable);
+
+    Optional<ProductoResponse> findResponseById(Long id);
+
+    Optional<ProductoResponse> findResponseByUuid(UUID uuid);
+
+    // Recorre todos los productos con un cursor de la base de datos, hay que consumirlo dentro de una transacción y cerrarlo
+    Stream<ProductoResponse> streamResponses(Specification<Producto> spec, Sort sort);
+
+    // Inserta los productos con lotes JDBC en su propia transacción (el id IDENTITY impide los lotes de Hibernate)
+    @Transactional
+    int insertAll(List<Producto> productos);
+
+    // Resta el stock solo si hay suficiente (UPDATE condicional), todo en un lote, y devuelve los ids que no se han podido restar
+    // Una cantidad negativa suma ese stock (la condición se cumple siempre), así se aplican diferencias en el mismo lote
+    @Transactional
+    List<Long> decrementStock(Map<Long, Integer> cantidades);
+
+    // Resta el stock de varios pedidos en un solo lote, cada pedido todo o nada
+    // Devuelve, por posición de cada pedido que no se ha podido reservar, el id del producto sin stock
+    @Transactional
+    Map<Integer, Long> decrementStockAll(List<Map<Long, Integer>> pedidos);
+
+    // Devuelve el stock, todo en un lote
+    @Transactional
+    void incrementStock(Map<Long, Integer> cantidades);
+}
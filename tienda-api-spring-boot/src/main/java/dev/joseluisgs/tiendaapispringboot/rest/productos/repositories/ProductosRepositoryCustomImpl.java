@@ -0,0 +1,265 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.repositories;
+
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.*;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.*;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Implementación de las consultas proyectadas con Criteria
+ * Seleccionamos los campos con un constructor de ProductoResponse y un LEFT JOIN a categoría
+ * Las inserciones masivas y los cambios de stock van por JdbcTemplate en lotes
+ */
+public class ProductosRepositoryCustomImpl implements ProductosRepositoryCustom {
+    private static final String INSERT_SQL = "INSERT INTO PRODUCTOS (marca, modelo, descripcion, precio, imagen, stock, uuid, created_at, updated_at, is_deleted, categoria_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // La comprobación de stock va en el propio UPDATE, así dos pedidos a la vez no pueden perder una actualización
+    private static final String DECREMENT_STOCK_SQL = "UPDATE PRODUCTOS SET stock = stock - ?, updated_at = ? WHERE id = ? AND stock >= ?";
+    private static final String INCREMENT_STOCK_SQL = "UPDATE PRODUCTOS SET stock = stock + ?, updated_at = ? WHERE id = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Value("${productos.import.batch-size:500}")
+    private int batchSize;
+    @Value("${productos.export.fetch-size:500}")
+    private int fetchSize;
+
+    @Override
+    public Page<ProductoResponse> findAllResponses(Specification<Producto> spec, Pageable pageable) {
+        var content = select(spec, pageable, pageable.isPaged() ? pageable.getPageSize() : null);
+        // Solo contamos si hace falta (por ejemplo no en la última página)
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(spec));
+    }
+
+    @Override
+    public Slice<ProductoResponse> findSliceResponses(Specification<Producto> spec, Pageable pageable) {
+        var content = select(spec, pageable, pageable.getPageSize() + 1);
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    @Override
+    public Optional<ProductoResponse> findResponseById(Long id) {
+        return select((root, query, cb) -> cb.equal(root.get("id"), id), Pageable.unpaged(), null).stream().findFirst();
+    }
+
+    @Override
+    public Optional<ProductoResponse> findResponseByUuid(UUID uuid) {
+        return select((root, query, cb) -> cb.equal(root.get("uuid"), uuid), Pageable.unpaged(), null).stream().findFirst();
+    }
+
+    @Override
+    public Stream<ProductoResponse> streamResponses(Specification<Producto> spec, Sort sort) {
+        // Son DTO, no entidades, así que el contexto de persistencia no crece mientras recorremos
+        return query(spec, sort)
+                .setHint(AvailableHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(AvailableHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    @Override
+    public int insertAll(List<Producto> productos) {
+        var now = Timestamp.valueOf(LocalDateTime.now());
+        var result = jdbcTemplate.batchUpdate(INSERT_SQL, productos, batchSize, (ps, producto) -> {
+            ps.setString(1, producto.getMarca());
+            ps.setString(2, producto.getModelo());
+            ps.setString(3, producto.getDescripcion());
+            ps.setDouble(4, producto.getPrecio() != null ? producto.getPrecio() : 0.0);
+            ps.setString(5, producto.getImagen() != null ? producto.getImagen() : Producto.IMAGE_DEFAULT);
+            ps.setInt(6, producto.getStock() != null ? producto.getStock() : 0);
+            ps.setObject(7, producto.getUuid());
+            ps.setTimestamp(8, producto.getCreatedAt() != null ? Timestamp.valueOf(producto.getCreatedAt()) : now);
+            ps.setTimestamp(9, producto.getUpdatedAt() != null ? Timestamp.valueOf(producto.getUpdatedAt()) : now);
+            ps.setBoolean(10, Boolean.TRUE.equals(producto.getIsDeleted()));
+            ps.setObject(11, producto.getCategoria().getId());
+        });
+        // Algunos drivers devuelven SUCCESS_NO_INFO (-2) en lotes, contamos esas filas como insertadas
+        return Arrays.stream(result).flatMapToInt(Arrays::stream).map(n -> n == -2 ? 1 : n).sum();
+    }
+
+    @Override
+    public List<Long> decrementStock(Map<Long, Integer> cantidades) {
+        var ids = sortedIds(cantidades);
+        var result = updateStock(DECREMENT_STOCK_SQL, ids, cantidades, true);
+        // Si no se ha actualizado la fila es que no hay stock suficiente (o no existe el producto)
+        List<Long> sinStock = new ArrayList<>();
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == 0) {
+                sinStock.add(ids.get(i));
+            }
+        }
+        return sinStock;
+    }
+
+    @Override
+    public void incrementStock(Map<Long, Integer> cantidades) {
+        updateStock(INCREMENT_STOCK_SQL, sortedIds(cantidades), cantidades, false);
+    }
+
+    @Override
+    public Map<Integer, Long> decrementStockAll(List<Map<Long, Integer>> pedidos) {
+        Map<Integer, Long> sinStock = new TreeMap<>();
+        List<Integer> pendientes = IntStream.range(0, pedidos.size()).boxed().toList();
+        while (!pendientes.isEmpty()) {
+            var round = decrementRound(pedidos, pendientes);
+            if (round.fallidos().size() < pendientes.size()) {
+                // Puede que a alguno solo le faltara lo que tenía otro que también ha fallado, lo intentamos otra vez
+                pendientes = List.copyOf(round.fallidos().keySet());
+                continue;
+            }
+            if (round.devuelto() && pendientes.size() > 1) {
+                // Ninguno ha salido, pero se estorbaban entre ellos: de uno en uno ya no
+                pendientes.forEach(pedido -> sinStock.putAll(decrementRound(pedidos, List.of(pedido)).fallidos()));
+            } else {
+                sinStock.putAll(round.fallidos());
+            }
+            break;
+        }
+        return sinStock;
+    }
+
+    /**
+     * Un lote con las líneas de los pedidos pendientes, devolviendo lo que sí se ha restado a los que fallan
+     */
+    private StockRound decrementRound(List<Map<Long, Integer>> pedidos, List<Integer> pendientes) {
+        // Las líneas de todos los pedidos juntas y ordenadas por producto, así los bloqueos se cogen siempre en el mismo orden
+        List<StockLine> lines = new ArrayList<>();
+        pendientes.forEach(pedido -> pedidos.get(pedido).forEach((id, cantidad) -> lines.add(new StockLine(pedido, id, cantidad))));
+        lines.sort(Comparator.comparing(StockLine::id).thenComparing(StockLine::pedido));
+        var result = updateLines(DECREMENT_STOCK_SQL, lines, true);
+
+        Map<Integer, Long> fallidos = new TreeMap<>();
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == 0) {
+                fallidos.putIfAbsent(lines.get(i).pedido(), lines.get(i).id());
+            }
+        }
+        List<StockLine> devolver = new ArrayList<>();
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] != 0 && fallidos.containsKey(lines.get(i).pedido())) {
+                devolver.add(lines.get(i));
+            }
+        }
+        updateLines(INCREMENT_STOCK_SQL, devolver, false);
+        return new StockRound(fallidos, !devolver.isEmpty());
+    }
+
+    // Siempre en el mismo orden (por id), así dos pedidos con los mismos productos no se bloquean entre sí
+    private List<Long> sortedIds(Map<Long, Integer> cantidades) {
+        return cantidades.keySet().stream().sorted().toList();
+    }
+
+    private int[] updateStock(String sql, List<Long> ids, Map<Long, Integer> cantidades, boolean checkStock) {
+        return updateLines(sql, ids.stream().map(id -> new StockLine(0, id, cantidades.get(id))).toList(), checkStock);
+    }
+
+    private int[] updateLines(String sql, List<StockLine> lines, boolean checkStock) {
+        if (lines.isEmpty()) {
+            return new int[0];
+        }
+        var now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                var line = lines.get(i);
+                ps.setInt(1, line.cantidad());
+                ps.setTimestamp(2, now);
+                ps.setLong(3, line.id());
+                if (checkStock) {
+                    ps.setInt(4, line.cantidad());
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return lines.size();
+            }
+        });
+    }
+
+    // Línea de stock de un pedido dentro de un lote
+    private record StockLine(int pedido, Long id, Integer cantidad) {
+    }
+
+    // Pedidos que han fallado en un lote (con el primer producto sin stock) y si se les ha devuelto algo
+    private record StockRound(Map<Integer, Long> fallidos, boolean devuelto) {
+    }
+
+    private List<ProductoResponse> select(Specification<Producto> spec, Pageable pageable, Integer limit) {
+        var typedQuery = query(spec, pageable.getSort());
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+        }
+        if (limit != null) {
+            typedQuery.setMaxResults(limit);
+        }
+        return typedQuery.getResultList();
+    }
+
+    private TypedQuery<ProductoResponse> query(Specification<Producto> spec, Sort sort) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductoResponse> query = cb.createQuery(ProductoResponse.class);
+        Root<Producto> root = query.from(Producto.class);
+        Join<Producto, Categoria> categoria = root.join("categoria", JoinType.LEFT);
+        // El orden tiene que ser el del constructor de ProductoResponse
+        query.select(cb.construct(ProductoResponse.class,
+                root.get("id"),
+                root.get("marca"),
+                root.get("modelo"),
+                root.get("descripcion"),
+                root.get("precio"),
+                root.get("imagen"),
+                categoria.get("nombre"),
+                root.get("stock"),
+                root.get("createdAt"),
+                root.get("updatedAt"),
+                root.get("uuid"),
+                root.get("isDeleted")
+        ));
+        if (spec != null) {
+            var predicate = spec.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        if (sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        }
+        return entityManager.createQuery(query);
+    }
+
+    private long count(Specification<Producto> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Producto> root = query.from(Producto.class);
+        query.select(cb.count(root));
+        if (spec != null) {
+            var predicate = spec.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+}
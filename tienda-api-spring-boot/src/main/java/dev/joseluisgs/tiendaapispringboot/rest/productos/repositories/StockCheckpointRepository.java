@@ -0,0 +1,12 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.repositories;
+
+import dev.joseluisgs.tiendaapispringboot.rest.productos.models.StockCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Checkpoints del motor de stock en memoria, uno por shard
+ */
+@Repository
+public interface StockCheckpointRepository extends JpaRepository<StockCheckpoint, Integer> {
+}
@@ -3,15 +3,23 @@ package dev.joseluisgs.tiendaapispringboot.rest.productos.services;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoCreateRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoUpdateRequest;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosImportResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosFileFormat;
+import org.springframework.data.domain.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Optional;
 
 public interface ProductosService {
     Page<ProductoResponse> findAll(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, Pageable pageable);
 
+    Slice<ProductoResponse> findAllSlice(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, Pageable pageable);
+
+    Window<ProductoResponse> findAll(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, KeysetScrollPosition position, Sort sort, int size);
+
     ProductoResponse findById(Long id);
 
     ProductoResponse findbyUuid(String uuid);
@@ -23,4 +31,8 @@ public interface ProductosService {
     void deleteById(Long id);
 
     ProductoResponse updateImage(Long id, MultipartFile image, Boolean withUrl);
+
+    ProductosImportResponse importProductos(InputStream input, ProductosFileFormat format);
+
+    long export(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, ProductosFileFormat format, OutputStream output) throws IOException;
 }
@@ -5,50 +5,60 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.joseluisgs.tiendaapispringboot.config.websockets.WebSocketConfig;
 import dev.joseluisgs.tiendaapispringboot.config.websockets.WebSocketHandler;
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
-import dev.joseluisgs.tiendaapispringboot.rest.categorias.repositories.CategoriasRepository;
-import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoCreateRequest;
-import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
-import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoUpdateRequest;
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.services.CategoriasNameResolver;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.StockUnavailable;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock.StockService;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.*;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.exceptions.ProductoBadRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.exceptions.ProductoBadUuid;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.exceptions.ProductoNotFound;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.mappers.ProductoMapper;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosQueryCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.exports.ProductosExportWriter;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.imports.ProductosImportReader;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.search.ProductosSearchIndex;
 import dev.joseluisgs.tiendaapispringboot.rest.storage.services.StorageService;
-import dev.joseluisgs.tiendaapispringboot.websockets.notifications.dto.ProductoNotificationResponse;
 import dev.joseluisgs.tiendaapispringboot.websockets.notifications.mapper.ProductoNotificationMapper;
 import dev.joseluisgs.tiendaapispringboot.websockets.notifications.models.Notificacion;
 import jakarta.persistence.criteria.Join;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheConfig;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.*;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * Implementación de nuestro servicio de productos
  * Aquí implementamos la lógica de negocio
- * Además es cacheable
+ * Además es cacheable: por id y uuid con ProductosCache y los listados con ProductosQueryCache
  */
 @Service
-@CacheConfig(cacheNames = {"productos"})
 @Slf4j
 public class ProductosServiceImpl implements ProductosService {
     private final ProductosRepository productosRepository;
-    private final CategoriasRepository categoriasRepository;
+    private final CategoriasNameResolver categoriasNameResolver;
     private final ProductoMapper productosMapper;
     private final StorageService storageService;
+    private final ProductosSearchIndex productosSearchIndex;
+    private final ProductosQueryCache productosQueryCache;
+    private final ProductosCache productosCache;
+    private final ProductosImportReader productosImportReader;
+    private final ProductosExportWriter productosExportWriter;
+    private final StockService stockService;
 
     private final WebSocketConfig webSocketConfig;
     private final ObjectMapper mapper;
@@ -56,11 +66,17 @@ public class ProductosServiceImpl implements ProductosService {
     private WebSocketHandler webSocketService;
 
     @Autowired
-    public ProductosServiceImpl(ProductosRepository productosRepository, CategoriasRepository categoriasRepository, ProductoMapper productoMapper, StorageService storageService, WebSocketConfig webSocketConfig, ProductoNotificationMapper productoNotificationMapper) {
+    public ProductosServiceImpl(ProductosRepository productosRepository, CategoriasNameResolver categoriasNameResolver, ProductoMapper productoMapper, StorageService storageService, WebSocketConfig webSocketConfig, ProductoNotificationMapper productoNotificationMapper, ProductosSearchIndex productosSearchIndex, ProductosQueryCache productosQueryCache, ProductosCache productosCache, ProductosImportReader productosImportReader, ProductosExportWriter productosExportWriter, StockService stockService) {
         this.productosRepository = productosRepository;
-        this.categoriasRepository = categoriasRepository;
+        this.categoriasNameResolver = categoriasNameResolver;
         this.productosMapper = productoMapper;
         this.storageService = storageService;
+        this.productosSearchIndex = productosSearchIndex;
+        this.productosQueryCache = productosQueryCache;
+        this.productosCache = productosCache;
+        this.productosImportReader = productosImportReader;
+        this.productosExportWriter = productosExportWriter;
+        this.stockService = stockService;
         this.webSocketConfig = webSocketConfig;
         // Para enviar mensajes a los clientes ws normales
         webSocketService = webSocketConfig.webSocketProductosHandler();
@@ -83,6 +99,125 @@ public class ProductosServiceImpl implements ProductosService {
      */
     @Override
     public Page<ProductoResponse> findAll(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, Pageable pageable) {
+        // Las mismas consultas se repiten mucho y el catálogo cambia poco, las cacheamos ya mapeadas
+        var key = ProductosQueryCache.key(marca, categoria, modelo, isDeleted, precioMax, stockMin, pageable);
+        return productosQueryCache.get(key, () -> findAllFromRepository(marca, categoria, modelo, isDeleted, precioMax, stockMin, pageable));
+    }
+
+    private Page<ProductoResponse> findAllFromRepository(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, Pageable pageable) {
+        // Resolvemos los filtros de texto con el índice de trigramas, si puede, para no recorrer toda la tabla
+        Optional<Set<Long>> ids = searchIds(marca, categoria, modelo);
+        if (ids.isPresent() && ids.get().isEmpty()) {
+            // Ningún producto cumple los filtros, no hace falta ir a la base de datos
+            return Page.empty(pageable);
+        }
+        var criterio = criterio(ids, marca, categoria, modelo, isDeleted, precioMax, stockMin);
+        // Proyectamos directamente al DTO con el nombre de la categoría, en una sola consulta
+        return productosRepository.findAllResponses(criterio, pageable);
+    }
+
+    /**
+     * Busca todos los productos sin contar el total (Slice)
+     * Se piden size + 1 filas para saber si hay siguiente página, así nos ahorramos el COUNT
+     *
+     * @param marca     Marca del producto
+     * @param categoria Categoría del producto
+     * @param modelo    Modelo del producto
+     * @param isDeleted Si está borrado o no
+     * @param precioMax Precio máximo
+     * @param stockMin  Stock mínimo
+     * @param pageable  Paginación y ordenación
+     * @return Slice de productos
+     */
+    @Override
+    public Slice<ProductoResponse> findAllSlice(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, Pageable pageable) {
+        Optional<Set<Long>> ids = searchIds(marca, categoria, modelo);
+        if (ids.isPresent() && ids.get().isEmpty()) {
+            return new SliceImpl<>(List.of(), pageable, false);
+        }
+        var criterio = criterio(ids, marca, categoria, modelo, isDeleted, precioMax, stockMin);
+        return productosRepository.findSliceResponses(criterio, pageable);
+    }
+
+    /**
+     * Busca todos los productos por cursor (keyset), sin OFFSET ni COUNT
+     * Cada página cuesta lo mismo independientemente de lo lejos que esté
+     *
+     * @param marca     Marca del producto
+     * @param categoria Categoría del producto
+     * @param modelo    Modelo del producto
+     * @param isDeleted Si está borrado o no
+     * @param precioMax Precio máximo
+     * @param stockMin  Stock mínimo
+     * @param position  Posición desde la que seguir (última clave de ordenación e id)
+     * @param sort      Ordenación, se añade el id para desempatar
+     * @param size      Tamaño de la página
+     * @return Ventana de productos
+     */
+    @Override
+    public Window<ProductoResponse> findAll(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, KeysetScrollPosition position, Sort sort, int size) {
+        Optional<Set<Long>> ids = searchIds(marca, categoria, modelo);
+        if (ids.isPresent() && ids.get().isEmpty()) {
+            return Window.from(List.of(), i -> position);
+        }
+        var criterio = criterio(ids, marca, categoria, modelo, isDeleted, precioMax, stockMin);
+        // El id hace que la ordenación sea única y así el cursor no se salta ni repite filas
+        Sort keysetSort = sort.getOrderFor("id") != null ? sort
+                : sort.and(Sort.by(sort.stream().findFirst().map(Sort.Order::getDirection).orElse(Sort.Direction.ASC), "id"));
+        return productosRepository.findBy(criterio, q -> q.sortBy(keysetSort).limit(size).scroll(position))
+                .map(productosMapper::toProductResponse);
+    }
+
+    /**
+     * Exporta todos los productos que cumplen los filtros, ordenados por id
+     * Se recorren con un cursor de la base de datos (fetch size) y se escriben según llegan,
+     * así la memoria no depende del tamaño del catálogo. La transacción de solo lectura mantiene abierto el cursor.
+     *
+     * @param marca     Marca del producto
+     * @param categoria Categoría del producto
+     * @param modelo    Modelo del producto
+     * @param isDeleted Si está borrado o no
+     * @param precioMax Precio máximo
+     * @param stockMin  Stock mínimo
+     * @param format    Formato de salida
+     * @param output    Salida donde se escriben los productos
+     * @return Número de productos exportados
+     * @throws IOException Si no se puede escribir en la salida
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public long export(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, ProductosFileFormat format, OutputStream output) throws IOException {
+        Optional<Set<Long>> ids = searchIds(marca, categoria, modelo);
+        if (ids.isPresent() && ids.get().isEmpty()) {
+            return productosExportWriter.write(Stream.empty(), format, output);
+        }
+        var criterio = criterio(ids, marca, categoria, modelo, isDeleted, precioMax, stockMin);
+        // Hay que cerrar el stream para liberar el cursor
+        try (var productos = productosRepository.streamResponses(criterio, Sort.by("id"))) {
+            var count = productosExportWriter.write(productos, format, output);
+            log.info("Exportados " + count + " productos en formato: " + format);
+            return count;
+        }
+    }
+
+    /**
+     * Resuelve los filtros de texto con el índice de búsqueda
+     */
+    private Optional<Set<Long>> searchIds(Optional<String> marca, Optional<String> categoria, Optional<String> modelo) {
+        return (marca.isPresent() || modelo.isPresent() || categoria.isPresent())
+                ? productosSearchIndex.search(marca, modelo, categoria)
+                : Optional.empty();
+    }
+
+    /**
+     * Construye el criterio de búsqueda con los filtros
+     */
+    private Specification<Producto> criterio(Optional<Set<Long>> ids, Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin) {
+        // Criterio de búsqueda por ids del índice
+        Specification<Producto> specIds = (root, query, criteriaBuilder) ->
+                ids.map(i -> root.get("id").in(i))
+                        .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
+
         // Criterio de búsqueda por marca
         Specification<Producto> specMarcaProducto = (root, query, criteriaBuilder) ->
                 marca.map(m -> criteriaBuilder.like(criteriaBuilder.lower(root.get("marca")), "%" + m.toLowerCase() + "%")) // Buscamos por marca
@@ -116,13 +251,13 @@ public class ProductosServiceImpl implements ProductosService {
                         .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
 
         // Combinamos las especificaciones
-        Specification<Producto> criterio = Specification.where(specMarcaProducto)
+        return Specification.where(specIds)
+                .and(specMarcaProducto)
                 .and(specCategoriaProducto)
                 .and(specIsDeleted)
                 .and(specModeloProducto)
                 .and(specPrecioMaxProducto)
                 .and(specStockMinProducto);
-        return productosRepository.findAll(criterio, pageable).map(productosMapper::toProductResponse);
     }
 
     /**
@@ -133,10 +268,9 @@ public class ProductosServiceImpl implements ProductosService {
      * @throws ProductoNotFound Si no lo encuentra
      */
     @Override
-    @Cacheable(key = "#id")
     public ProductoResponse findById(Long id) {
         log.info("Buscando producto por id: " + id);
-        return productosMapper.toProductResponse(productosRepository.findById(id).orElseThrow(() -> new ProductoNotFound(id)));
+        return productosCache.getById(id, () -> productosRepository.findResponseById(id)).orElseThrow(() -> new ProductoNotFound(id));
     }
 
     /**
@@ -148,15 +282,16 @@ public class ProductosServiceImpl implements ProductosService {
      * @throws ProductoBadUuid  Si el uuid no es válido
      */
     @Override
-    @Cacheable(key = "#uuid")
     public ProductoResponse findbyUuid(String uuid) {
         log.info("Buscando producto por uuid: " + uuid);
+        UUID myUUID;
         try {
-            var myUUID = UUID.fromString(uuid);
-            return productosMapper.toProductResponse(productosRepository.findByUuid(myUUID).orElseThrow(() -> new ProductoNotFound(myUUID)));
+            myUUID = UUID.fromString(uuid);
         } catch (IllegalArgumentException e) {
             throw new ProductoBadUuid(uuid);
         }
+        // Misma entrada de cache que por id: una sola carga sirve para las dos búsquedas
+        return productosCache.getByUuid(myUUID, () -> productosRepository.findResponseByUuid(myUUID)).orElseThrow(() -> new ProductoNotFound(myUUID));
     }
 
     /**
@@ -166,12 +301,9 @@ public class ProductosServiceImpl implements ProductosService {
      */
     private Categoria checkCategoria(String nombreCategoria) {
         log.info("Buscando categoría por nombre: " + nombreCategoria);
-        // Buscamos la categoría por su nombre, debe existir y no estar borrada
-        var categoria = categoriasRepository.findByNombreEqualsIgnoreCase(nombreCategoria);
-        if (categoria.isEmpty() || categoria.get().getIsDeleted()) {
-            throw new ProductoBadRequest("La categoría " + nombreCategoria + " no existe o está borrada");
-        }
-        return categoria.get();
+        // Buscamos la categoría por su nombre en memoria, debe existir y no estar borrada
+        return categoriasNameResolver.resolve(nombreCategoria)
+                .orElseThrow(() -> new ProductoBadRequest("La categoría " + nombreCategoria + " no existe o está borrada"));
     }
 
     /**
@@ -181,7 +313,6 @@ public class ProductosServiceImpl implements ProductosService {
      * @return Producto guardado
      */
     @Override
-    @CachePut(key = "#result.id")
     public ProductoResponse save(ProductoCreateRequest productoCreateRequest) {
         log.info("Guardando producto: " + productoCreateRequest);
         // Comprobamos que la categoría
@@ -189,10 +320,12 @@ public class ProductosServiceImpl implements ProductosService {
         // Creamos el producto nuevo con los datos que nos vienen del dto, podríamos usar el mapper
         // Lo guardamos en el repositorio
         var productoSaved = productosRepository.save(productosMapper.toProduct(productoCreateRequest, categoria));
+        // Lo añadimos al índice de búsqueda
+        productosSearchIndex.put(productoSaved);
         // Enviamos la notificación a los clientes ws
         onChange(Notificacion.Tipo.CREATE, productoSaved);
-        // Devolvemos el producto guardado
-        return productosMapper.toProductResponse(productoSaved);
+        // Lo cacheamos (por id y uuid) y lo devolvemos
+        return cache(productosMapper.toProductResponse(productoSaved));
     }
 
     /**
@@ -201,10 +334,10 @@ public class ProductosServiceImpl implements ProductosService {
      * @param id                    Id del producto a actualizar
      * @param productoUpdateRequest Producto a actualizar
      * @return Producto actualizado
-     * @throws ProductoNotFound Si no lo encuentra
+     * @throws ProductoNotFound  Si no lo encuentra
+     * @throws StockUnavailable Si el motor de stock no ha podido fijar el nuevo stock, no se cambia nada
      */
     @Override
-    @CachePut(key = "#result.id")
     @Transactional
     public ProductoResponse update(Long id, ProductoUpdateRequest productoUpdateRequest) {
         log.info("Actualizando producto por id: " + id);
@@ -221,11 +354,23 @@ public class ProductosServiceImpl implements ProductosService {
         }
         // Actualizamos el producto con los datos que nos vienen del dto, podríamos usar el mapper
         // Lo guardamos en el repositorio
-        var productoUpdated = productosRepository.save(productosMapper.toProduct(productoUpdateRequest, productoActual, categoria));
+        var producto = productosMapper.toProduct(productoUpdateRequest, productoActual, categoria);
+        // Si el stock lo lleva el motor en memoria lo fija él, en el UPDATE se queda como estaba y no se escribe
+        boolean stockEnMotor = productoUpdateRequest.getStock() != null && stockService.set(id, productoUpdateRequest.getStock());
+        if (stockEnMotor) {
+            producto.setStock(productoActual.getStock());
+        }
+        var productoUpdated = productosRepository.save(producto);
+        // Actualizamos el índice de búsqueda
+        productosSearchIndex.put(productoUpdated);
         // Enviamos la notificación a los clientes ws
         onChange(Notificacion.Tipo.UPDATE, productoUpdated);
-        // Devolvemos el producto actualizado
-        return productosMapper.toProductResponse(productoUpdated);
+        // Actualizamos la cache (por id y uuid) y lo devolvemos
+        var response = productosMapper.toProductResponse(productoUpdated);
+        if (stockEnMotor) {
+            response.setStock(productoUpdateRequest.getStock());
+        }
+        return cache(response);
     }
 
     /**
@@ -235,7 +380,6 @@ public class ProductosServiceImpl implements ProductosService {
      * @throws ProductoNotFound Si no lo encuentra
      */
     @Override
-    @CachePut(key = "#id")
     @Transactional // Para que se haga todo o nada y no se quede a medias (por el update)
     public void deleteById(Long id) {
         log.debug("Borrando producto por id: " + id);
@@ -243,6 +387,9 @@ public class ProductosServiceImpl implements ProductosService {
         var prod = productosRepository.findById(id).orElseThrow(() -> new ProductoNotFound(id));
         // Lo borramos del repositorio
         productosRepository.deleteById(id);
+        // Lo quitamos del índice de búsqueda y de la cache (por id y uuid)
+        productosSearchIndex.remove(id);
+        productosCache.evict(id);
         // O lo marcamos como borrado, para evitar problemas de cascada, no podemos borrar productos en pedidos!!!
         //productosRepository.updateIsDeletedToTrueById(id);
         // Borramos la imagen del producto si existe y es distinta a la por defecto
@@ -262,7 +409,6 @@ public class ProductosServiceImpl implements ProductosService {
      * @throws ProductoNotFound Si no lo encuentra
      */
     @Override
-    @CachePut(key = "#result.id")
     @Transactional
     public ProductoResponse updateImage(Long id, MultipartFile image, Boolean withUrl) {
         log.info("Actualizando imagen de producto por id: " + id);
@@ -294,28 +440,109 @@ public class ProductosServiceImpl implements ProductosService {
 
         // Lo guardamos en el repositorio
         var productoUpdated = productosRepository.save(productoActualizado);
+        productosSearchIndex.put(productoUpdated);
         // Enviamos la notificación a los clientes ws
         onChange(Notificacion.Tipo.UPDATE, productoUpdated);
-        // Devolvemos el producto actualizado
-        return productosMapper.toProductResponse(productoUpdated);
+        // Actualizamos la cache (por id y uuid) y lo devolvemos
+        return cache(productosMapper.toProductResponse(productoUpdated));
+    }
+
+    /**
+     * Importa un catálogo de productos en NDJSON o CSV
+     * Las categorías se resuelven en memoria, los productos se insertan en lotes JDBC y cada bloque se confirma por separado,
+     * así un error en un bloque no deshace lo ya importado. Se envía una sola notificación con el resumen.
+     *
+     * @param input  Contenido del fichero
+     * @param format Formato del fichero
+     * @return Resumen de la importación con los errores por fila
+     * @throws ProductoBadRequest Si no se puede leer el fichero
+     */
+    @Override
+    public ProductosImportResponse importProductos(InputStream input, ProductosFileFormat format) {
+        log.info("Importando productos en formato: " + format);
+        List<ProductoImportError> errors = new ArrayList<>();
+        var total = new AtomicLong();
+        var imported = new AtomicLong();
+        try {
+            productosImportReader.read(input, format, rows -> {
+                total.addAndGet(rows.size());
+                imported.addAndGet(importChunk(rows, errors));
+            });
+        } catch (IOException e) {
+            throw new ProductoBadRequest("No se ha podido leer el fichero de importación: " + e.getMessage());
+        }
+        log.info("Importados " + imported.get() + " de " + total.get() + " productos");
+        if (imported.get() > 0) {
+            productosQueryCache.invalidateAll();
+            // Una sola notificación con el resumen, no una por producto
+            sendNotification(new Notificacion<>(
+                    "PRODUCTOS",
+                    Notificacion.Tipo.CREATE,
+                    new ProductosImportResponse(total.get(), imported.get(), errors.size(), List.of()),
+                    LocalDateTime.now().toString()
+            ));
+        }
+        return new ProductosImportResponse(total.get(), imported.get(), errors.size(), errors);
+    }
+
+    private long importChunk(List<ProductosImportReader.Row> rows, List<ProductoImportError> errors) {
+        List<Producto> productos = new ArrayList<>(rows.size());
+        List<Long> lines = new ArrayList<>(rows.size());
+        for (var row : rows) {
+            if (!row.isValid()) {
+                errors.add(new ProductoImportError(row.line(), row.error()));
+                continue;
+            }
+            // Sin una consulta por fila
+            var categoria = categoriasNameResolver.resolve(row.request().getCategoria()).orElse(null);
+            if (categoria == null) {
+                errors.add(new ProductoImportError(row.line(), "La categoría " + row.request().getCategoria() + " no existe o está borrada"));
+                continue;
+            }
+            productos.add(productosMapper.toProduct(row.request(), categoria));
+            lines.add(row.line());
+        }
+        if (productos.isEmpty()) {
+            return 0;
+        }
+        try {
+            productosRepository.insertAll(productos);
+        } catch (DataAccessException e) {
+            // El bloque se ha deshecho entero, todas sus filas fallan
+            log.error("Error al importar un bloque de productos", e);
+            lines.forEach(line -> errors.add(new ProductoImportError(line, "Error al guardar el bloque: " + e.getMostSpecificCause().getMessage())));
+            return 0;
+        }
+        // Los añadimos al índice de búsqueda con sus ids ya generados
+        productosSearchIndex.putAll(productosRepository.findSearchViewsByUuidIn(productos.stream().map(Producto::getUuid).toList()));
+        return productos.size();
+    }
+
+    private ProductoResponse cache(ProductoResponse productoResponse) {
+        productosCache.put(productoResponse);
+        return productoResponse;
     }
 
     void onChange(Notificacion.Tipo tipo, Producto data) {
         log.debug("Servicio de productos onChange con tipo: " + tipo + " y datos: " + data);
+        // Cualquier cambio en un producto deja obsoletos los listados cacheados
+        productosQueryCache.invalidateAll();
 
+        sendNotification(new Notificacion<>(
+                "PRODUCTOS",
+                tipo,
+                productoNotificationMapper.toProductNotificationDto(data),
+                LocalDateTime.now().toString()
+        ));
+    }
+
+    private void sendNotification(Notificacion<?> notificacion) {
         if (webSocketService == null) {
             log.warn("No se ha podido enviar la notificación a los clientes ws, no se ha encontrado el servicio");
             webSocketService = this.webSocketConfig.webSocketProductosHandler();
         }
 
         try {
-            Notificacion<ProductoNotificationResponse> notificacion = new Notificacion<>(
-                    "PRODUCTOS",
-                    tipo,
-                    productoNotificationMapper.toProductNotificationDto(data),
-                    LocalDateTime.now().toString()
-            );
-
             String json = mapper.writeValueAsString((notificacion));
 
             log.info("Enviando mensaje a los clientes ws");
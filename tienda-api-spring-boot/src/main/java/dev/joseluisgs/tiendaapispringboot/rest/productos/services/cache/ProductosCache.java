@@ -0,0 +1,183 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
+import dev.joseluisgs.tiendaapispringboot.utils.cache.CacheStatsResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache de productos por id y por uuid
+ * Cada producto se guarda una sola vez (por id) y el uuid es un índice hacia ese id,
+ * así una carga de la base de datos sirve para las dos búsquedas y al actualizar o borrar se cambian las dos a la vez.
+ * Nunca se guardan nulos: si no existe el producto no se cachea.
+ */
+@Component
+@Slf4j
+public class ProductosCache {
+    public static final String NAME = "productos";
+
+    private final Cache<Long, ProductoResponse> cache;
+    private final Map<UUID, Long> uuids = new ConcurrentHashMap<>();
+    // Cada escritura incrementa la generación, así una carga que se cruza con un cambio no guarda datos viejos
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public ProductosCache(
+            @Value("${cache.productos.max-size:${cache.default.max-size:1000}}") long maxSize,
+            @Value("${cache.productos.expire-after-write:${cache.default.expire-after-write:10m}}") Duration expireAfterWrite
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite)
+                // Si Caffeine lo desaloja o caduca, quitamos también su uuid
+                .evictionListener((Long id, ProductoResponse producto, RemovalCause cause) -> {
+                    if (producto != null) {
+                        removeUuid(producto, id);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Busca un producto por id en la cache o lo carga
+     *
+     * @param id     Id del producto
+     * @param loader Consulta a la base de datos si no está cacheado
+     * @return Producto si existe
+     */
+    public Optional<ProductoResponse> getById(Long id, Supplier<Optional<ProductoResponse>> loader) {
+        var cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        return load(loader);
+    }
+
+    /**
+     * Busca un producto por uuid en la cache o lo carga
+     *
+     * @param uuid   Uuid del producto
+     * @param loader Consulta a la base de datos si no está cacheado
+     * @return Producto si existe
+     */
+    public Optional<ProductoResponse> getByUuid(UUID uuid, Supplier<Optional<ProductoResponse>> loader) {
+        var id = uuids.get(uuid);
+        if (id != null) {
+            var cached = cache.getIfPresent(id);
+            // Comprobamos el uuid por si el índice se ha quedado atrás respecto a la cache
+            if (cached != null && uuid.equals(cached.getUuid())) {
+                return Optional.of(cached);
+            }
+        }
+        return load(loader);
+    }
+
+    private Optional<ProductoResponse> load(Supplier<Optional<ProductoResponse>> loader) {
+        long current = generation.get();
+        var loaded = loader.get();
+        // Si mientras consultábamos ha cambiado algún producto, no lo guardamos (puede estar obsoleto)
+        loaded.filter(p -> generation.get() == current).ifPresent(this::store);
+        return loaded;
+    }
+
+    /**
+     * Guarda o actualiza un producto bajo su id y su uuid
+     * Si estamos en una transacción y se deshace, lo quitamos para no servir datos que no existen.
+     * Si se confirma, antes del commit alguien ha podido leer la fila anterior y guardarla encima:
+     * solo lo dejamos si sigue siendo el nuestro, si no lo quitamos.
+     *
+     * @param producto Producto a guardar
+     */
+    public void put(ProductoResponse producto) {
+        if (producto == null || producto.getId() == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        store(producto);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        evictNow(producto.getId());
+                    } else {
+                        confirm(producto);
+                    }
+                }
+            });
+        }
+    }
+
+    private void confirm(ProductoResponse producto) {
+        // Las cargas que empezaron antes del commit pueden traer la fila anterior, que no las guarden
+        generation.incrementAndGet();
+        if (cache.getIfPresent(producto.getId()) != producto) {
+            evictNow(producto.getId());
+        }
+    }
+
+    private void store(ProductoResponse producto) {
+        cache.asMap().compute(producto.getId(), (id, old) -> {
+            if (old != null) {
+                removeUuid(old, id);
+            }
+            if (producto.getUuid() != null) {
+                uuids.put(producto.getUuid(), id);
+            }
+            return producto;
+        });
+    }
+
+    /**
+     * Quita un producto de la cache por id, y con él su uuid
+     * Si estamos en una transacción, lo quitamos otra vez al terminar por si alguien lo ha leído antes del commit
+     *
+     * @param id Id del producto
+     */
+    public void evict(Long id) {
+        evictNow(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(id);
+                }
+            });
+        }
+    }
+
+    private void evictNow(Long id) {
+        generation.incrementAndGet();
+        cache.asMap().computeIfPresent(id, (key, old) -> {
+            removeUuid(old, key);
+            return null;
+        });
+        log.debug("Quitado de la cache el producto con id: " + id);
+    }
+
+    private void removeUuid(ProductoResponse producto, Long id) {
+        if (producto.getUuid() != null) {
+            uuids.remove(producto.getUuid(), id);
+        }
+    }
+
+    public CacheStatsResponse stats() {
+        return CacheStatsResponse.of(NAME, cache.estimatedSize(), cache.stats());
+    }
+}
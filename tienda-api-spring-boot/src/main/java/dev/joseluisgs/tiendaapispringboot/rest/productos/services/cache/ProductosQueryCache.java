@@ -0,0 +1,126 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
+import dev.joseluisgs.tiendaapispringboot.utils.cache.CacheStatsResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache de resultados de los listados filtrados de productos
+ * La clave es una huella normalizada de los filtros y de la paginación, y se guarda la página ya mapeada.
+ * El catálogo cambia mucho menos de lo que se lee, así que invalidamos todo cuando cambia un producto
+ * (alta, modificación, borrado, imagen o stock por pedidos).
+ */
+@Component
+@Slf4j
+public class ProductosQueryCache {
+    public static final String NAME = "productos-listados";
+
+    private final Cache<Key, Page<ProductoResponse>> cache;
+    // Cada invalidación incrementa la generación, así no guardamos resultados calculados antes de un cambio
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public ProductosQueryCache(
+            @Value("${productos.query-cache.max-size:1000}") long maxSize,
+            @Value("${productos.query-cache.expire-after-write:10m}") Duration expireAfterWrite
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Devuelve la página cacheada o la calcula y la guarda
+     *
+     * @param key    Huella de la consulta
+     * @param loader Consulta a la base de datos si no está cacheada
+     * @return Página de productos
+     */
+    public Page<ProductoResponse> get(Key key, Supplier<Page<ProductoResponse>> loader) {
+        var cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long current = generation.get();
+        var result = loader.get();
+        cache.put(key, result);
+        // Si mientras consultábamos ha cambiado algo, este resultado puede estar obsoleto
+        if (generation.get() != current) {
+            cache.invalidate(key);
+        }
+        return result;
+    }
+
+    /**
+     * Invalida todos los listados, se llama cuando cambia cualquier producto
+     */
+    public void invalidateAll() {
+        invalidateNow();
+        // Si estamos en una transacción, lo que se lea antes del commit tampoco vale: invalidamos otra vez al terminar
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateNow();
+                }
+            });
+        }
+    }
+
+    private void invalidateNow() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        log.debug("Invalidada la cache de listados de productos");
+    }
+
+    public CacheStatsResponse stats() {
+        return CacheStatsResponse.of(NAME, cache.estimatedSize(), cache.stats());
+    }
+
+    /**
+     * Huella normalizada de una consulta: los textos en minúsculas (como en el LIKE) y los Optional vacíos como null
+     */
+    public static Key key(Optional<String> marca, Optional<String> categoria, Optional<String> modelo, Optional<Boolean> isDeleted, Optional<Double> precioMax, Optional<Double> stockMin, Pageable pageable) {
+        return new Key(
+                marca.map(m -> m.toLowerCase(Locale.ROOT)).orElse(null),
+                categoria.map(c -> c.toLowerCase(Locale.ROOT)).orElse(null),
+                modelo.map(m -> m.toLowerCase(Locale.ROOT)).orElse(null),
+                isDeleted.orElse(null),
+                precioMax.orElse(null),
+                stockMin.orElse(null),
+                pageable.getPageNumber(),
+                pageable.getPageSize(),
+                pageable.getSort().toString()
+        );
+    }
+
+    public record Key(
+            String marca,
+            String categoria,
+            String modelo,
+            Boolean isDeleted,
+            Double precioMax,
+            Double stockMin,
+            int page,
+            int size,
+            String sort
+    ) {
+    }
+}
@@ -0,0 +1,90 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.exports;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosFileFormat;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Escribe el catálogo de productos en NDJSON (un objeto JSON por línea) o CSV (con cabecera)
+ * Se escribe producto a producto según llegan del cursor de la base de datos, así nunca tenemos el catálogo entero en memoria.
+ * El CSV usa las mismas columnas que la importación, así se puede volver a importar tal cual.
+ */
+@Component
+public class ProductosExportWriter {
+    private static final List<String> CSV_HEADER = List.of("id", "uuid", "marca", "modelo", "descripcion", "precio", "imagen", "categoria", "stock", "createdAt", "updatedAt", "isDeleted");
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule()) // Necesario para que funcione LocalDateTime
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    /**
+     * Escribe los productos en el formato indicado
+     * No cierra la salida, solo la vacía al terminar
+     *
+     * @param productos Productos a escribir
+     * @param format    Formato de salida
+     * @param output    Salida
+     * @return Número de productos escritos
+     * @throws IOException Si no se puede escribir
+     */
+    public long write(Stream<ProductoResponse> productos, ProductosFileFormat format, OutputStream output) throws IOException {
+        var writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        if (format == ProductosFileFormat.CSV) {
+            writer.write(String.join(",", CSV_HEADER));
+            writer.newLine();
+        }
+        long count = 0;
+        Iterator<ProductoResponse> iterator = productos.iterator();
+        while (iterator.hasNext()) {
+            var producto = iterator.next();
+            writer.write(format == ProductosFileFormat.CSV ? toCsv(producto) : mapper.writeValueAsString(producto));
+            writer.newLine();
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private String toCsv(ProductoResponse producto) {
+        return Stream.of(
+                producto.getId(),
+                producto.getUuid(),
+                producto.getMarca(),
+                producto.getModelo(),
+                producto.getDescripcion(),
+                producto.getPrecio(),
+                producto.getImagen(),
+                producto.getCategoria(),
+                producto.getStock(),
+                producto.getCreatedAt(),
+                producto.getUpdatedAt(),
+                producto.getIsDeleted()
+        ).map(ProductosExportWriter::csvField).collect(Collectors.joining(","));
+    }
+
+    /**
+     * Entrecomilla el campo si lleva comas, comillas o saltos de línea, duplicando las comillas
+     * Los saltos de línea se cambian por espacios porque la importación lee el CSV línea a línea
+     */
+    static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        var text = Objects.toString(value).replace('\r', ' ').replace('\n', ' ');
+        if (text.contains(",") || text.contains("\"")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+}
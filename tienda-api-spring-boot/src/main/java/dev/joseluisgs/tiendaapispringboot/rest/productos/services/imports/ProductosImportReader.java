@@ -0,0 +1,180 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.imports;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoCreateRequest;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosFileFormat;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Lee un catálogo de productos en NDJSON (un objeto JSON por línea) o CSV (con cabecera)
+ * Se lee en streaming, línea a línea, y se entrega en bloques de productos.import.chunk-size filas
+ * para no tener nunca el fichero entero en memoria.
+ * Las columnas/campos son los de ProductoCreateRequest: marca, modelo, descripcion, precio, imagen, categoria y stock
+ */
+@Component
+@Slf4j
+public class ProductosImportReader {
+    private static final List<String> FIELDS = List.of("marca", "modelo", "descripcion", "precio", "imagen", "categoria", "stock");
+
+    private final Validator validator;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int chunkSize;
+
+    @Autowired
+    public ProductosImportReader(Validator validator, @Value("${productos.import.chunk-size:1000}") int chunkSize) {
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Lee el fichero y entrega las filas por bloques
+     *
+     * @param input  Contenido del fichero
+     * @param format Formato del fichero
+     * @param chunks Consumidor de cada bloque de filas
+     * @throws IOException Si no se puede leer el fichero
+     */
+    public void read(InputStream input, ProductosFileFormat format, Consumer<List<Row>> chunks) throws IOException {
+        var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        List<String> header = null;
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        String line;
+        long number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == ProductosFileFormat.CSV && header == null) {
+                header = parseCsvLine(line).stream().map(h -> h.trim().toLowerCase(Locale.ROOT)).toList();
+                continue;
+            }
+            chunk.add(format == ProductosFileFormat.CSV ? fromCsv(number, header, line) : fromJson(number, line));
+            if (chunk.size() >= chunkSize) {
+                chunks.accept(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.accept(chunk);
+        }
+    }
+
+    private Row fromJson(long number, String line) {
+        try {
+            JsonNode node = mapper.readTree(line);
+            if (!node.isObject()) {
+                return Row.error(number, "La línea no es un objeto JSON");
+            }
+            Map<String, String> values = new HashMap<>();
+            FIELDS.forEach(field -> {
+                var value = node.get(field);
+                if (value != null && !value.isNull()) {
+                    values.put(field, value.asText());
+                }
+            });
+            return toRow(number, values);
+        } catch (JsonProcessingException e) {
+            return Row.error(number, "JSON no válido: " + e.getOriginalMessage());
+        }
+    }
+
+    private Row fromCsv(long number, List<String> header, String line) {
+        var fields = parseCsvLine(line);
+        if (fields.size() != header.size()) {
+            return Row.error(number, "Se esperaban " + header.size() + " columnas y hay " + fields.size());
+        }
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            if (!fields.get(i).isEmpty()) {
+                values.put(header.get(i), fields.get(i));
+            }
+        }
+        return toRow(number, values);
+    }
+
+    private Row toRow(long number, Map<String, String> values) {
+        try {
+            var builder = ProductoCreateRequest.builder()
+                    .marca(values.get("marca"))
+                    .modelo(values.get("modelo"))
+                    .descripcion(values.get("descripcion"))
+                    .precio(values.containsKey("precio") ? Double.parseDouble(values.get("precio")) : null)
+                    .categoria(values.get("categoria"))
+                    .stock(values.containsKey("stock") ? Integer.parseInt(values.get("stock")) : null);
+            // Si no viene imagen se queda la de por defecto
+            if (values.containsKey("imagen")) {
+                builder.imagen(values.get("imagen"));
+            }
+            var request = builder.build();
+            var violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                return Row.error(number, violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", ")));
+            }
+            return new Row(number, request, null);
+        } catch (NumberFormatException e) {
+            return Row.error(number, "Precio o stock no numérico: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Separa una línea CSV por comas, admitiendo campos entre comillas dobles y comillas escapadas ("")
+     * No admite saltos de línea dentro de un campo
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        var field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /**
+     * Fila leída: o tiene producto o tiene error
+     */
+    public record Row(long line, ProductoCreateRequest request, String error) {
+        static Row error(long line, String error) {
+            return new Row(line, null, error);
+        }
+
+        public boolean isValid() {
+            return error == null;
+        }
+    }
+}
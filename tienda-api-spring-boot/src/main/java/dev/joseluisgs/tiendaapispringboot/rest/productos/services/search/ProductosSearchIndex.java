@@ -0,0 +1,286 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.search;
+
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoSearchView;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice de trigramas en memoria para las búsquedas por subcadena de productos (marca, modelo y categoría)
+ * Un LIKE '%texto%' no puede usar ningún índice B-tree, así que recorre toda la tabla.
+ * Con este índice convertimos los filtros de texto en un conjunto de ids antes de ir a la base de datos.
+ * Si el índice no puede ayudar (no está cargado, términos cortos o con comodines, demasiados resultados)
+ * devuelve vacío y el servicio sigue haciendo la consulta con LIKE como siempre.
+ */
+@Component
+@Slf4j
+public class ProductosSearchIndex {
+    static final int GRAM = 3;
+
+    private final ProductosRepository productosRepository;
+    private final int maxIds;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Producto indexado por su id
+    private final Map<Long, Entrada> entradas = new HashMap<>();
+    // Trigrama -> ids de productos que lo contienen
+    private final Map<String, Set<Long>> marcas = new HashMap<>();
+    private final Map<String, Set<Long>> modelos = new HashMap<>();
+    // Las categorías son pocas, basta con recorrer sus nombres
+    private final Map<UUID, String> categorias = new HashMap<>();
+    private final Map<UUID, Set<Long>> productosPorCategoria = new HashMap<>();
+    private volatile boolean ready = false;
+
+    @Autowired
+    public ProductosSearchIndex(ProductosRepository productosRepository, @Value("${productos.search.max-ids:2000}") int maxIds) {
+        this.productosRepository = productosRepository;
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * Carga el índice con todos los productos cuando la aplicación ya está arrancada
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        log.info("Cargando índice de búsqueda de productos");
+        var vistas = productosRepository.findAllSearchViews();
+        lock.writeLock().lock();
+        try {
+            entradas.clear();
+            marcas.clear();
+            modelos.clear();
+            categorias.clear();
+            productosPorCategoria.clear();
+            vistas.forEach(this::add);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Índice de búsqueda de productos cargado con " + vistas.size() + " productos");
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Añade o actualiza un producto en el índice
+     *
+     * @param producto Producto guardado
+     */
+    public void put(Producto producto) {
+        if (producto == null || producto.getId() == null || producto.getCategoria() == null) {
+            return;
+        }
+        var vista = new ProductoSearchView(producto.getId(), producto.getMarca(), producto.getModelo(),
+                producto.getCategoria().getId(), producto.getCategoria().getNombre());
+        lock.writeLock().lock();
+        try {
+            removeEntrada(producto.getId());
+            add(vista);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Añade varios productos al índice de una vez (por ejemplo tras una importación)
+     *
+     * @param vistas Productos guardados
+     */
+    public void putAll(Collection<ProductoSearchView> vistas) {
+        lock.writeLock().lock();
+        try {
+            vistas.forEach(vista -> {
+                removeEntrada(vista.id());
+                add(vista);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Elimina un producto del índice
+     *
+     * @param id Id del producto
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeEntrada(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Actualiza el nombre de una categoría (por ejemplo si se renombra)
+     *
+     * @param id     Id de la categoría
+     * @param nombre Nuevo nombre
+     */
+    public void putCategoria(UUID id, String nombre) {
+        if (id == null || nombre == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            categorias.put(id, normalize(nombre));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Resuelve los filtros de texto a un conjunto de ids de productos
+     *
+     * @param marca     Subcadena de la marca
+     * @param modelo    Subcadena del modelo
+     * @param categoria Subcadena del nombre de la categoría
+     * @return Ids que cumplen todos los filtros, o vacío si el índice no puede resolver la búsqueda
+     */
+    public Optional<Set<Long>> search(Optional<String> marca, Optional<String> modelo, Optional<String> categoria) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        var m = marca.map(ProductosSearchIndex::normalize).filter(s -> !s.isEmpty());
+        var mo = modelo.map(ProductosSearchIndex::normalize).filter(s -> !s.isEmpty());
+        var c = categoria.map(ProductosSearchIndex::normalize).filter(s -> !s.isEmpty());
+        // Los comodines de LIKE no tienen sentido en el índice, dejamos que lo resuelva la base de datos
+        if (hasWildcards(m) || hasWildcards(mo) || hasWildcards(c)) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            // Buscamos el conjunto de candidatos más pequeño de entre todos los filtros
+            Collection<Long> candidatos = null;
+            if (m.isPresent() && m.get().length() >= GRAM) {
+                candidatos = smallest(candidatos, postings(marcas, m.get()));
+            }
+            if (mo.isPresent() && mo.get().length() >= GRAM) {
+                candidatos = smallest(candidatos, postings(modelos, mo.get()));
+            }
+            if (c.isPresent()) {
+                candidatos = smallest(candidatos, porCategoria(c.get()));
+            }
+            // Ningún filtro es indexable
+            if (candidatos == null) {
+                return Optional.empty();
+            }
+            // Comprobamos cada candidato contra todos los filtros, así el resultado es exacto
+            Set<Long> ids = new HashSet<>();
+            for (Long id : candidatos) {
+                var entrada = entradas.get(id);
+                if (entrada != null && entrada.matches(m, mo, c, categorias)) {
+                    ids.add(id);
+                    // Una lista IN enorme no compensa, mejor la consulta normal
+                    if (ids.size() > maxIds) {
+                        return Optional.empty();
+                    }
+                }
+            }
+            return Optional.of(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(ProductoSearchView vista) {
+        var entrada = new Entrada(normalize(vista.marca()), normalize(vista.modelo()), vista.categoriaId());
+        entradas.put(vista.id(), entrada);
+        grams(entrada.marca()).forEach(g -> marcas.computeIfAbsent(g, k -> new HashSet<>()).add(vista.id()));
+        grams(entrada.modelo()).forEach(g -> modelos.computeIfAbsent(g, k -> new HashSet<>()).add(vista.id()));
+        if (vista.categoriaId() != null) {
+            categorias.put(vista.categoriaId(), normalize(vista.categoriaNombre()));
+            productosPorCategoria.computeIfAbsent(vista.categoriaId(), k -> new HashSet<>()).add(vista.id());
+        }
+    }
+
+    private void removeEntrada(Long id) {
+        var entrada = entradas.remove(id);
+        if (entrada == null) {
+            return;
+        }
+        grams(entrada.marca()).forEach(g -> removePosting(marcas, g, id));
+        grams(entrada.modelo()).forEach(g -> removePosting(modelos, g, id));
+        if (entrada.categoriaId() != null) {
+            removePosting(productosPorCategoria, entrada.categoriaId(), id);
+        }
+    }
+
+    private static <K> void removePosting(Map<K, Set<Long>> index, K key, Long id) {
+        var ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    // Nos quedamos con la lista de ids más corta de todos los trigramas del término
+    private static Collection<Long> postings(Map<String, Set<Long>> index, String term) {
+        Collection<Long> result = null;
+        for (String g : grams(term)) {
+            var ids = index.getOrDefault(g, Collections.emptySet());
+            if (result == null || ids.size() < result.size()) {
+                result = ids;
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private Collection<Long> porCategoria(String term) {
+        List<Long> ids = new ArrayList<>();
+        categorias.forEach((id, nombre) -> {
+            if (nombre.contains(term)) {
+                ids.addAll(productosPorCategoria.getOrDefault(id, Collections.emptySet()));
+            }
+        });
+        return ids;
+    }
+
+    private static Collection<Long> smallest(Collection<Long> a, Collection<Long> b) {
+        return (a == null || b.size() < a.size()) ? b : a;
+    }
+
+    private static boolean hasWildcards(Optional<String> term) {
+        return term.map(t -> t.indexOf('%') >= 0 || t.indexOf('_') >= 0).orElse(false);
+    }
+
+    static Set<String> grams(String value) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Datos de cada producto indexado, ya en minúsculas
+     */
+    private record Entrada(String marca, String modelo, UUID categoriaId) {
+        boolean matches(Optional<String> m, Optional<String> mo, Optional<String> c, Map<UUID, String> categorias) {
+            return m.map(marca::contains).orElse(true)
+                    && mo.map(modelo::contains).orElse(true)
+                    && c.map(t -> categorias.getOrDefault(categoriaId, "").contains(t)).orElse(true);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package dev.joseluisgs.tiendaapispringboot.rest.users.controllers;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.*;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.PedidosService;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.idempotency.PedidosIdempotencyStore;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserInfoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserResponse;
@@ -17,9 +18,9 @@ import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -43,12 +44,14 @@ public class UsersRestController {
     private final UsersService usersService;
     private final PedidosService pedidosService;
     private final PaginationLinksUtils paginationLinksUtils;
+    private final PedidosIdempotencyStore pedidosIdempotencyStore;
 
     @Autowired
-    public UsersRestController(UsersService usersService, PedidosService pedidosService, PaginationLinksUtils paginationLinksUtils) {
+    public UsersRestController(UsersService usersService, PedidosService pedidosService, PaginationLinksUtils paginationLinksUtils, PedidosIdempotencyStore pedidosIdempotencyStore) {
         this.usersService = usersService;
         this.pedidosService = pedidosService;
         this.paginationLinksUtils = paginationLinksUtils;
+        this.pedidosIdempotencyStore = pedidosIdempotencyStore;
     }
 
     /**
@@ -61,6 +64,7 @@ public class UsersRestController {
      * @param size      tamaño
      * @param sortBy    campo de ordenación
      * @param direction dirección de ordenación
+     * @param withTotal si se calculan los totales, con false no se hace el count
      * @param request   petición
      * @return Respuesta con la página de usuarios
      */
@@ -74,6 +78,7 @@ public class UsersRestController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
             @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(defaultValue = "true") boolean withTotal,
             HttpServletRequest request
     ) {
         log.info("findAll: username: {}, email: {}, isDeleted: {}, page: {}, size: {}, sortBy: {}, direction: {}",
@@ -82,7 +87,10 @@ public class UsersRestController {
         Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         // Creamos cómo va a ser la paginación
         UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(request.getRequestURL().toString());
-        Page<UserResponse> pageResult = usersService.findAll(username, email, isDeleted, PageRequest.of(page, size, sort));
+        // Sin total nos ahorramos la consulta COUNT, devolvemos un Slice
+        Slice<UserResponse> pageResult = withTotal
+                ? usersService.findAll(username, email, isDeleted, PageRequest.of(page, size, sort))
+                : usersService.findAllSlice(username, email, isDeleted, PageRequest.of(page, size, sort));
         return ResponseEntity.ok()
                 .header("link", paginationLinksUtils.createLinkHeader(pageResult, uriBuilder))
                 .body(PageResponse.of(pageResult, sortBy, direction));
@@ -91,15 +99,31 @@ public class UsersRestController {
     /**
      * Obtiene un usuario por su id
      *
-     * @param id del usuario, se pasa como parámetro de la URL /{id}
-     * @return Usuario si existe
+     * @param id          del usuario, se pasa como parámetro de la URL /{id}
+     * @param pedidosPage Página de los ids de sus pedidos, por defecto la primera
+     * @param pedidosSize Tamaño de la página de pedidos
+     * @return Usuario si existe, con una página de los ids de sus pedidos y el total
      * @throws UserNotFound si no existe el usuario (404)
      */
     @GetMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')") // Solo los admin pueden acceder
-    public ResponseEntity<UserInfoResponse> findById(@PathVariable Long id) {
+    public ResponseEntity<UserInfoResponse> findById(
+            @PathVariable Long id,
+            @RequestParam(required = false) Optional<Integer> pedidosPage,
+            @RequestParam(required = false) Optional<Integer> pedidosSize
+    ) {
         log.info("findById: id: {}", id);
-        return ResponseEntity.ok(usersService.findById(id));
+        return ResponseEntity.ok(findUserInfo(id, pedidosPage, pedidosSize));
+    }
+
+    /**
+     * Sin paginación de pedidos usamos la consulta cacheada, con la primera página
+     */
+    private UserInfoResponse findUserInfo(Long id, Optional<Integer> pedidosPage, Optional<Integer> pedidosSize) {
+        if (pedidosPage.isEmpty() && pedidosSize.isEmpty()) {
+            return usersService.findById(id);
+        }
+        return usersService.findById(id, PageRequest.of(pedidosPage.orElse(0), pedidosSize.orElse(UsersService.PEDIDOS_PAGE_SIZE)));
     }
 
     /**
@@ -152,15 +176,21 @@ public class UsersRestController {
     /**
      * Obtiene el usuario actual
      *
-     * @param user usuario autenticado
+     * @param user        usuario autenticado
+     * @param pedidosPage Página de los ids de sus pedidos, por defecto la primera
+     * @param pedidosSize Tamaño de la página de pedidos
      * @return Datos del usuario
      */
     @GetMapping("/me/profile")
     @PreAuthorize("hasRole('ADMIN')") // Solo los admin pueden acceder
-    public ResponseEntity<UserInfoResponse> me(@AuthenticationPrincipal User user) {
+    public ResponseEntity<UserInfoResponse> me(
+            @AuthenticationPrincipal User user,
+            @RequestParam(required = false) Optional<Integer> pedidosPage,
+            @RequestParam(required = false) Optional<Integer> pedidosSize
+    ) {
         log.info("Obteniendo usuario");
         // Esta autenticado, por lo que devolvemos sus datos ya sabemos su id
-        return ResponseEntity.ok(usersService.findById(user.getId()));
+        return ResponseEntity.ok(findUserInfo(user.getId(), pedidosPage, pedidosSize));
     }
 
     /**
@@ -200,6 +230,7 @@ public class UsersRestController {
      * @param size      tamaño
      * @param sortBy    campo de ordenación
      * @param direction dirección de ordenación
+     * @param withTotal si se calculan los totales, con false no se hace el count
      * @return Respuesta con la página de pedidos
      */
     @GetMapping("/me/pedidos")
@@ -209,12 +240,16 @@ public class UsersRestController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
-            @RequestParam(defaultValue = "asc") String direction
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(defaultValue = "true") boolean withTotal
     ) {
         log.info("Obteniendo pedidos del usuario con id: " + user.getId());
         Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
-        return ResponseEntity.ok(PageResponse.of(pedidosService.findByIdUsuario(user.getId(), pageable), sortBy, direction));
+        Slice<Pedido> pageResult = withTotal
+                ? pedidosService.findByIdUsuario(user.getId(), pageable)
+                : pedidosService.findByIdUsuarioSlice(user.getId(), pageable);
+        return ResponseEntity.ok(PageResponse.of(pageResult, sortBy, direction));
     }
 
     /**
@@ -237,25 +272,38 @@ public class UsersRestController {
 
     /**
      * Crea un pedido para el usuario actual
+     * Con la cabecera Idempotency-Key el pedido se crea una sola vez: si se repite la petición con la misma clave
+     * se devuelve el mismo pedido, con la cabecera Idempotent-Replayed a true, sin volver a crearlo
      *
-     * @param user   usuario autenticado
-     * @param pedido pedido a crear
+     * @param user           usuario autenticado
+     * @param idempotencyKey clave de idempotencia del cliente, opcional
+     * @param pedido         pedido a crear
      * @return Pedido creado
      * @throws HttpClientErrorException.BadRequest si hay algún error de validación (400)
      * @throws PedidoNotItems                      si no hay items en el pedido (400)
      * @throws ProductoBadPrice                    si el precio del producto no es correcto (400)
      * @throws ProductoNotFound                    si no existe el producto (404)
      * @throws ProductoNotStock                    si no hay stock del producto (400)
+     * @throws PedidoBadKey                        si la clave de idempotencia no es válida (400)
+     * @throws PedidoKeyInProgress                 si el pedido con esa clave todavía está en curso (409)
+     * @throws PedidoKeyMismatch                   si la clave ya se usó con otro pedido (422)
      */
     @PostMapping("/me/pedidos")
     @PreAuthorize("hasRole('USER')") // Solo los usuarios pueden acceder
     public ResponseEntity<Pedido> savePedido(
             @AuthenticationPrincipal User user,
+            @RequestHeader(value = PedidosIdempotencyStore.HEADER, required = false) Optional<String> idempotencyKey,
             @Valid @RequestBody Pedido pedido
     ) {
         log.info("Creando pedido: " + pedido);
         pedido.setIdUsuario(user.getId());
-        return ResponseEntity.status(HttpStatus.CREATED).body(pedidosService.save(pedido));
+        if (idempotencyKey.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.CREATED).body(pedidosService.save(pedido));
+        }
+        var result = pedidosIdempotencyStore.execute(user.getId(), idempotencyKey.get(), pedido, () -> pedidosService.save(pedido));
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header(PedidosIdempotencyStore.REPLAYED_HEADER, String.valueOf(result.replayed()))
+                .body(result.pedido());
     }
 
     /**
@@ -24,6 +24,9 @@ public class UserInfoResponse {
     private Set<Role> roles = Set.of(Role.USER);
     @Builder.Default
     private Boolean isDeleted = false;
+    // Ids de una página de sus pedidos y cuántos tiene en total
     @Builder.Default
     private List<String> pedidos = new ArrayList<>();
+    @Builder.Default
+    private Long totalPedidos = 0L;
 }
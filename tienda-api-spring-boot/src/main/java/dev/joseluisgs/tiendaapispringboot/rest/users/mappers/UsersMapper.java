@@ -47,7 +47,7 @@ public class UsersMapper {
                 .build();
     }
 
-    public UserInfoResponse toUserInfoResponse(User user, List<String> pedidos) {
+    public UserInfoResponse toUserInfoResponse(User user, List<String> pedidos, long totalPedidos) {
         return UserInfoResponse.builder()
                 .id(user.getId())
                 .nombre(user.getNombre())
@@ -57,6 +57,7 @@ public class UsersMapper {
                 .roles(user.getRoles())
                 .isDeleted(user.getIsDeleted())
                 .pedidos(pedidos)
+                .totalPedidos(totalPedidos)
                 .build();
     }
 }
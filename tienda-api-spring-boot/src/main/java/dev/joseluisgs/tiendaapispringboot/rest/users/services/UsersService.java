@@ -5,15 +5,22 @@ import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.Optional;
 
 public interface UsersService {
+    // Pedidos que se devuelven con el usuario si no se pide otra página
+    int PEDIDOS_PAGE_SIZE = 20;
 
     Page<UserResponse> findAll(Optional<String> username, Optional<String> email, Optional<Boolean> isDeleted, Pageable pageable);
 
+    Slice<UserResponse> findAllSlice(Optional<String> username, Optional<String> email, Optional<Boolean> isDeleted, Pageable pageable);
+
     UserInfoResponse findById(Long id);
 
+    UserInfoResponse findById(Long id, Pageable pedidosPageable);
+
     UserResponse save(UserRequest userRequest);
 
     UserResponse update(Long id, UserRequest userRequest);
@@ -1,6 +1,9 @@
 package dev.joseluisgs.tiendaapispringboot.rest.users.services;
 
 
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtRevocations;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.users.AuthUsersCache;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosArchive;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosRepository;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserInfoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserRequest;
@@ -10,17 +13,23 @@ import dev.joseluisgs.tiendaapispringboot.rest.users.exceptions.UserNotFound;
 import dev.joseluisgs.tiendaapispringboot.rest.users.mappers.UsersMapper;
 import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
 import dev.joseluisgs.tiendaapispringboot.rest.users.repositories.UsersRepository;
+import dev.joseluisgs.tiendaapispringboot.utils.pagination.SliceUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
@@ -30,17 +39,37 @@ public class UsersServiceImpl implements UsersService {
 
     private final UsersRepository usersRepository;
     private final PedidosRepository pedidosRepository;
+    private final PedidosArchive pedidosArchive;
     private final UsersMapper usersMapper;
+    private final AuthUsersCache authUsersCache;
+    private final JwtRevocations jwtRevocations;
 
-    public UsersServiceImpl(UsersRepository usersRepository, PedidosRepository pedidosRepository, UsersMapper usersMapper) {
+    public UsersServiceImpl(UsersRepository usersRepository, PedidosRepository pedidosRepository, PedidosArchive pedidosArchive,
+                            UsersMapper usersMapper, AuthUsersCache authUsersCache, JwtRevocations jwtRevocations) {
         this.usersRepository = usersRepository;
         this.pedidosRepository = pedidosRepository;
+        this.pedidosArchive = pedidosArchive;
         this.usersMapper = usersMapper;
+        this.authUsersCache = authUsersCache;
+        this.jwtRevocations = jwtRevocations;
     }
 
     @Override
     public Page<UserResponse> findAll(Optional<String> username, Optional<String> email, Optional<Boolean> isDeleted, Pageable pageable) {
         log.info("Buscando todos los usuarios con username: " + username + " y borrados: " + isDeleted);
+        // Debe devolver un Page, por eso usamos el findAll de JPA
+        return usersRepository.findAll(criterio(username, email, isDeleted), pageable).map(usersMapper::toUserResponse);
+    }
+
+    @Override
+    public Slice<UserResponse> findAllSlice(Optional<String> username, Optional<String> email, Optional<Boolean> isDeleted, Pageable pageable) {
+        log.info("Buscando usuarios sin total con username: " + username + " y borrados: " + isDeleted);
+        // Pedimos uno de más para saber si hay siguiente página, sin COUNT
+        var window = usersRepository.findBy(criterio(username, email, isDeleted), q -> q.sortBy(pageable.getSort()).limit(pageable.getPageSize()).scroll(SliceUtils.offsetOf(pageable)));
+        return SliceUtils.toSlice(window, pageable).map(usersMapper::toUserResponse);
+    }
+
+    private Specification<User> criterio(Optional<String> username, Optional<String> email, Optional<Boolean> isDeleted) {
         // Criterio de búsqueda por nombre
         Specification<User> specUsernameUser = (root, query, criteriaBuilder) ->
                 username.map(m -> criteriaBuilder.like(criteriaBuilder.lower(root.get("username")), "%" + m.toLowerCase() + "%"))
@@ -57,23 +86,36 @@ public class UsersServiceImpl implements UsersService {
                         .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
 
         // Combinamos las especificaciones
-        Specification<User> criterio = Specification.where(specUsernameUser)
+        return Specification.where(specUsernameUser)
                 .and(specEmailUser)
                 .and(specIsDeleted);
-
-        // Debe devolver un Page, por eso usamos el findAll de JPA
-        return usersRepository.findAll(criterio, pageable).map(usersMapper::toUserResponse);
     }
 
     @Override
     @Cacheable(key = "#id")
     public UserInfoResponse findById(Long id) {
+        // La primera página de sus pedidos, es la que se cachea
+        return findById(id, PageRequest.of(0, PEDIDOS_PAGE_SIZE));
+    }
+
+    @Override
+    public UserInfoResponse findById(Long id, Pageable pedidosPageable) {
         log.info("Buscando usuario por id: " + id);
         // Buscamos el usuario
         var user = usersRepository.findById(id).orElseThrow(() -> new UserNotFound(id));
-        // Buscamos sus pedidos
-        var pedidos = pedidosRepository.findPedidosIdsByIdUsuario(id).stream().map(p -> p.getId().toHexString()).toList();
-        return usersMapper.toUserInfoResponse(user, pedidos);
+        // Buscamos solo los ids de una página de sus pedidos, por id para que baste con el índice
+        var pageable = PageRequest.of(pedidosPageable.getPageNumber(), pedidosPageable.getPageSize(), Sort.by("id"));
+        // Si hay archivo, los archivados también son suyos: ids y total de las dos partes
+        if (pedidosArchive.hasArchive()) {
+            var ids = pedidosArchive.findIdsByIdUsuario(id, pageable);
+            return usersMapper.toUserInfoResponse(user, ids.map(ObjectId::toHexString).getContent(), ids.getTotalElements());
+        }
+        var pedidos = pedidosRepository.findPedidosIdsByIdUsuario(id, pageable);
+        // Si es la última página ya sabemos cuántos tiene, si no los contamos (también con el índice)
+        long total = !pedidos.hasNext() && (pedidos.hasContent() || pageable.getPageNumber() == 0)
+                ? pageable.getOffset() + pedidos.getNumberOfElements()
+                : pedidosRepository.countByIdUsuario(id);
+        return usersMapper.toUserInfoResponse(user, pedidos.map(p -> p.getId().toHexString()).getContent(), total);
     }
 
     @Override
@@ -92,7 +134,7 @@ public class UsersServiceImpl implements UsersService {
     @CachePut(key = "#result.id")
     public UserResponse update(Long id, UserRequest userRequest) {
         log.info("Actualizando usuario: " + userRequest);
-        usersRepository.findById(id).orElseThrow(() -> new UserNotFound(id));
+        User user = usersRepository.findById(id).orElseThrow(() -> new UserNotFound(id));
         // No debe existir otro con el mismo username o email, y si existe soy yo mismo
         usersRepository.findByUsernameEqualsIgnoreCaseOrEmailEqualsIgnoreCase(userRequest.getUsername(), userRequest.getEmail())
                 .ifPresent(u -> {
@@ -101,7 +143,18 @@ public class UsersServiceImpl implements UsersService {
                         throw new UserNameOrEmailExists("Ya existe un usuario con ese username o email");
                     }
                 });
-        return usersMapper.toUserResponse(usersRepository.save(usersMapper.toUser(userRequest, id)));
+        var updated = usersRepository.save(usersMapper.toUser(userRequest, id));
+        // El usuario autenticado ha cambiado (roles, contraseña o incluso el username), lo sacamos de la cache
+        authUsersCache.evict(user.getUsername());
+        authUsersCache.evict(updated.getUsername());
+        // Si cambia lo que lleva el token o sus credenciales, los tokens emitidos hasta ahora ya no valen
+        if (!Objects.equals(user.getUsername(), updated.getUsername())
+                || !Objects.equals(user.getRoles(), updated.getRoles())
+                || !Objects.equals(user.getPassword(), updated.getPassword())
+                || Boolean.TRUE.equals(updated.getIsDeleted())) {
+            jwtRevocations.revoke(id);
+        }
+        return usersMapper.toUserResponse(updated);
     }
 
     @Override
@@ -110,8 +163,8 @@ public class UsersServiceImpl implements UsersService {
     public void deleteById(Long id) {
         log.info("Borrando usuario por id: " + id);
         User user = usersRepository.findById(id).orElseThrow(() -> new UserNotFound(id));
-        //Hacemos el borrado fisico si no hay pedidos
-        if (pedidosRepository.existsByIdUsuario(id)) {
+        //Hacemos el borrado fisico si no hay pedidos, tampoco archivados
+        if (pedidosRepository.existsByIdUsuario(id) || pedidosArchive.existsByIdUsuario(id)) {
             // Si no, lo marcamos como borrado lógico
             log.info("Borrado lógico de usuario por id: " + id);
             usersRepository.updateIsDeletedToTrueById(id);
@@ -120,5 +173,8 @@ public class UsersServiceImpl implements UsersService {
             log.info("Borrado físico de usuario por id: " + id);
             usersRepository.delete(user);
         }
+        // Ya no se puede autenticar con los datos cacheados
+        authUsersCache.evict(user.getUsername());
+        jwtRevocations.revoke(id);
     }
 }
@@ -0,0 +1,133 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.controllers;
+
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.dto.VentasRebuildResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.exceptions.VentasBadRequest;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.models.VentasRollup;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.services.VentasService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("${api.version}/ventas") // Es la ruta del controlador
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')") // Solo los administradores pueden acceder
+public class VentasRestController {
+    private final VentasService ventasService;
+
+    @Autowired
+    public VentasRestController(VentasService ventasService) {
+        this.ventasService = ventasService;
+    }
+
+    /**
+     * Obtiene las ventas por producto y día
+     *
+     * @param desde      Primer día, por defecto hace 30 días
+     * @param hasta      Último día, por defecto hoy
+     * @param idProducto Id del producto, si solo queremos uno
+     * @return Ventas de cada producto en cada día
+     * @throws VentasBadRequest si el rango de fechas no es válido (400)
+     */
+    @Operation(summary = "Obtiene las ventas por producto y día", description = "Obtiene unidades, importe y pedidos de cada producto en cada día, ya calculados")
+    @Parameter(name = "desde", description = "Primer día (yyyy-MM-dd)", example = "2023-10-01")
+    @Parameter(name = "hasta", description = "Último día (yyyy-MM-dd)", example = "2023-10-31")
+    @Parameter(name = "idProducto", description = "Id del producto", example = "1")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ventas por producto y día"),
+            @ApiResponse(responseCode = "400", description = "Rango de fechas no válido"),
+    })
+    @GetMapping("/productos")
+    public ResponseEntity<List<VentasRollup>> getVentasProductos(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> hasta,
+            @RequestParam(required = false) Optional<Long> idProducto
+    ) {
+        log.info("Obteniendo ventas por producto");
+        var fin = hasta.orElse(LocalDate.now());
+        return ResponseEntity.ok(ventasService.findProductos(desde.orElse(fin.minusDays(30)), fin, idProducto.orElse(null)));
+    }
+
+    /**
+     * Obtiene las ventas por categoría y día
+     *
+     * @param desde     Primer día, por defecto hace 30 días
+     * @param hasta     Último día, por defecto hoy
+     * @param categoria Nombre de la categoría, si solo queremos una
+     * @return Ventas de cada categoría en cada día
+     * @throws VentasBadRequest si el rango de fechas no es válido (400)
+     */
+    @Operation(summary = "Obtiene las ventas por categoría y día", description = "Obtiene unidades, importe y pedidos de cada categoría en cada día, ya calculados")
+    @Parameter(name = "desde", description = "Primer día (yyyy-MM-dd)", example = "2023-10-01")
+    @Parameter(name = "hasta", description = "Último día (yyyy-MM-dd)", example = "2023-10-31")
+    @Parameter(name = "categoria", description = "Nombre de la categoría", example = "DEPORTES")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ventas por categoría y día"),
+            @ApiResponse(responseCode = "400", description = "Rango de fechas no válido"),
+    })
+    @GetMapping("/categorias")
+    public ResponseEntity<List<VentasRollup>> getVentasCategorias(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> hasta,
+            @RequestParam(required = false) Optional<String> categoria
+    ) {
+        log.info("Obteniendo ventas por categoría");
+        var fin = hasta.orElse(LocalDate.now());
+        return ResponseEntity.ok(ventasService.findCategorias(desde.orElse(fin.minusDays(30)), fin, categoria.orElse(null)));
+    }
+
+    /**
+     * Obtiene las ventas por usuario y mes
+     *
+     * @param desde     Primer mes, por defecto hace 11 meses
+     * @param hasta     Último mes, por defecto el actual
+     * @param idUsuario Id del usuario, si solo queremos uno
+     * @return Ventas de cada usuario en cada mes
+     * @throws VentasBadRequest si el rango de fechas no es válido (400)
+     */
+    @Operation(summary = "Obtiene las ventas por usuario y mes", description = "Obtiene unidades, importe y pedidos de cada usuario en cada mes, ya calculados")
+    @Parameter(name = "desde", description = "Primer mes (yyyy-MM)", example = "2023-01")
+    @Parameter(name = "hasta", description = "Último mes (yyyy-MM)", example = "2023-12")
+    @Parameter(name = "idUsuario", description = "Id del usuario", example = "1")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ventas por usuario y mes"),
+            @ApiResponse(responseCode = "400", description = "Rango de fechas no válido"),
+    })
+    @GetMapping("/usuarios")
+    public ResponseEntity<List<VentasRollup>> getVentasUsuarios(
+            @RequestParam(required = false) Optional<YearMonth> desde,
+            @RequestParam(required = false) Optional<YearMonth> hasta,
+            @RequestParam(required = false) Optional<Long> idUsuario
+    ) {
+        log.info("Obteniendo ventas por usuario");
+        var fin = hasta.orElse(YearMonth.now());
+        return ResponseEntity.ok(ventasService.findUsuarios(desde.orElse(fin.minusMonths(11)), fin, idUsuario.orElse(null)));
+    }
+
+    /**
+     * Vuelve a calcular todas las ventas desde los pedidos
+     *
+     * @return Meses recalculados, agregados escritos y borrados y tiempo
+     */
+    @Operation(summary = "Reconstruye las ventas", description = "Vuelve a calcular todos los agregados de ventas desde los pedidos, un mes en cada hilo")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ventas reconstruidas"),
+    })
+    @PostMapping("/rebuild")
+    public ResponseEntity<VentasRebuildResponse> rebuild() {
+        log.info("Reconstruyendo las ventas");
+        return ResponseEntity.ok(ventasService.rebuild());
+    }
+}
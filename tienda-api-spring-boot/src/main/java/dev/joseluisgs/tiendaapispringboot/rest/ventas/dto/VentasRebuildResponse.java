@@ -0,0 +1,17 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.dto;
+
+/**
+ * Resultado de reconstruir los agregados de ventas a partir de los pedidos
+ *
+ * @param meses      Meses recalculados
+ * @param documentos Agregados escritos
+ * @param borrados   Agregados que ya no corresponden a ningún pedido
+ * @param millis     Tiempo que ha tardado
+ */
+public record VentasRebuildResponse(
+        int meses,
+        long documentos,
+        long borrados,
+        long millis
+) {
+}
@@ -0,0 +1,15 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de rango de fechas no válido en los informes de ventas
+ * Status 400
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class VentasBadRequest extends VentasException {
+    public VentasBadRequest(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.exceptions;
+
+public abstract class VentasException extends RuntimeException {
+    public VentasException(String message) {
+        super(message);
+    }
+}
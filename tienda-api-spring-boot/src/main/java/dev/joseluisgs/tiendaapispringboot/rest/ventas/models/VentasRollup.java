@@ -0,0 +1,53 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ventas ya sumadas de un producto o categoría en un día, o de un usuario en un mes
+ * Se actualizan con cada pedido que se guarda, cambia o borra, así los informes no tienen que recorrer los pedidos.
+ * El id es tipo|periodo|clave: las consultas por tipo y rango de fechas son un rango del índice de _id.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document("ventas")
+@TypeAlias("VentasRollup")
+public class VentasRollup {
+    public static final String SEPARATOR = "|";
+
+    @Id
+    private String id;
+
+    private VentasTipo tipo;
+
+    // Id del producto, nombre de la categoría o id del usuario
+    private String clave;
+
+    // Día (yyyy-MM-dd) o mes (yyyy-MM)
+    private String periodo;
+
+    @Builder.Default
+    private Long unidades = 0L;
+
+    @Builder.Default
+    private Double importe = 0.0;
+
+    // Pedidos distintos en los que aparece
+    @Builder.Default
+    private Long pedidos = 0L;
+
+    private LocalDateTime updatedAt;
+
+    public static String id(VentasTipo tipo, String periodo, String clave) {
+        return tipo.name() + SEPARATOR + periodo + SEPARATOR + clave;
+    }
+}
@@ -0,0 +1,10 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.models;
+
+/**
+ * Tipos de agregado de ventas: qué se agrupa y por qué periodo
+ */
+public enum VentasTipo {
+    PRODUCTO_DIA,
+    CATEGORIA_DIA,
+    USUARIO_MES
+}
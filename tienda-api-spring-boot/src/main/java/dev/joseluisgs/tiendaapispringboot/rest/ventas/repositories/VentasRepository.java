@@ -0,0 +1,20 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.repositories;
+
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.models.VentasRollup;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface VentasRepository extends MongoRepository<VentasRollup, String> {
+    // Rango de ids [desde, hasta): un tipo y un rango de periodos, sin los que se han quedado a cero
+    @Query("{ '_id': { $gte: ?0, $lt: ?1 }, 'pedidos': { $gt: 0 } }")
+    List<VentasRollup> findByIdRange(String desde, String hasta, Sort sort);
+
+    // Lo mismo, solo de una clave (un producto, una categoría o un usuario)
+    @Query("{ '_id': { $gte: ?0, $lt: ?1 }, 'clave': ?2, 'pedidos': { $gt: 0 } }")
+    List<VentasRollup> findByIdRangeAndClave(String desde, String hasta, String clave, Sort sort);
+}
@@ -0,0 +1,28 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.services;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.dto.VentasRebuildResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.models.VentasRollup;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+public interface VentasService {
+    /**
+     * Suma los pedidos nuevos y resta los anteriores de los agregados
+     * No falla nunca: si no se puede escribir se avisa en el log y lo corrige la reconstrucción
+     *
+     * @param nuevos     Pedidos guardados
+     * @param anteriores Pedidos borrados o versiones anteriores de los actualizados
+     */
+    void apply(List<Pedido> nuevos, List<Pedido> anteriores);
+
+    List<VentasRollup> findProductos(LocalDate desde, LocalDate hasta, Long idProducto);
+
+    List<VentasRollup> findCategorias(LocalDate desde, LocalDate hasta, String categoria);
+
+    List<VentasRollup> findUsuarios(YearMonth desde, YearMonth hasta, Long idUsuario);
+
+    VentasRebuildResponse rebuild();
+}
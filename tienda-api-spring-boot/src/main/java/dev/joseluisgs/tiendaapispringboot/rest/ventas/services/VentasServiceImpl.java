@@ -0,0 +1,372 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.services;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoSearchView;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.dto.VentasRebuildResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.exceptions.VentasBadRequest;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.models.VentasRollup;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.models.VentasTipo;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.repositories.VentasRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.*;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Agregados de ventas por producto y día, categoría y día y usuario y mes
+ * Cada pedido que se guarda, cambia o borra suma o resta lo suyo con un solo bulk de $inc, así que los informes
+ * leen unos pocos documentos en vez de recorrer los pedidos. Si alguna escritura se pierde, la reconstrucción
+ * los vuelve a calcular desde los pedidos con agregaciones de Mongo, un mes en cada hilo.
+ * La categoría es la que tiene el producto al registrar el pedido; al reconstruir se usa la actual.
+ */
+@Service
+@Slf4j
+public class VentasServiceImpl implements VentasService {
+    static final String SIN_CATEGORIA = "SIN_CATEGORIA";
+    private static final long MAX_DIAS = 366;
+    private static final long MAX_MESES = 120;
+    private static final DateTimeFormatter DIA = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final DateTimeFormatter MES = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private final VentasRepository ventasRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ProductosRepository productosRepository;
+
+    // Meses que se reconstruyen a la vez
+    @Value("${ventas.rebuild.parallelism:4}")
+    private int rebuildParallelism;
+
+    @Autowired
+    public VentasServiceImpl(VentasRepository ventasRepository, MongoTemplate mongoTemplate, ProductosRepository productosRepository) {
+        this.ventasRepository = ventasRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.productosRepository = productosRepository;
+    }
+
+    @Override
+    public void apply(List<Pedido> nuevos, List<Pedido> anteriores) {
+        if (nuevos.isEmpty() && anteriores.isEmpty()) {
+            return;
+        }
+        try {
+            // Una sola consulta para las categorías de todos los productos
+            var categorias = categorias(Stream.concat(nuevos.stream(), anteriores.stream())
+                    .filter(pedido -> pedido.getLineasPedido() != null)
+                    .flatMap(pedido -> pedido.getLineasPedido().stream())
+                    .map(LineaPedido::getIdProducto)
+                    .collect(Collectors.toSet()));
+
+            Map<String, VentasRollup> deltas = new HashMap<>();
+            nuevos.forEach(pedido -> merge(deltas, ventasPedido(pedido, categorias), 1));
+            anteriores.forEach(pedido -> merge(deltas, ventasPedido(pedido, categorias), -1));
+
+            // Una actualización que no cambia nada no escribe nada
+            var cambios = deltas.values().stream()
+                    .filter(delta -> delta.getPedidos() != 0 || delta.getUnidades() != 0 || delta.getImporte() != 0)
+                    .toList();
+            if (cambios.isEmpty()) {
+                return;
+            }
+            var now = LocalDateTime.now();
+            var bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VentasRollup.class);
+            cambios.forEach(delta -> bulk.upsert(byId(delta.getId()), new Update()
+                    .inc("unidades", delta.getUnidades())
+                    .inc("importe", delta.getImporte())
+                    .inc("pedidos", delta.getPedidos())
+                    .setOnInsert("tipo", delta.getTipo().name())
+                    .setOnInsert("clave", delta.getClave())
+                    .setOnInsert("periodo", delta.getPeriodo())
+                    .set("updatedAt", now)));
+            bulk.execute();
+        } catch (RuntimeException e) {
+            // El pedido ya está guardado, no lo vamos a deshacer por esto
+            log.warn("No se han podido actualizar las ventas de {} pedidos, se corregirán al reconstruirlas: {}",
+                    nuevos.size() + anteriores.size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public List<VentasRollup> findProductos(LocalDate desde, LocalDate hasta, Long idProducto) {
+        log.info("Obteniendo ventas por producto entre {} y {}", desde, hasta);
+        checkRango(desde, hasta, ChronoUnit.DAYS.between(desde, hasta), MAX_DIAS, "días");
+        return find(VentasTipo.PRODUCTO_DIA, DIA.format(desde), DIA.format(hasta), idProducto != null ? idProducto.toString() : null);
+    }
+
+    @Override
+    public List<VentasRollup> findCategorias(LocalDate desde, LocalDate hasta, String categoria) {
+        log.info("Obteniendo ventas por categoría entre {} y {}", desde, hasta);
+        checkRango(desde, hasta, ChronoUnit.DAYS.between(desde, hasta), MAX_DIAS, "días");
+        return find(VentasTipo.CATEGORIA_DIA, DIA.format(desde), DIA.format(hasta), categoria);
+    }
+
+    @Override
+    public List<VentasRollup> findUsuarios(YearMonth desde, YearMonth hasta, Long idUsuario) {
+        log.info("Obteniendo ventas por usuario entre {} y {}", desde, hasta);
+        checkRango(desde, hasta, ChronoUnit.MONTHS.between(desde, hasta), MAX_MESES, "meses");
+        return find(VentasTipo.USUARIO_MES, MES.format(desde), MES.format(hasta), idUsuario != null ? idUsuario.toString() : null);
+    }
+
+    private void checkRango(Comparable<?> desde, Comparable<?> hasta, long longitud, long maximo, String unidad) {
+        if (longitud < 0) {
+            throw new VentasBadRequest("La fecha de inicio " + desde + " es posterior a la de fin " + hasta);
+        }
+        if (longitud > maximo) {
+            throw new VentasBadRequest("El rango de fechas no puede superar los " + maximo + " " + unidad);
+        }
+    }
+
+    /**
+     * Los agregados de un tipo entre dos periodos son un rango del _id, ordenados por periodo y clave
+     */
+    private List<VentasRollup> find(VentasTipo tipo, String desde, String hasta, String clave) {
+        var inicio = tipo.name() + VentasRollup.SEPARATOR + desde + VentasRollup.SEPARATOR;
+        var fin = tipo.name() + VentasRollup.SEPARATOR + hasta + VentasRollup.SEPARATOR + Character.MAX_VALUE;
+        var sort = Sort.by("id");
+        return clave != null
+                ? ventasRepository.findByIdRangeAndClave(inicio, fin, clave, sort)
+                : ventasRepository.findByIdRange(inicio, fin, sort);
+    }
+
+    /**
+     * Vuelve a calcular todos los agregados desde los pedidos, cada mes en paralelo
+     * Conviene lanzarla con poco tráfico: lo que cambie mientras se calcula un mes se corrige en la siguiente
+     */
+    @Override
+    public VentasRebuildResponse rebuild() {
+        var start = System.currentTimeMillis();
+        var inicio = LocalDateTime.now();
+        var meses = meses();
+        log.info("Reconstruyendo las ventas de {} meses", meses.size());
+
+        var executor = Executors.newFixedThreadPool(Math.max(1, Math.min(rebuildParallelism, meses.size())));
+        try {
+            var tareas = meses.stream()
+                    .map(mes -> CompletableFuture.supplyAsync(() -> rebuild(mes), executor))
+                    .toList();
+            var documentos = tareas.stream().mapToLong(CompletableFuture::join).sum();
+
+            // Lo que no se ha vuelto a escribir ya no corresponde a ningún pedido
+            // Los meses anteriores ya están en el archivo de pedidos, sus ventas no se recalculan y se conservan
+            var borrados = meses.isEmpty() ? 0 : mongoTemplate.remove(Query.query(Criteria.where("updatedAt").lt(inicio)
+                    .and("periodo").gte(meses.get(0).toString())), VentasRollup.class).getDeletedCount();
+            var millis = System.currentTimeMillis() - start;
+            log.info("Ventas reconstruidas: {} agregados escritos y {} borrados en {} ms", documentos, borrados, millis);
+            return new VentasRebuildResponse(meses.size(), documentos, borrados, millis);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Meses entre el primer y el último pedido (los que no están archivados)
+     */
+    private List<YearMonth> meses() {
+        var primero = primerPedido(Sort.Direction.ASC);
+        var ultimo = primerPedido(Sort.Direction.DESC);
+        if (primero == null || ultimo == null) {
+            return List.of();
+        }
+        List<YearMonth> meses = new ArrayList<>();
+        for (var mes = YearMonth.from(primero.getCreatedAt()); !mes.isAfter(YearMonth.from(ultimo.getCreatedAt())); mes = mes.plusMonths(1)) {
+            meses.add(mes);
+        }
+        return meses;
+    }
+
+    private Pedido primerPedido(Sort.Direction direction) {
+        var query = new Query().with(Sort.by(direction, "createdAt")).limit(1);
+        query.fields().include("createdAt");
+        return mongoTemplate.findOne(query, Pedido.class);
+    }
+
+    /**
+     * Recalcula y guarda los agregados de un mes
+     *
+     * @return Agregados escritos
+     */
+    long rebuild(YearMonth mes) {
+        var productos = mongoTemplate.aggregate(newAggregation(Pedido.class, sumarPorClave(lineasPorPedido(mes, "%Y-%m-%d", "lineasPedido.idProducto"))), Document.class)
+                .getMappedResults().stream()
+                .map(document -> rollup(VentasTipo.PRODUCTO_DIA, document))
+                .toList();
+        var usuarios = mongoTemplate.aggregate(newAggregation(Pedido.class, sumarPorClave(lineasPorPedido(mes, "%Y-%m", "idUsuario"))), Document.class)
+                .getMappedResults().stream()
+                .map(document -> rollup(VentasTipo.USUARIO_MES, document))
+                .toList();
+
+        // La categoría no está en Mongo: recorremos los pedidos ya sumados por producto y los agrupamos aquí
+        var categorias = categorias(productos.stream().map(rollup -> Long.valueOf(rollup.getClave())).collect(Collectors.toSet()));
+        var operations = lineasPorPedido(mes, "%Y-%m-%d", "lineasPedido.idProducto");
+        operations.add(group("periodo", "pedido")
+                .push("clave").as("productos")
+                .push("unidades").as("unidades")
+                .push("importe").as("importes"));
+        Map<String, VentasRollup> porCategoria = new HashMap<>();
+        try (var pedidos = mongoTemplate.aggregateStream(newAggregation(Pedido.class, operations), Document.class)) {
+            pedidos.forEach(document -> merge(porCategoria, ventasCategorias(document, categorias), 1));
+        }
+
+        var total = guardar(productos) + guardar(usuarios) + guardar(porCategoria.values());
+        log.debug("Ventas de {} reconstruidas: {} agregados", mes, total);
+        return total;
+    }
+
+    /**
+     * Líneas de los pedidos del mes sumadas por periodo, clave y pedido, así cada pedido cuenta una sola vez
+     * aunque repita producto. El periodo se calcula en la zona de la aplicación, como al guardar los pedidos.
+     */
+    private List<AggregationOperation> lineasPorPedido(YearMonth mes, String formato, String clave) {
+        return new ArrayList<>(List.of(
+                match(Criteria.where("createdAt").gte(mes.atDay(1).atStartOfDay()).lt(mes.plusMonths(1).atDay(1).atStartOfDay())),
+                unwind("lineasPedido"),
+                project()
+                        .and(DateOperators.dateOf("createdAt")
+                                .withTimezone(DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId()))
+                                .toString(formato)).as("periodo")
+                        .and(clave).as("clave")
+                        .and("_id").as("pedido")
+                        .and("lineasPedido.cantidad").as("unidades")
+                        .and(ArithmeticOperators.Multiply.valueOf("lineasPedido.cantidad").multiplyBy("lineasPedido.precioProducto")).as("importe"),
+                group("periodo", "clave", "pedido")
+                        .sum("unidades").as("unidades")
+                        .sum("importe").as("importe")
+        ));
+    }
+
+    private List<AggregationOperation> sumarPorClave(List<AggregationOperation> operations) {
+        operations.add(group("periodo", "clave")
+                .sum("unidades").as("unidades")
+                .sum("importe").as("importe")
+                .count().as("pedidos"));
+        return operations;
+    }
+
+    private VentasRollup rollup(VentasTipo tipo, Document document) {
+        var id = document.get("_id", Document.class);
+        var rollup = rollup(tipo, id.getString("periodo"), String.valueOf(id.get("clave")));
+        rollup.setUnidades(((Number) document.get("unidades")).longValue());
+        rollup.setImporte(((Number) document.get("importe")).doubleValue());
+        rollup.setPedidos(((Number) document.get("pedidos")).longValue());
+        return rollup;
+    }
+
+    /**
+     * Ventas de un pedido por categoría, a partir de sus líneas ya sumadas por producto
+     */
+    private Collection<VentasRollup> ventasCategorias(Document document, Map<Long, String> categorias) {
+        var periodo = document.get("_id", Document.class).getString("periodo");
+        var productos = document.getList("productos", Number.class);
+        var unidades = document.getList("unidades", Number.class);
+        var importes = document.getList("importes", Number.class);
+        Map<String, VentasRollup> ventas = new HashMap<>();
+        for (int i = 0; i < productos.size(); i++) {
+            var categoria = categorias.getOrDefault(productos.get(i).longValue(), SIN_CATEGORIA);
+            sumar(ventas, VentasTipo.CATEGORIA_DIA, periodo, categoria, unidades.get(i).longValue(), importes.get(i).doubleValue());
+        }
+        return ventas.values();
+    }
+
+    /**
+     * Sustituye los valores de los agregados por los recalculados
+     */
+    private long guardar(Collection<VentasRollup> rollups) {
+        if (rollups.isEmpty()) {
+            return 0;
+        }
+        var now = LocalDateTime.now();
+        var bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VentasRollup.class);
+        rollups.forEach(rollup -> bulk.upsert(byId(rollup.getId()), new Update()
+                .set("tipo", rollup.getTipo().name())
+                .set("clave", rollup.getClave())
+                .set("periodo", rollup.getPeriodo())
+                .set("unidades", rollup.getUnidades())
+                .set("importe", rollup.getImporte())
+                .set("pedidos", rollup.getPedidos())
+                .set("updatedAt", now)));
+        bulk.execute();
+        return rollups.size();
+    }
+
+    /**
+     * Ventas de un pedido en cada agregado: producto y día, categoría y día y usuario y mes
+     */
+    private Collection<VentasRollup> ventasPedido(Pedido pedido, Map<Long, String> categorias) {
+        if (pedido.getLineasPedido() == null || pedido.getCreatedAt() == null) {
+            return List.of();
+        }
+        var dia = DIA.format(pedido.getCreatedAt());
+        var mes = MES.format(pedido.getCreatedAt());
+        Map<String, VentasRollup> ventas = new HashMap<>();
+        pedido.getLineasPedido().forEach(linea -> {
+            long unidades = linea.getCantidad();
+            double importe = linea.getCantidad() * linea.getPrecioProducto();
+            sumar(ventas, VentasTipo.PRODUCTO_DIA, dia, String.valueOf(linea.getIdProducto()), unidades, importe);
+            sumar(ventas, VentasTipo.CATEGORIA_DIA, dia, categorias.getOrDefault(linea.getIdProducto(), SIN_CATEGORIA), unidades, importe);
+            sumar(ventas, VentasTipo.USUARIO_MES, mes, String.valueOf(pedido.getIdUsuario()), unidades, importe);
+        });
+        return ventas.values();
+    }
+
+    private static void sumar(Map<String, VentasRollup> ventas, VentasTipo tipo, String periodo, String clave, long unidades, double importe) {
+        var rollup = ventas.computeIfAbsent(VentasRollup.id(tipo, periodo, clave), id -> rollup(tipo, periodo, clave));
+        rollup.setUnidades(rollup.getUnidades() + unidades);
+        rollup.setImporte(rollup.getImporte() + importe);
+    }
+
+    /**
+     * Suma (o resta) las ventas de un pedido, que cuenta como un pedido en cada agregado en el que aparece
+     */
+    private static void merge(Map<String, VentasRollup> total, Collection<VentasRollup> ventasPedido, int signo) {
+        ventasPedido.forEach(ventas -> {
+            var rollup = total.computeIfAbsent(ventas.getId(), id -> rollup(ventas.getTipo(), ventas.getPeriodo(), ventas.getClave()));
+            rollup.setUnidades(rollup.getUnidades() + signo * ventas.getUnidades());
+            rollup.setImporte(rollup.getImporte() + signo * ventas.getImporte());
+            rollup.setPedidos(rollup.getPedidos() + signo);
+        });
+    }
+
+    private static VentasRollup rollup(VentasTipo tipo, String periodo, String clave) {
+        return VentasRollup.builder()
+                .id(VentasRollup.id(tipo, periodo, clave))
+                .tipo(tipo)
+                .periodo(periodo)
+                .clave(clave)
+                .build();
+    }
+
+    private Map<Long, String> categorias(Set<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return productosRepository.findSearchViewsByIdIn(ids).stream()
+                .collect(Collectors.toMap(ProductoSearchView::id, ProductoSearchView::categoriaNombre, (a, b) -> a));
+    }
+
+    private static Query byId(String id) {
+        return Query.query(Criteria.where("_id").is(id));
+    }
+}
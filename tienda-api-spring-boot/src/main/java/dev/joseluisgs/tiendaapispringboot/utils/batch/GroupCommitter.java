@@ -0,0 +1,200 @@
+package dev.joseluisgs.tiendaapispringboot.utils.batch;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Junta las peticiones que llegan a la vez y las procesa en lotes (group commit)
+ * Un hilo recoge lo que llega durante una ventana corta, o hasta llenar el lote, y se lo pasa entero al procesador.
+ * Mientras procesa un lote se van juntando las siguientes peticiones, así el número de viajes a la base de datos
+ * depende del tamaño de los lotes y no del número de peticiones.
+ *
+ * @param <T> Tipo de las peticiones
+ * @param <R> Tipo de los resultados
+ */
+@Slf4j
+public class GroupCommitter<T, R> implements AutoCloseable {
+    private final String name;
+    private final int maxBatch;
+    private final Duration window;
+    private final Duration timeout;
+    private final BlockingQueue<Entry<T, R>> queue;
+    private final Consumer<List<Entry<T, R>>> processor;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * @param name      Nombre, para el hilo y los logs
+     * @param maxBatch  Máximo de peticiones por lote
+     * @param window    Lo que se espera a que lleguen más peticiones desde la primera del lote
+     * @param capacity  Máximo de peticiones en cola
+     * @param timeout   Lo que espera cada petición a su resultado
+     * @param processor Procesa un lote y completa cada una de sus peticiones
+     */
+    public GroupCommitter(String name, int maxBatch, Duration window, int capacity, Duration timeout, Consumer<List<Entry<T, R>>> processor) {
+        this.name = name;
+        this.maxBatch = maxBatch;
+        this.window = window;
+        this.timeout = timeout;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.processor = processor;
+        this.dispatcher = new Thread(this::run, name);
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Encola la petición y espera a que se procese su lote
+     * Si no se ha procesado a tiempo se cancela y no se procesará, así se puede reintentar sin duplicarla.
+     * Si su lote ya está en marcha se espera a su resultado: contestar antes podría provocar un reintento
+     * de algo que se va a guardar.
+     *
+     * @param item Petición
+     * @return Resultado
+     * @throws RejectedExecutionException Si la cola está llena, está parado o no ha entrado en un lote a tiempo
+     */
+    public R submit(T item) {
+        var entry = new Entry<T, R>(item);
+        if (!running || !queue.offer(entry)) {
+            throw new RejectedExecutionException(name + " no admite más peticiones ahora mismo");
+        }
+        try {
+            try {
+                return entry.result().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (entry.cancel()) {
+                    throw new RejectedExecutionException(name + " no ha respondido en " + timeout);
+                }
+                // Ya está en un lote, el procesador siempre lo completa
+                log.warn("{}: la petición ya se está procesando tras {}, se espera a su resultado", name, timeout);
+                return entry.result().get();
+            }
+        } catch (ExecutionException e) {
+            // La excepción tal cual, así llega al controlador con su código de estado
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Si ya estaba en un lote no se puede reintentar, no sabemos si se ha guardado
+            if (entry.cancel()) {
+                throw new RejectedExecutionException(name + " interrumpido");
+            }
+            throw new IllegalStateException(name + " interrumpido con la petición en proceso");
+        }
+    }
+
+    private void run() {
+        List<Entry<T, R>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + window.toNanos();
+                while (batch.size() < maxBatch) {
+                    // Lo que ya está en cola entra sin esperar
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || remaining <= 0) {
+                        break;
+                    }
+                    var next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                log.warn("{} interrumpido", name);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Entry<T, R>> batch) {
+        // Las que ya se han cancelado por tiempo no se procesan, las demás ya no se pueden cancelar
+        batch.removeIf(entry -> !entry.claim());
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            processor.accept(List.copyOf(batch));
+        } catch (RuntimeException e) {
+            log.error("Error procesando un lote de {} en {}", batch.size(), name, e);
+            batch.forEach(entry -> entry.fail(e));
+        }
+        // Ninguna petición se puede quedar esperando
+        batch.forEach(entry -> entry.fail(new IllegalStateException("Petición sin resultado en " + name)));
+    }
+
+    /**
+     * Deja de admitir peticiones y espera a que se procese lo que está en cola
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            dispatcher.join(timeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Petición de un lote con su resultado
+     * Pasa de pendiente a procesada (la coge el lote) o a cancelada (se acaba el tiempo), nunca a las dos
+     */
+    public static final class Entry<T, R> {
+        private static final int PENDING = 0;
+        private static final int CLAIMED = 1;
+        private static final int CANCELLED = 2;
+
+        private final T item;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        Entry(T item) {
+            this.item = item;
+        }
+
+        public T item() {
+            return item;
+        }
+
+        CompletableFuture<R> result() {
+            return result;
+        }
+
+        public void complete(R value) {
+            result.complete(value);
+        }
+
+        public void fail(Throwable error) {
+            result.completeExceptionally(error);
+        }
+
+        boolean claim() {
+            return state.compareAndSet(PENDING, CLAIMED);
+        }
+
+        boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                result.cancel(false);
+                return true;
+            }
+            return false;
+        }
+    }
+}
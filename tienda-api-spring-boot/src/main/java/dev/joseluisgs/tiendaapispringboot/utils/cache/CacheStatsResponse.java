@@ -0,0 +1,26 @@
+package dev.joseluisgs.tiendaapispringboot.utils.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Estadísticas de una cache para poder dimensionarla
+ */
+public record CacheStatsResponse(
+        String name,
+        long size,
+        long hits,
+        long misses,
+        double hitRate,
+        long evictions
+) {
+    public static CacheStatsResponse of(String name, long size, CacheStats stats) {
+        return new CacheStatsResponse(
+                name,
+                size,
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.evictionCount()
+        );
+    }
+}
@@ -0,0 +1,48 @@
+package dev.joseluisgs.tiendaapispringboot.utils.pagination;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor opaco para la paginación por clave (keyset)
+ * Guarda la ordenación y la última clave de ordenación e id devueltos, en JSON y Base64 URL
+ * El cliente no debe interpretarlo, solo devolverlo tal cual para pedir la siguiente página
+ */
+public record PageCursor(
+        String sortBy,
+        String direction,
+        String value,
+        String id
+) {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mapper.writeValueAsBytes(this));
+        } catch (IOException e) {
+            throw new IllegalStateException("No se ha podido codificar el cursor", e);
+        }
+    }
+
+    /**
+     * Decodifica un cursor
+     *
+     * @param cursor Cursor en Base64 URL
+     * @return Cursor decodificado
+     * @throws IllegalArgumentException Si el cursor no es válido
+     */
+    public static PageCursor decode(String cursor) {
+        try {
+            var pageCursor = mapper.readValue(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), PageCursor.class);
+            if (pageCursor.sortBy() == null || pageCursor.direction() == null || pageCursor.id() == null) {
+                throw new IllegalArgumentException("Cursor incompleto");
+            }
+            return pageCursor;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cursor no válido: " + cursor, e);
+        }
+    }
+}
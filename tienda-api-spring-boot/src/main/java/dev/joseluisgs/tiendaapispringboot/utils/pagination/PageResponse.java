@@ -1,28 +1,35 @@
 package dev.joseluisgs.tiendaapispringboot.utils.pagination;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
 
 import java.util.List;
 
+// Los campos nulos no se envían (por ejemplo totales en modo cursor o el cursor en modo página)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record PageResponse<T>(
         List<T> content,
-        int totalPages,
-        long totalElements,
+        Integer totalPages,
+        Long totalElements,
         int pageSize,
-        int pageNumber,
+        Integer pageNumber,
         int totalPageElements,
         boolean empty,
         boolean first,
         boolean last,
         String sortBy,
-        String direction
+        String direction,
+        String nextCursor
 ) {
     // Podemos hacer un mapper en este caso
-    public static <T> PageResponse<T> of(Page<T> page, String sortBy, String direction) {
+    // Si es un Slice (sin total) no tenemos ni totalPages ni totalElements
+    public static <T> PageResponse<T> of(Slice<T> page, String sortBy, String direction) {
         return new PageResponse<>(
                 page.getContent(),
-                page.getTotalPages(),
-                page.getTotalElements(),
+                page instanceof Page<T> p ? p.getTotalPages() : null,
+                page instanceof Page<T> p ? p.getTotalElements() : null,
                 page.getSize(),
                 page.getNumber(),
                 page.getNumberOfElements(),
@@ -30,7 +37,26 @@ public record PageResponse<T>(
                 page.isFirst(),
                 page.isLast(),
                 sortBy,
-                direction
+                direction,
+                null
         );
     }
-}
\ No newline at end of file
+
+    // En modo cursor no hay número de página ni totales, solo el cursor para seguir
+    public static <T> PageResponse<T> of(Window<T> window, int size, boolean first, String nextCursor, String sortBy, String direction) {
+        return new PageResponse<>(
+                window.getContent(),
+                null,
+                null,
+                size,
+                null,
+                window.size(),
+                window.isEmpty(),
+                first,
+                !window.hasNext(),
+                sortBy,
+                direction,
+                nextCursor
+        );
+    }
+}
@@ -1,6 +1,8 @@
 package dev.joseluisgs.tiendaapispringboot.utils.pagination;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -8,7 +10,8 @@ import org.springframework.web.util.UriComponentsBuilder;
 @Component
 public class PaginationLinksUtils {
 
-    public String createLinkHeader(Page<?> page, UriComponentsBuilder uriBuilder) {
+    // Con un Slice no sabemos cuántas páginas hay, así que no hay enlace last
+    public String createLinkHeader(Slice<?> page, UriComponentsBuilder uriBuilder) {
         final StringBuilder linkHeader = new StringBuilder();
 
         if (page.hasNext()) {
@@ -28,8 +31,8 @@ public class PaginationLinksUtils {
             linkHeader.append(buildLinkHeader(uri, "first"));
         }
 
-        if (!page.isLast()) {
-            String uri = constructUri(page.getTotalPages() - 1, page.getSize(), uriBuilder);
+        if (page instanceof Page<?> p && !p.isLast()) {
+            String uri = constructUri(p.getTotalPages() - 1, p.getSize(), uriBuilder);
             appendCommaIfNecessary(linkHeader);
             linkHeader.append(buildLinkHeader(uri, "last"));
         }
@@ -38,6 +41,18 @@ public class PaginationLinksUtils {
         return linkHeader.toString();
     }
 
+    // En modo cursor solo sabemos cuál es la siguiente, no hay prev ni last
+    public String createLinkHeader(Window<?> window, String nextCursor, UriComponentsBuilder uriBuilder) {
+        final StringBuilder linkHeader = new StringBuilder();
+
+        if (window.hasNext() && nextCursor != null) {
+            String uri = uriBuilder.replaceQueryParam("page").replaceQueryParam("cursor", nextCursor).build().encode().toUriString();
+            linkHeader.append(buildLinkHeader(uri, "next"));
+        }
+
+        return linkHeader.toString();
+    }
+
     private String constructUri(int newPageNumber, int size, UriComponentsBuilder uriBuilder) {
         return uriBuilder.replaceQueryParam("page", newPageNumber).replaceQueryParam("size", size).build().encode().toUriString();
     }
@@ -0,0 +1,21 @@
+package dev.joseluisgs.tiendaapispringboot.utils.pagination;
+
+import org.springframework.data.domain.*;
+
+/**
+ * Utilidades para listar por Slice, sin la consulta COUNT de Page
+ * Pedimos size + 1 filas y si llega la de más sabemos que hay siguiente página
+ */
+public final class SliceUtils {
+    private SliceUtils() {
+    }
+
+    // Posición de desplazamiento equivalente a la página pedida (en Spring Data 3.1 el offset es el del primer elemento)
+    public static ScrollPosition offsetOf(Pageable pageable) {
+        return ScrollPosition.offset(pageable.getOffset());
+    }
+
+    public static <T> Slice<T> toSlice(Window<T> window, Pageable pageable) {
+        return new SliceImpl<>(window.getContent(), pageable, window.hasNext());
+    }
+}
@@ -1,7 +1,6 @@
 package dev.joseluisgs.tiendaapispringboot.web.productos.controllers;
 
-import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
-import dev.joseluisgs.tiendaapispringboot.rest.categorias.services.CategoriasService;
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.services.CategoriasNameResolver;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoCreateRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoUpdateRequest;
@@ -33,14 +32,14 @@ import java.util.Optional;
 @Slf4j
 public class ProductosWebController {
     private final ProductosService productosService;
-    private final CategoriasService categoriasService;
+    private final CategoriasNameResolver categoriasNameResolver;
     private final MessageSource messageSource;
     private final UserStore userSession;
 
     @Autowired
-    public ProductosWebController(ProductosService productosService, CategoriasService categoriasService, MessageSource messageSource, UserStore userSession) {
+    public ProductosWebController(ProductosService productosService, CategoriasNameResolver categoriasNameResolver, MessageSource messageSource, UserStore userSession) {
         this.productosService = productosService;
-        this.categoriasService = categoriasService;
+        this.categoriasNameResolver = categoriasNameResolver;
         this.messageSource = messageSource;
         this.userSession = userSession;
     }
@@ -146,9 +145,7 @@ public class ProductosWebController {
             return "redirect:/productos/login";
         }
 
-        var categorias = categoriasService.findAll(Optional.empty(), Optional.empty(), PageRequest.of(0, 1000))
-                .get()
-                .map(Categoria::getNombre);
+        var categorias = categoriasNameResolver.nombres();
         var producto = ProductoCreateRequest.builder()
                 .imagen("https://via.placeholder.com/150")
                 .precio(0.0)
@@ -165,9 +162,7 @@ public class ProductosWebController {
                          Model model) {
         log.info("Create POST");
         if (result.hasErrors()) {
-            var categorias = categoriasService.findAll(Optional.empty(), Optional.empty(), PageRequest.of(0, 1000))
-                    .get()
-                    .map(Categoria::getNombre);
+            var categorias = categoriasNameResolver.nombres();
             model.addAttribute("categorias", categorias);
             return "productos/create";
         }
@@ -184,9 +179,7 @@ public class ProductosWebController {
             return "redirect:/productos/login";
         }
 
-        var categorias = categoriasService.findAll(Optional.empty(), Optional.empty(), PageRequest.of(0, 1000))
-                .get()
-                .map(Categoria::getNombre);
+        var categorias = categoriasNameResolver.nombres();
         ProductoResponse producto = productosService.findById(id);
         ProductoUpdateRequest productoUpdateRequest = ProductoUpdateRequest.builder()
                 .marca(producto.getMarca())
@@ -206,9 +199,7 @@ public class ProductosWebController {
     @PostMapping("/update/{id}")
     public String updateProduct(@PathVariable("id") Long id, @Valid @ModelAttribute("producto") ProductoUpdateRequest productoUpdateRequest, BindingResult result, Model model) {
         if (result.hasErrors()) {
-            var categorias = categoriasService.findAll(Optional.empty(), Optional.empty(), PageRequest.of(0, 1000))
-                    .get()
-                    .map(Categoria::getNombre);
+            var categorias = categoriasNameResolver.nombres();
             model.addAttribute("categorias", categorias);
             return "productos/update";
         }
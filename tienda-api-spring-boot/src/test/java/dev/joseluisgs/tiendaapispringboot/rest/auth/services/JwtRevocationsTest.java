@@ -0,0 +1,42 @@
+package dev.joseluisgs.tiendaapispringboot.rest.auth.services;
+
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtRevocations;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtRevocationsTest {
+    private final JwtRevocations revocations = new JwtRevocations(3600L, Instant.now().minusSeconds(3600));
+
+    @Test
+    void isRevoked_ShouldRejectTokensIssuedBeforeRevocation() {
+        var before = Instant.now().minusSeconds(60);
+
+        revocations.revoke(1L);
+
+        assertAll("revoked",
+                () -> assertTrue(revocations.isRevoked(1L, before)),
+                () -> assertFalse(revocations.isRevoked(2L, before)),
+                () -> assertFalse(revocations.isRevoked(1L, Instant.now().plusSeconds(5)))
+        );
+    }
+
+    @Test
+    void isRevoked_ShouldAcceptTokens_WhenUserWasNotRevoked() {
+        assertFalse(revocations.isRevoked(1L, Instant.now()));
+    }
+
+    @Test
+    void issuedBeforeStart_ShouldSendOlderTokensToTheDatabase() {
+        var startedAt = Instant.now();
+        var afterRestart = new JwtRevocations(3600L, startedAt);
+
+        assertAll("issuedBeforeStart",
+                () -> assertTrue(afterRestart.issuedBeforeStart(startedAt.minusSeconds(60))),
+                () -> assertTrue(afterRestart.issuedBeforeStart(startedAt)),
+                () -> assertFalse(afterRestart.issuedBeforeStart(startedAt.plusSeconds(1)))
+        );
+    }
+}
@@ -0,0 +1,95 @@
+package dev.joseluisgs.tiendaapispringboot.rest.auth.services;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtServiceImpl;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.Role;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtServiceImplTest {
+    private static final String SECRET = "MeGustanLosPeinosdeLeganesPorqueSonGrandesYHermosos!";
+
+    private final JwtServiceImpl jwtService = new JwtServiceImpl(SECRET, 3600L, 100);
+    private final User user = User.builder().id(1L).username("test").roles(Set.of(Role.USER, Role.ADMIN)).build();
+    private final User other = User.builder().id(2L).username("otro").build();
+
+    @Test
+    void verify_ShouldReturnClaims() {
+        var token = jwtService.generateToken(user);
+
+        var claims = jwtService.verify(token);
+
+        assertAll("verify",
+                () -> assertEquals("test", claims.username()),
+                () -> assertEquals(1L, claims.userId()),
+                () -> assertEquals(Set.of("USER", "ADMIN"), claims.roles()),
+                () -> assertTrue(claims.isStateless()),
+                () -> assertTrue(claims.expiresAt().isAfter(Instant.now())),
+                () -> assertEquals("test", jwtService.extractUserName(token)),
+                () -> assertTrue(jwtService.isTokenValid(token, user)),
+                () -> assertFalse(jwtService.isTokenValid(token, other))
+        );
+    }
+
+    @Test
+    void verify_ShouldNotBeStateless_WhenTokenHasNoIdOrRoles() {
+        var token = jwtService.generateToken(other);
+
+        var claims = jwtService.verify(token);
+
+        assertAll("verify",
+                () -> assertNull(claims.roles()),
+                () -> assertFalse(claims.isStateless())
+        );
+    }
+
+    @Test
+    void verify_ShouldReturnCachedClaims_WhenTokenWasVerifiedBefore() {
+        var token = jwtService.generateToken(user);
+
+        var first = jwtService.verify(token);
+        var second = jwtService.verify(token);
+
+        assertSame(first, second);
+    }
+
+    @Test
+    void verify_ShouldVerifyEveryTime_WhenCacheIsDisabled() {
+        var sinCache = new JwtServiceImpl(SECRET, 3600L, 0);
+        var token = sinCache.generateToken(user);
+
+        var first = sinCache.verify(token);
+        var second = sinCache.verify(token);
+
+        assertAll("sinCache",
+                () -> assertNotSame(first, second),
+                () -> assertEquals(first, second)
+        );
+    }
+
+    @Test
+    void verify_ShouldRejectTamperedSignature() {
+        var token = jwtService.generateToken(user);
+        var forged = new JwtServiceImpl("OtroSecretoQueNoEsElDelServidorYQueEsLargo!", 3600L, 100).generateToken(other);
+        // Cabecera y datos de un token con la firma de otro
+        var tampered = forged.substring(0, forged.lastIndexOf('.')) + token.substring(token.lastIndexOf('.'));
+
+        assertAll("tampered",
+                () -> assertThrows(JWTVerificationException.class, () -> jwtService.verify(forged)),
+                () -> assertThrows(JWTVerificationException.class, () -> jwtService.verify(tampered)),
+                () -> assertFalse(jwtService.isTokenValid(tampered, other))
+        );
+    }
+
+    @Test
+    void verify_ShouldRejectExpiredToken() {
+        var expired = new JwtServiceImpl(SECRET, -60L, 100).generateToken(user);
+
+        assertThrows(JWTVerificationException.class, () -> jwtService.verify(expired));
+    }
+}
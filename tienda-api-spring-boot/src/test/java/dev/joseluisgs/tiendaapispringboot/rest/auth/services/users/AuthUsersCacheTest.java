@@ -0,0 +1,60 @@
+package dev.joseluisgs.tiendaapispringboot.rest.auth.services.users;
+
+import dev.joseluisgs.tiendaapispringboot.rest.users.exceptions.UserNotFound;
+import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthUsersCacheTest {
+    private final AuthUsersCache cache = new AuthUsersCache(10, Duration.ofMinutes(1));
+    private final User user = User.builder().id(1L).username("test").build();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, UserDetails> loader = username -> {
+        loads.incrementAndGet();
+        return user;
+    };
+
+    @Test
+    void get_ShouldLoadOnce() {
+        cache.get("test", loader);
+        var result = cache.get("test", loader);
+
+        assertAll("get",
+                () -> assertSame(user, result),
+                () -> assertEquals(1, loads.get()),
+                () -> assertEquals(1, cache.stats().hits()),
+                () -> assertEquals(1, cache.stats().misses())
+        );
+    }
+
+    @Test
+    void evict_ShouldReloadUser() {
+        cache.get("test", loader);
+        cache.evict("test");
+        cache.get("test", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_ShouldNotCacheMissingUsers() {
+        Function<String, UserDetails> notFound = username -> {
+            loads.incrementAndGet();
+            throw new UserNotFound("Usuario con username " + username + " no encontrado");
+        };
+
+        assertThrows(UserNotFound.class, () -> cache.get("nadie", notFound));
+        assertThrows(UserNotFound.class, () -> cache.get("nadie", notFound));
+
+        assertAll("notFound",
+                () -> assertEquals(2, loads.get()),
+                () -> assertEquals(0, cache.stats().size())
+        );
+    }
+}
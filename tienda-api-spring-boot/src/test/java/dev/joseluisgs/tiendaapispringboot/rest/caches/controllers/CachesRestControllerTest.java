@@ -0,0 +1,118 @@
+package dev.joseluisgs.tiendaapispringboot.rest.caches.controllers;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.joseluisgs.tiendaapispringboot.rest.caches.exceptions.CacheNotFound;
+import dev.joseluisgs.tiendaapispringboot.rest.caches.services.CachesService;
+import dev.joseluisgs.tiendaapispringboot.utils.cache.CacheStatsResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ExtendWith(MockitoExtension.class) // Extensión de Mockito para usarlo
+@WithMockUser(username = "admin", password = "admin", roles = {"ADMIN", "USER"}) // Usuario de prueba (admin, tiene de rol usaurio y admin)
+class CachesRestControllerTest {
+    private final String myEndpoint = "/v1/admin/caches";
+
+    private final CacheStatsResponse productosStats = new CacheStatsResponse("productos", 2, 8, 2, 0.8, 1);
+    private final CacheStatsResponse categoriasStats = new CacheStatsResponse("categorias", 0, 0, 0, 1.0, 0);
+    private final ObjectMapper mapper = new ObjectMapper();
+    @Autowired
+    MockMvc mockMvc; // Cliente MVC
+    @MockBean
+    private CachesService cachesService;
+
+    @Autowired
+    public CachesRestControllerTest(CachesService cachesService) {
+        this.cachesService = cachesService;
+    }
+
+    @Test
+    @WithMockUser(username = "user", password = "user", roles = {"USER"})
+    void getAllCaches_NotAdmin() throws Exception {
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint)
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        assertEquals(403, response.getStatus());
+    }
+
+    @Test
+    void getAllCaches() throws Exception {
+        // Arrange
+        when(cachesService.findAll()).thenReturn(List.of(productosStats, categoriasStats));
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint)
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        List<CacheStatsResponse> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        });
+
+        // Assert
+        assertAll("getAllCaches",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(2, res.size()),
+                () -> assertEquals(productosStats, res.get(0))
+        );
+
+        // Verify
+        verify(cachesService, times(1)).findAll();
+    }
+
+    @Test
+    void getCacheByName() throws Exception {
+        // Arrange
+        when(cachesService.findByName("productos")).thenReturn(productosStats);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/productos")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        CacheStatsResponse res = mapper.readValue(response.getContentAsString(), CacheStatsResponse.class);
+
+        // Assert
+        assertAll("getCacheByName",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(productosStats, res)
+        );
+
+        // Verify
+        verify(cachesService, times(1)).findByName("productos");
+    }
+
+    @Test
+    void getCacheByName_NotFound() throws Exception {
+        // Arrange
+        when(cachesService.findByName("inexistente")).thenThrow(new CacheNotFound("inexistente"));
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/inexistente")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(404, response.getStatus());
+    }
+}
@@ -0,0 +1,83 @@
+package dev.joseluisgs.tiendaapispringboot.rest.caches.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import dev.joseluisgs.tiendaapispringboot.config.cache.CacheConfig;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.users.AuthUsersCache;
+import dev.joseluisgs.tiendaapispringboot.rest.caches.exceptions.CacheNotFound;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosQueryCache;
+import dev.joseluisgs.tiendaapispringboot.utils.cache.CacheStatsResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachesServiceImplTest {
+    // Usamos la configuración real, con una cache de categorías muy pequeña para ver el desalojo
+    private final CacheManager cacheManager = new CacheConfig().cacheManager(
+            new MockEnvironment().withProperty("cache.categorias.max-size", "2")
+    );
+    private final ProductosCache productosCache = new ProductosCache(10, Duration.ofMinutes(1));
+    private final ProductosQueryCache productosQueryCache = new ProductosQueryCache(10, Duration.ofMinutes(1));
+    private final AuthUsersCache authUsersCache = new AuthUsersCache(10, Duration.ofMinutes(1));
+    private final CachesServiceImpl cachesService = new CachesServiceImpl(cacheManager, productosCache, productosQueryCache, authUsersCache);
+
+    @Test
+    void findAll_ShouldReturnStatsOfEveryCache() {
+        // Act
+        var stats = cachesService.findAll();
+
+        // Assert
+        assertAll("findAll",
+                () -> assertEquals(CacheConfig.CACHE_NAMES.size() + 3, stats.size()),
+                () -> assertTrue(stats.stream().map(CacheStatsResponse::name).toList().containsAll(CacheConfig.CACHE_NAMES)),
+                () -> assertTrue(stats.stream().anyMatch(s -> s.name().equals(ProductosCache.NAME))),
+                () -> assertTrue(stats.stream().anyMatch(s -> s.name().equals(ProductosQueryCache.NAME))),
+                () -> assertTrue(stats.stream().anyMatch(s -> s.name().equals(AuthUsersCache.NAME)))
+        );
+    }
+
+    @Test
+    void findByName_ShouldCountHitsMissesAndEvictions() {
+        // Arrange
+        var cache = cacheManager.getCache("categorias");
+        for (long id = 1; id <= 10; id++) {
+            cache.put(id, "categoria" + id);
+        }
+        cache.get(10L);
+        cache.get(-1L);
+        // Caffeine desaloja en segundo plano, forzamos el mantenimiento
+        ((Cache<?, ?>) ((CaffeineCache) cache).getNativeCache()).cleanUp();
+
+        // Act
+        var stats = cachesService.findByName("categorias");
+
+        // Assert
+        assertAll("findByName",
+                () -> assertEquals("categorias", stats.name()),
+                () -> assertTrue(stats.size() <= 2),
+                () -> assertTrue(stats.evictions() >= 8),
+                () -> assertEquals(1, stats.misses())
+        );
+    }
+
+    @Test
+    void findByName_ShouldReturnQueryCacheStats() {
+        // Act
+        var stats = cachesService.findByName(ProductosQueryCache.NAME);
+
+        // Assert
+        assertEquals(ProductosQueryCache.NAME, stats.name());
+    }
+
+    @Test
+    void findByName_ShouldThrowCacheNotFound_WhenCacheDoesNotExist() {
+        // Act & Assert
+        var res = assertThrows(CacheNotFound.class, () -> cachesService.findByName("inexistente"));
+        assertEquals("Cache inexistente no encontrada", res.getMessage());
+    }
+}
@@ -97,6 +97,40 @@ class CategoriasRestControllerTest {
         verify(categoriasService, times(1)).findAll(Optional.empty(), Optional.empty(), pageable);
     }
 
+
+    @Test
+    void getAllCategoriasWithoutTotal() throws Exception {
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
+        Slice<Categoria> slice = new SliceImpl<>(List.of(categoria1, categoria2), pageable, true);
+
+        // Arrange
+        when(categoriasService.findAllSlice(Optional.empty(), Optional.empty(), pageable)).thenReturn(slice);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "?withTotal=false")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        PageResponse<Categoria> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        });
+
+        // Assert
+        assertAll("findallCategoriasWithoutTotal",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(2, res.content().size()),
+                () -> assertNull(res.totalElements()),
+                () -> assertNull(res.totalPages()),
+                () -> assertFalse(res.last()),
+                () -> assertTrue(response.getHeader("link").contains("rel=\"next\"")),
+                () -> assertFalse(response.getHeader("link").contains("rel=\"last\""))
+        );
+
+        // Verify
+        verify(categoriasService, times(1)).findAllSlice(Optional.empty(), Optional.empty(), pageable);
+        verify(categoriasService, times(0)).findAll(any(), any(), any());
+    }
+
     @Test
     void getAllCategoriasByNombre() throws Exception {
         var list = List.of(categoria1);
@@ -0,0 +1,67 @@
+package dev.joseluisgs.tiendaapispringboot.rest.categorias.services;
+
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.repositories.CategoriasRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CategoriasNameResolverTest {
+    private final Categoria deportes = new Categoria(UUID.fromString("b3d4931d-c1c0-468b-a4b6-9814017a7339"), "DEPORTES", LocalDateTime.now(), LocalDateTime.now(), false);
+    private final Categoria borrada = new Categoria(UUID.fromString("b3d4931d-c1c0-468b-a4b6-9814017a7338"), "BORRADA", LocalDateTime.now(), LocalDateTime.now(), true);
+    private final Categoria ocio = new Categoria(UUID.fromString("b3d4931d-c1c0-468b-a4b6-9814017a7337"), "Ocio", LocalDateTime.now(), LocalDateTime.now(), false);
+
+    @Mock
+    private CategoriasRepository categoriasRepository;
+
+    @InjectMocks
+    private CategoriasNameResolver resolver;
+
+    @Test
+    void resolve_ShouldIgnoreCaseAndDeleted_WithOneQuery() {
+        // Arrange
+        when(categoriasRepository.findAll()).thenReturn(List.of(deportes, borrada, ocio));
+
+        // Act & Assert
+        assertAll("resolve",
+                () -> assertEquals(Optional.of(deportes), resolver.resolve("deportes")),
+                () -> assertEquals(Optional.of(ocio), resolver.resolve("OCIO")),
+                () -> assertTrue(resolver.resolve("borrada").isEmpty()),
+                () -> assertTrue(resolver.resolve("OTROS").isEmpty()),
+                () -> assertTrue(resolver.resolve(null).isEmpty()),
+                () -> assertEquals(List.of("DEPORTES", "Ocio"), resolver.nombres())
+        );
+
+        // Verify: se carga una sola vez y nunca se busca por nombre en la base de datos
+        verify(categoriasRepository, times(1)).findAll();
+        verify(categoriasRepository, times(0)).findByNombreEqualsIgnoreCase(any());
+    }
+
+    @Test
+    void refresh_ShouldReload() {
+        // Arrange
+        when(categoriasRepository.findAll()).thenReturn(List.of(deportes), List.of(deportes, ocio));
+        resolver.load();
+        assertTrue(resolver.resolve("ocio").isEmpty());
+
+        // Act
+        resolver.refresh();
+
+        // Assert
+        assertEquals(Optional.of(ocio), resolver.resolve("ocio"));
+
+        // Verify
+        verify(categoriasRepository, times(2)).findAll();
+    }
+}
@@ -5,6 +5,7 @@ import dev.joseluisgs.tiendaapispringboot.rest.categorias.exceptions.CategoriaCo
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.mappers.CategoriasMapper;
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.repositories.CategoriasRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.search.ProductosSearchIndex;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -32,6 +33,12 @@ public class CategoriasServiceImplTest {
     @Mock
     private CategoriasMapper categoriasMapper;
 
+    @Mock
+    private ProductosSearchIndex productosSearchIndex;
+
+    @Mock
+    private CategoriasNameResolver categoriasNameResolver;
+
     @InjectMocks
     private CategoriasServiceImpl categoriasService;
 
@@ -113,6 +120,7 @@ public class CategoriasServiceImplTest {
         // Verify
         verify(categoriasRepository, times(1)).findByNombreEqualsIgnoreCase(any(String.class));
         verify(categoriasRepository, times(1)).save(any(Categoria.class));
+        verify(categoriasNameResolver, times(1)).refresh();
     }
 
     @Test
@@ -132,6 +140,7 @@ public class CategoriasServiceImplTest {
         // Verify
         verify(categoriasRepository, times(1)).findByNombreEqualsIgnoreCase(any(String.class));
         verify(categoriasRepository, times(0)).save(any(Categoria.class));
+        verify(categoriasNameResolver, times(0)).refresh();
     }
 
     @Test
@@ -156,6 +165,8 @@ public class CategoriasServiceImplTest {
         verify(categoriasRepository, times(1)).findById(any(UUID.class));
         verify(categoriasRepository, times(1)).findByNombreEqualsIgnoreCase(any(String.class));
         verify(categoriasRepository, times(1)).save(any(Categoria.class));
+        verify(productosSearchIndex, times(1)).putCategoria(categoria.getId(), categoria.getNombre());
+        verify(categoriasNameResolver, times(1)).refresh();
     }
 
     @Test
@@ -194,5 +205,6 @@ public class CategoriasServiceImplTest {
         verify(categoriasRepository, times(1)).findById(any(UUID.class));
         verify(categoriasRepository, times(1)).existsProductoById(any(UUID.class));
         verify(categoriasRepository, times(1)).deleteById(any(UUID.class));
+        verify(categoriasNameResolver, times(1)).refresh();
     }
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package dev.joseluisgs.tiendaapispringboot.rest.pedidos.controllers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidoBatchResult;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidosBatchResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.*;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Cliente;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Direccion;
@@ -21,6 +23,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -28,10 +31,10 @@ import org.springframework.security.test.context.support.WithAnonymousUser;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.InputStream;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertAll;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -110,6 +113,37 @@ class PedidosRestControllerTest {
         verify(pedidosService, times(1)).findAll(any(Pageable.class));
     }
 
+
+    @Test
+    void getAllPedidosWithoutTotal() throws Exception {
+        var pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
+        var slice = new SliceImpl<>(List.of(pedido1), pageable, false);
+
+        // Arrange
+        when(pedidosService.findAllSlice(pageable)).thenReturn(slice);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "?withTotal=false")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        PageResponse<Pedido> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        });
+
+        // Assert
+        assertAll("findallWithoutTotal",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(1, res.content().size()),
+                () -> assertNull(res.totalElements()),
+                () -> assertTrue(res.last())
+        );
+
+        // Verify
+        verify(pedidosService, times(1)).findAllSlice(pageable);
+        verify(pedidosService, times(0)).findAll(any(Pageable.class));
+    }
+
     @Test
     void getPedidoById() throws Exception {
         // Arrange
@@ -216,6 +250,34 @@ class PedidosRestControllerTest {
         verify(pedidosService, times(1)).save(any(Pedido.class));
     }
 
+    @Test
+    void createPedidosBatch() throws Exception {
+        // Arrange
+        var batch = new PedidosBatchResponse(2, 1, 1, List.of(
+                new PedidoBatchResult(0, 201, pedido1.get_id(), null),
+                new PedidoBatchResult(1, 400, null, "Lo sentimos, el producto con id: 1 no tiene stock suficiente")));
+        when(pedidosService.saveBatch(any(InputStream.class))).thenReturn(batch);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myEndpoint + "/batch")
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .content(mapper.writeValueAsString(pedido1) + "\n" + mapper.writeValueAsString(pedido1)))
+                .andReturn().getResponse();
+
+        PedidosBatchResponse res = mapper.readValue(response.getContentAsString(), PedidosBatchResponse.class);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(batch, res)
+        );
+
+        // Verify
+        verify(pedidosService, times(1)).saveBatch(any(InputStream.class));
+    }
+
     @Test
     void createPedidoNoItemsBadRequest() throws Exception {
         // Arrange
@@ -0,0 +1,276 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.result.DeleteResult;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Cliente;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Direccion;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidosArchiveTest {
+    private static final String ENERO = "pedidos_archivo_2022_01";
+    private static final String FEBRERO = "pedidos_archivo_2022_02";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private MongoDatabase mongoDatabase;
+    @Mock
+    private IndexOperations indexOperations;
+    @Mock
+    private BulkOperations bulkOperations;
+
+    private Pedido pedido(LocalDateTime createdAt) {
+        return Pedido.builder()
+                .idUsuario(1L)
+                .cliente(new Cliente("Pepe Pérez", "pepe@test.com", "600000000", new Direccion("Mayor", "1", "Leganés", "Madrid", "España", "28911")))
+                .lineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).total(20.0).build()))
+                .totalItems(2)
+                .total(20.0)
+                .createdAt(createdAt)
+                .updatedAt(createdAt)
+                .build();
+    }
+
+    @Test
+    void toDocument_ShouldBeCompactAndRoundTrip() {
+        // Arrange
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        var pedido = pedido(LocalDateTime.of(2022, 1, 10, 12, 0));
+
+        // Act
+        var document = archive.toDocument(pedido);
+
+        // Assert
+        assertAll("toDocument",
+                () -> assertEquals(Set.of("_id", "u", "c", "l", "ti", "to", "ca", "ua", "d"), document.keySet()),
+                () -> assertEquals(Set.of("p", "q", "pr", "t"), document.getList("l", Document.class).get(0).keySet()),
+                () -> assertEquals(pedido, archive.fromDocument(document))
+        );
+    }
+
+    @Test
+    void toDocument_ShouldSkipNulls() {
+        // Arrange
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        var pedido = Pedido.builder().idUsuario(1L).build();
+
+        // Act
+        var document = archive.toDocument(pedido);
+
+        // Assert
+        assertFalse(document.containsKey("c"));
+        assertFalse(document.containsKey("l"));
+    }
+
+    @Test
+    void findById_ShouldLookFirstInTheMonthOfTheId() {
+        // Arrange
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        var createdAt = LocalDateTime.of(2022, 2, 10, 12, 0);
+        var id = new ObjectId(Date.from(createdAt.atZone(ZoneId.systemDefault()).toInstant()));
+        var pedido = pedido(createdAt);
+        pedido.setId(id);
+        when(mongoTemplate.getCollectionNames()).thenReturn(Set.of("pedidos", ENERO, FEBRERO));
+        when(mongoTemplate.findById(id, Document.class, FEBRERO)).thenReturn(archive.toDocument(pedido));
+
+        // Act
+        var result = archive.findById(id);
+
+        // Assert
+        assertEquals(pedido, result.orElseThrow());
+
+        // Verify
+        verify(mongoTemplate, never()).findById(id, Document.class, ENERO);
+    }
+
+    @Test
+    void findByIdUsuario_ShouldPageAcrossHotAndArchive() {
+        // Arrange: 1 reciente, 3 en febrero y 2 en enero
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        when(mongoTemplate.getCollectionNames()).thenReturn(Set.of("pedidos", ENERO, FEBRERO));
+        when(mongoTemplate.count(any(Query.class), eq(ENERO))).thenReturn(2L);
+        when(mongoTemplate.count(any(Query.class), eq(FEBRERO))).thenReturn(3L);
+        when(mongoTemplate.count(any(Query.class), eq(Pedido.class))).thenReturn(1L);
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(FEBRERO))).thenReturn(List.of(
+                archive.toDocument(pedido(LocalDateTime.of(2022, 2, 20, 12, 0))),
+                archive.toDocument(pedido(LocalDateTime.of(2022, 2, 10, 12, 0)))));
+
+        // Act: la segunda página de dos, de más reciente a más antiguo
+        var page = archive.findByIdUsuario(1L, PageRequest.of(1, 2, Sort.by("createdAt").descending()));
+
+        // Assert
+        assertAll("findByIdUsuario",
+                () -> assertEquals(6, page.getTotalElements()),
+                () -> assertEquals(2, page.getContent().size()),
+                () -> assertTrue(page.hasNext())
+        );
+
+        // Verify: solo se lee febrero, saltando el que queda en la primera página, y con los nombres cortos
+        var captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).find(captor.capture(), eq(Document.class), eq(FEBRERO));
+        assertAll("query",
+                () -> assertEquals(1, captor.getValue().getSkip()),
+                () -> assertEquals(2, captor.getValue().getLimit()),
+                () -> assertEquals(new Document("ca", -1), captor.getValue().getSortObject()),
+                () -> assertEquals(new Document("u", 1L), captor.getValue().getQueryObject())
+        );
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Pedido.class));
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Document.class), eq(ENERO));
+    }
+
+    @Test
+    void archive_ShouldCopyByMonthThenRemove() {
+        // Arrange
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        var enero = pedido(LocalDateTime.of(2022, 1, 10, 12, 0));
+        var febrero = pedido(LocalDateTime.of(2022, 2, 10, 12, 0));
+        when(mongoTemplate.find(any(Query.class), eq(Pedido.class))).thenReturn(List.of(enero, febrero));
+        when(mongoTemplate.getCollectionNames()).thenReturn(Set.of("pedidos"));
+        when(mongoTemplate.getDb()).thenReturn(mongoDatabase);
+        when(mongoTemplate.indexOps(anyString())).thenReturn(indexOperations);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), anyString())).thenReturn(bulkOperations);
+        when(mongoTemplate.remove(any(Query.class), eq(Pedido.class))).thenReturn(DeleteResult.acknowledged(2));
+
+        // Act
+        var archivados = archive.archive(LocalDateTime.of(2022, 3, 1, 0, 0), 10);
+
+        // Assert
+        assertAll("archive",
+                () -> assertEquals(2, archivados),
+                () -> assertTrue(archive.hasArchive())
+        );
+
+        // Verify
+        verify(mongoDatabase, times(1)).createCollection(eq(PedidosArchive.collectionName(YearMonth.of(2022, 1))), any(CreateCollectionOptions.class));
+        verify(mongoDatabase, times(1)).createCollection(eq(FEBRERO), any(CreateCollectionOptions.class));
+        verify(indexOperations, times(4)).ensureIndex(any(IndexDefinition.class));
+        verify(bulkOperations, times(2)).replaceOne(any(Query.class), any(Document.class), any(FindAndReplaceOptions.class));
+        verify(bulkOperations, times(2)).execute();
+        verify(mongoTemplate, times(1)).remove(any(Query.class), eq(Pedido.class));
+    }
+
+    @Test
+    void archive_ShouldOnlyRemoveUnchangedPedidos() {
+        // Arrange: uno de los dos se modifica entre la lectura y el borrado
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        var enero = pedido(LocalDateTime.of(2022, 1, 10, 12, 0));
+        var otro = pedido(LocalDateTime.of(2022, 1, 11, 12, 0));
+        enero.setId(new ObjectId());
+        otro.setId(new ObjectId());
+        when(mongoTemplate.find(any(Query.class), eq(Pedido.class))).thenReturn(List.of(enero, otro));
+        when(mongoTemplate.getCollectionNames()).thenReturn(Set.of("pedidos", ENERO));
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), anyString())).thenReturn(bulkOperations);
+        when(mongoTemplate.remove(any(Query.class), eq(Pedido.class))).thenReturn(DeleteResult.acknowledged(1));
+
+        // Act
+        var archivados = archive.archive(LocalDateTime.of(2022, 3, 1, 0, 0), 10);
+
+        // Assert
+        assertEquals(1, archivados);
+
+        // Verify: se borra por id y por la fecha de actualización que se ha copiado
+        var captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).remove(captor.capture(), eq(Pedido.class));
+        var condiciones = captor.getValue().getQueryObject().getList("$or", Document.class);
+        assertEquals(List.of(
+                new Document("_id", enero.getId()).append("updatedAt", enero.getUpdatedAt()),
+                new Document("_id", otro.getId()).append("updatedAt", otro.getUpdatedAt())
+        ), condiciones);
+    }
+
+    @Test
+    void findIdsByIdUsuario_ShouldOnlyReadIds() {
+        // Arrange: 1 reciente y 1 en enero
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        var id = new ObjectId();
+        when(mongoTemplate.getCollectionNames()).thenReturn(Set.of("pedidos", ENERO));
+        when(mongoTemplate.count(any(Query.class), eq(ENERO))).thenReturn(1L);
+        when(mongoTemplate.count(any(Query.class), eq(Pedido.class))).thenReturn(1L);
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(ENERO))).thenReturn(List.of(new Document("_id", id)));
+
+        // Act: ordenado por id, primero el archivo
+        var page = archive.findIdsByIdUsuario(1L, PageRequest.of(0, 1, Sort.by("id")));
+
+        // Assert
+        assertAll("findIdsByIdUsuario",
+                () -> assertEquals(List.of(id), page.getContent()),
+                () -> assertEquals(2, page.getTotalElements())
+        );
+
+        // Verify
+        var captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).find(captor.capture(), eq(Document.class), eq(ENERO));
+        assertEquals(new Document("_id", 1), captor.getValue().getFieldsObject());
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Pedido.class));
+    }
+
+    @Test
+    void existsByIdUsuario_ShouldStopAtTheFirstMonthWithPedidos() {
+        // Arrange: tiene pedidos en febrero
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        when(mongoTemplate.getCollectionNames()).thenReturn(Set.of("pedidos", ENERO, FEBRERO));
+        when(mongoTemplate.exists(any(Query.class), eq(FEBRERO))).thenReturn(true);
+
+        // Act & Assert
+        assertTrue(archive.existsByIdUsuario(1L));
+
+        // Verify: enero ya no hace falta mirarlo
+        verify(mongoTemplate, never()).exists(any(Query.class), eq(ENERO));
+    }
+
+    @Test
+    void existsByIdUsuario_ShouldBeFalse_WhenThereIsNoArchive() {
+        // Arrange
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        when(mongoTemplate.getCollectionNames()).thenReturn(Set.of("pedidos"));
+
+        // Act & Assert
+        assertFalse(archive.existsByIdUsuario(1L));
+    }
+
+    @Test
+    void archive_ShouldDoNothing_WhenNothingIsOld() {
+        // Arrange
+        var archive = new PedidosArchive(mongoTemplate, "zstd");
+        when(mongoTemplate.find(any(Query.class), eq(Pedido.class))).thenReturn(List.of());
+
+        // Act
+        var archivados = archive.archive(LocalDateTime.of(2022, 3, 1, 0, 0), 10);
+
+        // Assert
+        assertEquals(0, archivados);
+
+        // Verify
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(Pedido.class));
+    }
+}
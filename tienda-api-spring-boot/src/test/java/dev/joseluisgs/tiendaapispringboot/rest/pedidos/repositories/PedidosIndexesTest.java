@@ -0,0 +1,101 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.PedidoBadSort;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PedidosIndexesTest {
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private IndexOperations indexOperations;
+
+    @Test
+    void createIndexes_ShouldCreateDeclaredIndexes() {
+        // Arrange
+        var pedidosIndexes = new PedidosIndexes(mongoTemplate, mappingContext());
+        when(mongoTemplate.indexOps(Pedido.class)).thenReturn(indexOperations);
+
+        // Act
+        pedidosIndexes.createIndexes();
+
+        // Assert
+        var captor = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOperations, times(3)).ensureIndex(captor.capture());
+        assertEquals(Set.of(
+                        new Document("createdAt", -1),
+                        new Document("idUsuario", 1).append("createdAt", -1),
+                        new Document("idUsuario", 1).append("_id", 1)),
+                Set.copyOf(captor.getAllValues().stream().map(IndexDefinition::getIndexKeys).toList()));
+    }
+
+    @Test
+    void createIndexes_ShouldNotThrow_WhenMongoFails() {
+        // Arrange
+        var pedidosIndexes = new PedidosIndexes(mongoTemplate, mappingContext());
+        when(mongoTemplate.indexOps(Pedido.class)).thenThrow(new IllegalStateException("Mongo no disponible"));
+
+        // Act & Assert
+        assertDoesNotThrow(pedidosIndexes::createIndexes);
+    }
+
+    @Test
+    void checkSort_ShouldAcceptIndexedSorts() {
+        var pedidosIndexes = new PedidosIndexes(mongoTemplate, mappingContext());
+
+        assertAll("indexed",
+                // Sin filtro: _id, createdAt (en los dos sentidos) e idUsuario, prefijo de los compuestos
+                () -> assertTrue(pedidosIndexes.isIndexed(Sort.by("id"), Set.of())),
+                () -> assertTrue(pedidosIndexes.isIndexed(Sort.by("createdAt").ascending(), Set.of())),
+                () -> assertTrue(pedidosIndexes.isIndexed(Sort.by("createdAt").descending(), Set.of())),
+                () -> assertTrue(pedidosIndexes.isIndexed(Sort.by(Sort.Order.asc("idUsuario"), Sort.Order.desc("createdAt")), Set.of())),
+                // Por usuario
+                () -> assertTrue(pedidosIndexes.isIndexed(Sort.by("createdAt"), Set.of("idUsuario"))),
+                () -> assertTrue(pedidosIndexes.isIndexed(Sort.by("id").descending(), Set.of("idUsuario"))),
+                () -> assertTrue(pedidosIndexes.isIndexed(Sort.by("idUsuario"), Set.of("idUsuario"))),
+                () -> assertTrue(pedidosIndexes.isIndexed(Sort.unsorted(), Set.of("idUsuario")))
+        );
+    }
+
+    @Test
+    void checkSort_ShouldRejectUnindexedSorts() {
+        var pedidosIndexes = new PedidosIndexes(mongoTemplate, mappingContext());
+
+        assertAll("notIndexed",
+                // Campo fuera de la lista
+                () -> assertThrows(PedidoBadSort.class, () -> pedidosIndexes.checkSort(PageRequest.of(0, 10, Sort.by("total")))),
+                // Direcciones mezcladas que ningún índice puede recorrer
+                () -> assertThrows(PedidoBadSort.class, () -> pedidosIndexes.checkSort(PageRequest.of(0, 10, Sort.by(Sort.Order.asc("idUsuario"), Sort.Order.asc("createdAt"))))),
+                // Dos campos sin índice compuesto
+                () -> assertThrows(PedidoBadSort.class, () -> pedidosIndexes.checkSort(PageRequest.of(0, 10, Sort.by("createdAt", "id")), "idUsuario"))
+        );
+    }
+
+    /**
+     * Como el de Spring Boot: con las conversiones de Mongo las fechas son tipos simples
+     */
+    public static MongoMappingContext mappingContext() {
+        var mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        return mappingContext;
+    }
+}
@@ -1,25 +1,45 @@
 package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services;
 
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.dto.PedidoBatchResult;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.*;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosArchive;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosIndexes;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosIndexesTest;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.batch.PedidosBatchReader;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock.StockService;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoStockView;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.services.VentasService;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -28,8 +48,19 @@ import static org.mockito.Mockito.*;
 class PedidosServiceImplTest {
     @Mock
     private PedidosRepository pedidosRepository;
+    // El de verdad: solo mira los índices declarados en Pedido
+    @Spy
+    private PedidosIndexes pedidosIndexes = new PedidosIndexes(null, PedidosIndexesTest.mappingContext());
+    @Mock
+    private PedidosArchive pedidosArchive;
     @Mock
     private ProductosRepository productosRepository;
+    @Mock
+    private StockService stockService;
+    @Mock
+    private VentasService ventasService;
+    @Mock
+    private PedidosBatchReader pedidosBatchReader;
 
     @InjectMocks
     private PedidosServiceImpl pedidosService;
@@ -57,6 +88,55 @@ class PedidosServiceImplTest {
         verify(pedidosRepository, times(1)).findAll(pageable);
     }
 
+
+    @Test
+    void findAllSlice_ReturnsSliceOfPedidos() {
+        // Arrange
+        Pageable pageable = PageRequest.of(0, 10);
+        Slice<Pedido> expectedSlice = new SliceImpl<>(List.of(new Pedido(), new Pedido()), pageable, false);
+
+        when(pedidosRepository.findAllBy(pageable)).thenReturn(expectedSlice);
+
+        // Act
+        Slice<Pedido> result = pedidosService.findAllSlice(pageable);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(expectedSlice.getContent(), result.getContent()),
+                () -> assertFalse(result.hasNext())
+        );
+
+        // Verify
+        verify(pedidosRepository, times(1)).findAllBy(pageable);
+        verify(pedidosRepository, times(0)).findAll(pageable);
+    }
+
+    @Test
+    void findAll_ThrowsPedidoBadSort_WhenSortIsNotIndexed() {
+        // Arrange
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("total"));
+
+        // Act & Assert
+        assertThrows(PedidoBadSort.class, () -> pedidosService.findAll(pageable));
+
+        // Verify: no llega a Mongo
+        verify(pedidosRepository, never()).findAll(any(Pageable.class));
+    }
+
+    @Test
+    void findByIdUsuario_AcceptsIndexedSort() {
+        // Arrange
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("createdAt").ascending());
+        when(pedidosRepository.findByIdUsuario(1L, pageable)).thenReturn(Page.empty());
+
+        // Act
+        pedidosService.findByIdUsuario(1L, pageable);
+
+        // Verify
+        verify(pedidosIndexes, times(1)).checkSort(pageable, "idUsuario");
+        verify(pedidosRepository, times(1)).findByIdUsuario(1L, pageable);
+    }
+
     @Test
     void testFindById() {
         // Arrange
@@ -87,11 +167,51 @@ class PedidosServiceImplTest {
         verify(pedidosRepository).findById(idPedido);
     }
 
+    @Test
+    void testFindById_FallsThroughToArchive() {
+        // Arrange
+        ObjectId idPedido = new ObjectId();
+        Pedido archivado = new Pedido();
+        when(pedidosRepository.findById(idPedido)).thenReturn(Optional.empty());
+        when(pedidosArchive.findById(idPedido)).thenReturn(Optional.of(archivado));
+
+        // Act
+        Pedido resultPedido = pedidosService.findById(idPedido);
+
+        // Assert
+        assertEquals(archivado, resultPedido);
+    }
+
+    @Test
+    void testFindByIdUsuario_WithArchive() {
+        // Arrange
+        Long idUsuario = 1L;
+        Pageable pageable = PageRequest.of(0, 2, Sort.by("createdAt").descending());
+        Page<Pedido> page = new PageImpl<>(List.of(new Pedido(), new Pedido()), pageable, 3);
+        when(pedidosArchive.hasArchive()).thenReturn(true);
+        when(pedidosArchive.findByIdUsuario(idUsuario, pageable)).thenReturn(page);
+
+        // Act
+        Page<Pedido> resultPage = pedidosService.findByIdUsuario(idUsuario, pageable);
+        Slice<Pedido> resultSlice = pedidosService.findByIdUsuarioSlice(idUsuario, pageable);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(page, resultPage),
+                () -> assertEquals(page.getContent(), resultSlice.getContent()),
+                () -> assertTrue(resultSlice.hasNext())
+        );
+
+        // Verify
+        verify(pedidosRepository, never()).findByIdUsuario(anyLong(), any(Pageable.class));
+        verify(pedidosRepository, never()).findSliceByIdUsuario(anyLong(), any(Pageable.class));
+    }
+
     @Test
     void testFindByIdUsuario() {
         // Arrange
         Long idUsuario = 1L;
-        Pageable pageable = mock(Pageable.class);
+        Pageable pageable = PageRequest.of(0, 10); // El servicio comprueba su orden
         @SuppressWarnings("unchecked")
         Page<Pedido> expectedPage = mock(Page.class);
         when(pedidosRepository.findByIdUsuario(idUsuario, pageable)).thenReturn(expectedPage);
@@ -126,7 +246,7 @@ class PedidosServiceImplTest {
         pedidoToSave.setLineasPedido(List.of(lineaPedido));
 
         when(pedidosRepository.save(any(Pedido.class))).thenReturn(pedidoToSave); // Utiliza any(Pedido.class) para cualquier instancia de Pedido
-        when(productosRepository.findById(anyLong())).thenReturn(Optional.of(producto));
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
 
         // Act
         Pedido resultPedido = pedidosService.save(pedido);
@@ -140,7 +260,33 @@ class PedidosServiceImplTest {
 
         // Verify
         verify(pedidosRepository).save(any(Pedido.class));
-        verify(productosRepository, times(2)).findById(anyLong());
+        verify(productosRepository, times(1)).findStockViewsByIdIn(Set.of(1L));
+        verify(productosRepository, never()).findById(anyLong());
+        verify(stockService, times(1)).reserve(Map.of(1L, 2));
+        verify(stockService, never()).release(anyMap());
+        verify(productosRepository, never()).save(any(Producto.class));
+    }
+
+    @Test
+    void testSave_ReleasesStock_WhenSaveFails() {
+        // Arrange
+        Producto producto = Producto.builder()
+                .id(1L)
+                .stock(5)
+                .precio(10.0)
+                .build();
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build()));
+
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
+        when(pedidosRepository.save(any(Pedido.class))).thenThrow(new IllegalStateException("Mongo no responde"));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> pedidosService.save(pedido));
+
+        // Verify: lo reservado se devuelve
+        verify(stockService, times(1)).reserve(Map.of(1L, 2));
+        verify(stockService, times(1)).release(Map.of(1L, 2));
     }
 
     @Test
@@ -153,7 +299,7 @@ class PedidosServiceImplTest {
 
         // Verify
         verify(pedidosRepository, never()).save(any(Pedido.class));
-        verify(productosRepository, never()).findById(anyLong());
+        verify(productosRepository, never()).findStockViewsByIdIn(anyCollection());
     }
 
     @Test
@@ -172,6 +318,7 @@ class PedidosServiceImplTest {
         // Verify
         verify(pedidosRepository).findById(idPedido);
         verify(pedidosRepository).deleteById(idPedido);
+        verify(ventasService, times(1)).apply(List.of(), List.of(pedidoToDelete));
     }
 
     @Test
@@ -212,7 +359,7 @@ class PedidosServiceImplTest {
 
         when(pedidosRepository.findById(idPedido)).thenReturn(Optional.of(pedidoToUpdate));
         when(pedidosRepository.save(any(Pedido.class))).thenReturn(pedidoToUpdate);
-        when(productosRepository.findById(anyLong())).thenReturn(Optional.of(producto));
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
 
         // Act
         Pedido resultPedido = pedidosService.update(idPedido, pedido);
@@ -227,7 +374,70 @@ class PedidosServiceImplTest {
         // Verify
         verify(pedidosRepository).findById(idPedido);
         verify(pedidosRepository).save(any(Pedido.class));
-        verify(productosRepository, times(3)).findById(anyLong());
+        verify(productosRepository, times(1)).findStockViewsByIdIn(Set.of(1L));
+        verify(productosRepository, never()).findById(anyLong());
+        // Las líneas no cambian, así que no se toca el stock
+        verify(stockService, never()).adjust(anyMap());
+        verify(stockService, never()).release(anyMap());
+        verify(stockService, never()).reserve(anyMap());
+        // Se restan las ventas del pedido guardado y se suman las del nuevo
+        verify(ventasService, times(1)).apply(List.of(pedidoToUpdate), List.of(pedidoToUpdate));
+    }
+
+    @Test
+    void testUpdate_AdjustsOnlyDifferences() {
+        // Arrange: había 2 del producto 1 y 3 del 2, ahora 4 del 1 y 1 del 3; solo queda 1 del producto 1
+        ObjectId idPedido = new ObjectId();
+        Pedido pedidoToUpdate = new Pedido();
+        pedidoToUpdate.setLineasPedido(List.of(
+                LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build(),
+                LineaPedido.builder().idProducto(2L).cantidad(3).precioProducto(5.0).build()));
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(
+                LineaPedido.builder().idProducto(1L).cantidad(4).precioProducto(10.0).build(),
+                LineaPedido.builder().idProducto(3L).cantidad(1).precioProducto(5.0).build()));
+
+        when(pedidosRepository.findById(idPedido)).thenReturn(Optional.of(pedidoToUpdate));
+        when(pedidosRepository.save(any(Pedido.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L, 3L))).thenReturn(List.of(
+                stockView(Producto.builder().id(1L).stock(2).precio(10.0).build()),
+                stockView(Producto.builder().id(3L).stock(5).precio(5.0).build())));
+
+        // Act
+        Pedido resultPedido = pedidosService.update(idPedido, pedido);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(45.0, resultPedido.getTotal()),
+                () -> assertEquals(5, resultPedido.getTotalItems())
+        );
+
+        // Verify: un solo ajuste con las diferencias netas
+        verify(stockService, times(1)).adjust(Map.of(1L, 2, 2L, -3, 3L, 1));
+        verify(stockService, never()).reserve(anyMap());
+        verify(stockService, never()).release(anyMap());
+    }
+
+    @Test
+    void testUpdate_UndoesAdjust_WhenSaveFails() {
+        // Arrange
+        ObjectId idPedido = new ObjectId();
+        Pedido pedidoToUpdate = new Pedido();
+        pedidoToUpdate.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build()));
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(10.0).build()));
+
+        when(pedidosRepository.findById(idPedido)).thenReturn(Optional.of(pedidoToUpdate));
+        when(pedidosRepository.save(any(Pedido.class))).thenThrow(new IllegalStateException("Mongo no disponible"));
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(Producto.builder().id(1L).stock(0).precio(10.0).build())));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> pedidosService.update(idPedido, pedido));
+
+        // Verify
+        verify(stockService, times(1)).adjust(Map.of(1L, -1));
+        verify(stockService, times(1)).adjust(Map.of(1L, 1));
+        verify(ventasService, never()).apply(anyList(), anyList());
     }
 
     @Test
@@ -243,7 +453,7 @@ class PedidosServiceImplTest {
         // Verify
         verify(pedidosRepository).findById(idPedido);
         verify(pedidosRepository, never()).save(any(Pedido.class));
-        verify(productosRepository, never()).findById(anyLong());
+        verify(productosRepository, never()).findStockViewsByIdIn(anyCollection());
     }
 
     @Test
@@ -257,32 +467,47 @@ class PedidosServiceImplTest {
                 .precioProducto(10.0)
                 .build();
 
+        LineaPedido lineaPedido2 = LineaPedido.builder()
+                .idProducto(1L)
+                .cantidad(1)
+                .precioProducto(10.0)
+                .build();
+
         lineasPedido.add(lineaPedido1); // Agregar la línea de pedido a la lista
+        lineasPedido.add(lineaPedido2); // El mismo producto en otra línea
 
         pedido.setLineasPedido(lineasPedido); // Asignar la lista de líneas de pedido al pedido
 
-        Producto producto = Producto.builder()
-                .id(1L)
-                .stock(5)
-                .precio(10.0)
-                .build();
-
-        when(productosRepository.findById(1L)).thenReturn(Optional.of(producto));
-
         // Act
         Pedido result = pedidosService.reserveStockPedidos(pedido);
 
         // Assert
         assertAll(
-                () -> assertEquals(3, producto.getStock()), // Verifica que el stock se haya actualizado correctamente
                 () -> assertEquals(20.0, lineaPedido1.getTotal()), // Verifica que el total de la línea de pedido se haya calculado correctamente
-                () -> assertEquals(20.0, result.getTotal()), // Verifica que el total del pedido se haya calculado correctamente
-                () -> assertEquals(2, result.getTotalItems()) // Verifica que el total de items del pedido se haya calculado correctamente
+                () -> assertEquals(30.0, result.getTotal()), // Verifica que el total del pedido se haya calculado correctamente
+                () -> assertEquals(3, result.getTotalItems()) // Verifica que el total de items del pedido se haya calculado correctamente
         );
 
-        // Verify
-        verify(productosRepository, times(1)).findById(1L);
-        verify(productosRepository, times(1)).save(producto);
+        // Verify: sin leer los productos, las dos líneas del mismo producto en una sola reserva
+        verify(productosRepository, never()).findById(anyLong());
+        verify(productosRepository, never()).save(any(Producto.class));
+        verify(stockService, times(1)).reserve(Map.of(1L, 3));
+    }
+
+    @Test
+    void testReserveStockPedidos_ThrowsProductoNotStock() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(
+                LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build(),
+                LineaPedido.builder().idProducto(2L).cantidad(50).precioProducto(10.0).build()
+        ));
+        // Otro pedido se ha llevado el stock del producto 2 después de comprobarlo
+        doThrow(new ProductoNotStock(2L)).when(stockService).reserve(Map.of(1L, 2, 2L, 50));
+
+        // Act & Assert
+        var res = assertThrows(ProductoNotStock.class, () -> pedidosService.reserveStockPedidos(pedido));
+        assertTrue(res.getMessage().contains("2"));
     }
 
     @Test
@@ -298,24 +523,15 @@ class PedidosServiceImplTest {
         lineasPedido.add(lineaPedido1);
         pedido.setLineasPedido(lineasPedido);
 
-        Producto producto = Producto.builder()
-                .id(1L)
-                .stock(13)
-                .build();
-
-        when(productosRepository.findById(1L)).thenReturn(Optional.of(producto));
-        when(productosRepository.save(producto)).thenReturn(producto);
-
         // Act
         Pedido result = pedidosService.returnStockPedidos(pedido);
 
         // Assert
-        assertEquals(15, producto.getStock());
         assertEquals(pedido, result);
 
-        // Verify
-        verify(productosRepository, times(1)).findById(1L);
-        verify(productosRepository, times(1)).save(producto);
+        // Verify: sin leer los productos, una sola devolución
+        verify(productosRepository, never()).findById(anyLong());
+        verify(stockService, times(1)).release(Map.of(1L, 2));
     }
 
     @Test
@@ -338,14 +554,14 @@ class PedidosServiceImplTest {
                 .precio(10.0)
                 .build();
 
-        when(productosRepository.findById(1L)).thenReturn(Optional.of(producto));
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
 
 
         // Act & Assert
         assertDoesNotThrow(() -> pedidosService.checkPedido(pedido));
 
         // Verify
-        verify(productosRepository, times(1)).findById(1L);
+        verify(productosRepository, times(1)).findStockViewsByIdIn(Set.of(1L));
     }
 
     @Test
@@ -362,13 +578,13 @@ class PedidosServiceImplTest {
         lineasPedido.add(lineaPedido1);
         pedido.setLineasPedido(lineasPedido);
 
-        when(productosRepository.findById(1L)).thenReturn(Optional.empty());
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of());
 
         // Act & Assert
         assertThrows(ProductoNotFound.class, () -> pedidosService.checkPedido(pedido));
 
         // Verify
-        verify(productosRepository, times(1)).findById(1L);
+        verify(productosRepository, times(1)).findStockViewsByIdIn(Set.of(1L));
     }
 
     @Test
@@ -392,13 +608,13 @@ class PedidosServiceImplTest {
                 .precio(10.0)
                 .build();
 
-        when(productosRepository.findById(1L)).thenReturn(Optional.of(producto));
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
 
         // Act & Assert
         assertThrows(ProductoNotStock.class, () -> pedidosService.checkPedido(pedido));
 
         // Verify
-        verify(productosRepository, times(1)).findById(1L);
+        verify(productosRepository, times(1)).findStockViewsByIdIn(Set.of(1L));
     }
 
     @Test
@@ -423,13 +639,232 @@ class PedidosServiceImplTest {
                 .precio(10.0)
                 .build();
 
-        when(productosRepository.findById(1L)).thenReturn(Optional.of(producto));
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
 
         // Act & Assert
         assertThrows(ProductoBadPrice.class, () -> pedidosService.checkPedido(pedido));
 
         // Verify
-        verify(productosRepository, times(1)).findById(1L);
+        verify(productosRepository, times(1)).findStockViewsByIdIn(Set.of(1L));
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void checkPedido_VariasLineas_UnaSolaConsulta() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(
+                LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build(),
+                LineaPedido.builder().idProducto(2L).cantidad(1).precioProducto(5.0).build(),
+                LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(10.0).build()
+        ));
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L, 2L))).thenReturn(List.of(
+                new ProductoStockView(1L, 5, 10.0),
+                new ProductoStockView(2L, 5, 5.0)
+        ));
+
+        // Act & Assert
+        assertDoesNotThrow(() -> pedidosService.checkPedido(pedido));
+
+        // Verify
+        verify(productosRepository, times(1)).findStockViewsByIdIn(Set.of(1L, 2L));
+        verify(productosRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void saveAll_ShouldCheckReserveAndInsertTogether() {
+        // Arrange
+        Producto producto = Producto.builder().id(1L).stock(5).precio(10.0).build();
+        Pedido ok = new Pedido();
+        ok.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build()));
+        Pedido malPrecio = new Pedido();
+        malPrecio.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(5.0).build()));
+        Pedido sinStock = new Pedido();
+        sinStock.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(3).precioProducto(10.0).build()));
+        Pedido vacio = new Pedido();
+
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
+        // Solo llegan a la reserva los dos válidos, el segundo de ellos se queda sin stock
+        when(stockService.reserveAll(List.of(Map.of(1L, 2), Map.of(1L, 3)))).thenReturn(Map.of(1, new ProductoNotStock(1L)));
+        when(pedidosRepository.insert(List.of(ok))).thenReturn(List.of(ok));
+
+        // Act
+        var results = pedidosService.saveAll(List.of(ok, malPrecio, sinStock, vacio));
+
+        // Assert
+        assertAll(
+                () -> assertEquals(4, results.size()),
+                () -> assertEquals(ok, results.get(0).pedido()),
+                () -> assertEquals(20.0, ok.getTotal()),
+                () -> assertInstanceOf(ProductoBadPrice.class, results.get(1).error()),
+                () -> assertInstanceOf(ProductoNotStock.class, results.get(2).error()),
+                () -> assertInstanceOf(PedidoNotItems.class, results.get(3).error())
+        );
+
+        // Verify: una consulta, un lote de stock y un insertMany
+        verify(productosRepository, times(1)).findStockViewsByIdIn(anyCollection());
+        verify(stockService, times(1)).reserveAll(anyList());
+        verify(pedidosRepository, times(1)).insert(anyList());
+        verify(pedidosRepository, never()).save(any(Pedido.class));
+        // Las ventas de todos los guardados van juntas
+        verify(ventasService, times(1)).apply(List.of(ok), List.of());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void saveBatch_ShouldSaveValidAndReportEachPedido() throws IOException {
+        // Arrange: uno bien, uno que no pasa la validación y uno sin stock
+        Producto producto = Producto.builder().id(1L).stock(5).precio(10.0).build();
+        Pedido ok = new Pedido();
+        ok.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build()));
+        Pedido sinStock = new Pedido();
+        sinStock.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(3).precioProducto(10.0).build()));
+        doAnswer(invocation -> {
+            ((Consumer<List<PedidosBatchReader.Row>>) invocation.getArgument(1)).accept(List.of(
+                    new PedidosBatchReader.Row(0, ok, null),
+                    new PedidosBatchReader.Row(1, null, "El id del usuario no puede ser nulo"),
+                    new PedidosBatchReader.Row(2, sinStock, null)));
+            return null;
+        }).when(pedidosBatchReader).read(any(InputStream.class), any());
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
+        when(stockService.reserveAll(List.of(Map.of(1L, 2), Map.of(1L, 3)))).thenReturn(Map.of(1, new ProductoNotStock(1L)));
+        when(pedidosRepository.insert(List.of(ok))).thenReturn(List.of(ok));
+
+        // Act
+        var response = pedidosService.saveBatch(new ByteArrayInputStream(new byte[0]));
+
+        // Assert
+        assertAll(
+                () -> assertEquals(3, response.total()),
+                () -> assertEquals(1, response.created()),
+                () -> assertEquals(2, response.failed()),
+                () -> assertEquals(new PedidoBatchResult(0, 201, ok.get_id(), null), response.results().get(0)),
+                () -> assertEquals(400, response.results().get(1).status()),
+                () -> assertEquals(400, response.results().get(2).status()),
+                () -> assertEquals(2, response.results().get(2).index())
+        );
+
+        // Verify: el bloque va entero a un solo insertMany
+        verify(pedidosRepository, times(1)).insert(anyList());
+    }
+
+    @Test
+    void saveBatch_ThrowsPedidoBadBatch_WhenUnreadable() throws IOException {
+        // Arrange
+        doThrow(new IOException("Conexión cerrada")).when(pedidosBatchReader).read(any(InputStream.class), any());
+
+        // Act & Assert
+        assertThrows(PedidoBadBatch.class, () -> pedidosService.saveBatch(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void saveAll_ShouldSaveOneByOne_WhenInsertFails() {
+        // Arrange
+        Producto producto = Producto.builder().id(1L).stock(5).precio(10.0).build();
+        Pedido primero = new Pedido();
+        primero.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(10.0).build()));
+        Pedido segundo = new Pedido();
+        segundo.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build()));
+
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
+        when(stockService.reserveAll(anyList())).thenReturn(Map.of());
+        when(pedidosRepository.insert(anyList())).thenThrow(new IllegalStateException("Mongo no responde"));
+        when(pedidosRepository.insert(primero)).thenReturn(primero);
+        when(pedidosRepository.insert(segundo)).thenThrow(new IllegalStateException("Mongo no responde"));
+
+        // Act
+        var results = pedidosService.saveAll(List.of(primero, segundo));
+
+        // Assert
+        assertAll(
+                () -> assertTrue(results.get(0).isOk()),
+                () -> assertFalse(results.get(1).isOk())
+        );
+
+        // Verify: solo se devuelve el stock del que no se ha guardado, y nunca se sobrescribe con save
+        verify(stockService, times(1)).release(Map.of(1L, 2));
+        verify(stockService, never()).release(Map.of(1L, 1));
+        verify(pedidosRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void saveAll_ShouldNotOverwriteExistingPedido_WhenInsertFails() {
+        // Arrange: el id viene en la petición y ya existe otro pedido con él
+        Producto producto = Producto.builder().id(1L).stock(5).precio(10.0).build();
+        Pedido duplicado = new Pedido();
+        duplicado.setIdUsuario(1L);
+        duplicado.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(10.0).build()));
+        Pedido existente = Pedido.builder().id(duplicado.getId()).idUsuario(2L).createdAt(LocalDateTime.now().minusDays(1)).build();
+
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
+        when(stockService.reserveAll(anyList())).thenReturn(Map.of());
+        when(pedidosRepository.insert(anyList())).thenThrow(new DuplicateKeyException("E11000"));
+        when(pedidosRepository.insert(duplicado)).thenThrow(new DuplicateKeyException("E11000"));
+        when(pedidosRepository.findById(duplicado.getId())).thenReturn(Optional.of(existente));
+
+        // Act
+        var results = pedidosService.saveAll(List.of(duplicado));
+
+        // Assert
+        assertInstanceOf(PedidoDuplicated.class, results.get(0).error());
+
+        // Verify
+        verify(stockService, times(1)).release(Map.of(1L, 1));
+        verify(pedidosRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void saveAll_ShouldKeepPedido_WhenInsertManySavedItBeforeFailing() {
+        // Arrange: el insertMany guardó el primero antes de fallar
+        Producto producto = Producto.builder().id(1L).stock(5).precio(10.0).build();
+        Pedido guardado = new Pedido();
+        guardado.setIdUsuario(1L);
+        guardado.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(10.0).build()));
+
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
+        when(stockService.reserveAll(anyList())).thenReturn(Map.of());
+        when(pedidosRepository.insert(anyList())).thenThrow(new IllegalStateException("Mongo no responde"));
+        when(pedidosRepository.insert(guardado)).thenThrow(new DuplicateKeyException("E11000"));
+        when(pedidosRepository.findById(guardado.getId())).thenAnswer(invocation -> Optional.of(guardado));
+
+        // Act
+        var results = pedidosService.saveAll(List.of(guardado));
+
+        // Assert
+        assertTrue(results.get(0).isOk());
+
+        // Verify
+        verify(stockService, never()).release(anyMap());
+    }
+
+    @Test
+    void saveAll_ShouldRejectRepeatedIdsInTheSameBatch() {
+        // Arrange
+        Producto producto = Producto.builder().id(1L).stock(5).precio(10.0).build();
+        Pedido primero = new Pedido();
+        primero.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(10.0).build()));
+        Pedido repetido = new Pedido();
+        repetido.setId(primero.getId());
+        repetido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build()));
+
+        when(productosRepository.findStockViewsByIdIn(Set.of(1L))).thenReturn(List.of(stockView(producto)));
+        when(stockService.reserveAll(List.of(Map.of(1L, 1)))).thenReturn(Map.of());
+        when(pedidosRepository.insert(List.of(primero))).thenReturn(List.of(primero));
+
+        // Act
+        var results = pedidosService.saveAll(List.of(primero, repetido));
+
+        // Assert
+        assertAll(
+                () -> assertTrue(results.get(0).isOk()),
+                () -> assertInstanceOf(PedidoDuplicated.class, results.get(1).error())
+        );
+
+        // Verify: el repetido no llega a reservar stock
+        verify(stockService, times(1)).reserveAll(List.of(Map.of(1L, 1)));
+    }
+
+    private ProductoStockView stockView(Producto producto) {
+        return new ProductoStockView(producto.getId(), producto.getStock(), producto.getPrecio());
+    }
+}
@@ -0,0 +1,45 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.archive;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosArchive;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidosArchiverTest {
+    @Mock
+    private PedidosArchive pedidosArchive;
+
+    private PedidosArchiver archiver() {
+        return new PedidosArchiver(pedidosArchive, true, Duration.ofDays(365), Duration.ofHours(1), 100);
+    }
+
+    @Test
+    void limite_ShouldBeStartOfMonth() {
+        assertEquals(LocalDateTime.of(2023, 3, 1, 0, 0), archiver().limite(LocalDateTime.of(2024, 3, 15, 10, 30)));
+    }
+
+    @Test
+    void archive_ShouldRepeatWhileBatchesAreFull() {
+        // Arrange
+        when(pedidosArchive.archive(any(LocalDateTime.class), eq(100))).thenReturn(100, 100, 30);
+
+        // Act
+        var total = archiver().archive();
+
+        // Assert
+        assertEquals(230, total);
+
+        // Verify
+        verify(pedidosArchive, times(3)).archive(any(LocalDateTime.class), eq(100));
+    }
+}
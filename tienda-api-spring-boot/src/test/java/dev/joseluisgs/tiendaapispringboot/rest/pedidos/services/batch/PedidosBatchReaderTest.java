@@ -0,0 +1,72 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PedidosBatchReaderTest {
+    private static final String PEDIDO = """
+            {"idUsuario": %d, "cliente": {"nombreCompleto": "Pepe", "email": "pepe@test.com", "telefono": "600000000"}, "lineasPedido": [{"idProducto": 1, "cantidad": 2, "precioProducto": 10.0}]}""";
+
+    private final PedidosBatchReader reader = new PedidosBatchReader(
+            Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper().registerModule(new JavaTimeModule()), 2);
+
+    private List<List<PedidosBatchReader.Row>> read(String body) throws IOException {
+        List<List<PedidosBatchReader.Row>> chunks = new ArrayList<>();
+        reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), chunks::add);
+        return chunks;
+    }
+
+    @Test
+    void read_ShouldReadJsonArrayInChunks() throws IOException {
+        var chunks = read("[" + PEDIDO.formatted(1) + "," + PEDIDO.formatted(2) + "," + PEDIDO.formatted(3) + "]");
+
+        var rows = chunks.stream().flatMap(List::stream).toList();
+        assertAll("readJson",
+                () -> assertEquals(List.of(2, 1), chunks.stream().map(List::size).toList()),
+                () -> assertTrue(rows.stream().allMatch(PedidosBatchReader.Row::isValid)),
+                () -> assertEquals(List.of(0L, 1L, 2L), rows.stream().map(PedidosBatchReader.Row::index).toList()),
+                () -> assertEquals(3L, rows.get(2).pedido().getIdUsuario()),
+                () -> assertEquals(1, rows.get(0).pedido().getLineasPedido().size())
+        );
+    }
+
+    @Test
+    void read_ShouldReadNdjsonAndValidateEachPedido() throws IOException {
+        var ndjson = PEDIDO.formatted(1) + "\n"
+                + "{\"cliente\": {\"nombreCompleto\": \"Pepe\"}, \"lineasPedido\": []}\n"
+                + "{\"idUsuario\": \"uno\", \"lineasPedido\": []}\n"
+                + PEDIDO.formatted(4) + "\n";
+
+        var rows = read(ndjson).stream().flatMap(List::stream).toList();
+
+        assertAll("readNdjson",
+                () -> assertEquals(4, rows.size()),
+                () -> assertTrue(rows.get(0).isValid()),
+                () -> assertTrue(rows.get(1).error().contains("El id del usuario no puede ser nulo")),
+                () -> assertTrue(rows.get(2).error().startsWith("Pedido no válido")),
+                () -> assertTrue(rows.get(3).isValid()),
+                () -> assertEquals(4L, rows.get(3).pedido().getIdUsuario())
+        );
+    }
+
+    @Test
+    void read_ShouldStop_WhenJsonIsBroken() throws IOException {
+        var rows = read("[" + PEDIDO.formatted(1) + ", {\"idUsuario\": 2,, }, " + PEDIDO.formatted(3) + "]").stream().flatMap(List::stream).toList();
+
+        assertAll("broken",
+                () -> assertEquals(2, rows.size()),
+                () -> assertTrue(rows.get(0).isValid()),
+                () -> assertTrue(rows.get(1).error().startsWith("JSON no válido"))
+        );
+    }
+}
@@ -0,0 +1,147 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.idempotency;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.*;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PedidosIdempotencyStoreTest {
+    private final PedidosIdempotencyStore store = new PedidosIdempotencyStore(10, Duration.ofMinutes(1), Duration.ofSeconds(5));
+
+    private Pedido pedido(int cantidad) {
+        return Pedido.builder()
+                .idUsuario(1L)
+                .lineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(cantidad).precioProducto(10.0).build()))
+                .build();
+    }
+
+    @Test
+    void execute_ShouldReplayWithoutSavingAgain() {
+        var saves = new AtomicInteger();
+        var saved = pedido(1);
+
+        var first = store.execute(1L, "clave", pedido(1), () -> {
+            saves.incrementAndGet();
+            return saved;
+        });
+        var second = store.execute(1L, "clave", pedido(1), () -> {
+            saves.incrementAndGet();
+            return pedido(1);
+        });
+
+        assertAll("replay",
+                () -> assertFalse(first.replayed()),
+                () -> assertTrue(second.replayed()),
+                () -> assertSame(saved, second.pedido()),
+                () -> assertEquals(1, saves.get())
+        );
+    }
+
+    @Test
+    void execute_ShouldSeparateUsers() {
+        var saves = new AtomicInteger();
+
+        store.execute(1L, "clave", pedido(1), () -> pedido(saves.incrementAndGet()));
+        var other = store.execute(2L, "clave", pedido(1), () -> pedido(saves.incrementAndGet()));
+
+        assertAll("users",
+                () -> assertFalse(other.replayed()),
+                () -> assertEquals(2, saves.get())
+        );
+    }
+
+    @Test
+    void execute_ShouldRejectOtherPedidoWithSameKey() {
+        store.execute(1L, "clave", pedido(1), () -> pedido(1));
+
+        assertThrows(PedidoKeyMismatch.class, () -> store.execute(1L, "clave", pedido(2), () -> pedido(2)));
+    }
+
+    @Test
+    void execute_ShouldRejectBadKey() {
+        assertAll("badKey",
+                () -> assertThrows(PedidoBadKey.class, () -> store.execute(1L, " ", pedido(1), () -> pedido(1))),
+                () -> assertThrows(PedidoBadKey.class, () -> store.execute(1L, "x".repeat(PedidosIdempotencyStore.MAX_KEY_LENGTH + 1), pedido(1), () -> pedido(1)))
+        );
+    }
+
+    @Test
+    void execute_ShouldNotStoreErrors() {
+        assertThrows(ProductoNotStock.class, () -> store.execute(1L, "clave", pedido(1), () -> {
+            throw new ProductoNotStock(1L);
+        }));
+
+        var retry = store.execute(1L, "clave", pedido(1), () -> pedido(1));
+
+        assertAll("retry",
+                () -> assertFalse(retry.replayed()),
+                () -> assertEquals(1, store.size())
+        );
+    }
+
+    @Test
+    void execute_ShouldCoalesceConcurrentDuplicates() throws Exception {
+        var saves = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var saved = pedido(1);
+
+        var first = CompletableFuture.supplyAsync(() -> store.execute(1L, "clave", pedido(1), () -> {
+            saves.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return saved;
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        var second = CompletableFuture.supplyAsync(() -> store.execute(1L, "clave", pedido(1), () -> {
+            saves.incrementAndGet();
+            return pedido(1);
+        }));
+        // La repetida espera a la primera
+        Thread.sleep(50);
+        assertFalse(second.isDone());
+        release.countDown();
+
+        assertAll("coalesce",
+                () -> assertSame(saved, first.get(5, TimeUnit.SECONDS).pedido()),
+                () -> assertSame(saved, second.get(5, TimeUnit.SECONDS).pedido()),
+                () -> assertTrue(second.get().replayed()),
+                () -> assertEquals(1, saves.get())
+        );
+    }
+
+    @Test
+    void execute_ShouldFailDuplicate_WhenFirstTakesTooLong() throws Exception {
+        var slowStore = new PedidosIdempotencyStore(10, Duration.ofMinutes(1), Duration.ofMillis(50));
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var first = CompletableFuture.runAsync(() -> slowStore.execute(1L, "clave", pedido(1), () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return pedido(1);
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertThrows(PedidoKeyInProgress.class, () -> slowStore.execute(1L, "clave", pedido(1), () -> pedido(1)));
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,97 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.ProductoNotStock;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosQueryCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DatabaseStockServiceTest {
+    @Mock
+    private ProductosRepository productosRepository;
+    @Mock
+    private ProductosCache productosCache;
+    @Mock
+    private ProductosQueryCache productosQueryCache;
+
+    @InjectMocks
+    private DatabaseStockService stockService;
+
+    @Test
+    void reserve_ShouldDecrementAndEvict() {
+        // Arrange
+        when(productosRepository.decrementStock(Map.of(1L, 3))).thenReturn(List.of());
+
+        // Act
+        stockService.reserve(Map.of(1L, 3));
+
+        // Verify
+        verify(productosRepository, times(1)).decrementStock(Map.of(1L, 3));
+        verify(productosCache, times(1)).evict(1L);
+        verify(productosQueryCache, times(1)).invalidateAll();
+    }
+
+    @Test
+    void reserve_ShouldThrowProductoNotStock() {
+        // Arrange
+        when(productosRepository.decrementStock(Map.of(1L, 2, 2L, 50))).thenReturn(List.of(2L));
+
+        // Act & Assert
+        var res = assertThrows(ProductoNotStock.class, () -> stockService.reserve(Map.of(1L, 2, 2L, 50)));
+        assertTrue(res.getMessage().contains("2"));
+
+        // Verify
+        verify(productosCache, never()).evict(anyLong());
+        verify(productosQueryCache, never()).invalidateAll();
+    }
+
+    @Test
+    void release_ShouldIncrementAndEvict() {
+        // Act
+        stockService.release(Map.of(1L, 2));
+
+        // Verify
+        verify(productosRepository, times(1)).incrementStock(Map.of(1L, 2));
+        verify(productosCache, times(1)).evict(1L);
+        verify(productosQueryCache, times(1)).invalidateAll();
+    }
+
+    @Test
+    void adjust_ShouldApplyDifferencesInOneBatch() {
+        // Arrange
+        when(productosRepository.decrementStock(Map.of(1L, 2, 2L, -1))).thenReturn(List.of());
+
+        // Act
+        stockService.adjust(Map.of(1L, 2, 2L, -1));
+
+        // Verify
+        verify(productosRepository, times(1)).decrementStock(Map.of(1L, 2, 2L, -1));
+        verify(productosRepository, never()).incrementStock(anyMap());
+        verify(productosCache, times(1)).evict(1L);
+        verify(productosCache, times(1)).evict(2L);
+    }
+
+    @Test
+    void adjust_ShouldThrowProductoNotStock() {
+        // Arrange
+        when(productosRepository.decrementStock(Map.of(1L, 2, 2L, -1))).thenReturn(List.of(1L));
+
+        // Act & Assert
+        assertThrows(ProductoNotStock.class, () -> stockService.adjust(Map.of(1L, 2, 2L, -1)));
+
+        // Verify
+        verify(productosCache, never()).evict(anyLong());
+    }
+}
@@ -0,0 +1,78 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscRingBufferTest {
+
+    @Test
+    void offerAndPoll_ShouldBeFifoAndBounded() {
+        var queue = new MpscRingBuffer<Integer>(3);
+
+        assertAll("bounded",
+                () -> assertEquals(4, queue.capacity()),
+                () -> assertTrue(queue.isEmpty()),
+                () -> assertTrue(queue.offer(1)),
+                () -> assertTrue(queue.offer(2)),
+                () -> assertTrue(queue.offer(3)),
+                () -> assertTrue(queue.offer(4)),
+                () -> assertFalse(queue.offer(5)),
+                () -> assertEquals(1, queue.poll()),
+                () -> assertTrue(queue.offer(5)),
+                () -> assertEquals(2, queue.poll()),
+                () -> assertEquals(3, queue.poll()),
+                () -> assertEquals(4, queue.poll()),
+                () -> assertEquals(5, queue.poll()),
+                () -> assertNull(queue.poll()),
+                () -> assertTrue(queue.isEmpty())
+        );
+    }
+
+    @Test
+    void offer_ShouldNotLoseElementsWithManyProducers() throws InterruptedException {
+        var queue = new MpscRingBuffer<Integer>(64);
+        int producers = 4;
+        int perProducer = 10_000;
+        var start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            var thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // Un solo consumidor, como el escritor de un shard
+        Set<Integer> received = new HashSet<>();
+        start.countDown();
+        while (received.size() < producers * perProducer) {
+            var element = queue.poll();
+            if (element != null) {
+                assertTrue(received.add(element), "Elemento repetido " + element);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,214 @@
+package dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock;
+
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.ProductoNotStock;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.StockUnavailable;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoStockView;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosQueryCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ShardedStockServiceTest {
+    @TempDir
+    Path journalDir;
+
+    private final Map<Long, Integer> stock = new HashMap<>();
+    private final ProductosRepository productosRepository = mock(ProductosRepository.class);
+    private final StockFlusher stockFlusher = mock(StockFlusher.class);
+    private final ProductosCache productosCache = mock(ProductosCache.class);
+    private final ProductosQueryCache productosQueryCache = mock(ProductosQueryCache.class);
+
+    private ShardedStockService stockService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // La base de datos devuelve el stock de los productos que existen
+        when(productosRepository.findStockViewsByIdIn(anyCollection())).thenAnswer(invocation -> ((Collection<Long>) invocation.getArgument(0)).stream()
+                .filter(stock::containsKey)
+                .map(id -> new ProductoStockView(id, stock.get(id), 10.0))
+                .toList());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (stockService != null) {
+            stockService.stop();
+        }
+    }
+
+    private void start(int shards) throws IOException {
+        // Intervalo largo para que solo se vuelque al parar
+        stockService = new ShardedStockService(productosRepository, stockFlusher, productosCache, productosQueryCache,
+                shards, 1024, Duration.ofHours(1), 1000, Duration.ofSeconds(5), journalDir.toString());
+        stockService.start();
+    }
+
+    @Test
+    void reserve_ShouldReserveFromMemoryAndFlushOnStop() throws Exception {
+        // Arrange
+        stock.put(1L, 10);
+        start(2);
+
+        // Act
+        stockService.reserve(Map.of(1L, 3));
+        stockService.reserve(Map.of(1L, 3));
+        var res = assertThrows(ProductoNotStock.class, () -> stockService.reserve(Map.of(1L, 5)));
+        stockService.release(Map.of(1L, 1));
+        stockService.stop();
+
+        // Assert
+        assertTrue(res.getMessage().contains("1"));
+
+        // Verify: se lee una vez y se vuelca todo junto al parar
+        verify(productosRepository, times(1)).findStockViewsByIdIn(anyCollection());
+        verify(stockFlusher, times(1)).flush(1, Map.of(1L, -5), 3L);
+        verify(productosCache, times(1)).evict(1L);
+        stockService = null;
+    }
+
+    @Test
+    void reserve_ShouldBeAllOrNothingAcrossShards() throws Exception {
+        // Arrange: el 1 va al shard 1 y el 2 al shard 0
+        stock.put(1L, 10);
+        stock.put(2L, 1);
+        start(2);
+
+        // Act & Assert
+        var res = assertThrows(ProductoNotStock.class, () -> stockService.reserve(Map.of(1L, 5, 2L, 2)));
+        assertTrue(res.getMessage().contains("2"));
+        // Lo reservado del producto 1 se ha devuelto
+        assertDoesNotThrow(() -> stockService.reserve(Map.of(1L, 10)));
+        assertThrows(ProductoNotStock.class, () -> stockService.reserve(Map.of(3L, 1)));
+    }
+
+    @Test
+    void reserve_ConcurrentOrders_ShouldNeverOversell() throws Exception {
+        // Arrange
+        stock.put(7L, 100);
+        start(4);
+        var reservadas = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        for (int i = 0; i < 400; i++) {
+            executor.submit(() -> {
+                try {
+                    stockService.reserve(Map.of(7L, 1));
+                    reservadas.incrementAndGet();
+                } catch (ProductoNotStock ignored) {
+                    // Sin stock
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        stockService.stop();
+
+        // Assert
+        assertEquals(100, reservadas.get());
+        verify(stockFlusher, times(1)).flush(eq(3), eq(Map.of(7L, -100)), eq(100L));
+        stockService = null;
+    }
+
+    @Test
+    void set_ShouldApplyDifferenceWithCounter() throws Exception {
+        // Arrange: hay una reserva sin volcar
+        stock.put(1L, 10);
+        start(1);
+        stockService.reserve(Map.of(1L, 2));
+
+        // Act: el administrador lo deja en 5
+        assertTrue(stockService.set(1L, 5));
+
+        // Assert
+        assertThrows(ProductoNotStock.class, () -> stockService.reserve(Map.of(1L, 6)));
+        assertDoesNotThrow(() -> stockService.reserve(Map.of(1L, 5)));
+
+        // Verify: se vuelca como diferencia (-2, -3 y -5), sin pisar nada
+        stockService.stop();
+        verify(stockFlusher, times(1)).flush(0, Map.of(1L, -10), 3L);
+        stockService = null;
+    }
+
+    @Test
+    void set_ShouldUndoDifference_WhenTransactionRollsBack() throws Exception {
+        // Arrange
+        stock.put(1L, 10);
+        start(1);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act: la edición lo deja en 4 y después se deshace
+            stockService.set(1L, 4);
+            assertThrows(ProductoNotStock.class, () -> stockService.reserve(Map.of(1L, 5)));
+            TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert: vuelve a tener los 10
+        assertDoesNotThrow(() -> stockService.reserve(Map.of(1L, 10)));
+    }
+
+    @Test
+    void set_ShouldFail_WhenEngineIsStopped() throws Exception {
+        // Arrange
+        stock.put(1L, 10);
+        start(1);
+        stockService.stop();
+
+        // Act & Assert: la edición falla y se deshace, no se pierde sin avisar
+        assertThrows(StockUnavailable.class, () -> stockService.set(1L, 4));
+        stockService = null;
+    }
+
+    @Test
+    void start_ShouldReplayJournalAboveCheckpoint() throws Exception {
+        // Arrange: el movimiento 1 ya estaba volcado y la última línea se quedó a medias
+        var journal = journalDir.resolve("stock-shard-0.journal");
+        Files.writeString(journal, "1;2;-1\n2;2;-3\n3;4;-2\n4;2;");
+        when(stockFlusher.checkpoint(0)).thenReturn(1L);
+
+        // Act
+        start(1);
+
+        // Assert
+        assertEquals(0, Files.size(journal));
+
+        // Verify
+        verify(stockFlusher, times(1)).flush(0, Map.of(2L, -3, 4L, -2), 3L);
+    }
+
+    @Test
+    void reserve_ShouldWriteJournalBeforeConfirming() throws Exception {
+        // Arrange
+        stock.put(1L, 10);
+        start(1);
+
+        // Act
+        stockService.reserve(Map.of(1L, 2));
+        stockService.release(Map.of(1L, 1));
+
+        // Assert: sin volcar todavía, pero ya está en el diario
+        assertEquals(List.of("1;1;-2", "2;1;1"), Files.readAllLines(journalDir.resolve("stock-shard-0.journal")));
+        verify(stockFlusher, never()).flush(anyInt(), anyMap(), anyLong());
+    }
+}
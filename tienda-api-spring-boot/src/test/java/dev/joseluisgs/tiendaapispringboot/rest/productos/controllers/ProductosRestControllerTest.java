@@ -7,9 +7,12 @@ import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoCreateRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoUpdateRequest;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosImportResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.exceptions.ProductoNotFound;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.services.ProductosService;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosFileFormat;
+import dev.joseluisgs.tiendaapispringboot.utils.pagination.PageCursor;
 import dev.joseluisgs.tiendaapispringboot.utils.pagination.PageResponse;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -18,24 +21,31 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.*;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -148,6 +158,121 @@ class ProductosRestControllerTest {
 
     }
 
+
+    @Test
+    void getAllProductsWithoutTotal() throws Exception {
+        var pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
+        var slice = new SliceImpl<>(List.of(productoResponse1, productoResponse2), pageable, false);
+
+        // Arrange
+        when(productosService.findAllSlice(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable)).thenReturn(slice);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "?withTotal=false")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        PageResponse<ProductoResponse> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        });
+
+        // Assert
+        assertAll("findallWithoutTotal",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(2, res.content().size()),
+                () -> assertNull(res.totalElements()),
+                () -> assertNull(res.totalPages())
+        );
+
+        // Verify
+        verify(productosService, times(1)).findAllSlice(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
+    }
+
+    @Test
+    void getAllProductsByCursor() throws Exception {
+        var productosList = List.of(productoResponse1, productoResponse2);
+        var sort = Sort.by("id").ascending();
+        Window<ProductoResponse> window = Window.from(productosList, i -> ScrollPosition.forward(Map.of("id", productosList.get(i).getId())), true);
+
+        // Arrange
+        when(productosService.findAll(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), ScrollPosition.keyset(), sort, 2)).thenReturn(window);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "?size=2&cursor=")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        PageResponse<ProductoResponse> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        });
+
+        // Assert
+        assertAll("findallByCursor",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(2, res.content().size()),
+                () -> assertNull(res.totalElements()),
+                () -> assertFalse(res.last()),
+                () -> assertEquals(new PageCursor("id", "asc", null, "2"), PageCursor.decode(res.nextCursor())),
+                () -> assertTrue(response.getHeader("link").contains("cursor=" + res.nextCursor()))
+        );
+
+        // Verify
+        verify(productosService, times(1)).findAll(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), ScrollPosition.keyset(), sort, 2);
+    }
+
+    @Test
+    void getAllProductsByCursorNextPage() throws Exception {
+        var cursor = new PageCursor("precio", "desc", "100.0", "2").encode();
+        var sort = Sort.by("precio").descending();
+        var position = ScrollPosition.forward(Map.of("precio", 100.0, "id", 2L));
+        Window<ProductoResponse> window = Window.from(List.of(productoResponse1), i -> position, false);
+
+        // Arrange
+        when(productosService.findAll(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), position, sort, 10)).thenReturn(window);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "?cursor=" + cursor)
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        PageResponse<ProductoResponse> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        });
+
+        // Assert
+        assertAll("findallByCursorNextPage",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(1, res.content().size()),
+                () -> assertEquals("precio", res.sortBy()),
+                () -> assertTrue(res.last()),
+                () -> assertNull(res.nextCursor())
+        );
+
+        // Verify
+        verify(productosService, times(1)).findAll(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), position, sort, 10);
+    }
+
+    @Test
+    void getAllProductsByCursorBadCursor() throws Exception {
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "?cursor=noesuncursor")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    void getAllProductsByCursorBadSortBy() throws Exception {
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "?cursor=&sortBy=descripcion")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(400, response.getStatus());
+    }
+
     @Test
     void getAllProductsByMarca() throws Exception {
         var productosList = List.of(productoResponse2);
@@ -241,6 +366,76 @@ class ProductosRestControllerTest {
         verify(productosService, times(1)).findAll(marca, categoria, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
     }
 
+    @Test
+    void exportProducts() throws Exception {
+        var marca = Optional.of("Adidas");
+        when(productosService.export(eq(marca), eq(Optional.empty()), eq(Optional.empty()), eq(Optional.empty()), eq(Optional.empty()), eq(Optional.empty()), eq(ProductosFileFormat.CSV), any(OutputStream.class)))
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(7, OutputStream.class).write("id,marca\n1,Adidas\n".getBytes(StandardCharsets.UTF_8));
+                    return 1L;
+                });
+
+        // Consulto el endpoint, la respuesta se escribe de forma asíncrona
+        MvcResult result = mockMvc.perform(
+                        get(myEndpoint + "/export?marca=Adidas&format=csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse();
+
+        // Assert
+        assertAll("export",
+                () -> assertEquals(Duration.ofMinutes(30).toMillis(), result.getRequest().getAsyncContext().getTimeout()),
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertTrue(response.getContentType().startsWith("text/csv")),
+                () -> assertTrue(response.getHeader(HttpHeaders.CONTENT_DISPOSITION).contains("productos.csv")),
+                () -> assertEquals("id,marca\n1,Adidas\n", response.getContentAsString(StandardCharsets.UTF_8))
+        );
+
+        // Verify
+        verify(productosService, times(1)).export(eq(marca), eq(Optional.empty()), eq(Optional.empty()), eq(Optional.empty()), eq(Optional.empty()), eq(Optional.empty()), eq(ProductosFileFormat.CSV), any(OutputStream.class));
+    }
+
+    @Test
+    void exportProductsGzip() throws Exception {
+        when(productosService.export(any(), any(), any(), any(), any(), any(), eq(ProductosFileFormat.NDJSON), any(OutputStream.class)))
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(7, OutputStream.class).write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+                    return 1L;
+                });
+
+        // Consulto el endpoint
+        MvcResult result = mockMvc.perform(
+                        get(myEndpoint + "/export?gzip=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse();
+
+        // Assert
+        try (var gzip = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            var content = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+            assertAll("exportGzip",
+                    () -> assertEquals(200, response.getStatus()),
+                    () -> assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING)),
+                    () -> assertTrue(response.getContentType().startsWith(MediaType.APPLICATION_NDJSON_VALUE)),
+                    () -> assertEquals("{\"id\":1}\n", content)
+            );
+        }
+    }
+
+    @Test
+    void exportProductsBadFormat() throws Exception {
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/export?format=xml"))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(400, response.getStatus());
+
+        // Verify
+        verify(productosService, times(0)).export(any(), any(), any(), any(), any(), any(), any(), any());
+    }
+
     @Test
     void getProductById() throws Exception {
         var myLocalEndpoint = myEndpoint + "/1";
@@ -323,6 +518,71 @@ class ProductosRestControllerTest {
         verify(productosService, times(1)).save(any(ProductoCreateRequest.class));
     }
 
+    @Test
+    void importProducts() throws Exception {
+        var ndjson = "{\"marca\":\"Adidas\",\"modelo\":\"Zapatillas\",\"descripcion\":\"Zapatillas de deporte\",\"precio\":100.0,\"categoria\":\"DEPORTES\",\"stock\":5}\n";
+        var importResponse = new ProductosImportResponse(1, 1, 0, List.of());
+
+        // Arrange
+        when(productosService.importProductos(any(), eq(ProductosFileFormat.NDJSON))).thenReturn(importResponse);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myEndpoint + "/import")
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .content(ndjson))
+                .andReturn().getResponse();
+
+        ProductosImportResponse res = mapper.readValue(response.getContentAsString(), ProductosImportResponse.class);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(importResponse, res)
+        );
+
+        // Verify
+        verify(productosService, times(1)).importProductos(any(), eq(ProductosFileFormat.NDJSON));
+    }
+
+    @Test
+    void importProductsCsv() throws Exception {
+        var csv = "marca,modelo,descripcion,precio,categoria,stock\nAdidas,Zapatillas,Zapatillas de deporte,100.0,DEPORTES,5\n";
+        var importResponse = new ProductosImportResponse(1, 1, 0, List.of());
+
+        // Arrange
+        when(productosService.importProductos(any(), eq(ProductosFileFormat.CSV))).thenReturn(importResponse);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myEndpoint + "/import")
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType("text/csv")
+                                .content(csv))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(200, response.getStatus());
+
+        // Verify
+        verify(productosService, times(1)).importProductos(any(), eq(ProductosFileFormat.CSV));
+    }
+
+    @Test
+    void importProductsUnsupportedMediaType() throws Exception {
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myEndpoint + "/import")
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_XML)
+                                .content("<productos/>"))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(415, response.getStatus());
+    }
+
     @Test
     void createProductWithBadRequest() throws Exception {
         var productoDto = ProductoCreateRequest.builder()
@@ -1,22 +1,30 @@
 package dev.joseluisgs.tiendaapispringboot.rest.productos.repositories;
 
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
+import dev.joseluisgs.tiendaapispringboot.utils.pagination.SliceUtils;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.*;
+import org.springframework.data.jpa.domain.Specification;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 // Vamos a probar el repositorio, pero moqueamos la base de datos JPA
-@DataJpaTest
+// Activamos las estadísticas de Hibernate para contar las sentencias de las proyecciones
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 class ProductosRepositoryTest {
     //Damos por hecho que funciona bien, ya que es un repositorio de Spring Data JPA
     private final Categoria categoria = new Categoria(null, "TEST", LocalDateTime.now(), LocalDateTime.now(), false);
@@ -225,4 +233,250 @@ class ProductosRepositoryTest {
         );
     }
 
+    @Test
+    void findAllSearchViews() {
+        // Act
+        var vistas = repository.findAllSearchViews();
+
+        // Assert
+        assertAll("findAllSearchViews",
+                () -> assertTrue(vistas.size() >= 2),
+                () -> assertTrue(vistas.stream().anyMatch(v -> v.marca().equals("Adidas") && v.categoriaNombre().equals("TEST")))
+        );
+    }
+
+    @Test
+    void findBy_keysetScroll() {
+        // Arrange
+        Specification<Producto> criterio = (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("categoria").get("nombre"), categoria.getNombre());
+        Sort sort = Sort.by("marca").ascending().and(Sort.by("id").ascending());
+
+        // Act
+        Window<Producto> primera = repository.findBy(criterio, q -> q.sortBy(sort).limit(1).scroll(ScrollPosition.keyset()));
+        Window<Producto> segunda = repository.findBy(criterio, q -> q.sortBy(sort).limit(1).scroll(primera.positionAt(0)));
+
+        // Assert
+        assertAll("findBy_keysetScroll",
+                () -> assertEquals("Adidas", primera.getContent().get(0).getMarca()),
+                () -> assertTrue(primera.hasNext()),
+                () -> assertEquals("Nike", segunda.getContent().get(0).getMarca()),
+                () -> assertFalse(segunda.hasNext())
+        );
+    }
+
+    @Test
+    void findBy_offsetScrollSlice() {
+        // Arrange
+        Specification<Producto> criterio = (root, query, criteriaBuilder) -> criteriaBuilder.isTrue(criteriaBuilder.literal(true));
+        Pageable pageable = PageRequest.of(1, 2, Sort.by("id").ascending());
+        Page<Producto> page = repository.findAll(criterio, pageable);
+
+        // Act
+        Slice<Producto> slice = SliceUtils.toSlice(repository.findBy(criterio, q -> q.sortBy(pageable.getSort()).limit(pageable.getPageSize()).scroll(SliceUtils.offsetOf(pageable))), pageable);
+
+        // Assert
+        assertAll("findBy_offsetScrollSlice",
+                () -> assertEquals(page.getContent().stream().map(Producto::getId).toList(), slice.getContent().stream().map(Producto::getId).toList()),
+                () -> assertEquals(page.hasNext(), slice.hasNext()),
+                () -> assertEquals(1, slice.getNumber())
+        );
+    }
+
+    @Test
+    void findAllResponses_singleQueryPlusCount() {
+        // Arrange
+        Specification<Producto> criterio = (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("categoria").get("nombre"), categoria.getNombre());
+        Pageable pageable = PageRequest.of(0, 1, Sort.by("marca").ascending());
+        Statistics statistics = statistics();
+
+        // Act
+        Page<ProductoResponse> page = repository.findAllResponses(criterio, pageable);
+
+        // Assert: una consulta para la página y otra para el total, sin cargar categorías aparte
+        assertAll("findAllResponses",
+                () -> assertEquals(2, statistics.getPrepareStatementCount()),
+                () -> assertEquals(0, statistics.getEntityLoadCount()),
+                () -> assertEquals(2, page.getTotalElements()),
+                () -> assertEquals("Adidas", page.getContent().get(0).getMarca()),
+                () -> assertEquals(categoria.getNombre(), page.getContent().get(0).getCategoria())
+        );
+    }
+
+    @Test
+    void findSliceResponses_singleQuery() {
+        // Arrange
+        Specification<Producto> criterio = (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("categoria").get("nombre"), categoria.getNombre());
+        Pageable pageable = PageRequest.of(0, 1, Sort.by("marca").ascending());
+        Statistics statistics = statistics();
+
+        // Act
+        Slice<ProductoResponse> slice = repository.findSliceResponses(criterio, pageable);
+
+        // Assert
+        assertAll("findSliceResponses",
+                () -> assertEquals(1, statistics.getPrepareStatementCount()),
+                () -> assertEquals(1, slice.getNumberOfElements()),
+                () -> assertTrue(slice.hasNext())
+        );
+    }
+
+    @Test
+    void findResponseByUuid_singleQuery() {
+        // Arrange
+        Statistics statistics = statistics();
+
+        // Act
+        Optional<ProductoResponse> producto = repository.findResponseByUuid(producto1.getUuid());
+
+        // Assert
+        assertAll("findResponseByUuid",
+                () -> assertEquals(1, statistics.getPrepareStatementCount()),
+                () -> assertTrue(producto.isPresent()),
+                () -> assertEquals(categoria.getNombre(), producto.get().getCategoria()),
+                () -> assertTrue(repository.findResponseByUuid(UUID.randomUUID()).isEmpty())
+        );
+    }
+
+    @Test
+    void streamResponses_singleQueryWithoutManagedEntities() {
+        // Arrange
+        Specification<Producto> criterio = (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("categoria").get("nombre"), categoria.getNombre());
+        Statistics statistics = statistics();
+
+        // Act
+        List<ProductoResponse> productos;
+        try (var stream = repository.streamResponses(criterio, Sort.by("marca").descending())) {
+            productos = stream.toList();
+        }
+
+        // Assert: una sola consulta y ningún producto queda en el contexto de persistencia
+        assertAll("streamResponses",
+                () -> assertEquals(1, statistics.getPrepareStatementCount()),
+                () -> assertEquals(List.of("Nike", "Adidas"), productos.stream().map(ProductoResponse::getMarca).toList()),
+                () -> assertEquals(categoria.getNombre(), productos.get(0).getCategoria()),
+                () -> assertEquals(0, statistics.getEntityLoadCount())
+        );
+    }
+
+    @Test
+    void insertAll_batchInsertAndSearchViews() {
+        // Arrange
+        var categoriaTest = repository.findAll().stream().map(Producto::getCategoria).filter(c -> c.getNombre().equals("TEST")).findFirst().orElseThrow();
+        var nuevos = List.of(
+                Producto.builder().marca("Puma").modelo("Suede").descripcion("Zapatillas").precio(80.0).stock(3).categoria(categoriaTest).build(),
+                Producto.builder().marca("Asics").modelo("Gel").descripcion("Zapatillas").precio(120.0).stock(2).categoria(categoriaTest).build()
+        );
+
+        // Act
+        int insertados = repository.insertAll(nuevos);
+        var vistas = repository.findSearchViewsByUuidIn(nuevos.stream().map(Producto::getUuid).toList());
+
+        // Assert
+        assertAll("insertAll",
+                () -> assertEquals(2, insertados),
+                () -> assertEquals(2, vistas.size()),
+                () -> assertTrue(vistas.stream().allMatch(v -> v.id() != null && v.categoriaNombre().equals("TEST"))),
+                () -> assertEquals("Puma", repository.findByUuid(nuevos.get(0).getUuid()).orElseThrow().getMarca())
+        );
+    }
+
+    @Test
+    void findStockViewsByIdIn_singleQuery() {
+        // Arrange
+        var adidas = repository.findByUuid(producto1.getUuid()).orElseThrow();
+        var nike = repository.findByUuid(producto2.getUuid()).orElseThrow();
+        Statistics statistics = statistics();
+
+        // Act
+        var vistas = repository.findStockViewsByIdIn(List.of(adidas.getId(), nike.getId(), -1L));
+
+        // Assert: una consulta, sin cargar entidades ni categorías
+        assertAll("findStockViewsByIdIn",
+                () -> assertEquals(1, statistics.getPrepareStatementCount()),
+                () -> assertEquals(0, statistics.getEntityLoadCount()),
+                () -> assertEquals(2, vistas.size()),
+                () -> assertTrue(vistas.stream().allMatch(v -> v.stock() == 5 && v.precio() == 100.0))
+        );
+    }
+
+    @Test
+    void decrementStock_onlyWhenEnoughStock() {
+        // Arrange
+        var adidas = repository.findByUuid(producto1.getUuid()).orElseThrow();
+        var nike = repository.findByUuid(producto2.getUuid()).orElseThrow();
+        Statistics statistics = statistics();
+
+        // Act: hay 5 de cada uno
+        var sinStock = repository.decrementStock(Map.of(adidas.getId(), 3, nike.getId(), 6, -1L, 1));
+
+        // Assert
+        assertAll("decrementStock",
+                () -> assertEquals(List.of(-1L, nike.getId()), sinStock),
+                () -> assertEquals(0, statistics.getEntityLoadCount()),
+                () -> assertEquals(2, repository.findById(adidas.getId()).orElseThrow().getStock()),
+                () -> assertEquals(5, repository.findById(nike.getId()).orElseThrow().getStock())
+        );
+    }
+
+    @Test
+    void decrementStockAll_eachPedidoAllOrNothing() {
+        // Arrange: hay 5 de cada uno
+        var adidas = repository.findByUuid(producto1.getUuid()).orElseThrow().getId();
+        var nike = repository.findByUuid(producto2.getUuid()).orElseThrow().getId();
+        entityManager.clear();
+
+        // Act
+        var sinStock = repository.decrementStockAll(List.of(
+                Map.of(adidas, 3),
+                Map.of(adidas, 3, nike, 1), // ya no queda adidas
+                Map.of(nike, 6), // nunca ha habido tanto
+                Map.of(adidas, 2, nike, 5) // cabe si no se le adelanta el anterior que falla
+        ));
+
+        // Assert
+        assertAll("decrementStockAll",
+                () -> assertEquals(Map.of(1, adidas, 2, nike), sinStock),
+                () -> assertEquals(0, repository.findById(adidas).orElseThrow().getStock()),
+                () -> assertEquals(0, repository.findById(nike).orElseThrow().getStock())
+        );
+    }
+
+    @Test
+    void decrementStock_negativeAddsStock() {
+        // Arrange: hay 5 de cada uno
+        var adidas = repository.findByUuid(producto1.getUuid()).orElseThrow().getId();
+        var nike = repository.findByUuid(producto2.getUuid()).orElseThrow().getId();
+        entityManager.clear();
+
+        // Act: diferencias de un pedido actualizado, uno más de adidas y dos menos de nike
+        var sinStock = repository.decrementStock(Map.of(adidas, 1, nike, -2));
+
+        // Assert
+        assertAll("decrementStock",
+                () -> assertEquals(List.of(), sinStock),
+                () -> assertEquals(4, repository.findById(adidas).orElseThrow().getStock()),
+                () -> assertEquals(7, repository.findById(nike).orElseThrow().getStock())
+        );
+    }
+
+    @Test
+    void incrementStock() {
+        // Arrange
+        var adidas = repository.findByUuid(producto1.getUuid()).orElseThrow();
+        entityManager.clear();
+
+        // Act
+        repository.incrementStock(Map.of(adidas.getId(), 2));
+
+        // Assert
+        assertEquals(7, repository.findById(adidas.getId()).orElseThrow().getStock());
+    }
+
+    // Limpia el contexto de persistencia y las estadísticas para contar solo lo que hace la consulta
+    private Statistics statistics() {
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
 }
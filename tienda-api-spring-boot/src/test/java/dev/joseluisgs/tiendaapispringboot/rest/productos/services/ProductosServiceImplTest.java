@@ -3,7 +3,8 @@ package dev.joseluisgs.tiendaapispringboot.rest.productos.services;
 import dev.joseluisgs.tiendaapispringboot.config.websockets.WebSocketConfig;
 import dev.joseluisgs.tiendaapispringboot.config.websockets.WebSocketHandler;
 import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
-import dev.joseluisgs.tiendaapispringboot.rest.categorias.repositories.CategoriasRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.services.CategoriasNameResolver;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.stock.StockService;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoCreateRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoUpdateRequest;
@@ -13,9 +14,16 @@ import dev.joseluisgs.tiendaapispringboot.rest.productos.exceptions.ProductoNotF
 import dev.joseluisgs.tiendaapispringboot.rest.productos.mappers.ProductoMapper;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
 import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache.ProductosQueryCache;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosFileFormat;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.exports.ProductosExportWriter;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.imports.ProductosImportReader;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.search.ProductosSearchIndex;
 import dev.joseluisgs.tiendaapispringboot.rest.storage.services.StorageService;
 import dev.joseluisgs.tiendaapispringboot.websockets.notifications.mapper.ProductoNotificationMapper;
 import dev.joseluisgs.tiendaapispringboot.websockets.notifications.models.Notificacion;
+import jakarta.validation.Validation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -23,17 +31,25 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.*;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -98,13 +114,25 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
     @Mock
     private StorageService storageService;
     @Mock
-    private CategoriasRepository categoriasRepository;
+    private CategoriasNameResolver categoriasNameResolver;
     @Mock
     private ProductoMapper productoMapper;
     @Mock
     private WebSocketConfig webSocketConfig;
     @Mock
     private ProductoNotificationMapper productoNotificationMapper;
+    @Mock
+    private ProductosSearchIndex productosSearchIndex;
+    @Mock
+    private StockService stockService;
+    @Spy
+    private ProductosQueryCache productosQueryCache = new ProductosQueryCache(100, Duration.ofMinutes(1));
+    @Spy
+    private ProductosCache productosCache = new ProductosCache(100, Duration.ofMinutes(1));
+    @Spy
+    private ProductosImportReader productosImportReader = new ProductosImportReader(Validation.buildDefaultValidatorFactory().getValidator(), 2);
+    @Spy
+    private ProductosExportWriter productosExportWriter = new ProductosExportWriter();
     @InjectMocks
     private ProductosServiceImpl productoService;
     @Captor // Captor de argumentos
@@ -119,14 +147,12 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
     @Test
     void findAll_ShouldReturnAllProducts_WhenNoParametersProvided() {
         // Arrange
-        List<Producto> expectedProducts = Arrays.asList(producto1, producto2);
         List<ProductoResponse> expectedResponseProducts = Arrays.asList(productoResponse1, productoResponse2);
         Pageable pageable = PageRequest.of(0, 10, Sort.by("id").ascending()); // ejemplo de creación de un objeto Pageable
-        Page<Producto> expectedPage = new PageImpl<>(expectedProducts);
+        Page<ProductoResponse> expectedPage = new PageImpl<>(expectedResponseProducts);
 
 
-        when(productosRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
-        when(productoMapper.toProductResponse(any(Producto.class))).thenReturn(productoResponse1);
+        when(productosRepository.findAllResponses(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
 
         // Act
         Page<ProductoResponse> actualPage = productoService.findAll(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
@@ -139,22 +165,20 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         );
 
         // Verify
-        verify(productosRepository, times(1)).findAll(any(Specification.class), any(Pageable.class));
-        verify(productoMapper, times(2)).toProductResponse(any(Producto.class));
+        verify(productosRepository, times(1)).findAllResponses(any(Specification.class), any(Pageable.class));
+        verify(productoMapper, times(0)).toProductResponse(any(Producto.class));
     }
 
     @Test
     void findAll_ShouldReturnProductsByMarca_WhenMarcaParameterProvided() {
         // Arrange
         Optional<String> marca = Optional.of("nike");
-        List<Producto> expectedProducts = List.of(producto2);
         List<ProductoResponse> expectedResponseProducts = List.of(productoResponse2);
         Pageable pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
-        Page<Producto> expectedPage = new PageImpl<>(expectedProducts);
+        Page<ProductoResponse> expectedPage = new PageImpl<>(expectedResponseProducts);
 
 
-        when(productosRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
-        when(productoMapper.toProductResponse(any(Producto.class))).thenReturn(productoResponse2);
+        when(productosRepository.findAllResponses(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
 
         // Act
         Page<ProductoResponse> actualPage = productoService.findAll(marca, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
@@ -167,21 +191,90 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         );
 
         // Verify
-        verify(productosRepository, times(1)).findAll(any(Specification.class), any(Pageable.class));
-        verify(productoMapper, times(1)).toProductResponse(any(Producto.class));
+        verify(productosRepository, times(1)).findAllResponses(any(Specification.class), any(Pageable.class));
+        verify(productoMapper, times(0)).toProductResponse(any(Producto.class));
+    }
+
+    @Test
+    void findAll_ShouldReturnWindow_WhenScrollingByKeyset() {
+        // Arrange
+        Window<Producto> window = Window.from(List.of(producto1, producto2), i -> ScrollPosition.forward(Map.of("id", (long) i + 1)), true);
+        when(productosRepository.findBy(any(Specification.class), any())).thenReturn(window);
+        when(productoMapper.toProductResponse(any(Producto.class))).thenReturn(productoResponse1);
+
+        // Act
+        Window<ProductoResponse> actual = productoService.findAll(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), ScrollPosition.keyset(), Sort.by("marca"), 2);
+
+        // Assert
+        assertAll("findAllByKeyset",
+                () -> assertEquals(2, actual.size()),
+                () -> assertTrue(actual.hasNext()),
+                () -> assertEquals(ScrollPosition.forward(Map.of("id", 2L)), actual.positionAt(1))
+        );
+
+        // Verify
+        verify(productosRepository, times(1)).findBy(any(Specification.class), any());
+        verify(productosRepository, times(0)).findAllResponses(any(Specification.class), any(Pageable.class));
+    }
+
+    @Test
+    void findAll_ShouldUseQueryCache_UntilProductChanges() {
+        // Arrange
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
+        Page<ProductoResponse> expectedPage = new PageImpl<>(List.of(productoResponse1));
+        when(productosRepository.findAllResponses(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
+
+        // Act
+        var first = productoService.findAll(Optional.of("Adidas"), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
+        // La misma consulta normalizada (mayúsculas/minúsculas) sale de la cache
+        var second = productoService.findAll(Optional.of("adidas"), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
+        // Un cambio en un producto invalida los listados
+        productoService.onChange(Notificacion.Tipo.UPDATE, producto1);
+        productoService.findAll(Optional.of("adidas"), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
+
+        // Assert
+        assertAll("findAllCached",
+                () -> assertSame(first, second),
+                () -> assertEquals(1, productosQueryCache.stats().hits()),
+                () -> assertEquals(2, productosQueryCache.stats().misses())
+        );
+
+        // Verify
+        verify(productosRepository, times(2)).findAllResponses(any(Specification.class), any(Pageable.class));
+        verify(productosQueryCache, times(1)).invalidateAll();
+    }
+
+    @Test
+    void findAll_ShouldReturnEmptyPage_WhenSearchIndexFindsNothing() {
+        // Arrange
+        Optional<String> marca = Optional.of("inexistente");
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
+
+        when(productosSearchIndex.search(marca, Optional.empty(), Optional.empty())).thenReturn(Optional.of(Set.of()));
+
+        // Act
+        Page<ProductoResponse> actualPage = productoService.findAll(marca, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
+
+        // Assert
+        assertAll("findAllWithIndex",
+                () -> assertNotNull(actualPage),
+                () -> assertTrue(actualPage.isEmpty())
+        );
+
+        // Verify
+        verify(productosSearchIndex, times(1)).search(marca, Optional.empty(), Optional.empty());
+        verify(productosRepository, times(0)).findAllResponses(any(Specification.class), any(Pageable.class));
     }
 
     @Test
     void findAll_ShouldReturnProductsByCategoria_WhenCategoriaParameterProvided() {
         // Arrange
         Optional<String> categoriaNombre = Optional.of("deportes");
-        List<Producto> expectedProducts = List.of(producto2);
         List<ProductoResponse> expectedResponseProducts = List.of(productoResponse2);
         Pageable pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
-        Page<Producto> expectedPage = new PageImpl<>(expectedProducts);
+        Page<ProductoResponse> expectedPage = new PageImpl<>(expectedResponseProducts);
 
-        when(productosRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
-        when(productoMapper.toProductResponse(any(Producto.class))).thenReturn(productoResponse1);
+        when(productosRepository.findAllResponses(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
 
         // Act
         Page<ProductoResponse> actualPage = productoService.findAll(Optional.empty(), categoriaNombre, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
@@ -194,8 +287,8 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         );
 
         // Verify
-        verify(productosRepository, times(1)).findAll(any(Specification.class), any(Pageable.class));
-        verify(productoMapper, times(1)).toProductResponse(any(Producto.class));
+        verify(productosRepository, times(1)).findAllResponses(any(Specification.class), any(Pageable.class));
+        verify(productoMapper, times(0)).toProductResponse(any(Producto.class));
     }
 
     @Test
@@ -203,12 +296,11 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         // Arrange
         Optional<String> marca = Optional.of("nike");
         Optional<String> categoriaNombre = Optional.of("deportes");
-        List<Producto> expectedProducts = List.of(producto2);
+        List<ProductoResponse> expectedResponseProducts = List.of(productoResponse2);
         Pageable pageable = PageRequest.of(0, 10);
-        Page<Producto> expectedPage = new PageImpl<>(expectedProducts);
+        Page<ProductoResponse> expectedPage = new PageImpl<>(expectedResponseProducts);
 
-        when(productosRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
-        when(productoMapper.toProductResponse(any(Producto.class))).thenReturn(productoResponse2);
+        when(productosRepository.findAllResponses(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
 
         // Act
         Page<ProductoResponse> actualPage = productoService.findAll(marca, categoriaNombre, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), pageable);
@@ -221,16 +313,15 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         );
 
         // Verify
-        verify(productosRepository, times(1)).findAll(any(Specification.class), any(Pageable.class));
-        verify(productoMapper, times(1)).toProductResponse(any(Producto.class));
+        verify(productosRepository, times(1)).findAllResponses(any(Specification.class), any(Pageable.class));
+        verify(productoMapper, times(0)).toProductResponse(any(Producto.class));
     }
 
     @Test
     void findById_ShouldReturnProduct_WhenValidIdProvided() {
         // Arrange
         Long id = 1L;
-        when(productosRepository.findById(id)).thenReturn(Optional.of(producto1));
-        when(productoMapper.toProductResponse(producto1)).thenReturn(productoResponse1);
+        when(productosRepository.findResponseById(id)).thenReturn(Optional.of(productoResponse1));
 
         // Act
         ProductoResponse actualProduct = productoService.findById(id);
@@ -239,30 +330,29 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         assertEquals(productoResponse1, actualProduct);
 
         // Verify
-        verify(productosRepository, times(1)).findById(id);
-        verify(productoMapper, times(1)).toProductResponse(producto1);
+        verify(productosRepository, times(1)).findResponseById(id);
+        verify(productoMapper, times(0)).toProductResponse(any(Producto.class));
     }
 
     @Test
     void findById_ShouldThrowProductoNotFound_WhenInvalidIdProvided() {
         // Arrange
         Long id = 1L;
-        when(productosRepository.findById(id)).thenReturn(Optional.empty());
+        when(productosRepository.findResponseById(id)).thenReturn(Optional.empty());
 
         // Act & Assert
         var res = assertThrows(ProductoNotFound.class, () -> productoService.findById(id));
         assertEquals("Producto con id " + id + " no encontrado", res.getMessage());
 
         // Verify
-        verify(productosRepository, times(1)).findById(id);
+        verify(productosRepository, times(1)).findResponseById(id);
     }
 
     @Test
     void findByUuid_ShouldReturnProduct_WhenValidUuidProvided() {
         // Arrange
         UUID expectedUuid = producto1.getUuid();
-        when(productosRepository.findByUuid(expectedUuid)).thenReturn(Optional.of(producto1));
-        when(productoMapper.toProductResponse(producto1)).thenReturn(productoResponse1);
+        when(productosRepository.findResponseByUuid(expectedUuid)).thenReturn(Optional.of(productoResponse1));
 
         // Act
         ProductoResponse actualProduct = productoService.findbyUuid(expectedUuid.toString());
@@ -271,8 +361,8 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         assertEquals(productoResponse1, actualProduct);
 
         // Verify
-        verify(productosRepository, times(1)).findByUuid(expectedUuid);
-        verify(productoMapper, times(1)).toProductResponse(producto1);
+        verify(productosRepository, times(1)).findResponseByUuid(expectedUuid);
+        verify(productoMapper, times(0)).toProductResponse(any(Producto.class));
     }
 
     @Test
@@ -288,6 +378,50 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         // verify(productosRepository, times(1)).findByUuid(UUID.fromString(uuid));
     }
 
+    @Test
+    void findById_ShouldShareCacheEntryWithFindByUuid() {
+        // Arrange
+        Long id = 1L;
+        var response = ProductoResponse.builder().id(id).marca("Adidas").uuid(producto1.getUuid()).build();
+        when(productosRepository.findResponseById(id)).thenReturn(Optional.of(response));
+
+        // Act
+        var byId = productoService.findById(id);
+        var byUuid = productoService.findbyUuid(producto1.getUuid().toString());
+
+        // Assert
+        assertAll("findByIdAndUuidCached",
+                () -> assertSame(response, byId),
+                () -> assertSame(response, byUuid)
+        );
+
+        // Verify: una sola carga sirve para las dos búsquedas
+        verify(productosRepository, times(1)).findResponseById(id);
+        verify(productosRepository, times(0)).findResponseByUuid(any(UUID.class));
+    }
+
+    @Test
+    void deleteById_ShouldEvictIdAndUuidFromCache() throws IOException {
+        // Arrange
+        Long id = 1L;
+        var response = ProductoResponse.builder().id(id).marca("Adidas").uuid(producto1.getUuid()).build();
+        when(productosRepository.findResponseById(id)).thenReturn(Optional.of(response));
+        when(productosRepository.findById(id)).thenReturn(Optional.of(producto1));
+        when(productosRepository.findResponseByUuid(producto1.getUuid())).thenReturn(Optional.empty());
+        doNothing().when(webSocketHandlerMock).sendMessage(any());
+        productoService.findById(id);
+
+        // Act
+        productoService.deleteById(id);
+
+        // Assert: ya no se sirve de la cache ni por id ni por uuid
+        assertThrows(ProductoNotFound.class, () -> productoService.findbyUuid(producto1.getUuid().toString()));
+
+        // Verify
+        verify(productosCache, times(1)).evict(id);
+        verify(productosRepository, times(1)).findResponseByUuid(producto1.getUuid());
+    }
+
     @Test
     void save_ShouldReturnSavedProduct_WhenValidProductCreateDtoProvided() throws IOException {
         // Arrange
@@ -329,7 +463,7 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
                 .build();
 
 
-        when(categoriasRepository.findByNombreEqualsIgnoreCase(productoCreateRequest.getCategoria())).thenReturn(Optional.of(categoria));
+        when(categoriasNameResolver.resolve(productoCreateRequest.getCategoria())).thenReturn(Optional.of(categoria));
         when(productoMapper.toProduct(productoCreateRequest, categoria)).thenReturn(expectedProduct);
         when(productosRepository.save(expectedProduct)).thenReturn(expectedProduct);
         when(productoMapper.toProductResponse(expectedProduct)).thenReturn(expectedProductResponse);
@@ -342,7 +476,7 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         assertEquals(expectedProductResponse, actualProduct);
 
         // Verify
-        verify(categoriasRepository, times(1)).findByNombreEqualsIgnoreCase(productoCreateRequest.getCategoria());
+        verify(categoriasNameResolver, times(1)).resolve(productoCreateRequest.getCategoria());
         verify(productosRepository, times(1)).save(productoCaptor.capture());
         verify(productoMapper, times(1)).toProduct(productoCreateRequest, categoria);
         verify(productoMapper, times(1)).toProductResponse(expectedProduct);
@@ -361,14 +495,14 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
                 .stock(5)
                 .build();
 
-        when(categoriasRepository.findByNombreEqualsIgnoreCase(productoCreateRequest.getCategoria())).thenReturn(Optional.empty());
+        when(categoriasNameResolver.resolve(productoCreateRequest.getCategoria())).thenReturn(Optional.empty());
 
         // Act & Assert
         var res = assertThrows(ProductoBadRequest.class, () -> productoService.save(productoCreateRequest));
         assertEquals("La categoría " + productoCreateRequest.getCategoria() + " no existe o está borrada", res.getMessage());
 
         // Verify
-        verify(categoriasRepository, times(1)).findByNombreEqualsIgnoreCase(productoCreateRequest.getCategoria());
+        verify(categoriasNameResolver, times(1)).resolve(productoCreateRequest.getCategoria());
         verify(productosRepository, times(0)).save(any(Producto.class));
         verify(productoMapper, times(0)).toProduct(productoCreateRequest, categoria);
     }
@@ -392,7 +526,7 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         ProductoResponse expectedProductResponse = productoResponse1;
 
         when(productosRepository.findById(id)).thenReturn(Optional.of(existingProduct));
-        when(categoriasRepository.findByNombreEqualsIgnoreCase(productoUpdateRequest.getCategoria())).thenReturn(Optional.of(categoria));
+        when(categoriasNameResolver.resolve(productoUpdateRequest.getCategoria())).thenReturn(Optional.of(categoria));
         when(productosRepository.save(existingProduct)).thenReturn(existingProduct);
         when(productoMapper.toProduct(productoUpdateRequest, producto1, categoria)).thenReturn(existingProduct);
         when(productoMapper.toProductResponse(existingProduct)).thenReturn(expectedProductResponse);
@@ -406,10 +540,41 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
 
         // Verify
         verify(productosRepository, times(1)).findById(id);
-        verify(categoriasRepository, times(1)).findByNombreEqualsIgnoreCase(productoUpdateRequest.getCategoria());
+        verify(categoriasNameResolver, times(1)).resolve(productoUpdateRequest.getCategoria());
         verify(productosRepository, times(1)).save(productoCaptor.capture());
         verify(productoMapper, times(1)).toProduct(productoUpdateRequest, producto1, categoria);
         verify(productoMapper, times(1)).toProductResponse(existingProduct);
+        verify(stockService, times(1)).set(id, 5);
+    }
+
+    @Test
+    void update_ShouldNotWriteStock_WhenStockServiceSetsIt() throws IOException {
+        // Arrange
+        Long id = 1L;
+        ProductoUpdateRequest productoUpdateRequest = ProductoUpdateRequest.builder()
+                .stock(20)
+                .build();
+        Producto productoActual = Producto.builder().id(id).stock(5).categoria(categoria).build();
+        Producto productoMapped = Producto.builder().id(id).stock(20).categoria(categoria).build();
+        ProductoResponse response = ProductoResponse.builder().id(id).stock(5).build();
+
+        when(productosRepository.findById(id)).thenReturn(Optional.of(productoActual));
+        when(productoMapper.toProduct(productoUpdateRequest, productoActual, categoria)).thenReturn(productoMapped);
+        when(stockService.set(id, 20)).thenReturn(true);
+        when(productosRepository.save(productoMapped)).thenReturn(productoMapped);
+        when(productoMapper.toProductResponse(productoMapped)).thenReturn(response);
+        doNothing().when(webSocketHandlerMock).sendMessage(any());
+
+        // Act
+        ProductoResponse actualProduct = productoService.update(id, productoUpdateRequest);
+
+        // Assert: el UPDATE lleva el stock que había, el nuevo lo fija el motor
+        assertEquals(20, actualProduct.getStock());
+
+        // Verify
+        verify(productosRepository, times(1)).save(productoCaptor.capture());
+        assertEquals(5, productoCaptor.getValue().getStock());
+        verify(stockService, times(1)).set(id, 20);
     }
 
     @Test
@@ -466,13 +631,90 @@ private final ProductoResponse productoResponse2 = ProductoResponse.builder()
         verify(productosRepository, times(0)).deleteById(id);
     }
 
+    @Test
+    void importProductos_ShouldInsertValidRowsAndReportErrors() throws IOException {
+        // Arrange
+        var ndjson = """
+                {"marca":"Adidas","modelo":"Zapatillas","descripcion":"Zapatillas de deporte","precio":100.0,"categoria":"deportes","stock":5}
+                {"marca":"Nike","modelo":"Zapatillas","descripcion":"Zapatillas de deporte","precio":90.0,"categoria":"OTROS","stock":5}
+                {"marca":"Puma",
+                {"marca":"Pu","modelo":"","descripcion":"Zapatillas de deporte","precio":90.0,"categoria":"DEPORTES","stock":5}
+                {"marca":"Asics","modelo":"Gel","descripcion":"Zapatillas de running","precio":120.0,"categoria":"DEPORTES","stock":3}
+                """;
+        when(categoriasNameResolver.resolve(any(String.class))).thenAnswer(invocation -> categoria.getNombre().equalsIgnoreCase(invocation.getArgument(0)) ? Optional.of(categoria) : Optional.empty());
+        when(productoMapper.toProduct(any(ProductoCreateRequest.class), eq(categoria))).thenReturn(producto1, producto2);
+        when(productosRepository.insertAll(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+        doNothing().when(webSocketHandlerMock).sendMessage(any(String.class));
+
+        // Act
+        var res = productoService.importProductos(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), ProductosFileFormat.NDJSON);
+
+        // Assert
+        assertAll("importProductos",
+                () -> assertEquals(5, res.total()),
+                () -> assertEquals(2, res.imported()),
+                () -> assertEquals(3, res.failed()),
+                () -> assertEquals(List.of(2L, 3L, 4L), res.errors().stream().map(e -> e.line()).toList()),
+                () -> assertTrue(res.errors().get(0).error().contains("OTROS"))
+        );
+
+        // Verify: categorías en memoria, un insert por bloque con filas válidas y una sola notificación
+        verify(categoriasNameResolver, times(3)).resolve(any(String.class));
+        verify(productosRepository, times(2)).insertAll(anyList());
+        verify(productosRepository, times(0)).save(any(Producto.class));
+        verify(productosQueryCache, times(1)).invalidateAll();
+        verify(webSocketHandlerMock, timeout(1000).times(1)).sendMessage(any(String.class));
+    }
+
+    @Test
+    void export_ShouldStreamFilteredProducts() throws IOException {
+        // Arrange
+        var output = new ByteArrayOutputStream();
+        when(productosSearchIndex.search(Optional.of("Adidas"), Optional.empty(), Optional.empty())).thenReturn(Optional.of(Set.of(1L)));
+        when(productosRepository.streamResponses(any(Specification.class), eq(Sort.by("id")))).thenReturn(Stream.of(productoResponse1));
+
+        // Act
+        var count = productoService.export(Optional.of("Adidas"), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), ProductosFileFormat.NDJSON, output);
+
+        // Assert
+        var lines = output.toString(StandardCharsets.UTF_8).lines().toList();
+        assertAll("export",
+                () -> assertEquals(1, count),
+                () -> assertEquals(1, lines.size()),
+                () -> assertTrue(lines.get(0).contains("\"marca\":\"Adidas\""))
+        );
+
+        // Verify: una sola consulta en streaming, sin paginar ni contar
+        verify(productosRepository, times(1)).streamResponses(any(Specification.class), eq(Sort.by("id")));
+        verify(productosRepository, times(0)).findAllResponses(any(Specification.class), any(Pageable.class));
+    }
+
+    @Test
+    void export_ShouldNotQuery_WhenSearchIndexFindsNothing() throws IOException {
+        // Arrange
+        var output = new ByteArrayOutputStream();
+        when(productosSearchIndex.search(Optional.of("Inexistente"), Optional.empty(), Optional.empty())).thenReturn(Optional.of(Set.of()));
+
+        // Act
+        var count = productoService.export(Optional.of("Inexistente"), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), ProductosFileFormat.CSV, output);
+
+        // Assert: solo la cabecera
+        assertAll("export",
+                () -> assertEquals(0, count),
+                () -> assertEquals(1, output.toString(StandardCharsets.UTF_8).lines().count())
+        );
+
+        // Verify
+        verify(productosRepository, times(0)).streamResponses(any(Specification.class), any(Sort.class));
+    }
+
     @Test
     void onChange_ShouldSendMessage_WhenValidDataProvided() throws IOException {
         // Arrange
         doNothing().when(webSocketHandlerMock).sendMessage(any(String.class));
 
         // Act
-        productoService.onChange(Notificacion.Tipo.CREATE, any(Producto.class));
+        productoService.onChange(Notificacion.Tipo.CREATE, producto1);
     }
 
     @Test
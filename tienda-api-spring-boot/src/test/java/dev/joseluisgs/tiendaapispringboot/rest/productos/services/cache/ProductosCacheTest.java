@@ -0,0 +1,136 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache;
+
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductosCacheTest {
+    private final ProductosCache cache = new ProductosCache(10, Duration.ofMinutes(1));
+    private final UUID uuid = UUID.fromString("80e559b5-83c5-4555-ba0b-bb9fddb6e96c");
+    private final ProductoResponse producto = ProductoResponse.builder().id(1L).marca("Adidas").stock(5).uuid(uuid).build();
+
+    @Test
+    void getById_ShouldServeUuidLookupsFromTheSameEntry() {
+        var loads = new AtomicInteger();
+
+        cache.getById(1L, () -> {
+            loads.incrementAndGet();
+            return Optional.of(producto);
+        });
+        var byUuid = cache.getByUuid(uuid, () -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+
+        assertAll("getByUuid",
+                () -> assertEquals(1, loads.get()),
+                () -> assertSame(producto, byUuid.orElseThrow()),
+                () -> assertEquals(1, cache.stats().size())
+        );
+    }
+
+    @Test
+    void getById_ShouldNotCacheMissingProducts() {
+        var loads = new AtomicInteger();
+
+        cache.getById(2L, () -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+        var res = cache.getById(2L, () -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+
+        assertAll("getByIdMissing",
+                () -> assertTrue(res.isEmpty()),
+                () -> assertEquals(2, loads.get()),
+                () -> assertEquals(0, cache.stats().size())
+        );
+    }
+
+    @Test
+    void put_ShouldUpdateBothKeys() {
+        cache.put(producto);
+        var updated = ProductoResponse.builder().id(1L).marca("Adidas").stock(3).uuid(uuid).build();
+
+        cache.put(updated);
+
+        assertAll("put",
+                () -> assertSame(updated, cache.getById(1L, Optional::empty).orElseThrow()),
+                () -> assertSame(updated, cache.getByUuid(uuid, Optional::empty).orElseThrow())
+        );
+    }
+
+    @Test
+    void evict_ShouldRemoveBothKeys() {
+        cache.put(producto);
+
+        cache.evict(1L);
+
+        assertAll("evict",
+                () -> assertTrue(cache.getById(1L, Optional::empty).isEmpty()),
+                () -> assertTrue(cache.getByUuid(uuid, Optional::empty).isEmpty())
+        );
+    }
+
+    @Test
+    void getById_ShouldNotStoreLoadThatRacedWithAChange() {
+        var updated = ProductoResponse.builder().id(1L).marca("Adidas").stock(3).uuid(uuid).build();
+
+        // Mientras se consulta el producto viejo alguien lo actualiza
+        cache.getById(1L, () -> {
+            cache.evict(1L);
+            return Optional.of(producto);
+        });
+        var res = cache.getById(1L, () -> Optional.of(updated));
+
+        assertSame(updated, res.orElseThrow());
+    }
+
+    @Test
+    void put_ShouldNotServeRowReadBeforeCommit() throws Exception {
+        var updated = ProductoResponse.builder().id(1L).marca("Adidas").stock(3).uuid(uuid).build();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.put(updated);
+            // En otro hilo un volcado de stock lo quita y otra petición lee la fila de antes del commit
+            var reader = new Thread(() -> {
+                cache.evict(1L);
+                cache.getById(1L, () -> Optional.of(producto));
+            });
+            reader.start();
+            reader.join();
+
+            // Commit
+            TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        var res = cache.getById(1L, () -> Optional.of(updated));
+
+        assertSame(updated, res.orElseThrow());
+    }
+
+    @Test
+    void put_ShouldKeepEntry_WhenCommittedWithoutRaces() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.put(producto);
+            TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertSame(producto, cache.getById(1L, Optional::empty).orElseThrow());
+    }
+}
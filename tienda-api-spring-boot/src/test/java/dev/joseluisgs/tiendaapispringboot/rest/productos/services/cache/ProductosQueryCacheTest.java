@@ -0,0 +1,79 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.cache;
+
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductosQueryCacheTest {
+    private final ProductosQueryCache cache = new ProductosQueryCache(10, Duration.ofMinutes(1));
+    private final Page<ProductoResponse> page = new PageImpl<>(List.of(ProductoResponse.builder().id(1L).marca("Nike").build()));
+
+    @Test
+    void key_ShouldNormalizeFilters() {
+        var pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
+        var key1 = ProductosQueryCache.key(Optional.of("NIKE"), Optional.empty(), Optional.empty(), Optional.of(false), Optional.empty(), Optional.empty(), pageable);
+        var key2 = ProductosQueryCache.key(Optional.of("nike"), Optional.empty(), Optional.empty(), Optional.of(false), Optional.empty(), Optional.empty(), pageable);
+        var key3 = ProductosQueryCache.key(Optional.of("nike"), Optional.empty(), Optional.empty(), Optional.of(false), Optional.empty(), Optional.empty(), PageRequest.of(1, 10, Sort.by("id").ascending()));
+
+        assertAll("key",
+                () -> assertEquals(key1, key2),
+                () -> assertNotEquals(key2, key3)
+        );
+    }
+
+    @Test
+    void get_ShouldLoadOnceAndCountHitsAndMisses() {
+        var key = ProductosQueryCache.key(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), PageRequest.of(0, 10));
+        var loads = new AtomicInteger();
+
+        cache.get(key, () -> {
+            loads.incrementAndGet();
+            return page;
+        });
+        var result = cache.get(key, () -> {
+            loads.incrementAndGet();
+            return page;
+        });
+
+        assertAll("get",
+                () -> assertSame(page, result),
+                () -> assertEquals(1, loads.get()),
+                () -> assertEquals(1, cache.stats().hits()),
+                () -> assertEquals(1, cache.stats().misses()),
+                () -> assertEquals(1, cache.stats().size())
+        );
+    }
+
+    @Test
+    void get_ShouldNotKeepResult_WhenInvalidatedWhileLoading() {
+        var key = ProductosQueryCache.key(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), PageRequest.of(0, 10));
+
+        // Un cambio llega mientras se está consultando
+        cache.get(key, () -> {
+            cache.invalidateAll();
+            return page;
+        });
+
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void invalidateAll_ShouldEmptyCache() {
+        var key = ProductosQueryCache.key(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), PageRequest.of(0, 10));
+        cache.get(key, () -> page);
+
+        cache.invalidateAll();
+
+        assertEquals(0, cache.stats().size());
+    }
+}
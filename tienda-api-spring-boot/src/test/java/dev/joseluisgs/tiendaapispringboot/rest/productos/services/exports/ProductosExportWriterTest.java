@@ -0,0 +1,85 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.exports;
+
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosFileFormat;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.services.imports.ProductosImportReader;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductosExportWriterTest {
+    private final ProductosExportWriter writer = new ProductosExportWriter();
+
+    private final ProductoResponse producto = ProductoResponse.builder()
+            .id(1L)
+            .uuid(UUID.fromString("b3d4931d-c1c0-468b-a4b6-9814017a7339"))
+            .marca("Adidas")
+            .modelo("Zapatillas")
+            .descripcion("Zapatillas \"Pro\", de deporte")
+            .precio(100.0)
+            .imagen("a.png")
+            .categoria("DEPORTES")
+            .stock(5)
+            .createdAt(LocalDateTime.of(2023, 10, 1, 12, 0))
+            .updatedAt(LocalDateTime.of(2023, 10, 2, 12, 0))
+            .isDeleted(false)
+            .build();
+
+    @Test
+    void csvField_ShouldQuoteWhenNeeded() {
+        assertAll("csvField",
+                () -> assertEquals("", ProductosExportWriter.csvField(null)),
+                () -> assertEquals("Adidas", ProductosExportWriter.csvField("Adidas")),
+                () -> assertEquals("\"a, b\"", ProductosExportWriter.csvField("a, b")),
+                () -> assertEquals("\"a \"\"b\"\"\"", ProductosExportWriter.csvField("a \"b\"")),
+                () -> assertEquals("a b", ProductosExportWriter.csvField("a\nb"))
+        );
+    }
+
+    @Test
+    void write_ShouldWriteNdjson() throws IOException {
+        var output = new ByteArrayOutputStream();
+
+        var count = writer.write(Stream.of(producto, producto), ProductosFileFormat.NDJSON, output);
+
+        var lines = output.toString(UTF_8).lines().toList();
+        assertAll("writeNdjson",
+                () -> assertEquals(2, count),
+                () -> assertEquals(2, lines.size()),
+                () -> assertTrue(lines.get(0).startsWith("{\"id\":1,")),
+                () -> assertTrue(lines.get(0).contains("\"createdAt\":\"2023-10-01T12:00:00\""))
+        );
+    }
+
+    @Test
+    void write_ShouldWriteCsvThatCanBeImported() throws IOException {
+        var output = new ByteArrayOutputStream();
+
+        var count = writer.write(Stream.of(producto), ProductosFileFormat.CSV, output);
+
+        // Lo volvemos a leer con el lector de la importación
+        var reader = new ProductosImportReader(Validation.buildDefaultValidatorFactory().getValidator(), 10);
+        List<ProductosImportReader.Row> rows = new ArrayList<>();
+        reader.read(new ByteArrayInputStream(output.toByteArray()), ProductosFileFormat.CSV, rows::addAll);
+        assertAll("writeCsv",
+                () -> assertEquals(1, count),
+                () -> assertTrue(output.toString(UTF_8).startsWith("id,uuid,marca,modelo,descripcion,precio,imagen,categoria,stock,createdAt,updatedAt,isDeleted")),
+                () -> assertEquals(1, rows.size()),
+                () -> assertTrue(rows.get(0).isValid()),
+                () -> assertEquals("Zapatillas \"Pro\", de deporte", rows.get(0).request().getDescripcion()),
+                () -> assertEquals(100.0, rows.get(0).request().getPrecio()),
+                () -> assertEquals("DEPORTES", rows.get(0).request().getCategoria())
+        );
+    }
+}
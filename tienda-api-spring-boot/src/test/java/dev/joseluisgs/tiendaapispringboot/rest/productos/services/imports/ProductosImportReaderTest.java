@@ -0,0 +1,71 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.imports;
+
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductosFileFormat;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductosImportReaderTest {
+    private final ProductosImportReader reader = new ProductosImportReader(Validation.buildDefaultValidatorFactory().getValidator(), 2);
+
+    @Test
+    void parseCsvLine_ShouldHandleQuotedFields() {
+        var fields = ProductosImportReader.parseCsvLine("Adidas, \"Zapatillas, modelo \"\"X\"\"\",,100.5");
+
+        assertEquals(List.of("Adidas", "Zapatillas, modelo \"X\"", "", "100.5"), fields);
+    }
+
+    @Test
+    void read_ShouldReadCsvInChunks() throws IOException {
+        var csv = """
+                categoria,marca,modelo,descripcion,precio,stock
+                DEPORTES,Adidas,Zapatillas,Zapatillas de deporte,100.0,5
+
+                DEPORTES,Nike,Zapatillas,Zapatillas de deporte,-1,5
+                DEPORTES,Puma,Zapatillas,Zapatillas de deporte,abc,5
+                DEPORTES,Asics
+                """;
+        List<List<ProductosImportReader.Row>> chunks = new ArrayList<>();
+
+        reader.read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ProductosFileFormat.CSV, chunks::add);
+
+        var rows = chunks.stream().flatMap(List::stream).toList();
+        assertAll("readCsv",
+                () -> assertEquals(2, chunks.size()),
+                () -> assertEquals(4, rows.size()),
+                // Las líneas en blanco no cuentan como filas pero sí como líneas del fichero
+                () -> assertEquals(List.of(2L, 4L, 5L, 6L), rows.stream().map(ProductosImportReader.Row::line).toList()),
+                () -> assertTrue(rows.get(0).isValid()),
+                () -> assertEquals("Adidas", rows.get(0).request().getMarca()),
+                () -> assertEquals("https://via.placeholder.com/150", rows.get(0).request().getImagen()),
+                () -> assertEquals("El precio no puede ser negativo", rows.get(1).error()),
+                () -> assertFalse(rows.get(2).isValid()),
+                () -> assertFalse(rows.get(3).isValid())
+        );
+    }
+
+    @Test
+    void read_ShouldReadNdjson() throws IOException {
+        var ndjson = """
+                {"marca":"Adidas","modelo":"Zapatillas","descripcion":"Zapatillas de deporte","precio":100.0,"imagen":"a.png","categoria":"DEPORTES","stock":5}
+                [1, 2]
+                """;
+        List<ProductosImportReader.Row> rows = new ArrayList<>();
+
+        reader.read(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), ProductosFileFormat.NDJSON, rows::addAll);
+
+        assertAll("readNdjson",
+                () -> assertEquals(2, rows.size()),
+                () -> assertEquals("a.png", rows.get(0).request().getImagen()),
+                () -> assertEquals(5, rows.get(0).request().getStock()),
+                () -> assertEquals("La línea no es un objeto JSON", rows.get(1).error())
+        );
+    }
+}
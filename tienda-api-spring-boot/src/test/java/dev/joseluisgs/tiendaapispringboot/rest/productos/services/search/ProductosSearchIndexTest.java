@@ -0,0 +1,120 @@
+package dev.joseluisgs.tiendaapispringboot.rest.productos.services.search;
+
+import dev.joseluisgs.tiendaapispringboot.rest.categorias.models.Categoria;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoSearchView;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.models.Producto;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductosSearchIndexTest {
+    private final UUID deportesId = UUID.fromString("d69cf3db-b77d-4181-b3cd-5ca8107fb6a9");
+    private final UUID ropaId = UUID.fromString("6dbcbf5e-8e1c-47cc-8578-7b0a33ebc154");
+
+    @Mock
+    private ProductosRepository productosRepository;
+
+    private ProductosSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductosSearchIndex(productosRepository, 2);
+        when(productosRepository.findAllSearchViews()).thenReturn(List.of(
+                new ProductoSearchView(1L, "Adidas", "Zapatillas Running", deportesId, "DEPORTES"),
+                new ProductoSearchView(2L, "Nike", "Zapatillas Tenis", deportesId, "DEPORTES"),
+                new ProductoSearchView(3L, "Mango", "Camiseta", ropaId, "ROPA")
+        ));
+        index.load();
+    }
+
+    @Test
+    void search_ShouldReturnEmpty_WhenNotLoaded() {
+        var notLoaded = new ProductosSearchIndex(productosRepository, 10);
+
+        assertTrue(notLoaded.search(Optional.of("nike"), Optional.empty(), Optional.empty()).isEmpty());
+    }
+
+    @Test
+    void search_ShouldFindBySubstringIgnoringCase() {
+        var result = index.search(Optional.of("DID"), Optional.empty(), Optional.empty());
+
+        assertAll("search",
+                () -> assertTrue(result.isPresent()),
+                () -> assertEquals(Set.of(1L), result.get())
+        );
+    }
+
+    @Test
+    void search_ShouldCombineFilters() {
+        var result = index.search(Optional.of("ni"), Optional.of("tenis"), Optional.of("port"));
+
+        assertAll("searchCombined",
+                () -> assertTrue(result.isPresent()),
+                () -> assertEquals(Set.of(2L), result.get())
+        );
+    }
+
+    @Test
+    void search_ShouldReturnEmptySet_WhenNothingMatches() {
+        var result = index.search(Optional.of("puma"), Optional.empty(), Optional.empty());
+
+        assertAll("searchNothing",
+                () -> assertTrue(result.isPresent()),
+                () -> assertTrue(result.get().isEmpty())
+        );
+    }
+
+    @Test
+    void search_ShouldFallback_WhenTermsAreNotIndexable() {
+        assertAll("searchFallback",
+                // Términos demasiado cortos
+                () -> assertTrue(index.search(Optional.of("ni"), Optional.of("z"), Optional.empty()).isEmpty()),
+                // Comodines de LIKE
+                () -> assertTrue(index.search(Optional.of("ad%s"), Optional.empty(), Optional.empty()).isEmpty()),
+                // Demasiados resultados para el límite configurado
+                () -> assertTrue(index.search(Optional.empty(), Optional.of("zapa"), Optional.empty()).isPresent()),
+                () -> assertTrue(index.search(Optional.empty(), Optional.empty(), Optional.of("o")).isEmpty())
+        );
+    }
+
+    @Test
+    void put_ShouldReindexUpdatedProducto() {
+        var ropa = new Categoria(ropaId, "ROPA", LocalDateTime.now(), LocalDateTime.now(), false);
+        index.put(Producto.builder().id(2L).marca("Puma").modelo("Sudadera").categoria(ropa).build());
+
+        assertAll("put",
+                () -> assertEquals(Set.of(), index.search(Optional.of("nike"), Optional.empty(), Optional.empty()).get()),
+                () -> assertEquals(Set.of(2L), index.search(Optional.of("puma"), Optional.empty(), Optional.of("ropa")).get())
+        );
+    }
+
+    @Test
+    void remove_ShouldDropProducto() {
+        index.remove(1L);
+
+        assertEquals(Set.of(), index.search(Optional.of("adidas"), Optional.empty(), Optional.empty()).get());
+    }
+
+    @Test
+    void putCategoria_ShouldRenameCategoria() {
+        index.putCategoria(deportesId, "CALZADO");
+
+        assertAll("putCategoria",
+                () -> assertEquals(Set.of(1L, 2L), index.search(Optional.empty(), Optional.empty(), Optional.of("calza")).get()),
+                () -> assertEquals(Set.of(), index.search(Optional.empty(), Optional.empty(), Optional.of("deport")).get())
+        );
+    }
+}
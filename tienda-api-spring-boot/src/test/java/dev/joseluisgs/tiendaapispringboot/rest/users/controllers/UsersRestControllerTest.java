@@ -3,6 +3,13 @@ package dev.joseluisgs.tiendaapispringboot.rest.users.controllers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.exceptions.PedidoKeyInProgress;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Cliente;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Direccion;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.PedidosService;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.services.idempotency.PedidosIdempotencyStore;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserInfoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserRequest;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserResponse;
@@ -10,6 +17,7 @@ import dev.joseluisgs.tiendaapispringboot.rest.users.exceptions.UserNotFound;
 import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
 import dev.joseluisgs.tiendaapispringboot.rest.users.services.UsersService;
 import dev.joseluisgs.tiendaapispringboot.utils.pagination.PageResponse;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -17,6 +25,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.data.domain.*;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -27,8 +36,10 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -80,8 +91,27 @@ class UsersRestControllerTest {
     @Autowired
     MockMvc mockMvc; // Cliente MVC
 
+    private final Pedido pedido = Pedido.builder()
+            .id(new ObjectId("5f9f1a3b9d6b6d2e3c1d6f1a"))
+            .idUsuario(1L)
+            .cliente(
+                    new Cliente("JoseLuisGS", "joseluisgs@soydev.dev", "1234567890",
+                            new Direccion("Calle", "1", "Ciudad", "Provincia", "Pais", "12345")
+                    )
+            )
+            .lineasPedido(List.of(LineaPedido.builder()
+                    .idProducto(1L)
+                    .cantidad(2)
+                    .precioProducto(10.0)
+                    .build()))
+            .build();
+
     @MockBean
     private UsersService usersService;
+    @MockBean
+    private PedidosService pedidosService;
+    @SpyBean
+    private PedidosIdempotencyStore pedidosIdempotencyStore;
 
 
     @Autowired
@@ -159,6 +189,28 @@ class UsersRestControllerTest {
         verify(usersService, times(1)).findById(anyLong());
     }
 
+    @Test
+    void findById_WithPedidosPage() throws Exception {
+        // Localpoint
+        var myLocalEndpoint = myEndpoint + "/1?pedidosPage=2&pedidosSize=5";
+
+        // Arrange
+        when(usersService.findById(1L, PageRequest.of(2, 5))).thenReturn(userInfoResponse);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myLocalEndpoint)
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(200, response.getStatus());
+
+        // Verify: con página no se usa la consulta cacheada
+        verify(usersService, times(1)).findById(1L, PageRequest.of(2, 5));
+        verify(usersService, never()).findById(anyLong());
+    }
+
     @Test
     void findByIdNotFound() throws Exception {
         // Localpoint
@@ -396,4 +448,150 @@ class UsersRestControllerTest {
 
         assertEquals(403, response.getStatus());
     }
-}
\ No newline at end of file
+
+    @Test
+    @WithUserDetails("admin")
+    void savePedido_WithoutIdempotencyKey() throws Exception {
+        // Localpoint
+        var myLocalEndpoint = myEndpoint + "/me/pedidos";
+
+        // Arrange
+        when(pedidosService.save(any(Pedido.class))).thenReturn(pedido);
+
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myLocalEndpoint)
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(pedido)))
+                .andReturn().getResponse();
+
+        // Assert
+        assertAll(
+                () -> assertEquals(201, response.getStatus()),
+                () -> assertNull(response.getHeader(PedidosIdempotencyStore.REPLAYED_HEADER))
+        );
+
+        // Verify
+        verify(pedidosIdempotencyStore, never()).execute(anyLong(), anyString(), any(Pedido.class), any());
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void savePedido_WithIdempotencyKey_ReplaysTheSecondTime() throws Exception {
+        // Localpoint
+        var myLocalEndpoint = myEndpoint + "/me/pedidos";
+        var key = UUID.randomUUID().toString();
+
+        // Arrange
+        when(pedidosService.save(any(Pedido.class))).thenReturn(pedido);
+
+        MockHttpServletResponse first = mockMvc.perform(
+                        post(myLocalEndpoint)
+                                .header(PedidosIdempotencyStore.HEADER, key)
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(pedido)))
+                .andReturn().getResponse();
+        MockHttpServletResponse second = mockMvc.perform(
+                        post(myLocalEndpoint)
+                                .header(PedidosIdempotencyStore.HEADER, key)
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(pedido)))
+                .andReturn().getResponse();
+
+        // Assert: el mismo pedido las dos veces, la segunda marcada como repetida
+        assertAll(
+                () -> assertEquals(201, first.getStatus()),
+                () -> assertEquals("false", first.getHeader(PedidosIdempotencyStore.REPLAYED_HEADER)),
+                () -> assertEquals(201, second.getStatus()),
+                () -> assertEquals("true", second.getHeader(PedidosIdempotencyStore.REPLAYED_HEADER)),
+                () -> assertEquals(first.getContentAsString(), second.getContentAsString())
+        );
+
+        // Verify: solo se crea una vez
+        verify(pedidosService, times(1)).save(any(Pedido.class));
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void savePedido_WithIdempotencyKeyTooLong_BadRequest() throws Exception {
+        // Localpoint
+        var myLocalEndpoint = myEndpoint + "/me/pedidos";
+
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myLocalEndpoint)
+                                .header(PedidosIdempotencyStore.HEADER, "k".repeat(PedidosIdempotencyStore.MAX_KEY_LENGTH + 1))
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(pedido)))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(400, response.getStatus());
+
+        // Verify
+        verify(pedidosService, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void savePedido_WithIdempotencyKeyInProgress_Conflict() throws Exception {
+        // Localpoint
+        var myLocalEndpoint = myEndpoint + "/me/pedidos";
+
+        // Arrange: la primera petición con la clave no ha terminado a tiempo
+        doThrow(new PedidoKeyInProgress("En curso")).when(pedidosIdempotencyStore).execute(anyLong(), anyString(), any(Pedido.class), any());
+
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myLocalEndpoint)
+                                .header(PedidosIdempotencyStore.HEADER, UUID.randomUUID().toString())
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(pedido)))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(409, response.getStatus());
+
+        // Verify
+        verify(pedidosService, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void savePedido_WithIdempotencyKeyAndOtherPedido_UnprocessableEntity() throws Exception {
+        // Localpoint
+        var myLocalEndpoint = myEndpoint + "/me/pedidos";
+        var key = UUID.randomUUID().toString();
+        var otro = Pedido.builder()
+                .id(pedido.getId())
+                .idUsuario(pedido.getIdUsuario())
+                .cliente(pedido.getCliente())
+                .lineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(3).precioProducto(10.0).build()))
+                .build();
+
+        // Arrange
+        when(pedidosService.save(any(Pedido.class))).thenReturn(pedido);
+
+        mockMvc.perform(
+                post(myLocalEndpoint)
+                        .header(PedidosIdempotencyStore.HEADER, key)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(pedido)));
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myLocalEndpoint)
+                                .header(PedidosIdempotencyStore.HEADER, key)
+                                .accept(MediaType.APPLICATION_JSON)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(otro)))
+                .andReturn().getResponse();
+
+        // Assert: la misma clave con otras cantidades
+        assertEquals(422, response.getStatus());
+
+        // Verify
+        verify(pedidosService, times(1)).save(any(Pedido.class));
+    }
+}
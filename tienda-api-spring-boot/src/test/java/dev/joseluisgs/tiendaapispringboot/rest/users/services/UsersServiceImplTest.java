@@ -1,5 +1,9 @@
 package dev.joseluisgs.tiendaapispringboot.rest.users.services;
 
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.jwt.JwtRevocations;
+import dev.joseluisgs.tiendaapispringboot.rest.auth.services.users.AuthUsersCache;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosArchive;
 import dev.joseluisgs.tiendaapispringboot.rest.pedidos.repositories.PedidosRepository;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserInfoResponse;
 import dev.joseluisgs.tiendaapispringboot.rest.users.dto.UserRequest;
@@ -9,6 +13,7 @@ import dev.joseluisgs.tiendaapispringboot.rest.users.exceptions.UserNotFound;
 import dev.joseluisgs.tiendaapispringboot.rest.users.mappers.UsersMapper;
 import dev.joseluisgs.tiendaapispringboot.rest.users.models.User;
 import dev.joseluisgs.tiendaapispringboot.rest.users.repositories.UsersRepository;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -16,7 +21,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.util.ArrayList;
@@ -39,7 +47,13 @@ class UsersServiceImplTest {
     @Mock
     private PedidosRepository pedidosRepository;
     @Mock
+    private PedidosArchive pedidosArchive;
+    @Mock
     private UsersMapper usersMapper;
+    @Mock
+    private AuthUsersCache authUsersCache;
+    @Mock
+    private JwtRevocations jwtRevocations;
     @InjectMocks
     private UsersServiceImpl usersService;
 
@@ -72,8 +86,8 @@ class UsersServiceImplTest {
         // Arrange
         Long userId = 1L;
         when(usersRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(pedidosRepository.findPedidosIdsByIdUsuario(userId)).thenReturn(List.of());
-        when(usersMapper.toUserInfoResponse(any(User.class), anyList())).thenReturn(userIResponse);
+        when(pedidosRepository.findPedidosIdsByIdUsuario(userId, PageRequest.of(0, UsersService.PEDIDOS_PAGE_SIZE, Sort.by("id")))).thenReturn(new SliceImpl<>(List.of()));
+        when(usersMapper.toUserInfoResponse(any(User.class), anyList(), anyLong())).thenReturn(userIResponse);
 
 
         // Act
@@ -87,9 +101,50 @@ class UsersServiceImplTest {
 
         // Verify
         verify(usersRepository, times(1)).findById(userId);
-        verify(pedidosRepository, times(1)).findPedidosIdsByIdUsuario(userId);
-        verify(usersMapper, times(1)).toUserInfoResponse(user, List.of());
+        verify(pedidosRepository, times(1)).findPedidosIdsByIdUsuario(eq(userId), any(Pageable.class));
+        // Solo hay una página: el total sale de ella, sin count
+        verify(pedidosRepository, never()).countByIdUsuario(userId);
+        verify(usersMapper, times(1)).toUserInfoResponse(user, List.of(), 0L);
+
+    }
+
+    @Test
+    public void testFindById_WithPedidosPage_CountsWhenThereAreMore() {
+        // Arrange
+        Long userId = 1L;
+        var pedido = new Pedido();
+        var pageable = PageRequest.of(1, 1, Sort.by("id"));
+        when(usersRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(pedidosRepository.findPedidosIdsByIdUsuario(userId, pageable)).thenReturn(new SliceImpl<>(List.of(pedido), pageable, true));
+        when(pedidosRepository.countByIdUsuario(userId)).thenReturn(5L);
+        when(usersMapper.toUserInfoResponse(any(User.class), anyList(), anyLong())).thenReturn(userIResponse);
+
+        // Act
+        usersService.findById(userId, PageRequest.of(1, 1));
 
+        // Verify: solo los ids de la página pedida y el total
+        verify(pedidosRepository, times(1)).countByIdUsuario(userId);
+        verify(usersMapper, times(1)).toUserInfoResponse(user, List.of(pedido.getId().toHexString()), 5L);
+    }
+
+    @Test
+    public void testFindById_WithArchive_IncludesArchivedPedidos() {
+        // Arrange
+        Long userId = 1L;
+        var id = new ObjectId();
+        var pageable = PageRequest.of(0, 1, Sort.by("id"));
+        when(usersRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(pedidosArchive.hasArchive()).thenReturn(true);
+        when(pedidosArchive.findIdsByIdUsuario(userId, pageable)).thenReturn(new PageImpl<>(List.of(id), pageable, 7));
+        when(usersMapper.toUserInfoResponse(any(User.class), anyList(), anyLong())).thenReturn(userIResponse);
+
+        // Act
+        usersService.findById(userId, PageRequest.of(0, 1));
+
+        // Verify: ids y total contando con el archivo, sin ir solo a pedidos
+        verify(usersMapper, times(1)).toUserInfoResponse(user, List.of(id.toHexString()), 7L);
+        verify(pedidosRepository, never()).findPedidosIdsByIdUsuario(anyLong(), any(Pageable.class));
+        verify(pedidosRepository, never()).countByIdUsuario(userId);
     }
 
     @Test
@@ -168,6 +223,27 @@ class UsersServiceImplTest {
         verify(usersMapper, times(1)).toUser(userRequest, userId);
         verify(usersMapper, times(1)).toUserResponse(user);
         verify(usersRepository, times(1)).save(user);
+        verify(authUsersCache, atLeastOnce()).evict(user.getUsername());
+        verify(jwtRevocations, never()).revoke(anyLong());
+    }
+
+    @Test
+    public void testUpdate_UsernameChanged_EvictsOldAndNewUsername() {
+        // Arrange
+        Long userId = 1L;
+        User renamed = User.builder().id(99L).username("nuevo").email("test@test.com").build();
+        when(usersRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(usersRepository.findByUsernameEqualsIgnoreCaseOrEmailEqualsIgnoreCase(anyString(), anyString())).thenReturn(Optional.empty());
+        when(usersMapper.toUser(userRequest, userId)).thenReturn(renamed);
+        when(usersRepository.save(renamed)).thenReturn(renamed);
+
+        // Act
+        usersService.update(userId, userRequest);
+
+        // Verify
+        verify(authUsersCache, times(1)).evict("test");
+        verify(authUsersCache, times(1)).evict("nuevo");
+        verify(jwtRevocations, times(1)).revoke(userId);
     }
 
     @Test
@@ -204,6 +280,8 @@ class UsersServiceImplTest {
         // Verify
         verify(usersRepository, times(1)).delete(user);
         verify(pedidosRepository, times(1)).existsByIdUsuario(userId);
+        verify(authUsersCache, times(1)).evict(user.getUsername());
+        verify(jwtRevocations, times(1)).revoke(userId);
     }
 
     @Test
@@ -222,6 +300,25 @@ class UsersServiceImplTest {
         // Verify
         verify(usersRepository, times(1)).updateIsDeletedToTrueById(userId);
         verify(pedidosRepository, times(1)).existsByIdUsuario(userId);
+        verify(authUsersCache, times(1)).evict(user.getUsername());
+        verify(jwtRevocations, times(1)).revoke(userId);
+    }
+
+    @Test
+    public void testDeleteById_LogicalDelete_WhenAllPedidosAreArchived() {
+        // Arrange
+        Long userId = 1L;
+        when(usersRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(pedidosRepository.existsByIdUsuario(userId)).thenReturn(false);
+        when(pedidosArchive.existsByIdUsuario(userId)).thenReturn(true);
+
+        // Act
+        usersService.deleteById(userId);
+
+        // Verify: sus pedidos archivados siguen apuntando a él
+        verify(usersRepository, times(1)).updateIsDeletedToTrueById(userId);
+        verify(usersRepository, never()).delete(any(User.class));
+        verify(pedidosArchive, times(1)).existsByIdUsuario(userId);
     }
 
     @Test
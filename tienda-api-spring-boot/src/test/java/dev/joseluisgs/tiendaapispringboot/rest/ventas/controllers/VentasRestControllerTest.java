@@ -0,0 +1,152 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.controllers;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.dto.VentasRebuildResponse;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.exceptions.VentasBadRequest;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.models.VentasRollup;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.models.VentasTipo;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.services.VentasService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ExtendWith(MockitoExtension.class) // Extensión de Mockito para usarlo
+@WithMockUser(username = "admin", password = "admin", roles = {"ADMIN", "USER"}) // Usuario de prueba (admin, tiene de rol usaurio y admin)
+class VentasRestControllerTest {
+    private final String myEndpoint = "/v1/ventas";
+
+    private final VentasRollup rollup = VentasRollup.builder()
+            .id("PRODUCTO_DIA|2023-10-01|1")
+            .tipo(VentasTipo.PRODUCTO_DIA)
+            .periodo("2023-10-01")
+            .clave("1")
+            .unidades(3L)
+            .importe(30.0)
+            .pedidos(1L)
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper();
+    @Autowired
+    MockMvc mockMvc; // Cliente MVC
+    @MockBean
+    private VentasService ventasService;
+
+    @Autowired
+    public VentasRestControllerTest(VentasService ventasService) {
+        this.ventasService = ventasService;
+        mapper.registerModule(new JavaTimeModule()); // Necesario para que funcione LocalDateTime
+    }
+
+    @Test
+    @WithMockUser(username = "user", password = "user", roles = {"USER"})
+    void getVentasProductos_NotAdmin() throws Exception {
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/productos")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        assertEquals(403, response.getStatus());
+    }
+
+    @Test
+    void getVentasProductos() throws Exception {
+        // Arrange
+        when(ventasService.findProductos(LocalDate.of(2023, 10, 1), LocalDate.of(2023, 10, 31), 1L)).thenReturn(List.of(rollup));
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/productos?desde=2023-10-01&hasta=2023-10-31&idProducto=1")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        List<VentasRollup> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        });
+
+        // Assert
+        assertAll("getVentasProductos",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(List.of(rollup), res)
+        );
+
+        // Verify
+        verify(ventasService, times(1)).findProductos(LocalDate.of(2023, 10, 1), LocalDate.of(2023, 10, 31), 1L);
+    }
+
+    @Test
+    void getVentasCategorias_BadRange() throws Exception {
+        // Arrange
+        when(ventasService.findCategorias(any(LocalDate.class), any(LocalDate.class), any())).thenThrow(new VentasBadRequest("Rango no válido"));
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/categorias?desde=2023-10-31&hasta=2023-10-01")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    void getVentasUsuarios_DefaultsToLastYear() throws Exception {
+        // Arrange
+        var hasta = YearMonth.now();
+        when(ventasService.findUsuarios(hasta.minusMonths(11), hasta, null)).thenReturn(List.of());
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/usuarios")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        // Assert
+        assertEquals(200, response.getStatus());
+
+        // Verify
+        verify(ventasService, times(1)).findUsuarios(hasta.minusMonths(11), hasta, null);
+    }
+
+    @Test
+    void rebuild() throws Exception {
+        // Arrange
+        var rebuild = new VentasRebuildResponse(2, 10, 1, 50);
+        when(ventasService.rebuild()).thenReturn(rebuild);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myEndpoint + "/rebuild")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        VentasRebuildResponse res = mapper.readValue(response.getContentAsString(), VentasRebuildResponse.class);
+
+        // Assert
+        assertAll("rebuild",
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(rebuild, res)
+        );
+
+        // Verify
+        verify(ventasService, times(1)).rebuild();
+    }
+}
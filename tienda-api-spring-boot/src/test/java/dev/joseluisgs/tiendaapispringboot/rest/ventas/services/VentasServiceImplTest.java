@@ -0,0 +1,216 @@
+package dev.joseluisgs.tiendaapispringboot.rest.ventas.services;
+
+import com.mongodb.client.result.DeleteResult;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.LineaPedido;
+import dev.joseluisgs.tiendaapispringboot.rest.pedidos.models.Pedido;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.dto.ProductoSearchView;
+import dev.joseluisgs.tiendaapispringboot.rest.productos.repositories.ProductosRepository;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.exceptions.VentasBadRequest;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.models.VentasRollup;
+import dev.joseluisgs.tiendaapispringboot.rest.ventas.repositories.VentasRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VentasServiceImplTest {
+    private final Pedido pedido = Pedido.builder()
+            .idUsuario(1L)
+            .lineasPedido(List.of(
+                    LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build(),
+                    LineaPedido.builder().idProducto(2L).cantidad(1).precioProducto(5.0).build(),
+                    LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(10.0).build()))
+            .createdAt(LocalDateTime.of(2023, 10, 1, 12, 0))
+            .build();
+
+    @Mock
+    private VentasRepository ventasRepository;
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private ProductosRepository productosRepository;
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @InjectMocks
+    private VentasServiceImpl ventasService;
+
+    @Test
+    void apply_ShouldIncrementEachRollupInOneBulk() {
+        // Arrange
+        when(productosRepository.findSearchViewsByIdIn(Set.of(1L, 2L))).thenReturn(List.of(
+                new ProductoSearchView(1L, "Adidas", "Zapatillas", null, "DEPORTES"),
+                new ProductoSearchView(2L, "Nike", "Calcetines", null, "DEPORTES")));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VentasRollup.class)).thenReturn(bulkOperations);
+
+        // Act
+        ventasService.apply(List.of(pedido), List.of());
+
+        // Assert: dos productos, una categoría y un usuario
+        var incs = capturedIncs(4);
+        assertAll("apply",
+                () -> assertEquals(Set.of("PRODUCTO_DIA|2023-10-01|1", "PRODUCTO_DIA|2023-10-01|2", "CATEGORIA_DIA|2023-10-01|DEPORTES", "USUARIO_MES|2023-10|1"), incs.keySet()),
+                () -> assertEquals(new Document("unidades", 3L).append("importe", 30.0).append("pedidos", 1L), incs.get("PRODUCTO_DIA|2023-10-01|1")),
+                () -> assertEquals(new Document("unidades", 4L).append("importe", 35.0).append("pedidos", 1L), incs.get("CATEGORIA_DIA|2023-10-01|DEPORTES")),
+                () -> assertEquals(new Document("unidades", 4L).append("importe", 35.0).append("pedidos", 1L), incs.get("USUARIO_MES|2023-10|1"))
+        );
+
+        // Verify
+        verify(bulkOperations, times(1)).execute();
+    }
+
+    @Test
+    void apply_ShouldSubtractPrevious() {
+        // Arrange
+        var anterior = Pedido.builder()
+                .idUsuario(1L)
+                .lineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(10.0).build()))
+                .createdAt(LocalDateTime.of(2023, 10, 1, 12, 0))
+                .build();
+        when(productosRepository.findSearchViewsByIdIn(Set.of(1L, 2L))).thenReturn(List.of());
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VentasRollup.class)).thenReturn(bulkOperations);
+
+        // Act
+        ventasService.apply(List.of(pedido), List.of(anterior));
+
+        // Assert: sin categoría conocida y el pedido no cuenta dos veces en el producto 1
+        var incs = capturedIncs(4);
+        assertAll("apply",
+                () -> assertEquals(new Document("unidades", 2L).append("importe", 20.0).append("pedidos", 0L), incs.get("PRODUCTO_DIA|2023-10-01|1")),
+                () -> assertEquals(new Document("unidades", 1L).append("importe", 5.0).append("pedidos", 1L), incs.get("PRODUCTO_DIA|2023-10-01|2")),
+                () -> assertTrue(incs.containsKey("CATEGORIA_DIA|2023-10-01|" + VentasServiceImpl.SIN_CATEGORIA))
+        );
+    }
+
+    @Test
+    void apply_ShouldNotWrite_WhenNothingChanges() {
+        // Act
+        ventasService.apply(List.of(pedido), List.of(pedido));
+
+        // Verify
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(VentasRollup.class));
+    }
+
+    @Test
+    void apply_ShouldNotThrow_WhenMongoFails() {
+        // Arrange
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VentasRollup.class)).thenThrow(new IllegalStateException("Mongo no disponible"));
+
+        // Act & Assert
+        assertDoesNotThrow(() -> ventasService.apply(List.of(pedido), List.of()));
+    }
+
+    @Test
+    void findProductos_ShouldReadIdRange() {
+        // Arrange
+        var rollup = VentasRollup.builder().id("PRODUCTO_DIA|2023-10-01|1").build();
+        when(ventasRepository.findByIdRange("PRODUCTO_DIA|2023-10-01|", "PRODUCTO_DIA|2023-10-31|" + Character.MAX_VALUE, Sort.by("id"))).thenReturn(List.of(rollup));
+
+        // Act
+        var result = ventasService.findProductos(LocalDate.of(2023, 10, 1), LocalDate.of(2023, 10, 31), null);
+
+        // Assert
+        assertEquals(List.of(rollup), result);
+    }
+
+    @Test
+    void findUsuarios_ShouldFilterByClave() {
+        // Act
+        ventasService.findUsuarios(YearMonth.of(2023, 1), YearMonth.of(2023, 12), 1L);
+
+        // Verify
+        verify(ventasRepository, times(1)).findByIdRangeAndClave("USUARIO_MES|2023-01|", "USUARIO_MES|2023-12|" + Character.MAX_VALUE, "1", Sort.by("id"));
+    }
+
+    @Test
+    void find_ShouldRejectBadRange() {
+        assertAll("badRange",
+                () -> assertThrows(VentasBadRequest.class, () -> ventasService.findCategorias(LocalDate.of(2023, 10, 2), LocalDate.of(2023, 10, 1), null)),
+                () -> assertThrows(VentasBadRequest.class, () -> ventasService.findProductos(LocalDate.of(2020, 1, 1), LocalDate.of(2023, 1, 1), null))
+        );
+        verifyNoInteractions(ventasRepository);
+    }
+
+    @Test
+    void rebuild_ShouldAggregateEachMonthAndRemoveStale() {
+        // Arrange: todos los pedidos en octubre
+        when(mongoTemplate.findOne(any(Query.class), eq(Pedido.class))).thenReturn(pedido);
+        when(mongoTemplate.aggregate(any(TypedAggregation.class), eq(Document.class))).thenReturn(
+                results(new Document("_id", new Document("periodo", "2023-10-01").append("clave", 1L)).append("unidades", 3).append("importe", 30.0).append("pedidos", 1)),
+                results(new Document("_id", new Document("periodo", "2023-10").append("clave", 1L)).append("unidades", 3).append("importe", 30.0).append("pedidos", 1)));
+        when(mongoTemplate.aggregateStream(any(TypedAggregation.class), eq(Document.class))).thenReturn(Stream.of(
+                new Document("_id", new Document("periodo", "2023-10-01").append("pedido", "p1"))
+                        .append("productos", List.of(1L)).append("unidades", List.of(3)).append("importes", List.of(30.0))));
+        when(productosRepository.findSearchViewsByIdIn(Set.of(1L))).thenReturn(List.of(new ProductoSearchView(1L, "Adidas", "Zapatillas", null, "DEPORTES")));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VentasRollup.class)).thenReturn(bulkOperations);
+        when(mongoTemplate.remove(any(Query.class), eq(VentasRollup.class))).thenReturn(DeleteResult.acknowledged(2));
+
+        // Act
+        var result = ventasService.rebuild();
+
+        // Assert
+        assertAll("rebuild",
+                () -> assertEquals(1, result.meses()),
+                () -> assertEquals(3, result.documentos()),
+                () -> assertEquals(2, result.borrados())
+        );
+
+        // Verify: cada pedido cuenta una vez por clave antes de sumar por periodo y clave
+        var captor = ArgumentCaptor.forClass(TypedAggregation.class);
+        verify(mongoTemplate, times(2)).aggregate(captor.capture(), eq(Document.class));
+        var pipeline = captor.getAllValues().get(0).toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertAll("pipeline",
+                () -> assertEquals(5, pipeline.size()),
+                () -> assertEquals(new Document("periodo", "$_id.periodo").append("clave", "$_id.clave"), pipeline.get(4).get("$group", Document.class).get("_id"))
+        );
+        var upserts = ArgumentCaptor.forClass(Query.class);
+        verify(bulkOperations, times(3)).upsert(upserts.capture(), any(Update.class));
+        assertEquals(List.of("PRODUCTO_DIA|2023-10-01|1", "USUARIO_MES|2023-10|1", "CATEGORIA_DIA|2023-10-01|DEPORTES"),
+                upserts.getAllValues().stream().map(query -> query.getQueryObject().getString("_id")).toList());
+    }
+
+    private AggregationResults<Document> results(Document... documents) {
+        return new AggregationResults<>(List.of(documents), new Document());
+    }
+
+    /**
+     * Los $inc de cada upsert del bulk, por id del agregado
+     */
+    private Map<String, Document> capturedIncs(int count) {
+        var queries = ArgumentCaptor.forClass(Query.class);
+        var updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations, times(count)).upsert(queries.capture(), updates.capture());
+        Map<String, Document> incs = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            incs.put(queries.getAllValues().get(i).getQueryObject().getString("_id"),
+                    updates.getAllValues().get(i).getUpdateObject().get("$inc", Document.class));
+        }
+        return incs;
+    }
+}
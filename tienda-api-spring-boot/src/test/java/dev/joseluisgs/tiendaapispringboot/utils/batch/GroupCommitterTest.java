@@ -0,0 +1,113 @@
+package dev.joseluisgs.tiendaapispringboot.utils.batch;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitterTest {
+
+    @Test
+    void submit_ShouldGroupConcurrentRequests() throws Exception {
+        // Arrange
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        var committer = new GroupCommitter<Integer, Integer>("test", 50, Duration.ofMillis(50), 1000, Duration.ofSeconds(5), batch -> {
+            batchSizes.add(batch.size());
+            batch.forEach(entry -> entry.complete(entry.item() * 2));
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+
+        // Act
+        List<Future<Integer>> results = executor.invokeAll(IntStream.range(0, 100)
+                .<Callable<Integer>>mapToObj(i -> () -> committer.submit(i)).toList());
+        executor.shutdown();
+        committer.close();
+
+        // Assert: cada uno recibe su resultado y van en menos lotes que peticiones
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * 2, results.get(i).get());
+        }
+        assertEquals(100, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.size() < 100, "Lotes: " + batchSizes);
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 50));
+    }
+
+    @Test
+    void submit_ShouldThrowTheRequestError() throws Exception {
+        // Arrange
+        try (var committer = new GroupCommitter<Integer, Integer>("test", 10, Duration.ZERO, 10, Duration.ofSeconds(5), batch ->
+                batch.forEach(entry -> entry.fail(new IllegalArgumentException("Mal " + entry.item()))))) {
+            // Act & Assert
+            var res = assertThrows(IllegalArgumentException.class, () -> committer.submit(1));
+            assertEquals("Mal 1", res.getMessage());
+        }
+    }
+
+    @Test
+    void submit_ShouldFail_WhenProcessorFailsOrForgetsRequests() throws Exception {
+        try (var failing = new GroupCommitter<Integer, Integer>("test", 10, Duration.ZERO, 10, Duration.ofSeconds(5), batch -> {
+            throw new IllegalStateException("Caído");
+        }); var forgetful = new GroupCommitter<Integer, Integer>("test", 10, Duration.ZERO, 10, Duration.ofSeconds(5), batch -> {
+        })) {
+            assertEquals("Caído", assertThrows(IllegalStateException.class, () -> failing.submit(1)).getMessage());
+            assertThrows(IllegalStateException.class, () -> forgetful.submit(1));
+        }
+    }
+
+    @Test
+    void submit_ShouldCancelAndNeverProcess_WhenTimedOutInQueue() throws Exception {
+        // Arrange: el primer lote se queda parado y el segundo caduca esperando en cola
+        var blocked = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        var committer = new GroupCommitter<Integer, Integer>("test", 1, Duration.ZERO, 10, Duration.ofMillis(200), batch -> {
+            batch.forEach(entry -> processed.add(entry.item()));
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batch.forEach(entry -> entry.complete(entry.item()));
+        });
+        var executor = Executors.newSingleThreadExecutor();
+        var first = executor.submit(() -> committer.submit(1));
+        started.await();
+
+        // Act & Assert
+        assertThrows(RejectedExecutionException.class, () -> committer.submit(2));
+        blocked.countDown();
+        // El primero ya estaba en su lote: espera a su resultado aunque pase el tiempo
+        assertEquals(1, first.get());
+        executor.shutdown();
+        committer.close();
+        assertEquals(List.of(1), processed);
+    }
+
+    @Test
+    void submit_ShouldWaitForResult_WhenTimedOutWhileProcessing() {
+        try (var committer = new GroupCommitter<Integer, Integer>("test", 10, Duration.ZERO, 10, Duration.ofMillis(50), batch -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batch.forEach(entry -> entry.complete(entry.item() * 2));
+        })) {
+            assertEquals(2, committer.submit(1));
+        }
+    }
+
+    @Test
+    void submit_ShouldReject_WhenClosed() throws Exception {
+        var committer = new GroupCommitter<Integer, Integer>("test", 10, Duration.ZERO, 10, Duration.ofSeconds(5), batch ->
+                batch.forEach(entry -> entry.complete(entry.item())));
+        committer.close();
+
+        assertThrows(RejectedExecutionException.class, () -> committer.submit(1));
+    }
+}